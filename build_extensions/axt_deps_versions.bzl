@@ -9,3 +9,4 @@ ANDROIDX_ANNOTATION_VERSION = "1.7.0"
 KOTLIN_VERSION = "1.9.21"
 KOTLIN_LANG_VERSION = "1.9"
 GRPC_VERSION = "1.71.0"
+JUNIT_VERSION = "4.13.2"
@@ -15,15 +15,57 @@
  */
 package androidx.test.tools.jarcombiner
 
+import androidx.test.tools.zipcombiner.RawZipReader
+import androidx.test.tools.zipcombiner.RawZipWriter
+import androidx.test.tools.zipcombiner.UnsupportedZipException
+import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.util.jar.JarInputStream
 import java.util.jar.JarOutputStream
-import java.util.zip.ZipEntry
 
+/**
+ * Combines the jars given after the output file into it.
+ *
+ * Entries are copied compressed, as they are in the inputs. Inputs that can't be copied that way,
+ * like zip64 files, make it fall back to [combineJarsRecompressing].
+ */
 fun combineJars(args: Array<String>) {
   require(args.size >= 2) { "Must provide a least two files: <output> <input...>" }
 
+  try {
+    RawZipWriter(File(args[0])).use { writer ->
+      val entryToJar: MutableMap<String, String> = HashMap()
+      for (i in 1 until args.size) {
+        RawZipReader(File(args[i])).use { reader ->
+          for ((index, entry) in reader.entries.withIndex()) {
+            // JarInputStream skips a leading META-INF/ directory, along with the manifest.
+            if (index == 0 && entry.name.equals("META-INF/", ignoreCase = true)) {
+              continue
+            }
+            if (entryToJar.containsKey(entry.name)) {
+              if (!isAllowedDuplicate(entry.name)) {
+                throw RuntimeException(
+                  "Duplicate entry: ${entry.name} is present in both ${entryToJar.get(entry.name)} and ${args[i]}"
+                )
+              }
+            } else if (shouldAddEntry(entry.name)) {
+              writer.copy(reader, entry)
+              entryToJar.put(entry.name, args[i])
+            }
+          }
+        }
+      }
+    }
+  } catch (e: UnsupportedZipException) {
+    combineJarsRecompressing(args)
+  }
+}
+
+/** Combines the jars given after the output file into it, inflating and deflating each entry. */
+fun combineJarsRecompressing(args: Array<String>) {
+  require(args.size >= 2) { "Must provide a least two files: <output> <input...>" }
+
   val outputFile = args[0]
   val jarOutputStream = JarOutputStream(FileOutputStream(outputFile, false))
   jarOutputStream.use {
@@ -52,12 +94,12 @@ private fun addToJar(
     // directories and certain classes.
     // Keep track of the list of directories already added to prevent this
     if (entryToJar.containsKey(entry.name)) {
-      if (!isAllowedDuplicate(entry)) {
+      if (!isAllowedDuplicate(entry.name)) {
         throw RuntimeException(
           "Duplicate entry: ${entry.name} is present in both ${entryToJar.get(entry.name)} and $inputJarName"
         )
       }
-    } else if (shouldAddEntry(entry)) {
+    } else if (shouldAddEntry(entry.name)) {
       jarOutputStream.putNextEntry(entry)
       inputJarStream.transferTo(jarOutputStream)
       entryToJar.put(entry.name, inputJarName)
@@ -66,11 +108,11 @@ private fun addToJar(
   }
 }
 
-private fun isAllowedDuplicate(entry: ZipEntry): Boolean {
-  if (entry.isDirectory) {
+private fun isAllowedDuplicate(name: String): Boolean {
+  if (name.endsWith("/")) {
     // always allow duplicate directories
     return true
-  } else if (entry.name.startsWith("com/google/protobuf")) {
+  } else if (name.startsWith("com/google/protobuf")) {
     // bazel's new version of rules_proto creates java wrapper libraries around any proto_library
     // dependencies, which contain classes already present in the main protobuf-javalite-3.21.7.jar
     return true
@@ -78,22 +120,22 @@ private fun isAllowedDuplicate(entry: ZipEntry): Boolean {
   return false
 }
 
-private fun shouldAddEntry(entry: ZipEntry): Boolean {
-  if (entry.name.matches(Regex(".*/R[\\.|\\$].*class$"))) {
+private fun shouldAddEntry(name: String): Boolean {
+  if (name.matches(Regex(".*/R[\\.|\\$].*class$"))) {
     // strip generated R.class from resulting jar
     return false
-  } else if (entry.name.equals("protobuf.meta")) {
+  } else if (name.equals("protobuf.meta")) {
     return false
-  } else if (entry.name.startsWith("META-INF/maven")) {
+  } else if (name.startsWith("META-INF/maven")) {
     // strip out files added to META-INF/maven since this can lead to duplicate file errors
     return false
-  } else if (entry.name.startsWith("META-INF/MANIFEST.MF")) {
+  } else if (name.startsWith("META-INF/MANIFEST.MF")) {
     // strip out files added to META-INF/MANIFEST.MF since this can lead to duplicate file errors
     return false
-  } else if (entry.name.startsWith("google/protobuf")) {
+  } else if (name.startsWith("google/protobuf")) {
     // strip out all the google/protobuf/*.proto files since this can lead to duplicate file errors
     return false
-  } else if (entry.name.startsWith("META-INF/com.google.dagger_dagger.version")) {
+  } else if (name.startsWith("META-INF/com.google.dagger_dagger.version")) {
     // strip out META-INF/com.google.dagger_dagger.version since this can lead to duplicate file
     // errors
     return false
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.tools.jarcombiner
+
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import java.nio.file.Files
+import java.util.Random
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+/**
+ * Measures combining 200 classes.jars, about as many as the AARs of a release, by copying their
+ * entries compressed against inflating and deflating them again.
+ *
+ * Results are printed to stdout.
+ */
+@RunWith(JUnit4::class)
+class JarCombinerBenchmarkTest {
+  private companion object {
+    const val JARS = 200
+    const val CLASSES_PER_JAR = 100
+    const val ITERATIONS = 5
+  }
+
+  @Test
+  fun combine200Jars() {
+    val dir = Files.createTempDirectory("jarCombinerBenchmark").toFile()
+    val inputs = (0 until JARS).map { writeJar(File(dir, "classes$it.jar"), it) }
+    val rawOut = File(dir, "raw.jar")
+    val recompressedOut = File(dir, "recompressed.jar")
+
+    val rawMillis = time { combineJars(arrayOf(rawOut.path, *inputs.toTypedArray())) }
+    val recompressingMillis = time {
+      combineJarsRecompressing(arrayOf(recompressedOut.path, *inputs.toTypedArray()))
+    }
+
+    println(
+      "Combining $JARS jars: raw copy ${rawMillis}ms, recompressing ${recompressingMillis}ms" +
+        " (median of $ITERATIONS)"
+    )
+    ZipFile(rawOut).use { raw ->
+      ZipFile(recompressedOut).use { recompressed ->
+        assertThat(raw.size()).isEqualTo(recompressed.size())
+        for (entry in raw.entries()) {
+          assertThat(raw.getInputStream(entry).readBytes())
+            .isEqualTo(recompressed.getInputStream(recompressed.getEntry(entry.name)).readBytes())
+        }
+      }
+    }
+  }
+
+  /** Returns the median time of the iterations, after a warm up run. */
+  private fun time(combine: () -> Unit): Long {
+    combine()
+    val millis =
+      (0 until ITERATIONS).map {
+        val start = System.nanoTime()
+        combine()
+        (System.nanoTime() - start) / 1_000_000
+      }
+    return millis.sorted()[ITERATIONS / 2]
+  }
+
+  /** Writes a jar shaped like an AAR's classes.jar: a manifest, packages and class files. */
+  private fun writeJar(file: File, index: Int): String {
+    val random = Random(index.toLong())
+    ZipOutputStream(file.outputStream()).use { jar ->
+      jar.putNextEntry(ZipEntry("META-INF/"))
+      jar.putNextEntry(ZipEntry("META-INF/MANIFEST.MF"))
+      jar.write("Manifest-Version: 1.0\n".toByteArray())
+      jar.putNextEntry(ZipEntry("androidx/"))
+      jar.putNextEntry(ZipEntry("androidx/lib$index/"))
+      for (i in 0 until CLASSES_PER_JAR) {
+        jar.putNextEntry(ZipEntry("androidx/lib$index/Class$i.class"))
+        // Compressible, like class files: a small alphabet of bytes.
+        jar.write(ByteArray(1_000 + random.nextInt(8_000)) { random.nextInt(16).toByte() })
+      }
+    }
+    return file.path
+  }
+}
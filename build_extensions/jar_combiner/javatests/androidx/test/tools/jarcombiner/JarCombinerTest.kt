@@ -21,6 +21,7 @@ import com.google.common.truth.Truth.assertThat
 import java.io.File
 import java.nio.file.Paths
 import java.util.zip.ZipException
+import java.util.zip.ZipFile
 import kotlin.io.path.exists
 import kotlin.streams.toList
 import org.junit.Assert.assertThrows
@@ -51,6 +52,18 @@ class JarCombinerTest {
       )
   }
 
+  @Test
+  fun combineJars_matchesRecompressing() {
+    val rawOutFile = File.createTempFile("rawOut", ".jar")
+    val recompressedOutFile = File.createTempFile("recompressedOut", ".jar")
+    val inputs = arrayOf(getDataJarPath("libjar2.jar"), getDataJarPath("libjar_with_r.jar"))
+
+    combineJars(arrayOf(rawOutFile.absolutePath, *inputs))
+    combineJarsRecompressing(arrayOf(recompressedOutFile.absolutePath, *inputs))
+
+    assertThat(readEntries(rawOutFile)).isEqualTo(readEntries(recompressedOutFile))
+  }
+
   @Test
   fun rClassesRemoved() {
     val outFile = File.createTempFile("rClassesRemovedOut", ".jar")
@@ -79,6 +92,11 @@ class JarCombinerTest {
     )
   }
 
+  private fun readEntries(jar: File): Map<String, List<Byte>> =
+    ZipFile(jar).use { zip ->
+      zip.entries().toList().associate { it.name to zip.getInputStream(it).readBytes().toList() }
+    }
+
   private fun getDataJarPath(name: String): String {
     val path =
       Paths.get(
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.tools.zipcombiner
+
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.util.zip.ZipException
+
+private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+private const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+private const val LOCAL_HEADER_SIZE = 30
+private const val CENTRAL_HEADER_SIZE = 46
+private const val END_OF_CENTRAL_DIRECTORY_SIZE = 22
+private const val MAX_COMMENT_SIZE = 0xFFFF
+private const val DATA_DESCRIPTOR_FLAG = 0x8
+private const val ZIP64_MARKER = 0xFFFFFFFFL
+private const val VERSION_NEEDED = 20
+
+/** Thrown for zip files that can't be copied raw, such as zip64 files. */
+class UnsupportedZipException(message: String) : ZipException(message)
+
+/** An entry of a zip file, as recorded in its central directory. */
+class RawZipEntry
+internal constructor(
+  val name: String,
+  internal val nameBytes: ByteArray,
+  internal val flags: Int,
+  internal val method: Int,
+  internal val dosTime: Int,
+  internal val crc: Int,
+  internal val compressedSize: Long,
+  internal val size: Long,
+  internal val externalAttributes: Int,
+  internal val localHeaderOffset: Long,
+) {
+  val isDirectory: Boolean
+    get() = name.endsWith("/")
+}
+
+/**
+ * Reads the entries of a zip file from its central directory, without inflating them, so they can
+ * be copied as is with a [RawZipWriter].
+ */
+class RawZipReader(file: File) : Closeable {
+  private val channel: FileChannel = RandomAccessFile(file, "r").channel
+  val entries: List<RawZipEntry>
+
+  init {
+    try {
+      entries = readCentralDirectory(file.path)
+    } catch (e: Exception) {
+      channel.close()
+      throw e
+    }
+  }
+
+  private fun readCentralDirectory(path: String): List<RawZipEntry> {
+    val tailSize =
+      minOf(channel.size(), (END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE).toLong())
+    val tail = read(channel.size() - tailSize, tailSize.toInt())
+    var end = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE
+    while (end >= 0 && tail.getInt(end) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+      end--
+    }
+    if (end < 0) {
+      throw ZipException("$path: no end of central directory, not a zip file")
+    }
+    val entryCount = tail.getShort(end + 10).toInt() and 0xFFFF
+    val directorySize = tail.getInt(end + 12).toLong() and ZIP64_MARKER
+    val directoryOffset = tail.getInt(end + 16).toLong() and ZIP64_MARKER
+    if (entryCount == 0xFFFF || directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) {
+      throw UnsupportedZipException("$path: zip64 files are not supported")
+    }
+
+    val directory = read(directoryOffset, directorySize.toInt())
+    val entries = ArrayList<RawZipEntry>(entryCount)
+    var position = 0
+    for (i in 0 until entryCount) {
+      if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+        throw ZipException("$path: bad central directory entry at $position")
+      }
+      val flags = directory.getShort(position + 8).toInt() and 0xFFFF
+      val compressedSize = directory.getInt(position + 20).toLong() and ZIP64_MARKER
+      val size = directory.getInt(position + 24).toLong() and ZIP64_MARKER
+      val nameLength = directory.getShort(position + 28).toInt() and 0xFFFF
+      val extraLength = directory.getShort(position + 30).toInt() and 0xFFFF
+      val commentLength = directory.getShort(position + 32).toInt() and 0xFFFF
+      val localHeaderOffset = directory.getInt(position + 42).toLong() and ZIP64_MARKER
+      if (compressedSize == ZIP64_MARKER || size == ZIP64_MARKER) {
+        throw UnsupportedZipException("$path: zip64 entries are not supported")
+      }
+      if (flags and 0x1 != 0) {
+        throw UnsupportedZipException("$path: encrypted entries are not supported")
+      }
+      val nameBytes = ByteArray(nameLength)
+      directory.position(position + CENTRAL_HEADER_SIZE)
+      directory.get(nameBytes)
+      // Bit 11 marks UTF-8 names; jar tools write UTF-8 either way.
+      val name = String(nameBytes, Charsets.UTF_8)
+      entries.add(
+        RawZipEntry(
+          name = name,
+          nameBytes = nameBytes,
+          flags = flags,
+          method = directory.getShort(position + 10).toInt() and 0xFFFF,
+          dosTime = directory.getInt(position + 12),
+          crc = directory.getInt(position + 16),
+          compressedSize = compressedSize,
+          size = size,
+          externalAttributes = directory.getInt(position + 38),
+          localHeaderOffset = localHeaderOffset,
+        )
+      )
+      position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength
+    }
+    return entries
+  }
+
+  /** Copies the compressed data of the entry to the given channel. */
+  internal fun transferData(entry: RawZipEntry, target: FileChannel) {
+    val header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE)
+    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw ZipException("Bad local header for ${entry.name}")
+    }
+    val nameLength = header.getShort(26).toInt() and 0xFFFF
+    val extraLength = header.getShort(28).toInt() and 0xFFFF
+    var position = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength
+    var remaining = entry.compressedSize
+    while (remaining > 0) {
+      val transferred = channel.transferTo(position, remaining, target)
+      if (transferred <= 0) {
+        throw ZipException("Truncated data for ${entry.name}")
+      }
+      position += transferred
+      remaining -= transferred
+    }
+  }
+
+  private fun read(position: Long, size: Int): ByteBuffer {
+    val buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw ZipException("Unexpected end of zip file")
+      }
+    }
+    buffer.flip()
+    return buffer
+  }
+
+  override fun close() {
+    channel.close()
+  }
+}
+
+/**
+ * Writes a zip file out of entries of other zip files, copying their compressed data as is, along
+ * with the CRC and sizes recorded for them, rather than inflating and deflating them again.
+ */
+class RawZipWriter(file: File) : Closeable {
+  private val channel: FileChannel = FileOutputStream(file, false).channel
+  private val centralDirectory = ByteArrayOutputStream()
+  private val names = HashSet<String>()
+  private var entryCount = 0
+
+  /** Copies an entry of the zip file read by reader. */
+  fun copy(reader: RawZipReader, entry: RawZipEntry) {
+    if (!names.add(entry.name)) {
+      throw ZipException("duplicate entry: ${entry.name}")
+    }
+    if (entryCount == 0xFFFF - 1 || channel.position() >= ZIP64_MARKER) {
+      throw UnsupportedZipException("Output would need zip64")
+    }
+    val offset = channel.position()
+    // Sizes and CRC go in the local header, so the data descriptor, if any, is left out.
+    val flags = entry.flags and DATA_DESCRIPTOR_FLAG.inv()
+
+    val localHeader =
+      ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.nameBytes.size).order(ByteOrder.LITTLE_ENDIAN)
+    localHeader.putInt(LOCAL_HEADER_SIGNATURE)
+    localHeader.putShort(VERSION_NEEDED.toShort())
+    localHeader.putShort(flags.toShort())
+    localHeader.putShort(entry.method.toShort())
+    localHeader.putInt(entry.dosTime)
+    localHeader.putInt(entry.crc)
+    localHeader.putInt(entry.compressedSize.toInt())
+    localHeader.putInt(entry.size.toInt())
+    localHeader.putShort(entry.nameBytes.size.toShort())
+    localHeader.putShort(0) // extra field length
+    localHeader.put(entry.nameBytes)
+    localHeader.flip()
+    writeFully(localHeader)
+    reader.transferData(entry, channel)
+
+    val centralHeader =
+      ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.nameBytes.size).order(ByteOrder.LITTLE_ENDIAN)
+    centralHeader.putInt(CENTRAL_HEADER_SIGNATURE)
+    centralHeader.putShort(VERSION_NEEDED.toShort()) // version made by
+    centralHeader.putShort(VERSION_NEEDED.toShort())
+    centralHeader.putShort(flags.toShort())
+    centralHeader.putShort(entry.method.toShort())
+    centralHeader.putInt(entry.dosTime)
+    centralHeader.putInt(entry.crc)
+    centralHeader.putInt(entry.compressedSize.toInt())
+    centralHeader.putInt(entry.size.toInt())
+    centralHeader.putShort(entry.nameBytes.size.toShort())
+    centralHeader.putShort(0) // extra field length
+    centralHeader.putShort(0) // comment length
+    centralHeader.putShort(0) // disk number
+    centralHeader.putShort(0) // internal attributes
+    centralHeader.putInt(entry.externalAttributes)
+    centralHeader.putInt(offset.toInt())
+    centralHeader.put(entry.nameBytes)
+    centralDirectory.write(centralHeader.array())
+    entryCount++
+  }
+
+  override fun close() {
+    channel.use {
+      val directoryOffset = channel.position()
+      if (directoryOffset + centralDirectory.size() >= ZIP64_MARKER) {
+        throw UnsupportedZipException("Output would need zip64")
+      }
+      writeFully(ByteBuffer.wrap(centralDirectory.toByteArray()))
+      val end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+      end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+      end.putShort(0) // disk number
+      end.putShort(0) // disk with the central directory
+      end.putShort(entryCount.toShort())
+      end.putShort(entryCount.toShort())
+      end.putInt(centralDirectory.size())
+      end.putInt(directoryOffset.toInt())
+      end.putShort(0) // comment length
+      end.flip()
+      writeFully(end)
+    }
+  }
+
+  private fun writeFully(buffer: ByteBuffer) {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer)
+    }
+  }
+}
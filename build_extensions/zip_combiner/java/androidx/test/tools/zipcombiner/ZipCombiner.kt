@@ -15,15 +15,50 @@
  */
 package androidx.test.tools.zipcombiner
 
+import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
-import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
 import java.util.zip.ZipOutputStream
 
+/**
+ * Combines the zips given after the output file into it.
+ *
+ * Entries are copied compressed, as they are in the inputs. Inputs that can't be copied that way,
+ * like zip64 files, make it fall back to [combineZipsRecompressing].
+ */
 fun combineZips(args: Array<String>) {
   require(args.size >= 2) { "Must provide a least two files: <output> <input...>" }
 
+  try {
+    RawZipWriter(File(args[0])).use { writer ->
+      val entryToZip: MutableMap<String, String> = HashMap()
+      for (i in 1 until args.size) {
+        RawZipReader(File(args[i])).use { reader ->
+          for (entry in reader.entries) {
+            if (entryToZip.containsKey(entry.name)) {
+              if (!isAllowedDuplicate(entry.name)) {
+                throw RuntimeException(
+                  "Duplicate entry: ${entry.name} is present in both ${entryToZip.get(entry.name)} and ${args[i]}"
+                )
+              }
+            } else {
+              writer.copy(reader, entry)
+              entryToZip.put(entry.name, args[i])
+            }
+          }
+        }
+      }
+    }
+  } catch (e: UnsupportedZipException) {
+    combineZipsRecompressing(args)
+  }
+}
+
+/** Combines the zips given after the output file into it, inflating and deflating each entry. */
+fun combineZipsRecompressing(args: Array<String>) {
+  require(args.size >= 2) { "Must provide a least two files: <output> <input...>" }
+
   val outputFile = args[0]
   val zipOutputStream = ZipOutputStream(FileOutputStream(outputFile, false))
   zipOutputStream.use {
@@ -53,7 +88,7 @@ private fun addToZip(
     // Add our own handling to allow certain duplicates, and throw a more descriptive error in
     // case there are unexpected duplicates
     if (entryToZip.containsKey(entry.name)) {
-      if (!isAllowedDuplicate(entry)) {
+      if (!isAllowedDuplicate(entry.name)) {
         throw RuntimeException(
           "Duplicate entry: ${entry.name} is present in both ${entryToZip.get(entry.name)} and $inputZipName"
         )
@@ -67,7 +102,7 @@ private fun addToZip(
   }
 }
 
-private fun isAllowedDuplicate(entry: ZipEntry): Boolean {
+private fun isAllowedDuplicate(name: String): Boolean {
   // always allow duplicate directories
-  return entry.isDirectory
+  return name.endsWith("/")
 }
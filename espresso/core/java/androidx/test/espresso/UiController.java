@@ -75,6 +75,31 @@ public interface UiController {
    */
   boolean injectKeyEvent(KeyEvent event) throws InjectEventSecurityException;
 
+  /**
+   * Injects a sequence of key events into the application, waiting for the application to go idle
+   * only once all of them have been injected.
+   *
+   * <p>The event times of the given events are refreshed right before each event is injected.
+   *
+   * @param events the (non-null!) events to inject
+   * @return true if every event was injected, false otherwise
+   * @throws InjectEventSecurityException if the events couldn't be injected because it would
+   *     interact with another application.
+   */
+  default boolean injectKeyEventSequence(Iterable<KeyEvent> events)
+      throws InjectEventSecurityException {
+    android.util.Log.w(
+        "UIC",
+        "Using default injectKeyEventSequence() - events are injected one by one. "
+            + "If wrapping UIController please override this method and delegate.");
+    for (KeyEvent event : events) {
+      if (!injectKeyEvent(KeyEvent.changeTimeRepeat(event, SystemClock.uptimeMillis(), 0))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Types a string into the application using series of {@link KeyEvent}s. It is up to the
    * implementor to decide how to map the string to {@link KeyEvent} objects. If you need specific
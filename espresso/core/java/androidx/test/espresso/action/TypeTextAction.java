@@ -37,6 +37,8 @@ import androidx.test.espresso.ViewAction;
 import androidx.test.espresso.remote.annotation.RemoteMsgConstructor;
 import androidx.test.espresso.remote.annotation.RemoteMsgField;
 import androidx.test.espresso.util.HumanReadables;
+import androidx.test.espresso.util.KeyEvents;
+import java.util.Arrays;
 import java.util.Locale;
 import org.hamcrest.Matcher;
 
@@ -53,6 +55,10 @@ public final class TypeTextAction implements ViewAction {
   // The click action to use when tapping to focus is needed before typing in text.
   @Nullable final GeneralClickAction clickAction;
 
+  // Whether all key events are injected as one sequence, with a single idle sync at the end.
+  @RemoteMsgField(order = 2)
+  final boolean batchKeyEvents;
+
   /**
    * Constructs {@link TypeTextAction} with given string. If the string is empty it results in no-op
    * (nothing is typed). By default this action sends a tap event to the center of the view to
@@ -71,11 +77,15 @@ public final class TypeTextAction implements ViewAction {
    * @param stringToBeTyped String To be typed by {@link TypeTextAction}
    * @param tapToFocus indicates whether a tap should be sent to the underlying view before typing.
    */
-  @RemoteMsgConstructor
   public TypeTextAction(String stringToBeTyped, boolean tapToFocus) {
     this(stringToBeTyped, tapToFocus, null);
   }
 
+  @RemoteMsgConstructor
+  private TypeTextAction(String stringToBeTyped, boolean tapToFocus, boolean batchKeyEvents) {
+    this(stringToBeTyped, tapToFocus, null, batchKeyEvents);
+  }
+
   /**
    * Constructs {@link TypeTextAction} with given string. If the string is empty it results in no-op
    * (nothing is typed).
@@ -88,10 +98,34 @@ public final class TypeTextAction implements ViewAction {
    */
   public TypeTextAction(
       String stringToBeTyped, boolean tapToFocus, GeneralClickAction clickAction) {
+    this(stringToBeTyped, tapToFocus, clickAction, false);
+  }
+
+  /**
+   * Constructs {@link TypeTextAction} with given string. If the string is empty it results in no-op
+   * (nothing is typed).
+   *
+   * @param stringToBeTyped String To be typed by {@link TypeTextAction}
+   * @param tapToFocus indicates whether a tap should be sent to the underlying view before typing.
+   * @param clickAction the click action instance to use when tapping to focus. Can be {@code null}
+   *     if {@code tapToFocus} is false. If {@code tapToFocus} is true but no {@code clickAction} is
+   *     specified, a default click action will be used for tapping.
+   * @param batchKeyEvents if true, the key events of the string are injected with {@link
+   *     UiController#injectKeyEventSequence(Iterable)}, so the main thread is only synchronized
+   *     once the whole string was typed instead of around every key event. Views reacting to each
+   *     key stroke (e.g. to reformat or filter the input) may observe the keys in quicker
+   *     succession than with the default mode.
+   */
+  public TypeTextAction(
+      String stringToBeTyped,
+      boolean tapToFocus,
+      GeneralClickAction clickAction,
+      boolean batchKeyEvents) {
     checkNotNull(stringToBeTyped);
     this.stringToBeTyped = stringToBeTyped;
     this.tapToFocus = tapToFocus;
     this.clickAction = clickAction;
+    this.batchKeyEvents = batchKeyEvents;
   }
 
   @SuppressWarnings("unchecked")
@@ -126,7 +160,7 @@ public final class TypeTextAction implements ViewAction {
     }
 
     try {
-      if (!uiController.injectString(stringToBeTyped)) {
+      if (!(batchKeyEvents ? injectKeyEventSequence(uiController) : injectString(uiController))) {
         Log.e(TAG, "Failed to type text: " + stringToBeTyped);
         throw new PerformException.Builder()
             .withActionDescription(this.getDescription())
@@ -149,6 +183,16 @@ public final class TypeTextAction implements ViewAction {
     return String.format(Locale.ROOT, "type text(%s)", stringToBeTyped);
   }
 
+  private boolean injectString(UiController uiController) throws InjectEventSecurityException {
+    return uiController.injectString(stringToBeTyped);
+  }
+
+  private boolean injectKeyEventSequence(UiController uiController)
+      throws InjectEventSecurityException {
+    return uiController.injectKeyEventSequence(
+        Arrays.asList(KeyEvents.forString(stringToBeTyped)));
+  }
+
   private static GeneralClickAction defaultClickAction() {
     return new GeneralClickAction(
         Tap.SINGLE,
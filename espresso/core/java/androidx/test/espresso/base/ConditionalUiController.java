@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import androidx.test.espresso.UiController;
+
+/**
+ * Similar to {@link UiController} but with one additional method that loops the main thread until
+ * a condition holds, instead of for a fixed delay.
+ *
+ * <p>This interface used for Espresso internals and shouldn't be called by external users.
+ */
+interface ConditionalUiController extends UiController {
+
+  /** A condition on the state of the main thread. Evaluated on the main thread. */
+  interface Condition {
+    boolean isMet();
+  }
+
+  /**
+   * Loops the main thread until the condition is met or the given time has passed, whichever comes
+   * first, and then until it is idle.
+   *
+   * <p>The condition is evaluated whenever the main thread runs out of work to do, so a wait ends
+   * as soon as the main thread handled the event that satisfies the condition.
+   *
+   * @param condition the condition to wait for. Must not loop the main thread itself.
+   * @param maxMillis the longest time to wait for the condition, in milliseconds.
+   * @return true if the condition was met, false if the wait timed out.
+   */
+  boolean loopMainThreadUntil(Condition condition, long maxMillis);
+}
@@ -105,7 +105,7 @@ public final class RootViewPicker implements Provider<View> {
    * Waits for a root to be ready. Ready here means the UI is no longer in flux if layout of the
    * root view is not being requested and the root view has window focus or is focusable.
    */
-  private Root waitForRootToBeReady(Root pickedRoot) {
+  private Root waitForRootToBeReady(final Root pickedRoot) {
     long timeout = SystemClock.uptimeMillis() + SECONDS.toMillis(10) /* 10 seconds */;
     BackOff rootReadyBackoff = new RootReadyBackoff();
     while (SystemClock.uptimeMillis() <= timeout) {
@@ -113,7 +113,7 @@ public final class RootViewPicker implements Provider<View> {
         return pickedRoot;
       } else {
         controlledLooper.simulateWindowFocus(pickedRoot.getDecorView());
-        uiController.loopMainThreadForAtLeast(rootReadyBackoff.getNextBackoffInMillis());
+        waitFor(pickedRoot::isReady, timeout, rootReadyBackoff, "root to be ready");
       }
     }
 
@@ -132,17 +132,19 @@ public final class RootViewPicker implements Provider<View> {
     RootResults rootResults = rootResultFetcher.fetch();
     BackOff noActiveRootsBackoff = new NoActiveRootsBackoff();
     BackOff noMatchingRootBackoff = new NoMatchingRootBackoff();
+    ConditionalUiController.Condition rootPicked =
+        () -> rootResultFetcher.fetch().getState() == RootResults.State.ROOTS_PICKED;
     while (SystemClock.uptimeMillis() <= timeout) {
       switch (rootResults.getState()) {
         case ROOTS_PICKED:
           return rootResults.getPickedRoot();
         case NO_ROOTS_PRESENT:
           // no active roots yet, but should appear soon.
-          uiController.loopMainThreadForAtLeast(noActiveRootsBackoff.getNextBackoffInMillis());
+          waitFor(rootPicked, timeout, noActiveRootsBackoff, "an active root");
           break;
         case NO_ROOTS_PICKED:
           // a root which satisfies the matcher should show up eventually.
-          uiController.loopMainThreadForAtLeast(noMatchingRootBackoff.getNextBackoffInMillis());
+          waitFor(rootPicked, timeout, noMatchingRootBackoff, "a matching root");
           break;
       }
       rootResults = rootResultFetcher.fetch();
@@ -168,7 +170,13 @@ public final class RootViewPicker implements Provider<View> {
     }
     if (resumedActivities.isEmpty()) {
       List<Activity> activities = getAllActiveActivities();
-      if (activities.isEmpty()) {
+      if (activities.isEmpty() && uiController instanceof ConditionalUiController) {
+        long waitTime = totalMillis(CREATED_WAIT_TIMES);
+        Log.w(TAG, "No activities found - waiting up to: " + waitTime + "ms for one to appear.");
+        ((ConditionalUiController) uiController)
+            .loopMainThreadUntil(() -> !getAllActiveActivities().isEmpty(), waitTime);
+        activities = getAllActiveActivities();
+      } else if (activities.isEmpty()) {
         for (long waitTime : CREATED_WAIT_TIMES) {
           // wait for Activities to be scheduled by the platform before assuming there are none
           // and failing the test.
@@ -188,14 +196,30 @@ public final class RootViewPicker implements Provider<View> {
       }
       // well at least there are some activities in the pipeline - lets see if they resume.
 
-      for (long waitTime : RESUMED_WAIT_TIMES) {
+      if (uiController instanceof ConditionalUiController) {
+        long waitTime = totalMillis(RESUMED_WAIT_TIMES);
         Log.w(
-            TAG, "No activity currently resumed - waiting: " + waitTime + "ms for one to appear.");
-        uiController.loopMainThreadForAtLeast(waitTime);
+            TAG,
+            "No activity currently resumed - waiting up to: " + waitTime + "ms for one to appear.");
+        ((ConditionalUiController) uiController)
+            .loopMainThreadUntil(
+                () -> !activityLifecycleMonitor.getActivitiesInStage(Stage.RESUMED).isEmpty(),
+                waitTime);
         resumedActivities = activityLifecycleMonitor.getActivitiesInStage(Stage.RESUMED);
         if (!resumedActivities.isEmpty()) {
           return; // one of the pending activities has resumed
         }
+      } else {
+        for (long waitTime : RESUMED_WAIT_TIMES) {
+          Log.w(
+              TAG,
+              "No activity currently resumed - waiting: " + waitTime + "ms for one to appear.");
+          uiController.loopMainThreadForAtLeast(waitTime);
+          resumedActivities = activityLifecycleMonitor.getActivitiesInStage(Stage.RESUMED);
+          if (!resumedActivities.isEmpty()) {
+            return; // one of the pending activities has resumed
+          }
+        }
       }
       throw new NoActivityResumedException(
           "No activities in stage RESUMED. Did you forget to "
@@ -208,6 +232,34 @@ public final class RootViewPicker implements Provider<View> {
         currentActivity, uiController, appContext);
   }
 
+  /**
+   * Waits for the condition to be met, but not past the deadline. Without a {@link
+   * ConditionalUiController} the main thread is looped for the next backoff instead.
+   */
+  private void waitFor(
+      ConditionalUiController.Condition condition,
+      long deadline,
+      BackOff backoff,
+      String description) {
+    if (uiController instanceof ConditionalUiController) {
+      long remaining = deadline - SystemClock.uptimeMillis();
+      if (remaining > 0) {
+        LogUtil.logDebugWithProcess(TAG, "Waiting up to: %sms for %s.", remaining, description);
+        ((ConditionalUiController) uiController).loopMainThreadUntil(condition, remaining);
+      }
+    } else {
+      uiController.loopMainThreadForAtLeast(backoff.getNextBackoffInMillis());
+    }
+  }
+
+  private static long totalMillis(List<Integer> waitTimes) {
+    long total = 0;
+    for (int waitTime : waitTimes) {
+      total += waitTime;
+    }
+    return total;
+  }
+
   /** Returns the list of all non-destroyed activities. */
   private List<Activity> getAllActiveActivities() {
     List<Activity> activities = new ArrayList<>();
@@ -31,15 +31,21 @@ import android.util.Log;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.test.espresso.IdlingPolicies;
 import androidx.test.espresso.IdlingPolicy;
 import androidx.test.espresso.InjectEventSecurityException;
 import androidx.test.espresso.UiController;
 import androidx.test.espresso.base.IdlingResourceRegistry.IdleNotificationCallback;
+import androidx.test.espresso.util.KeyEvents;
 import androidx.test.espresso.util.StringJoinerKt;
+import androidx.test.espresso.util.TracingUtil;
 import androidx.test.espresso.util.concurrent.ThreadFactoryBuilder;
+import androidx.test.platform.tracing.Tracer.Span;
+import androidx.test.platform.tracing.Tracing;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.EnumSet;
 import java.util.Iterator;
@@ -58,7 +64,10 @@ import javax.inject.Singleton;
 /** Implementation of {@link UiController}. */
 @Singleton
 final class UiControllerImpl
-    implements InterruptableUiController, Handler.Callback, IdlingUiController {
+    implements InterruptableUiController,
+        Handler.Callback,
+        IdlingUiController,
+        ConditionalUiController {
 
   private static final String TAG = UiControllerImpl.class.getSimpleName();
 
@@ -133,6 +142,23 @@ final class UiControllerImpl
     }
   }
 
+  /** The conditions signaled by the sources of idleness while they are idle. */
+  private static final EnumSet<IdleCondition> IDLE_SOURCES =
+      EnumSet.of(
+          IdleCondition.ASYNC_TASKS_HAVE_IDLED,
+          IdleCondition.COMPAT_TASKS_HAVE_IDLED,
+          IdleCondition.DYNAMIC_TASKS_HAVE_IDLED);
+
+  private static final int CONDITION_COUNT = IdleCondition.values().length;
+
+  /**
+   * Gets a chance to update the condition set each time before a {@link MainThreadInterrogation}
+   * checks whether all of its conditions are signaled.
+   */
+  private interface SignalRefresher {
+    void refreshSignals();
+  }
+
   /** Represents the status of {@link MainThreadInterrogation} */
   private enum InterrogationStatus {
     TIMED_OUT,
@@ -149,9 +175,12 @@ final class UiControllerImpl
   private final Looper mainLooper;
   private final IdlingResourceRegistry idlingResourceRegistry;
   private final Handler controllerHandler;
+  private final Tracing tracer;
 
   // only updated on main thread.
   private MainThreadInterrogation interrogation;
+  private IdleStateAggregator idleStateAggregator;
+  private int lastLoopIterations;
   private int generation = 0;
   private IdleNotifier<Runnable> asyncIdle;
   private IdleNotifier<Runnable> compatIdle;
@@ -159,6 +188,23 @@ final class UiControllerImpl
   private Interrogator interrogator;
 
   @VisibleForTesting
+  UiControllerImpl(
+      EventInjector eventInjector,
+      IdleNotifier<Runnable> asyncIdle,
+      IdleNotifier<Runnable> compatIdle,
+      Provider<IdleNotifier<IdleNotificationCallback>> dynamicIdle,
+      Looper mainLooper,
+      IdlingResourceRegistry idlingResourceRegistry) {
+    this(
+        eventInjector,
+        asyncIdle,
+        compatIdle,
+        dynamicIdle,
+        mainLooper,
+        idlingResourceRegistry,
+        Tracing.getInstance());
+  }
+
   @Inject
   UiControllerImpl(
       EventInjector eventInjector,
@@ -166,7 +212,8 @@ final class UiControllerImpl
       @CompatAsyncTask IdleNotifier<Runnable> compatIdle,
       Provider<IdleNotifier<IdleNotificationCallback>> dynamicIdle,
       Looper mainLooper,
-      IdlingResourceRegistry idlingResourceRegistry) {
+      IdlingResourceRegistry idlingResourceRegistry,
+      Tracing tracer) {
     this.eventInjector = checkNotNull(eventInjector);
     this.asyncIdle = checkNotNull(asyncIdle);
     this.compatIdle = checkNotNull(compatIdle);
@@ -174,6 +221,7 @@ final class UiControllerImpl
     this.dynamicIdleProvider = checkNotNull(dynamicIdle);
     this.mainLooper = checkNotNull(mainLooper);
     this.idlingResourceRegistry = checkNotNull(idlingResourceRegistry);
+    this.tracer = checkNotNull(tracer);
     controllerHandler = new Handler(mainLooper, this);
   }
 
@@ -319,22 +367,7 @@ final class UiControllerImpl
     }
 
     boolean eventInjected = false;
-    KeyCharacterMap keyCharacterMap = getKeyCharacterMap();
-
-    // TODO(b/80130875): Investigate why not use (as suggested in javadoc of
-    // keyCharacterMap.getEvents):
-    // http://developer.android.com/reference/android/view/KeyEvent.html#KeyEvent(long,
-    // java.lang.String, int, int)
-    KeyEvent[] events = keyCharacterMap.getEvents(str.toCharArray());
-    if (events == null) {
-      throw new RuntimeException(
-          String.format(
-              Locale.ROOT,
-              "Failed to get key events for string %s (i.e. current IME does not understand how to"
-                  + " translate the string into key events). As a workaround, you can use"
-                  + " replaceText action to set the text directly in the EditText field.",
-              str));
-    }
+    KeyEvent[] events = KeyEvents.forString(str);
 
     Log.d(TAG, String.format(Locale.ROOT, "Injecting string: \"%s\"", str));
 
@@ -373,6 +406,71 @@ final class UiControllerImpl
     return eventInjected;
   }
 
+  /**
+   * Injects all key events from the key event thread and loops the main thread only until the
+   * last one was injected, instead of waiting for the main thread to go idle around every event.
+   *
+   * <p>Each event gets the same treatment as in {@link #injectString(String)}: its time is
+   * refreshed right before it is injected, and injection is attempted up to 4 times.
+   */
+  @Override
+  public boolean injectKeyEventSequence(final Iterable<KeyEvent> events)
+      throws InjectEventSecurityException {
+    checkNotNull(events);
+    checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
+    final Iterator<KeyEvent> kei = events.iterator();
+    FutureTask<Boolean> injectTask =
+        new SignalingTask<>(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() throws Exception {
+                while (kei.hasNext()) {
+                  KeyEvent event = checkNotNull(kei.next(), "Null key events not allowed!");
+                  boolean eventInjected = false;
+                  for (int attempts = 0; !eventInjected && attempts < 4; attempts++) {
+                    // All KeyEvents returned by KeyCharacterMap.getEvents() have the same time
+                    // stamp and the system rejects too old events, see injectString.
+                    event = KeyEvent.changeTimeRepeat(event, SystemClock.uptimeMillis(), 0);
+                    eventInjected = eventInjector.injectKeyEvent(event);
+                  }
+                  if (!eventInjected) {
+                    Log.e(
+                        TAG,
+                        String.format(
+                            Locale.ROOT,
+                            "Failed to inject event for character (%c) with key code (%s)",
+                            event.getUnicodeChar(),
+                            event.getKeyCode()));
+                    return false;
+                  }
+                }
+                return true;
+              }
+            },
+            IdleCondition.KEY_INJECT_HAS_COMPLETED,
+            generation);
+    Future<?> possiblyIgnoredError = keyEventExecutor.submit(injectTask);
+    loopUntil(IdleCondition.KEY_INJECT_HAS_COMPLETED, dynamicIdleProvider.get());
+    try {
+      checkState(injectTask.isDone(), "Key events injection was signaled - but it wasnt done.");
+      return injectTask.get();
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof InjectEventSecurityException) {
+        throw (InjectEventSecurityException) ee.getCause();
+      } else {
+        throwIfUnchecked(ee.getCause() != null ? ee.getCause() : ee);
+        throw new RuntimeException(ee.getCause() != null ? ee.getCause() : ee);
+      }
+    } catch (InterruptedException neverHappens) {
+      // we only call get() after done() is signaled.
+      // we should never block.
+      throw new RuntimeException(neverHappens);
+    } finally {
+      loopMainThreadUntilIdle();
+    }
+  }
+
+  /** Returns the key character map of the virtual keyboard. */
   @SuppressLint("InlinedApi")
   @VisibleForTesting
   @SuppressWarnings("deprecation")
@@ -385,59 +483,34 @@ final class UiControllerImpl
     return idlingResourceRegistry;
   }
 
+  /**
+   * Loops the main thread until it and all sources of idleness are idle.
+   *
+   * <p>The sources are combined by an {@link IdleStateAggregator}: one interrogation of the main
+   * thread lasts until all of them are idle at the same time, however often they go busy again
+   * while the main thread is looped.
+   */
   @Override
   public void loopMainThreadUntilIdle() {
     checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
-    IdleNotifier<IdleNotificationCallback> dynamicIdle = dynamicIdleProvider.get();
-    do {
-      EnumSet<IdleCondition> condChecks = EnumSet.noneOf(IdleCondition.class);
-      if (!asyncIdle.isIdleNow()) {
-        asyncIdle.registerNotificationCallback(
-            new SignalingTask<Void>(NO_OP, IdleCondition.ASYNC_TASKS_HAVE_IDLED, generation));
-
-        condChecks.add(IdleCondition.ASYNC_TASKS_HAVE_IDLED);
-      }
-
-      if (!compatIdle.isIdleNow()) {
-        compatIdle.registerNotificationCallback(
-            new SignalingTask<Void>(NO_OP, IdleCondition.COMPAT_TASKS_HAVE_IDLED, generation));
-        condChecks.add(IdleCondition.COMPAT_TASKS_HAVE_IDLED);
-      }
-
-      if (!dynamicIdle.isIdleNow()) {
-        final IdlingPolicy warning = IdlingPolicies.getDynamicIdlingResourceWarningPolicy();
-        final IdlingPolicy error = IdlingPolicies.getDynamicIdlingResourceErrorPolicy();
-        final SignalingTask<Void> idleSignal =
-            new SignalingTask<Void>(NO_OP, IdleCondition.DYNAMIC_TASKS_HAVE_IDLED, generation);
-        dynamicIdle.registerNotificationCallback(
-            new IdleNotificationCallback() {
-              @Override
-              public void resourcesStillBusyWarning(List<String> busyResourceNames) {
-                warning.handleTimeout(busyResourceNames, "IdlingResources are still busy!");
-              }
-
-              @Override
-              public void resourcesHaveTimedOut(List<String> busyResourceNames) {
-                error.handleTimeout(busyResourceNames, "IdlingResources have timed out!");
-                controllerHandler.post(idleSignal);
-              }
-
-              @Override
-              public void allResourcesIdle() {
-                controllerHandler.post(idleSignal);
-              }
-            });
-        condChecks.add(IdleCondition.DYNAMIC_TASKS_HAVE_IDLED);
-      }
-
-      try {
-        dynamicIdle = loopUntil(condChecks, dynamicIdle);
-      } finally {
-        asyncIdle.cancelCallback();
-        compatIdle.cancelCallback();
-        dynamicIdle.cancelCallback();
-      }
-    } while (!asyncIdle.isIdleNow() || !compatIdle.isIdleNow() || !dynamicIdle.isIdleNow());
+    IdleStateAggregator outerAggregator = idleStateAggregator;
+    IdleStateAggregator aggregator = new IdleStateAggregator(dynamicIdleProvider.get());
+    idleStateAggregator = aggregator;
+    try {
+      do {
+        aggregator.arm();
+        try {
+          aggregator.dynamicIdle = loopUntil(IDLE_SOURCES, aggregator.dynamicIdle, aggregator);
+        } finally {
+          aggregator.disarm();
+        }
+        // Only repeats if the interrogation timed out without failing, e.g. when the idling
+        // policies disabled a source on timeout.
+      } while (!aggregator.allIdleNow());
+    } finally {
+      idleStateAggregator = outerAggregator;
+      aggregator.finish();
+    }
   }
 
   @Override
@@ -454,19 +527,55 @@ final class UiControllerImpl
     loopMainThreadUntilIdle();
   }
 
+  @Override
+  public boolean loopMainThreadUntil(final Condition condition, long maxMillis) {
+    checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
+    checkState(!IdleCondition.DELAY_HAS_PAST.isSignaled(conditionSet), "recursion detected!");
+    checkNotNull(condition);
+    checkArgument(maxMillis > 0);
+
+    if (!condition.isMet()) {
+      SignalingTask<Void> timeoutSignal =
+          new SignalingTask<>(NO_OP, IdleCondition.DELAY_HAS_PAST, generation);
+      controllerHandler.postAtTime(
+          timeoutSignal, generation, SystemClock.uptimeMillis() + maxMillis);
+      try {
+        loopUntil(
+            EnumSet.of(IdleCondition.DELAY_HAS_PAST),
+            dynamicIdleProvider.get(),
+            new SignalRefresher() {
+              @Override
+              public void refreshSignals() {
+                if (condition.isMet()) {
+                  IdleCondition.DELAY_HAS_PAST.signal(conditionSet);
+                }
+              }
+            });
+      } finally {
+        // The condition may have ended the wait early.
+        controllerHandler.removeCallbacks(timeoutSignal);
+      }
+    }
+    loopMainThreadUntilIdle();
+    return condition.isMet();
+  }
+
   @Override
   public boolean handleMessage(Message msg) {
     if (!IdleCondition.handleMessage(msg, conditionSet, generation)) {
       Log.i(TAG, "Unknown message type: " + msg);
       return false;
     } else {
+      if (idleStateAggregator != null) {
+        idleStateAggregator.onSignal();
+      }
       return true;
     }
   }
 
   private void loopUntil(
       IdleCondition condition, IdleNotifier<IdleNotificationCallback> dynamicIdle) {
-    loopUntil(EnumSet.of(condition), dynamicIdle);
+    loopUntil(EnumSet.of(condition), dynamicIdle, null);
   }
 
   /**
@@ -497,9 +606,14 @@ final class UiControllerImpl
    *   })
    *   loopUntil(IdleCondition.MY_IDLE_CONDITION);
    * }</pre>
+   *
+   * <p>The only exception is the optional signalRefresher, which runs on the main thread and may
+   * raise or reset signals right before the conditions are checked.
    */
   private IdleNotifier<IdleNotificationCallback> loopUntil(
-      EnumSet<IdleCondition> conditions, IdleNotifier<IdleNotificationCallback> dynamicIdle) {
+      EnumSet<IdleCondition> conditions,
+      IdleNotifier<IdleNotificationCallback> dynamicIdle,
+      @Nullable SignalRefresher signalRefresher) {
     IdlingPolicy masterIdlePolicy = IdlingPolicies.getMasterIdlingPolicy();
     IdlingPolicy dynamicIdlePolicy = IdlingPolicies.getDynamicIdlingResourceErrorPolicy();
     TestLooperManagerCompat testLooperManager = TestLooperManagerCompat.acquire(mainLooper);
@@ -507,7 +621,7 @@ final class UiControllerImpl
       long start = SystemClock.uptimeMillis();
       long end =
           start + masterIdlePolicy.getIdleTimeoutUnit().toMillis(masterIdlePolicy.getIdleTimeout());
-      interrogation = new MainThreadInterrogation(conditions, conditionSet, end);
+      interrogation = new MainThreadInterrogation(conditions, conditionSet, end, signalRefresher);
 
       InterrogationStatus result =
           new Interrogator().loopAndInterrogate(testLooperManager, interrogation);
@@ -583,6 +697,7 @@ final class UiControllerImpl
       for (IdleCondition condition : conditions) {
         condition.reset(conditionSet);
       }
+      lastLoopIterations = interrogation != null ? interrogation.execCount : 0;
       interrogation = null;
       testLooperManager.release();
     }
@@ -607,16 +722,21 @@ final class UiControllerImpl
     private final EnumSet<IdleCondition> conditions;
     private final BitSet conditionSet;
     private final long giveUpAtMs;
+    @Nullable private final SignalRefresher signalRefresher;
     private String lastMessage;
 
     private InterrogationStatus status = InterrogationStatus.COMPLETED;
     private int execCount = 0;
 
     MainThreadInterrogation(
-        EnumSet<IdleCondition> conditions, BitSet conditionSet, long giveUpAtMs) {
+        EnumSet<IdleCondition> conditions,
+        BitSet conditionSet,
+        long giveUpAtMs,
+        @Nullable SignalRefresher signalRefresher) {
       this.conditions = conditions;
       this.conditionSet = conditionSet;
       this.giveUpAtMs = giveUpAtMs;
+      this.signalRefresher = signalRefresher;
     }
 
     @Override
@@ -696,6 +816,9 @@ final class UiControllerImpl
       if (InterrogationStatus.INTERRUPTED == status) {
         return true; // we want to stop.
       }
+      if (signalRefresher != null) {
+        signalRefresher.refreshSignals();
+      }
       boolean conditionsMet = true;
       boolean shouldLogConditionState = execCount > 0 && execCount % 100 == 0;
       for (IdleCondition condition : conditions) {
@@ -712,6 +835,215 @@ final class UiControllerImpl
     }
   }
 
+  /**
+   * Combines the async task, compat async task and idling resource notifiers into one signal: all
+   * {@link #IDLE_SOURCES} conditions are signaled only while every source is idle.
+   *
+   * <p>Each busy source gets a callback which signals its condition once the source goes idle.
+   * When all conditions are signaled and the main thread runs out of work, the sources are checked
+   * again: the ones that went busy in the meantime are reset and get a new callback, within the
+   * same interrogation of the main thread.
+   *
+   * <p>Records how long each source kept the main thread waiting and how many messages the main
+   * thread dispatched, and reports them in a span of {@link Tracing} per synchronization.
+   *
+   * <p>Only used on the main thread.
+   */
+  private final class IdleStateAggregator implements SignalRefresher {
+    private final Span syncSpan;
+    private final long[] busySince = new long[CONDITION_COUNT];
+    private final long[] busyMillis = new long[CONDITION_COUNT];
+    private final EnumSet<IdleCondition> busy = EnumSet.noneOf(IdleCondition.class);
+    private IdleNotifier<IdleNotificationCallback> dynamicIdle;
+    private Runnable asyncIdleSignal;
+    private Runnable compatIdleSignal;
+    private IdleNotificationCallback dynamicIdleCallback;
+    private int iterations;
+    private int rechecks;
+
+    @SuppressWarnings("MustBeClosedChecker") // closed in finish()
+    IdleStateAggregator(IdleNotifier<IdleNotificationCallback> dynamicIdle) {
+      this.dynamicIdle = dynamicIdle;
+      this.syncSpan = tracer.beginSpan("Espresso.loopMainThreadUntilIdle");
+    }
+
+    /** Creates the callbacks for the current generation and registers them with busy sources. */
+    void arm() {
+      asyncIdleSignal = new IdleSignal(IdleCondition.ASYNC_TASKS_HAVE_IDLED, generation);
+      compatIdleSignal = new IdleSignal(IdleCondition.COMPAT_TASKS_HAVE_IDLED, generation);
+      final IdlingPolicy warning = IdlingPolicies.getDynamicIdlingResourceWarningPolicy();
+      final IdlingPolicy error = IdlingPolicies.getDynamicIdlingResourceErrorPolicy();
+      final Runnable dynamicIdleSignal =
+          new IdleSignal(IdleCondition.DYNAMIC_TASKS_HAVE_IDLED, generation);
+      dynamicIdleCallback =
+          new IdleNotificationCallback() {
+            @Override
+            public void resourcesStillBusyWarning(List<String> busyResourceNames) {
+              warning.handleTimeout(busyResourceNames, "IdlingResources are still busy!");
+            }
+
+            @Override
+            public void resourcesHaveTimedOut(List<String> busyResourceNames) {
+              error.handleTimeout(busyResourceNames, "IdlingResources have timed out!");
+              controllerHandler.post(dynamicIdleSignal);
+            }
+
+            @Override
+            public void allResourcesIdle() {
+              controllerHandler.post(dynamicIdleSignal);
+            }
+          };
+      for (IdleCondition condition : IDLE_SOURCES) {
+        armIfBusy(condition);
+      }
+    }
+
+    /** Cancels the callbacks of all sources once the main thread is no longer looped. */
+    void disarm() {
+      asyncIdle.cancelCallback();
+      compatIdle.cancelCallback();
+      dynamicIdle.cancelCallback();
+      iterations += lastLoopIterations;
+      updateBusyTimes(/* stopWaiting= */ true);
+    }
+
+    boolean allIdleNow() {
+      return asyncIdle.isIdleNow() && compatIdle.isIdleNow() && dynamicIdle.isIdleNow();
+    }
+
+    /**
+     * Once every source signaled idle, confirms that they are all still idle. Sources which went
+     * busy again are armed again.
+     */
+    @Override
+    public void refreshSignals() {
+      for (IdleCondition condition : IDLE_SOURCES) {
+        if (!condition.isSignaled(conditionSet)) {
+          return;
+        }
+      }
+      boolean rearmed = false;
+      for (IdleCondition condition : IDLE_SOURCES) {
+        rearmed |= armIfBusy(condition);
+      }
+      if (rearmed) {
+        rechecks++;
+      }
+    }
+
+    /** Updates the busy times once a signal of a source was handled. */
+    void onSignal() {
+      updateBusyTimes(/* stopWaiting= */ false);
+    }
+
+    /** Reports the stats of this synchronization. */
+    void finish() {
+      try {
+        if (iterations > 0 || rechecks > 0 || hasWaited()) {
+          List<String> stats = new ArrayList<>();
+          stats.add("iterations=" + iterations);
+          stats.add("rechecks=" + rechecks);
+          addBusyTime(stats, "async", IdleCondition.ASYNC_TASKS_HAVE_IDLED);
+          addBusyTime(stats, "compat", IdleCondition.COMPAT_TASKS_HAVE_IDLED);
+          addBusyTime(stats, "dynamic", IdleCondition.DYNAMIC_TASKS_HAVE_IDLED);
+          String name = TracingUtil.getSpanName("Espresso", "idleSync", stats.toArray());
+          try (Span ignored = syncSpan.beginChildSpan(name)) {
+            // Only carries the stats in its name.
+          }
+        }
+      } finally {
+        syncSpan.close();
+      }
+    }
+
+    /** Signals the condition of an idle source, or registers a callback with a busy one. */
+    private boolean armIfBusy(IdleCondition condition) {
+      IdleNotifier<?> notifier;
+      switch (condition) {
+        case ASYNC_TASKS_HAVE_IDLED:
+          notifier = asyncIdle;
+          break;
+        case COMPAT_TASKS_HAVE_IDLED:
+          notifier = compatIdle;
+          break;
+        default:
+          notifier = dynamicIdle;
+          break;
+      }
+      if (notifier.isIdleNow()) {
+        condition.signal(conditionSet);
+        return false;
+      }
+      condition.reset(conditionSet);
+      if (busy.add(condition)) {
+        busySince[condition.ordinal()] = SystemClock.uptimeMillis();
+      }
+      // A signaled source has no callback registered anymore, but better safe than sorry.
+      notifier.cancelCallback();
+      switch (condition) {
+        case ASYNC_TASKS_HAVE_IDLED:
+          asyncIdle.registerNotificationCallback(asyncIdleSignal);
+          break;
+        case COMPAT_TASKS_HAVE_IDLED:
+          compatIdle.registerNotificationCallback(compatIdleSignal);
+          break;
+        default:
+          dynamicIdle.registerNotificationCallback(dynamicIdleCallback);
+          break;
+      }
+      return true;
+    }
+
+    private void updateBusyTimes(boolean stopWaiting) {
+      if (busy.isEmpty()) {
+        return;
+      }
+      long now = SystemClock.uptimeMillis();
+      for (Iterator<IdleCondition> it = busy.iterator(); it.hasNext(); ) {
+        IdleCondition condition = it.next();
+        if (stopWaiting || condition.isSignaled(conditionSet)) {
+          busyMillis[condition.ordinal()] += now - busySince[condition.ordinal()];
+          it.remove();
+        }
+      }
+    }
+
+    private boolean hasWaited() {
+      for (long millis : busyMillis) {
+        if (millis > 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void addBusyTime(List<String> stats, String name, IdleCondition condition) {
+      long millis = busyMillis[condition.ordinal()];
+      if (millis > 0) {
+        stats.add(name + "=" + millis + "ms");
+      }
+    }
+  }
+
+  /**
+   * Posts a signal message for a condition each time it runs. Unlike {@link SignalingTask} it can
+   * be reused, so a source can be armed more than once per generation.
+   */
+  private final class IdleSignal implements Runnable {
+    private final IdleCondition condition;
+    private final int myGeneration;
+
+    IdleSignal(IdleCondition condition, int myGeneration) {
+      this.condition = condition;
+      this.myGeneration = myGeneration;
+    }
+
+    @Override
+    public void run() {
+      controllerHandler.sendMessage(condition.createSignal(controllerHandler, myGeneration));
+    }
+  }
+
   /**
    * Encapsulates posting a signal message to update the conditions set after a task has executed.
    */
@@ -22,13 +22,16 @@ import static androidx.test.internal.util.Checks.checkNotNull;
 
 import android.view.View;
 import android.widget.AdapterView;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.test.espresso.AmbiguousViewMatcherException;
 import androidx.test.espresso.NoMatchingViewException;
 import androidx.test.espresso.ViewFinder;
-import androidx.test.espresso.matcher.ViewMatchers;
 import androidx.test.espresso.util.IterablesKt;
 import androidx.test.espresso.util.Iterators;
 import androidx.test.espresso.util.StringJoinerKt;
+import androidx.test.espresso.util.ViewTreeTraversal;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -43,11 +46,19 @@ public final class ViewFinderImpl implements ViewFinder {
 
   private final Matcher<View> viewMatcher;
   private final Provider<View> rootViewProvider;
+  private final ViewIndexCache viewIndexCache;
 
   @Inject
-  ViewFinderImpl(Matcher<View> viewMatcher, Provider<View> rootViewProvider) {
+  ViewFinderImpl(
+      Matcher<View> viewMatcher, Provider<View> rootViewProvider, ViewIndexCache viewIndexCache) {
     this.viewMatcher = viewMatcher;
     this.rootViewProvider = rootViewProvider;
+    this.viewIndexCache = viewIndexCache;
+  }
+
+  @VisibleForTesting
+  ViewFinderImpl(Matcher<View> viewMatcher, Provider<View> rootViewProvider) {
+    this(viewMatcher, rootViewProvider, new ViewIndexCache(/* enabled= */ false));
   }
 
   @Override
@@ -56,28 +67,18 @@ public final class ViewFinderImpl implements ViewFinder {
     checkNotNull(viewMatcher);
 
     View root = rootViewProvider.get();
-    Iterator<View> matchedViewIterator =
-        IterablesKt.filter(breadthFirstViewTraversal(root), viewMatcher).iterator();
-    View matchedView = null;
-
-    while (matchedViewIterator.hasNext()) {
-      if (matchedView != null) {
-        // Ambiguous!
-        throw new AmbiguousViewMatcherException.Builder()
-            .withViewMatcher(viewMatcher)
-            .withRootView(root)
-            .withView1(matchedView)
-            .withView2(matchedViewIterator.next())
-            .withOtherAmbiguousViews(Iterators.toArray(matchedViewIterator, View.class))
-            .build();
-      } else {
-        matchedView = matchedViewIterator.next();
-      }
+    ViewIndex index = viewIndexCache.indexFor(root);
+    View matchedView = findMatchedView(root, index);
+    if (null == matchedView && index != null) {
+      // The index may have missed a change which didn't relayout the hierarchy, confirm the miss
+      // against a fresh index before failing.
+      index.invalidate();
+      matchedView = findMatchedView(root, index);
     }
+
     if (null == matchedView) {
       List<View> adapterViews =
-          IterablesKt.filterToList(
-              breadthFirstViewTraversal(root), ViewMatchers.isAssignableFrom(AdapterView.class));
+          index != null ? index.adapterViews() : findAdapterViews(root);
 
       if (adapterViews.isEmpty()) {
         throw new NoMatchingViewException.Builder()
@@ -103,4 +104,49 @@ public final class ViewFinderImpl implements ViewFinder {
       return matchedView;
     }
   }
+
+  /**
+   * Returns the only view matching {@link #viewMatcher}, or null if there is none.
+   *
+   * @param index the index to narrow down the candidate views with, null to scan the hierarchy.
+   */
+  @Nullable
+  private View findMatchedView(View root, @Nullable ViewIndex index) {
+    Iterable<View> candidates =
+        index != null ? index.candidatesFor(viewMatcher) : breadthFirstViewTraversal(root);
+    Iterator<View> matchedViewIterator = IterablesKt.filter(candidates, viewMatcher).iterator();
+    View matchedView = null;
+
+    while (matchedViewIterator.hasNext()) {
+      if (matchedView != null) {
+        // Ambiguous!
+        throw new AmbiguousViewMatcherException.Builder()
+            .withViewMatcher(viewMatcher)
+            .withRootView(root)
+            .withView1(matchedView)
+            .withView2(matchedViewIterator.next())
+            .withOtherAmbiguousViews(Iterators.toArray(matchedViewIterator, View.class))
+            .build();
+      } else {
+        matchedView = matchedViewIterator.next();
+      }
+    }
+    return matchedView;
+  }
+
+  private static List<View> findAdapterViews(View root) {
+    final List<View> adapterViews = new ArrayList<>();
+    ViewTreeTraversal.breadthFirst(
+        root,
+        new ViewTreeTraversal.Visitor() {
+          @Override
+          public boolean visit(View view, int distanceFromRoot) {
+            if (view instanceof AdapterView) {
+              adapterViews.add(view);
+            }
+            return true;
+          }
+        });
+    return adapterViews;
+  }
 }
@@ -78,11 +78,9 @@ class ViewHierarchyExceptionHandler<T extends Throwable & RootViewException>
   private int getMsgLen() {
     PlatformTestStorage testStorage = PlatformTestStorageRegistry.getInstance();
     try {
-      if (testStorage.getInputArgs().containsKey(VIEW_HIERARCHY_CHAR_LIMIT)) {
-        String limit = testStorage.getInputArg(VIEW_HIERARCHY_CHAR_LIMIT);
-        if (limit != null) {
-          return Integer.parseInt(limit);
-        }
+      String limit = testStorage.getInputArgs().get(VIEW_HIERARCHY_CHAR_LIMIT);
+      if (limit != null) {
+        return Integer.parseInt(limit);
       }
     } catch (NumberFormatException | TestStorageException e) {
       Log.e(TAG, "Failed to parse input argument " + VIEW_HIERARCHY_CHAR_LIMIT, e);
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.internal.util.Checks.checkNotNull;
+
+import android.text.method.TransformationMethod;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnGlobalFocusChangeListener;
+import android.view.ViewTreeObserver.OnGlobalLayoutListener;
+import android.widget.AdapterView;
+import android.widget.TextView;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.test.espresso.matcher.ViewMatcherKeys;
+import androidx.test.espresso.util.ViewTreeTraversal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.hamcrest.Matcher;
+
+/**
+ * An index of a view hierarchy by view id, class, text and content description, built in a single
+ * breadth first pass over the hierarchy.
+ *
+ * <p>The index registers itself with the {@link ViewTreeObserver} of its root and marks itself
+ * stale on the next layout pass or global focus change. A stale index is rebuilt the next time it
+ * is queried. Draws don't mark it stale: animations and blinking cursors redraw continuously,
+ * which would rebuild the index for nearly every interaction.
+ *
+ * <p>Changes which don't relayout the hierarchy (for example a new content description) are not
+ * observed, which is why the index is opt-in. See {@link ViewIndexCache}.
+ *
+ * <p>This class must only be used from the main thread.
+ */
+final class ViewIndex implements OnGlobalLayoutListener, OnGlobalFocusChangeListener {
+
+  private final View root;
+  private final List<View> views = new ArrayList<>();
+  private final Map<View, Integer> order = new IdentityHashMap<>();
+  private final Map<Integer, List<View>> byId = new HashMap<>();
+  private final Map<Class<?>, List<View>> byClass = new HashMap<>();
+  private final Map<String, List<View>> byText = new HashMap<>();
+  private final Map<String, List<View>> byContentDescription = new HashMap<>();
+  private final List<View> adapterViews = new ArrayList<>();
+  private final Comparator<View> traversalOrder =
+      new Comparator<View>() {
+        @Override
+        public int compare(View a, View b) {
+          return Integer.compare(order.get(a), order.get(b));
+        }
+      };
+
+  @Nullable private ViewTreeObserver observer;
+  private boolean stale = true;
+  private int rebuildCount;
+
+  ViewIndex(View root) {
+    this.root = checkNotNull(root);
+  }
+
+  /**
+   * Returns the views which may match the given matcher, in breadth first order.
+   *
+   * <p>The result is narrowed down if the matcher is an id, class, text or content description
+   * matcher, see {@link ViewMatcherKeys}. Otherwise every view of the hierarchy is returned. The
+   * matcher itself still has to be evaluated against each candidate.
+   */
+  List<View> candidatesFor(Matcher<View> viewMatcher) {
+    ensureFresh();
+    List<View> candidates = candidatesForKey(viewMatcher);
+    return candidates != null ? candidates : views;
+  }
+
+  /** Returns all {@link AdapterView}s of the hierarchy, in breadth first order. */
+  List<View> adapterViews() {
+    ensureFresh();
+    return new ArrayList<>(adapterViews);
+  }
+
+  /** Returns the number of views in the hierarchy. */
+  int size() {
+    ensureFresh();
+    return views.size();
+  }
+
+  /** Marks the index stale, the next query rebuilds it. */
+  void invalidate() {
+    stale = true;
+  }
+
+  @VisibleForTesting
+  int getRebuildCount() {
+    return rebuildCount;
+  }
+
+  @Override
+  public void onGlobalLayout() {
+    stale = true;
+  }
+
+  @Override
+  public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+    stale = true;
+  }
+
+  /** Unregisters this index from the view tree observer of its root. */
+  void release() {
+    if (observer != null) {
+      removeListeners(observer);
+      // A floating observer hands its listeners over to the window's observer when it is merged.
+      removeListeners(root.getViewTreeObserver());
+    }
+    observer = null;
+    stale = true;
+  }
+
+  private void removeListeners(ViewTreeObserver treeObserver) {
+    if (treeObserver.isAlive()) {
+      treeObserver.removeOnGlobalLayoutListener(this);
+      treeObserver.removeOnGlobalFocusChangeListener(this);
+    }
+  }
+
+  private void ensureFresh() {
+    ViewTreeObserver current = root.getViewTreeObserver();
+    if (current != observer || !current.isAlive()) {
+      // The root got (re)attached and the observer it had when we indexed it was merged away.
+      release();
+    }
+    if (stale) {
+      rebuild();
+    }
+    if (observer == null) {
+      observer = root.getViewTreeObserver();
+      observer.addOnGlobalLayoutListener(this);
+      observer.addOnGlobalFocusChangeListener(this);
+    }
+  }
+
+  private void rebuild() {
+    views.clear();
+    order.clear();
+    byId.clear();
+    byClass.clear();
+    byText.clear();
+    byContentDescription.clear();
+    adapterViews.clear();
+
+    Iterator<View> traversal = ViewTreeTraversal.breadthFirstIterator(root);
+    while (traversal.hasNext()) {
+      View view = traversal.next();
+      order.put(view, views.size());
+      views.add(view);
+      if (view.getId() != View.NO_ID) {
+        put(byId, view.getId(), view);
+      }
+      put(byClass, view.getClass(), view);
+      CharSequence contentDescription = view.getContentDescription();
+      if (contentDescription != null) {
+        put(byContentDescription, contentDescription.toString(), view);
+      }
+      if (view instanceof TextView) {
+        indexText((TextView) view);
+      }
+      if (view instanceof AdapterView) {
+        adapterViews.add(view);
+      }
+    }
+    stale = false;
+    rebuildCount++;
+  }
+
+  private void indexText(TextView textView) {
+    String text = textView.getText().toString();
+    put(byText, text, textView);
+    // withText matches the transformed text as well, so index the view under both.
+    TransformationMethod transformationMethod = textView.getTransformationMethod();
+    if (transformationMethod != null) {
+      CharSequence transformed = transformationMethod.getTransformation(text, textView);
+      if (transformed != null && !text.equals(transformed.toString())) {
+        put(byText, transformed.toString(), textView);
+      }
+    }
+  }
+
+  @Nullable
+  private List<View> candidatesForKey(Matcher<View> viewMatcher) {
+    Matcher<Integer> idMatcher = ViewMatcherKeys.idMatcher(viewMatcher);
+    if (idMatcher != null) {
+      // Views without an id are not indexed, don't narrow if they may match.
+      return idMatcher.matches(View.NO_ID) ? null : lookup(byId, idMatcher);
+    }
+    Class<?> clazz = ViewMatcherKeys.assignableClass(viewMatcher);
+    if (clazz != null) {
+      List<List<View>> buckets = new ArrayList<>();
+      for (Map.Entry<Class<?>, List<View>> entry : byClass.entrySet()) {
+        if (clazz.isAssignableFrom(entry.getKey())) {
+          buckets.add(entry.getValue());
+        }
+      }
+      return merge(buckets);
+    }
+    Matcher<String> textMatcher = ViewMatcherKeys.textMatcher(viewMatcher);
+    if (textMatcher != null) {
+      return lookup(byText, textMatcher);
+    }
+    Matcher<String> contentDescriptionMatcher =
+        ViewMatcherKeys.contentDescriptionMatcher(viewMatcher);
+    if (contentDescriptionMatcher != null) {
+      // Views without a content description are not indexed, don't narrow if they may match.
+      return contentDescriptionMatcher.matches(null)
+          ? null
+          : lookup(byContentDescription, contentDescriptionMatcher);
+    }
+    return null;
+  }
+
+  private <K> List<View> lookup(Map<K, List<View>> index, Matcher<? super K> keyMatcher) {
+    List<List<View>> buckets = new ArrayList<>();
+    for (Map.Entry<K, List<View>> entry : index.entrySet()) {
+      if (keyMatcher.matches(entry.getKey())) {
+        buckets.add(entry.getValue());
+      }
+    }
+    return merge(buckets);
+  }
+
+  /** Merges buckets into one duplicate free list in breadth first order. */
+  private List<View> merge(List<List<View>> buckets) {
+    if (buckets.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (buckets.size() == 1) {
+      return buckets.get(0);
+    }
+    List<View> merged = new ArrayList<>();
+    for (List<View> bucket : buckets) {
+      merged.addAll(bucket);
+    }
+    Collections.sort(merged, traversalOrder);
+    List<View> distinct = new ArrayList<>(merged.size());
+    View previous = null;
+    for (View view : merged) {
+      if (view != previous) {
+        distinct.add(view);
+      }
+      previous = view;
+    }
+    return distinct;
+  }
+
+  private static <K> void put(Map<K, List<View>> index, K key, View view) {
+    List<View> bucket = index.get(key);
+    if (bucket == null) {
+      bucket = new ArrayList<>(1);
+      index.put(key, bucket);
+    }
+    bucket.add(view);
+  }
+}
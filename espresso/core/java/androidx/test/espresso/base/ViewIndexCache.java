@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.internal.util.Checks.checkMainThread;
+
+import android.util.Log;
+import android.view.View;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.test.platform.io.PlatformTestStorage;
+import androidx.test.services.storage.TestStorageException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Keeps a {@link ViewIndex} per root view so that consecutive interactions with the same window
+ * don't have to scan the whole view hierarchy.
+ *
+ * <p>The cache is disabled by default. Enable it by setting the custom test argument
+ * "enable_view_index" to true.
+ */
+@Singleton
+final class ViewIndexCache {
+  private static final String TAG = ViewIndexCache.class.getSimpleName();
+  private static final String VIEW_INDEX_ARG = "enable_view_index";
+
+  @Nullable private final PlatformTestStorage testStorage;
+  private final Map<View, ViewIndex> indexes = new WeakHashMap<>();
+  private Boolean enabled;
+
+  @Inject
+  ViewIndexCache(PlatformTestStorage testStorage) {
+    this.testStorage = testStorage;
+  }
+
+  @VisibleForTesting
+  ViewIndexCache(boolean enabled) {
+    this.testStorage = null;
+    this.enabled = enabled;
+  }
+
+  /** Returns whether view indexing was enabled for this test run. */
+  boolean isEnabled() {
+    if (enabled == null) {
+      enabled = false;
+      try {
+        enabled = Boolean.parseBoolean(testStorage.getInputArgs().get(VIEW_INDEX_ARG));
+      } catch (TestStorageException e) {
+        Log.w(TAG, "Failed to read input argument " + VIEW_INDEX_ARG, e);
+      }
+    }
+    return enabled;
+  }
+
+  /** Returns the index of the given root, or null if view indexing is disabled. */
+  @Nullable
+  ViewIndex indexFor(View root) {
+    checkMainThread();
+    if (!isEnabled()) {
+      return null;
+    }
+    ViewIndex index = indexes.get(root);
+    if (index == null) {
+      index = new ViewIndex(root);
+      indexes.put(root, index);
+    }
+    return index;
+  }
+}
@@ -88,9 +88,7 @@ public class TestFlowVisualizer {
    */
   public boolean isEnabled() {
     if (enabled == null) {
-      enabled =
-          platformTestStorage.getInputArgs().containsKey(TEST_FLOW_ARG)
-              && Boolean.parseBoolean(platformTestStorage.getInputArg(TEST_FLOW_ARG));
+      enabled = Boolean.parseBoolean(platformTestStorage.getInputArgs().get(TEST_FLOW_ARG));
     }
     return enabled;
   }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.matcher;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import org.hamcrest.Matcher;
+
+/**
+ * Extracts indexable keys (view id, class, text and content description) from {@link ViewMatchers}
+ * so that a view lookup can be narrowed to a set of candidates before the full matcher is run.
+ *
+ * <p>Every key returned here is a necessary condition of the matcher it was extracted from: a view
+ * which does not satisfy the key can never satisfy the matcher.
+ *
+ * <p>Keys are only read from the matcher types of {@link ViewMatchers}. Matchers combined with
+ * Hamcrest's {@code allOf} yield no key, as Hamcrest doesn't expose the matchers of an {@code
+ * AllOf}.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public final class ViewMatcherKeys {
+
+  private ViewMatcherKeys() {}
+
+  /** Returns the resource id matcher of a {@code withId} matcher, or null. */
+  @Nullable
+  public static Matcher<Integer> idMatcher(Matcher<?> matcher) {
+    if (matcher instanceof ViewMatchers.WithIdMatcher) {
+      return ((ViewMatchers.WithIdMatcher) matcher).viewIdMatcher;
+    }
+    return null;
+  }
+
+  /** Returns the class of an {@code isAssignableFrom} matcher, or null. */
+  @Nullable
+  public static Class<?> assignableClass(Matcher<?> matcher) {
+    if (matcher instanceof ViewMatchers.IsAssignableFromMatcher) {
+      return ((ViewMatchers.IsAssignableFromMatcher) matcher).clazz;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the string matcher of a {@code withText(Matcher<String>)} matcher, or null.
+   *
+   * <p>The returned matcher is applied to either the raw or the transformed text of a {@code
+   * TextView}.
+   */
+  @Nullable
+  public static Matcher<String> textMatcher(Matcher<?> matcher) {
+    if (matcher instanceof ViewMatchers.WithTextMatcher) {
+      return ((ViewMatchers.WithTextMatcher) matcher).stringMatcher;
+    }
+    return null;
+  }
+
+  /** Returns the string matcher of a {@code withContentDescription(String)} matcher, or null. */
+  @Nullable
+  public static Matcher<String> contentDescriptionMatcher(Matcher<?> matcher) {
+    if (matcher instanceof ViewMatchers.WithContentDescriptionTextMatcher) {
+      return ((ViewMatchers.WithContentDescriptionTextMatcher) matcher).textMatcher;
+    }
+    return null;
+  }
+}
@@ -17,7 +17,6 @@
 
 package androidx.test.espresso.matcher;
 
-import static androidx.test.espresso.util.TreeIterables.breadthFirstViewTraversal;
 import static androidx.test.internal.util.Checks.checkArgument;
 import static androidx.test.internal.util.Checks.checkNotNull;
 import static org.hamcrest.Matchers.containsString;
@@ -46,8 +45,7 @@ import androidx.annotation.VisibleForTesting;
 import androidx.test.espresso.remote.annotation.RemoteMsgConstructor;
 import androidx.test.espresso.remote.annotation.RemoteMsgField;
 import androidx.test.espresso.util.HumanReadables;
-import androidx.test.espresso.util.IterablesKt;
-import java.util.Iterator;
+import androidx.test.espresso.util.ViewTreeTraversal;
 import java.util.Locale;
 import java.util.regex.Pattern;
 import junit.framework.AssertionFailedError;
@@ -753,7 +751,7 @@ public final class ViewMatchers {
   static final class WithTextMatcher extends BoundedDiagnosingMatcher<View, TextView> {
 
     @RemoteMsgField(order = 0)
-    private final Matcher<String> stringMatcher;
+    final Matcher<String> stringMatcher;
 
     @RemoteMsgConstructor
     private WithTextMatcher(Matcher<String> stringMatcher) {
@@ -873,7 +871,7 @@ public final class ViewMatchers {
 
   static final class IsAssignableFromMatcher extends TypeSafeDiagnosingMatcher<View> {
     @RemoteMsgField(order = 0)
-    private final Class<?> clazz;
+    final Class<?> clazz;
 
     @RemoteMsgConstructor
     private IsAssignableFromMatcher(@NonNull Class<?> clazz) {
@@ -1321,7 +1319,7 @@ public final class ViewMatchers {
   @VisibleForTesting
   static final class WithContentDescriptionTextMatcher extends TypeSafeDiagnosingMatcher<View> {
     @RemoteMsgField(order = 0)
-    private final Matcher<String> textMatcher;
+    final Matcher<String> textMatcher;
 
     @RemoteMsgConstructor
     private WithContentDescriptionTextMatcher(Matcher<String> textMatcher) {
@@ -1544,21 +1542,18 @@ public final class ViewMatchers {
         return false;
       }
 
-      final Matcher<View> matcherPredicate =
-          new TypeSafeDiagnosingMatcher<View>() {
-            @Override
-            public void describeTo(Description description) {}
-
-            @Override
-            protected boolean matchesSafely(View input, Description description) {
-              return input != view && descendantMatcher.matches(input);
-            }
-          };
-
-      Iterator<View> matchedViewIterator =
-          IterablesKt.filter(breadthFirstViewTraversal(view), matcherPredicate).iterator();
+      // The traversal stops, returning false, at the first matching descendant.
+      boolean found =
+          !ViewTreeTraversal.breadthFirst(
+              view,
+              new ViewTreeTraversal.Visitor() {
+                @Override
+                public boolean visit(View input, int distanceFromRoot) {
+                  return distanceFromRoot == 0 || !descendantMatcher.matches(input);
+                }
+              });
 
-      if (!matchedViewIterator.hasNext()) {
+      if (!found) {
         mismatchDescription
             .appendText("no descendant matching ")
             .appendDescriptionOf(descendantMatcher)
@@ -1624,13 +1619,13 @@ public final class ViewMatchers {
     }
 
     private boolean checkAncestors(ViewParent viewParent) {
-      if (!(viewParent instanceof View)) {
-        return false;
-      }
-      if (ancestorMatcher.matches(viewParent)) {
-        return true;
+      while (viewParent instanceof View) {
+        if (ancestorMatcher.matches(viewParent)) {
+          return true;
+        }
+        viewParent = viewParent.getParent();
       }
-      return checkAncestors(viewParent.getParent());
+      return false;
     }
   }
 
@@ -16,7 +16,6 @@
 
 package androidx.test.espresso.util;
 
-import static androidx.test.espresso.util.TreeIterables.depthFirstViewTraversalWithDistance;
 import static androidx.test.internal.util.Checks.checkArgument;
 import static java.lang.Math.max;
 
@@ -30,8 +29,6 @@ import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.widget.Checkable;
 import android.widget.TextView;
-import androidx.test.espresso.util.TreeIterables.ViewAndDistance;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.regex.Matcher;
@@ -103,27 +100,29 @@ public final class HumanReadables {
               Locale.ROOT, "\nProblem views are marked with '%s' below.", problemViewSuffix));
     }
 
-    List<String> tokens = new ArrayList<>();
-
-    for (ViewAndDistance viewAndDistance : depthFirstViewTraversalWithDistance(rootView)) {
-      // Build a string that looks like "+----->View description [suffix]"
-      StringBuilder token = new StringBuilder();
-      token.append('+');
-      for (int i = 0; i < viewAndDistance.getDistanceFromRoot(); i++) {
-        token.append('-');
-      }
-      token.append('>');
-      token.append(HumanReadables.describe(viewAndDistance.getView()));
-      token.append(' ');
-      if (problemViews != null && problemViews.contains(viewAndDistance.getView())) {
-        token.append(problemViewSuffix);
-      }
-      tokens.add(token.toString());
-    }
-
-    String viewHierarchyDump = StringJoinerKt.joinToString(tokens, "\n|\n");
-
-    errorMessage.append("\n\nView Hierarchy:\n").append(viewHierarchyDump);
+    final StringBuilder viewHierarchyDump = errorMessage.append("\n\nView Hierarchy:\n");
+    ViewTreeTraversal.depthFirst(
+        rootView,
+        new ViewTreeTraversal.Visitor() {
+          @Override
+          public boolean visit(View view, int distanceFromRoot) {
+            if (distanceFromRoot > 0) {
+              viewHierarchyDump.append("\n|\n");
+            }
+            // Build a string that looks like "+----->View description [suffix]"
+            viewHierarchyDump.append('+');
+            for (int i = 0; i < distanceFromRoot; i++) {
+              viewHierarchyDump.append('-');
+            }
+            viewHierarchyDump.append('>');
+            viewHierarchyDump.append(HumanReadables.describe(view));
+            viewHierarchyDump.append(' ');
+            if (problemViews != null && problemViews.contains(view)) {
+              viewHierarchyDump.append(problemViewSuffix);
+            }
+            return true;
+          }
+        });
 
     if (maxMsgLen < Integer.MAX_VALUE) {
       String suffix = " [truncated]";
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.espresso.util;
+
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import java.util.Locale;
+
+/**
+ * Translates strings into the key events that type them.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public final class KeyEvents {
+
+  private KeyEvents() {}
+
+  /**
+   * Returns the key events that type the given string on the virtual keyboard.
+   *
+   * @throws RuntimeException if the string can't be translated into key events
+   */
+  @SuppressWarnings("deprecation")
+  public static KeyEvent[] forString(String str) {
+    // TODO(b/80130875): Investigate why not use (as suggested in javadoc of
+    // keyCharacterMap.getEvents):
+    // http://developer.android.com/reference/android/view/KeyEvent.html#KeyEvent(long,
+    // java.lang.String, int, int)
+    KeyEvent[] events =
+        KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD).getEvents(str.toCharArray());
+    if (events == null) {
+      throw new RuntimeException(
+          String.format(
+              Locale.ROOT,
+              "Failed to get key events for string %s (i.e. current IME does not understand how to"
+                  + " translate the string into key events). As a workaround, you can use"
+                  + " replaceText action to set the text directly in the EditText field.",
+              str));
+    }
+    return events;
+  }
+}
@@ -19,15 +19,11 @@ package androidx.test.espresso.util;
 import static androidx.test.internal.util.Checks.checkNotNull;
 
 import android.view.View;
-import android.view.ViewGroup;
 import androidx.annotation.VisibleForTesting;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import kotlin.collections.AbstractIterator;
 
@@ -42,7 +38,6 @@ import kotlin.collections.AbstractIterator;
  * <p>Only public methods of this utility class are considered public API of the test framework.
  */
 public final class TreeIterables {
-  private static final TreeViewer<View> VIEW_TREE_VIEWER = new ViewTreeViewer();
 
   private TreeIterables() {}
 
@@ -55,15 +50,26 @@ public final class TreeIterables {
    * @return An iterable of ViewAndDistance containing the view tree in a depth first order with the
    *     distance of a given node from the root.
    */
-  public static Iterable<ViewAndDistance> depthFirstViewTraversalWithDistance(View root) {
-    final DistanceRecordingTreeViewer<View> distanceRecorder =
-        new DistanceRecordingTreeViewer<View>(root, VIEW_TREE_VIEWER);
-
-    List<ViewAndDistance> viewAndDistanceList = new ArrayList<>();
-    for (View view : depthFirstTraversal(root, distanceRecorder)) {
-      viewAndDistanceList.add(new ViewAndDistance(view, distanceRecorder.getDistance(view)));
-    }
-    return viewAndDistanceList;
+  public static Iterable<ViewAndDistance> depthFirstViewTraversalWithDistance(final View root) {
+    checkNotNull(root);
+    return new Iterable<ViewAndDistance>() {
+      @Override
+      public Iterator<ViewAndDistance> iterator() {
+        final ViewTreeTraversal.DepthFirstIterator views =
+            ViewTreeTraversal.depthFirstIterator(root);
+        return new AbstractIterator<ViewAndDistance>() {
+          @Override
+          protected void computeNext() {
+            if (views.hasNext()) {
+              View view = views.next();
+              setNext(new ViewAndDistance(view, views.distanceFromRoot()));
+            } else {
+              done();
+            }
+          }
+        };
+      }
+    };
   }
 
   /**
@@ -73,8 +79,14 @@ public final class TreeIterables {
    *
    * @param root the non-null, root view.
    */
-  public static Iterable<View> depthFirstViewTraversal(View root) {
-    return depthFirstTraversal(root, VIEW_TREE_VIEWER);
+  public static Iterable<View> depthFirstViewTraversal(final View root) {
+    checkNotNull(root);
+    return new Iterable<View>() {
+      @Override
+      public Iterator<View> iterator() {
+        return ViewTreeTraversal.depthFirstIterator(root);
+      }
+    };
   }
 
   /**
@@ -84,8 +96,14 @@ public final class TreeIterables {
    *
    * @param root the non-null, root view.
    */
-  public static Iterable<View> breadthFirstViewTraversal(View root) {
-    return breadthFirstTraversal(root, VIEW_TREE_VIEWER);
+  public static Iterable<View> breadthFirstViewTraversal(final View root) {
+    checkNotNull(root);
+    return new Iterable<View>() {
+      @Override
+      public Iterator<View> iterator() {
+        return ViewTreeTraversal.breadthFirstIterator(root);
+      }
+    };
   }
 
   /**
@@ -131,7 +149,7 @@ public final class TreeIterables {
 
     @Override
     public Iterator<T> iterator() {
-      final LinkedList<T> nodes = new LinkedList<>();
+      final ArrayDeque<T> nodes = new ArrayDeque<>();
       nodes.add(root);
       return new AbstractIterator<T>() {
         @Override
@@ -139,7 +157,7 @@ public final class TreeIterables {
           if (nodes.isEmpty()) {
             done();
           } else {
-            T nextItem = checkNotNull(traversalStrategy.next(nodes), "Null items not allowed!");
+            T nextItem = checkNotNull(nodes.removeFirst(), "Null items not allowed!");
             traversalStrategy.combineNewChildren(nodes, treeViewer.children(nextItem));
             setNext(nextItem);
           }
@@ -151,46 +169,23 @@ public final class TreeIterables {
   private enum TraversalStrategy {
     BREADTH_FIRST() {
       @Override
-      <T> void combineNewChildren(LinkedList<T> nodes, Collection<T> newChildren) {
+      <T> void combineNewChildren(ArrayDeque<T> nodes, Collection<T> newChildren) {
         nodes.addAll(newChildren);
       }
     },
     DEPTH_FIRST() {
       @Override
-      <T> void combineNewChildren(LinkedList<T> nodes, Collection<T> newChildren) {
-        nodes.addAll(0, newChildren);
+      @SuppressWarnings("unchecked")
+      <T> void combineNewChildren(ArrayDeque<T> nodes, Collection<T> newChildren) {
+        // Push in reverse so the first child ends up at the head of the deque.
+        Object[] children = newChildren.toArray();
+        for (int i = children.length - 1; i >= 0; i--) {
+          nodes.addFirst((T) children[i]);
+        }
       }
     };
 
-    abstract <T> void combineNewChildren(LinkedList<T> nodes, Collection<T> newChildren);
-
-    <T> T next(LinkedList<T> nodes) {
-      return nodes.removeFirst();
-    }
-  }
-
-  /**
-   * A TreeView providing access to the children of a given View.
-   *
-   * <p>The only way views can have children is if they are a subclass of ViewGroup.
-   */
-  @VisibleForTesting
-  static class ViewTreeViewer implements TreeViewer<View> {
-    @Override
-    public Collection<View> children(View view) {
-      checkNotNull(view);
-      if (view instanceof ViewGroup) {
-        ViewGroup group = (ViewGroup) view;
-        int childCount = group.getChildCount();
-        List<View> children = new ArrayList<>();
-        for (int i = 0; i < childCount; i++) {
-          children.add(group.getChildAt(i));
-        }
-        return children;
-      } else {
-        return Collections.<View>emptyList();
-      }
-    }
+    abstract <T> void combineNewChildren(ArrayDeque<T> nodes, Collection<T> newChildren);
   }
 
   /**
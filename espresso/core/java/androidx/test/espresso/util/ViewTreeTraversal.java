@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.util;
+
+import static androidx.test.internal.util.Checks.checkNotNull;
+
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Traverses a view hierarchy without allocating per visited view.
+ *
+ * <p>Children are read in place through {@link ViewGroup#getChildAt(int)}. Depth first traversals
+ * keep an array backed stack of (parent, next child index) pairs, breadth first traversals a single
+ * {@link ArrayDeque}; both only allocate when the stack or queue needs to grow. The distance of
+ * each view from the root is tracked alongside, without a side table.
+ *
+ * <p>Traversals are not thread safe and must not outlive structural changes to the hierarchy.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public final class ViewTreeTraversal {
+  private static final int INITIAL_STACK_SIZE = 16;
+
+  private ViewTreeTraversal() {}
+
+  /** Receives the views of a traversal. */
+  public interface Visitor {
+    /**
+     * Visits a view.
+     *
+     * @param view the view being visited.
+     * @param distanceFromRoot the number of edges between the view and the root of the traversal.
+     * @return true to continue the traversal, false to stop it.
+     */
+    boolean visit(View view, int distanceFromRoot);
+  }
+
+  /**
+   * Visits the root and its descendants in depth-first, pre-order.
+   *
+   * @return true if every view was visited, false if the visitor stopped the traversal.
+   */
+  public static boolean depthFirst(View root, Visitor visitor) {
+    checkNotNull(visitor);
+    DepthFirstIterator iterator = new DepthFirstIterator(root);
+    while (iterator.hasNext()) {
+      View view = iterator.next();
+      if (!visitor.visit(view, iterator.distanceFromRoot())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Visits the root and its descendants in breadth-first, level order.
+   *
+   * @return true if every view was visited, false if the visitor stopped the traversal.
+   */
+  public static boolean breadthFirst(View root, Visitor visitor) {
+    checkNotNull(visitor);
+    BreadthFirstIterator iterator = new BreadthFirstIterator(root);
+    while (iterator.hasNext()) {
+      View view = iterator.next();
+      if (!visitor.visit(view, iterator.distanceFromRoot())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns a depth-first, pre-order iterator over the root and its descendants. */
+  public static DepthFirstIterator depthFirstIterator(View root) {
+    return new DepthFirstIterator(root);
+  }
+
+  /** Returns a breadth-first, level order iterator over the root and its descendants. */
+  public static BreadthFirstIterator breadthFirstIterator(View root) {
+    return new BreadthFirstIterator(root);
+  }
+
+  /**
+   * Depth-first, pre-order iterator. {@link #distanceFromRoot()} is the distance of the view last
+   * returned by {@link #next()}.
+   */
+  public static final class DepthFirstIterator implements Iterator<View> {
+    private ViewGroup[] parents = new ViewGroup[INITIAL_STACK_SIZE];
+    private int[] nextChildIndexes = new int[INITIAL_STACK_SIZE];
+    private int stackSize;
+    private View next;
+    private int nextDistance;
+    private int distance = -1;
+
+    private DepthFirstIterator(View root) {
+      this.next = checkNotNull(root);
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next != null) {
+        return true;
+      }
+      while (stackSize > 0) {
+        int top = stackSize - 1;
+        ViewGroup parent = parents[top];
+        int index = nextChildIndexes[top];
+        if (index < parent.getChildCount()) {
+          nextChildIndexes[top] = index + 1;
+          next = checkNotNull(parent.getChildAt(index), "Null items not allowed!");
+          nextDistance = stackSize;
+          return true;
+        }
+        parents[top] = null;
+        stackSize--;
+      }
+      return false;
+    }
+
+    @Override
+    public View next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      View view = next;
+      next = null;
+      distance = nextDistance;
+      if (view instanceof ViewGroup) {
+        push((ViewGroup) view);
+      }
+      return view;
+    }
+
+    /** Returns the distance from the root of the view last returned by {@link #next()}. */
+    public int distanceFromRoot() {
+      return distance;
+    }
+
+    private void push(ViewGroup parent) {
+      if (stackSize == parents.length) {
+        parents = Arrays.copyOf(parents, stackSize * 2);
+        nextChildIndexes = Arrays.copyOf(nextChildIndexes, stackSize * 2);
+      }
+      parents[stackSize] = parent;
+      nextChildIndexes[stackSize] = 0;
+      stackSize++;
+    }
+  }
+
+  /**
+   * Breadth-first, level order iterator. {@link #distanceFromRoot()} is the distance of the view
+   * last returned by {@link #next()}.
+   */
+  public static final class BreadthFirstIterator implements Iterator<View> {
+    private final ArrayDeque<View> queue = new ArrayDeque<>();
+    // Levels are tracked by counting down the views left in the current level.
+    private int remainingInLevel = 1;
+    private int nextLevelSize;
+    private int distance = -1;
+    private int level;
+
+    private BreadthFirstIterator(View root) {
+      queue.add(checkNotNull(root));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    @Override
+    public View next() {
+      View view = queue.poll();
+      if (view == null) {
+        throw new NoSuchElementException();
+      }
+      distance = level;
+      if (view instanceof ViewGroup) {
+        ViewGroup group = (ViewGroup) view;
+        int childCount = group.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+          queue.add(checkNotNull(group.getChildAt(i), "Null items not allowed!"));
+        }
+        nextLevelSize += childCount;
+      }
+      if (--remainingInLevel == 0) {
+        remainingInLevel = nextLevelSize;
+        nextLevelSize = 0;
+        level++;
+      }
+      return view;
+    }
+
+    /** Returns the distance from the root of the view last returned by {@link #next()}. */
+    public int distanceFromRoot() {
+      return distance;
+    }
+  }
+}
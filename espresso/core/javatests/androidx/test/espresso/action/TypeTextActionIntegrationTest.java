@@ -64,6 +64,13 @@ public class TypeTextActionIntegrationTest {
         .check(matches(isDisplayed()));
   }
 
+  @Test
+  public void typeTextActionPerform_batchKeyEvents() {
+    onView(withId(is(R.id.send_data_to_call_edit_text)))
+        .perform(new TypeTextAction("Hello World!", true, null, /* batchKeyEvents= */ true));
+    onView(withId(is(R.id.send_data_to_call_edit_text))).check(matches(withText("Hello World!")));
+  }
+
   @Test
   public void typeTextInFocusedView() {
     onView(withId(is(R.id.send_data_to_call_edit_text)))
@@ -19,7 +19,11 @@ package androidx.test.espresso.action;
 import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.rules.ExpectedException.none;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -91,6 +95,32 @@ public class TypeTextActionTest {
     typeTextAction.perform(mockUiController, view);
   }
 
+  @Test
+  public void typeTextActionPerform_batchKeyEvents() throws InjectEventSecurityException {
+    String stringToBeTyped = "Hello!";
+    typeTextAction =
+        new TypeTextAction(
+            stringToBeTyped, /* tapToFocus= */ false, /* clickAction= */ null, true);
+    when(mockUiController.injectKeyEventSequence(anyIterable())).thenReturn(true);
+    typeTextAction.perform(mockUiController, view);
+
+    verify(mockUiController).injectKeyEventSequence(anyIterable());
+    verify(mockUiController, never()).injectString(anyString());
+  }
+
+  @Test
+  public void typeTextActionPerform_batchKeyEventsFailed() throws InjectEventSecurityException {
+    String stringToBeTyped = "Hello!";
+    typeTextAction =
+        new TypeTextAction(
+            stringToBeTyped, /* tapToFocus= */ false, /* clickAction= */ null, true);
+    when(mockUiController.injectKeyEventSequence(anyIterable())).thenReturn(false);
+
+    expectedException.expect(PerformException.class);
+    expectedException.expectCause(not(instanceOfInjectEventSecurityException()));
+    typeTextAction.perform(mockUiController, view);
+  }
+
   @NonNull
   private static CustomTypeSafeMatcher<Throwable> instanceOfInjectEventSecurityException() {
     return new CustomTypeSafeMatcher<Throwable>("instanceof InjectEventSecurityException") {
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.action;
+
+import static androidx.test.espresso.Espresso.onView;
+import static androidx.test.espresso.action.ViewActions.replaceText;
+import static androidx.test.espresso.assertion.ViewAssertions.matches;
+import static androidx.test.espresso.matcher.ViewMatchers.withId;
+import static androidx.test.espresso.matcher.ViewMatchers.withText;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.espresso.ViewInteraction;
+import androidx.test.ext.junit.rules.ActivityScenarioRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.ui.app.R;
+import androidx.test.ui.app.SendActivity;
+import java.util.Locale;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the characters per second typed by {@link TypeTextAction} with one idle sync per key
+ * event against the batched mode.
+ *
+ * <p>Results are written to logcat under the "TypeTextBenchmark" tag. The test only asserts that
+ * both modes type the same text, so it doesn't flake on slow devices.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class TypeTextBenchmarkTest {
+  private static final String TAG = "TypeTextBenchmark";
+  private static final String TEXT = "The quick brown fox jumps over the lazy dog 0123456789";
+  private static final int ITERATIONS = 5;
+
+  @Rule
+  public ActivityScenarioRule<SendActivity> rule = new ActivityScenarioRule<>(SendActivity.class);
+
+  @Test
+  public void perKeyEventVersusBatched() {
+    // Warm up both paths once.
+    time(/* batchKeyEvents= */ false);
+    time(/* batchKeyEvents= */ true);
+
+    long perKeyEvent = 0;
+    long batched = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      perKeyEvent += time(/* batchKeyEvents= */ false);
+      batched += time(/* batchKeyEvents= */ true);
+    }
+    report("per key event", perKeyEvent);
+    report("batched", batched);
+  }
+
+  private static long time(boolean batchKeyEvents) {
+    ViewInteraction editText = onView(withId(R.id.send_data_to_call_edit_text));
+    editText.perform(replaceText(""));
+    long start = SystemClock.elapsedRealtime();
+    editText.perform(new TypeTextAction(TEXT, true, null, batchKeyEvents));
+    long elapsed = SystemClock.elapsedRealtime() - start;
+    editText.check(matches(withText(TEXT)));
+    return elapsed;
+  }
+
+  private static void report(String name, long totalMillis) {
+    Log.i(
+        TAG,
+        String.format(
+            Locale.ROOT,
+            "%s: %.1f chars/s",
+            name,
+            (double) TEXT.length() * ITERATIONS / (totalMillis / 1000.0)));
+  }
+}
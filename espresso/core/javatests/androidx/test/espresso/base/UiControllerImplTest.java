@@ -30,12 +30,17 @@ import androidx.test.espresso.IdlingResourceTimeoutException;
 import androidx.test.espresso.base.IdlingResourceRegistry.IdleNotificationCallback;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.LargeTest;
+import androidx.test.platform.tracing.Tracer;
 import androidx.test.platform.tracing.Tracing;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Provider;
 import org.junit.After;
@@ -439,6 +444,115 @@ public class UiControllerImplTest {
         "Should have caught IdlingResourceTimeoutException", latch.await(11, TimeUnit.SECONDS));
   }
 
+  @Test
+  public void loopMainThreadUntilIdle_asyncTaskStartedWhileLooping() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final CountDownLatch asyncTaskStarted = new CountDownLatch(1);
+    final CountDownLatch asyncTaskShouldComplete = new CountDownLatch(1);
+    final List<String> spanNames = Collections.synchronizedList(new ArrayList<String>());
+    Tracer recordingTracer = new RecordingTracer(spanNames);
+    Tracing.getInstance().registerTracer(recordingTracer);
+    try {
+      assertTrue(
+          testThread
+              .getHandler()
+              .post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      // All sources are idle when the sync starts, but this runnable makes the
+                      // async pool busy while the main thread is looped.
+                      new Handler()
+                          .post(
+                              new Runnable() {
+                                @Override
+                                public void run() {
+                                  asyncPool.execute(
+                                      new Runnable() {
+                                        @Override
+                                        public void run() {
+                                          asyncTaskStarted.countDown();
+                                          awaitUninterruptibly(asyncTaskShouldComplete);
+                                        }
+                                      });
+                                  awaitUninterruptibly(asyncTaskStarted);
+                                }
+                              });
+                      uiController.get().loopMainThreadUntilIdle();
+                      latch.countDown();
+                    }
+                  }));
+      assertFalse(
+          "Should not have stopped looping the main thread yet!",
+          latch.await(1, TimeUnit.SECONDS));
+      asyncTaskShouldComplete.countDown();
+      assertTrue("App should be idle.", latch.await(5, TimeUnit.SECONDS));
+    } finally {
+      Tracing.getInstance().unregisterTracer(recordingTracer);
+    }
+
+    assertTrue(spanNames.contains("Espresso.loopMainThreadUntilIdle"));
+    boolean foundStats = false;
+    for (String name : spanNames) {
+      if (name.startsWith("Espresso.idleSync(") && name.contains("rechecks=1")) {
+        foundStats = true;
+      }
+    }
+    assertTrue("No idle sync stats in " + spanNames, foundStats);
+  }
+
+  @Test
+  public void loopMainThreadUntil_conditionMet() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicBoolean conditionMet = new AtomicBoolean();
+    final AtomicBoolean result = new AtomicBoolean();
+    assertTrue(
+        testThread
+            .getHandler()
+            .post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    new Handler()
+                        .postDelayed(
+                            new Runnable() {
+                              @Override
+                              public void run() {
+                                conditionMet.set(true);
+                              }
+                            },
+                            100);
+                    result.set(uiController.get().loopMainThreadUntil(conditionMet::get, 20000));
+                    latch.countDown();
+                  }
+                }));
+    assertTrue(
+        "Should have stopped looping once the condition was met.",
+        latch.await(10, TimeUnit.SECONDS));
+    assertTrue(result.get());
+  }
+
+  @Test
+  public void loopMainThreadUntil_timeout() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicBoolean result = new AtomicBoolean(true);
+    assertTrue(
+        testThread
+            .getHandler()
+            .post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    result.set(uiController.get().loopMainThreadUntil(() -> false, 500));
+                    latch.countDown();
+                  }
+                }));
+    assertTrue(
+        "Never returned from UiControllerImpl.loopMainThreadUntil();",
+        latch.await(10, TimeUnit.SECONDS));
+    assertFalse(result.get());
+  }
+
   @Test
   public void testEspressoInterruption() throws Exception {
     final CountDownLatch latch = new CountDownLatch(4);
@@ -503,6 +617,41 @@ public class UiControllerImplTest {
         latch.await(timeToWaitForIdle - 100, TimeUnit.MILLISECONDS));
   }
 
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    while (true) {
+      try {
+        latch.await();
+        return;
+      } catch (InterruptedException ie) {
+        // cant interrupt me. ignore.
+      }
+    }
+  }
+
+  /** Records the names of all spans. */
+  private static class RecordingTracer implements Tracer {
+    private final List<String> spanNames;
+
+    RecordingTracer(List<String> spanNames) {
+      this.spanNames = spanNames;
+    }
+
+    @Override
+    public Span beginSpan(String name) {
+      spanNames.add(name);
+      return new Span() {
+        @SuppressWarnings("MustBeClosedChecker")
+        @Override
+        public Span beginChildSpan(String name) {
+          return beginSpan(name);
+        }
+
+        @Override
+        public void close() {}
+      };
+    }
+  }
+
   /** Verify uiController can be initialized on instrumentation thread. */
   @Test
   public void interruptInitialization() {
@@ -19,9 +19,7 @@ import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentat
 import static com.google.common.truth.Truth.assertThat;
 import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertThrows;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -228,9 +226,6 @@ public class ViewHierarchyExceptionHandlerTest {
 
     Map<String, String> inputArgs = singletonMap("view_hierarchy_char_limit", "1772");
     when(testStorage.getInputArgs()).thenReturn(inputArgs);
-    doAnswer(invocation -> inputArgs.get(invocation.getArgument(0)))
-        .when(testStorage)
-        .getInputArg(anyString());
 
     String expectedMsg =
         "'A view matcher' matches 3 views in the hierarchy:\n"
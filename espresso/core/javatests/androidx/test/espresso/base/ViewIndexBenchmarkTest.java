@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.espresso.matcher.ViewMatchers.withId;
+import static androidx.test.espresso.matcher.ViewMatchers.withText;
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.sameInstance;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import java.util.Locale;
+import javax.inject.Provider;
+import org.hamcrest.Matcher;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares a full hierarchy scan against an indexed lookup in {@link ViewFinderImpl} on synthetic
+ * view hierarchies shaped like a screen with a few lists of rows.
+ *
+ * <p>Timings are written to logcat under the "ViewIndexBenchmark" tag. The test only asserts that
+ * both paths find the same view, so it doesn't flake on slow devices.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ViewIndexBenchmarkTest {
+  private static final String TAG = "ViewIndexBenchmark";
+  private static final int ITERATIONS = 200;
+  private static final int WARMUP_ITERATIONS = 20;
+
+  private Context context;
+  private int nextId;
+
+  @Before
+  public void setUp() {
+    context = getInstrumentation().getTargetContext();
+    nextId = 1;
+  }
+
+  @Test
+  @UiThreadTest
+  public void scanVersusIndex_1000Views() {
+    benchmark(buildHierarchy(/* lists= */ 4, /* rowsPerList= */ 50, /* viewsPerRow= */ 4));
+  }
+
+  @Test
+  @UiThreadTest
+  public void scanVersusIndex_5000Views() {
+    benchmark(buildHierarchy(/* lists= */ 10, /* rowsPerList= */ 100, /* viewsPerRow= */ 4));
+  }
+
+  private void benchmark(final ViewGroup root) {
+    Provider<View> rootProvider =
+        new Provider<View>() {
+          @Override
+          public View get() {
+            return root;
+          }
+        };
+    View target = findDeepestTextView(root);
+    Matcher<View> byId = withId(target.getId());
+    String targetText = ((TextView) target).getText().toString();
+    Matcher<View> byText = withText(targetText);
+
+    ViewFinderImpl scanById = new ViewFinderImpl(byId, rootProvider);
+    ViewFinderImpl scanByText = new ViewFinderImpl(byText, rootProvider);
+    ViewIndexCache cache = new ViewIndexCache(true);
+    ViewFinderImpl indexById = new ViewFinderImpl(byId, rootProvider, cache);
+    ViewFinderImpl indexByText = new ViewFinderImpl(byText, rootProvider, cache);
+
+    assertThat(scanById.getView(), sameInstance(target));
+    assertThat(indexById.getView(), sameInstance(target));
+    assertThat(scanByText.getView(), sameInstance(target));
+    assertThat(indexByText.getView(), sameInstance(target));
+
+    int size = cache.indexFor(root).size();
+    report("scan withId", size, time(scanById));
+    report("index withId", size, time(indexById));
+    report("scan withText", size, time(scanByText));
+    report("index withText", size, time(indexByText));
+
+    long start = SystemClock.elapsedRealtimeNanos();
+    cache.indexFor(root).invalidate();
+    cache.indexFor(root).size();
+    report("index rebuild", size, SystemClock.elapsedRealtimeNanos() - start);
+  }
+
+  private static long time(ViewFinderImpl finder) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      finder.getView();
+    }
+    long start = SystemClock.elapsedRealtimeNanos();
+    for (int i = 0; i < ITERATIONS; i++) {
+      finder.getView();
+    }
+    return (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+  }
+
+  private static void report(String name, int views, long nanosPerLookup) {
+    Log.i(
+        TAG,
+        String.format(
+            Locale.ROOT, "%s on %d views: %.3f ms/lookup", name, views, nanosPerLookup / 1e6));
+  }
+
+  private ViewGroup buildHierarchy(int lists, int rowsPerList, int viewsPerRow) {
+    LinearLayout root = new LinearLayout(context);
+    for (int l = 0; l < lists; l++) {
+      LinearLayout list = new LinearLayout(context);
+      list.setId(nextId++);
+      for (int r = 0; r < rowsPerList; r++) {
+        FrameLayout row = new FrameLayout(context);
+        for (int v = 0; v < viewsPerRow; v++) {
+          TextView text = new TextView(context);
+          text.setId(nextId++);
+          text.setText("item " + text.getId());
+          row.addView(text);
+        }
+        list.addView(row);
+      }
+      root.addView(list);
+    }
+    return root;
+  }
+
+  private static View findDeepestTextView(ViewGroup root) {
+    View last = root;
+    while (last instanceof ViewGroup) {
+      ViewGroup group = (ViewGroup) last;
+      last = group.getChildAt(group.getChildCount() - 1);
+    }
+    return last;
+  }
+}
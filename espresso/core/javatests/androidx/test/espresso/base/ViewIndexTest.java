@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.espresso.matcher.ViewMatchers.isAssignableFrom;
+import static androidx.test.espresso.matcher.ViewMatchers.isDisplayed;
+import static androidx.test.espresso.matcher.ViewMatchers.withContentDescription;
+import static androidx.test.espresso.matcher.ViewMatchers.withId;
+import static androidx.test.espresso.matcher.ViewMatchers.withText;
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.TextView;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.espresso.AmbiguousViewMatcherException;
+import androidx.test.espresso.NoMatchingViewException;
+import androidx.test.espresso.ViewFinder;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+import javax.inject.Provider;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ViewIndex} and its use in {@link ViewFinderImpl}. */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ViewIndexTest {
+
+  private LinearLayout root;
+  private TextView title;
+  private TextView subtitle;
+  private Button button;
+  private ListView list;
+  private Provider<View> rootProvider;
+
+  @Before
+  public void setUp() {
+    Context context = getInstrumentation().getTargetContext();
+    root = new LinearLayout(context);
+    title = new TextView(context);
+    title.setId(1);
+    title.setText("title");
+    subtitle = new TextView(context);
+    subtitle.setId(2);
+    subtitle.setText("subtitle");
+    button = new Button(context);
+    button.setId(3);
+    button.setText("ok");
+    button.setContentDescription("confirm");
+    list = new ListView(context);
+    LinearLayout nested = new LinearLayout(context);
+    nested.addView(button);
+    nested.addView(list);
+    root.addView(title);
+    root.addView(subtitle);
+    root.addView(nested);
+    rootProvider =
+        new Provider<View>() {
+          @Override
+          public View get() {
+            return root;
+          }
+        };
+  }
+
+  @Test
+  @UiThreadTest
+  public void candidatesFor_id() {
+    ViewIndex index = new ViewIndex(root);
+    assertThat(index.candidatesFor(withId(2)), contains((View) subtitle));
+    assertThat(index.candidatesFor(withId(42)), is(empty()));
+  }
+
+  @Test
+  @UiThreadTest
+  public void candidatesFor_assignableFrom_includesSubclasses() {
+    ViewIndex index = new ViewIndex(root);
+    // Button extends TextView.
+    assertThat(
+        index.candidatesFor(isAssignableFrom(TextView.class)),
+        contains((View) title, subtitle, button));
+  }
+
+  @Test
+  @UiThreadTest
+  public void candidatesFor_textAndContentDescription() {
+    ViewIndex index = new ViewIndex(root);
+    assertThat(index.candidatesFor(withText("ok")), contains((View) button));
+    assertThat(index.candidatesFor(withText(startsWith("sub"))), contains((View) subtitle));
+    assertThat(index.candidatesFor(withContentDescription("confirm")), contains((View) button));
+  }
+
+  @Test
+  @UiThreadTest
+  public void candidatesFor_unindexedMatcherReturnsAllViews() {
+    ViewIndex index = new ViewIndex(root);
+    assertThat(index.candidatesFor(anyOf(withId(1), withId(2))).size(), is(index.size()));
+    assertThat(index.candidatesFor(allOf(withId(1), isDisplayed())).size(), is(index.size()));
+    assertThat(index.size(), is(6));
+  }
+
+  @Test
+  @UiThreadTest
+  public void adapterViews_collectedInIndexPass() {
+    ViewIndex index = new ViewIndex(root);
+    assertThat(index.adapterViews(), contains((View) list));
+    assertThat(index.getRebuildCount(), is(1));
+  }
+
+  @Test
+  @UiThreadTest
+  public void invalidate_rebuildsOnNextQuery() {
+    ViewIndex index = new ViewIndex(root);
+    index.candidatesFor(withId(1));
+    index.candidatesFor(withId(2));
+    assertThat(index.getRebuildCount(), is(1));
+
+    TextView added = new TextView(root.getContext());
+    added.setId(7);
+    root.addView(added);
+    index.invalidate();
+
+    assertThat(index.candidatesFor(withId(7)), contains((View) added));
+    assertThat(index.getRebuildCount(), greaterThan(1));
+  }
+
+  @Test
+  @UiThreadTest
+  public void viewFinder_withIndex() {
+    ViewFinder finder = new ViewFinderImpl(withId(3), rootProvider, new ViewIndexCache(true));
+    assertThat(finder.getView(), sameInstance((View) button));
+  }
+
+  @Test
+  @UiThreadTest
+  public void viewFinder_withIndex_missConfirmedAgainstFreshIndex() {
+    ViewIndexCache cache = new ViewIndexCache(true);
+    new ViewFinderImpl(withId(1), rootProvider, cache).getView();
+
+    // Content description changes don't relayout the hierarchy.
+    subtitle.setContentDescription("late");
+
+    ViewFinder finder = new ViewFinderImpl(withContentDescription("late"), rootProvider, cache);
+    assertThat(finder.getView(), sameInstance((View) subtitle));
+  }
+
+  @Test(expected = AmbiguousViewMatcherException.class)
+  @UiThreadTest
+  public void viewFinder_withIndex_ambiguous() {
+    new ViewFinderImpl(isAssignableFrom(TextView.class), rootProvider, new ViewIndexCache(true))
+        .getView();
+  }
+
+  @Test(expected = NoMatchingViewException.class)
+  @UiThreadTest
+  public void viewFinder_withIndex_missing() {
+    new ViewFinderImpl(withId(42), rootProvider, new ViewIndexCache(true)).getView();
+  }
+}
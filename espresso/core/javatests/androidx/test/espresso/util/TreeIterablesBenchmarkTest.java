@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.util;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures nodes per second and bytes allocated per traversal for the view traversals in {@link
+ * ViewTreeTraversal}, against the {@link LinkedList} based traversal they replaced, on 10k node
+ * view hierarchies.
+ *
+ * <p>Results are printed to stdout. Allocation is read from the HotSpot thread MX bean, so this
+ * runs as a local (Robolectric) test.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class TreeIterablesBenchmarkTest {
+  private static final String TAG = "TreeIterablesBenchmark";
+  private static final int NODES = 10_000;
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int ITERATIONS = 100;
+
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = getInstrumentation().getContext();
+  }
+
+  @Test
+  public void wideHierarchy() {
+    // Roughly a root with 100 lists of 100 rows each.
+    benchmark("wide", buildHierarchy(/* fanOut= */ 100));
+  }
+
+  @Test
+  public void bushyHierarchy() {
+    benchmark("bushy", buildHierarchy(/* fanOut= */ 8));
+  }
+
+  private void benchmark(String shape, final View root) {
+    Traversal legacyDepthFirst =
+        new Traversal() {
+          @Override
+          public int run() {
+            return LegacyTraversal.traverse(root, /* depthFirst= */ true);
+          }
+        };
+    Traversal legacyBreadthFirst =
+        new Traversal() {
+          @Override
+          public int run() {
+            return LegacyTraversal.traverse(root, /* depthFirst= */ false);
+          }
+        };
+    Traversal depthFirst =
+        new Traversal() {
+          @Override
+          public int run() {
+            int count = 0;
+            ViewTreeTraversal.DepthFirstIterator iterator =
+                ViewTreeTraversal.depthFirstIterator(root);
+            while (iterator.hasNext()) {
+              iterator.next();
+              count++;
+            }
+            return count;
+          }
+        };
+    Traversal breadthFirst =
+        new Traversal() {
+          @Override
+          public int run() {
+            int count = 0;
+            ViewTreeTraversal.BreadthFirstIterator iterator =
+                ViewTreeTraversal.breadthFirstIterator(root);
+            while (iterator.hasNext()) {
+              iterator.next();
+              count++;
+            }
+            return count;
+          }
+        };
+
+    measure(shape + " legacy depth first", legacyDepthFirst);
+    measure(shape + " legacy breadth first", legacyBreadthFirst);
+    measure(shape + " depth first", depthFirst);
+    measure(shape + " breadth first", breadthFirst);
+  }
+
+  private static void measure(String name, Traversal traversal) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      assertThat(traversal.run()).isEqualTo(NODES);
+    }
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      traversal.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocatedAfter = allocatedBytes();
+
+    double nodesPerSecond = (double) NODES * ITERATIONS / (elapsed / 1e9);
+    String allocation =
+        allocatedBefore < 0
+            ? "n/a"
+            : Long.toString((allocatedAfter - allocatedBefore) / ITERATIONS) + " bytes";
+    Log.i(
+        TAG,
+        String.format(
+            Locale.ROOT,
+            "%s: %.0f nodes/s, %s allocated per traversal",
+            name,
+            nodesPerSecond,
+            allocation));
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /** Builds a tree of {@link #NODES} views where every group has up to fanOut children. */
+  private View buildHierarchy(int fanOut) {
+    FrameLayout root = new FrameLayout(context);
+    List<ViewGroup> parents = new ArrayList<>();
+    parents.add(root);
+    int created = 1;
+    int parentIndex = 0;
+    while (created < NODES) {
+      ViewGroup parent = parents.get(parentIndex);
+      for (int i = 0; i < fanOut && created < NODES; i++) {
+        FrameLayout child = new FrameLayout(context);
+        parent.addView(child);
+        parents.add(child);
+        created++;
+      }
+      parentIndex++;
+    }
+    return root;
+  }
+
+  private interface Traversal {
+    /** Traverses the hierarchy and returns the number of visited views. */
+    int run();
+  }
+
+  /** The collection based traversal {@link TreeIterables} used before {@link ViewTreeTraversal}. */
+  private static final class LegacyTraversal {
+    static int traverse(View root, boolean depthFirst) {
+      LinkedList<View> nodes = new LinkedList<>();
+      nodes.add(root);
+      int count = 0;
+      while (!nodes.isEmpty()) {
+        View view = nodes.removeFirst();
+        List<View> children = new ArrayList<>();
+        if (view instanceof ViewGroup) {
+          ViewGroup group = (ViewGroup) view;
+          for (int i = 0; i < group.getChildCount(); i++) {
+            children.add(group.getChildAt(i));
+          }
+        }
+        if (depthFirst) {
+          nodes.addAll(0, children);
+        } else {
+          nodes.addAll(children);
+        }
+        count++;
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.util;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.FrameLayout;
+import androidx.test.espresso.util.TreeIterables.ViewAndDistance;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ViewTreeTraversal} and the view traversals of {@link TreeIterables}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ViewTreeTraversalTest {
+
+  private Context context;
+  private FrameLayout root;
+
+  /**
+   * Builds: root / | \ a r u /| |\ b d g n
+   *
+   * <p>Every view's tag is its name.
+   */
+  @Before
+  public void setUp() {
+    context = getInstrumentation().getContext();
+    root = group("root", group("a", view("b"), view("d")), group("r", view("g"), view("n")));
+    root.addView(view("u"));
+  }
+
+  @Test
+  public void depthFirstViewTraversal() {
+    assertThat(names(TreeIterables.depthFirstViewTraversal(root)))
+        .containsExactly("root", "a", "b", "d", "r", "g", "n", "u")
+        .inOrder();
+  }
+
+  @Test
+  public void breadthFirstViewTraversal() {
+    assertThat(names(TreeIterables.breadthFirstViewTraversal(root)))
+        .containsExactly("root", "a", "r", "u", "b", "d", "g", "n")
+        .inOrder();
+  }
+
+  @Test
+  public void depthFirstViewTraversalWithDistance() {
+    List<String> visited = new ArrayList<>();
+    for (ViewAndDistance each : TreeIterables.depthFirstViewTraversalWithDistance(root)) {
+      visited.add(each.getView().getTag() + "@" + each.getDistanceFromRoot());
+    }
+    assertThat(visited)
+        .containsExactly("root@0", "a@1", "b@2", "d@2", "r@1", "g@2", "n@2", "u@1")
+        .inOrder();
+  }
+
+  @Test
+  public void breadthFirst_tracksDistance() {
+    final List<String> visited = new ArrayList<>();
+    boolean completed =
+        ViewTreeTraversal.breadthFirst(
+            root,
+            new ViewTreeTraversal.Visitor() {
+              @Override
+              public boolean visit(View view, int distanceFromRoot) {
+                visited.add(view.getTag() + "@" + distanceFromRoot);
+                return true;
+              }
+            });
+    assertThat(completed).isTrue();
+    assertThat(visited)
+        .containsExactly("root@0", "a@1", "r@1", "u@1", "b@2", "d@2", "g@2", "n@2")
+        .inOrder();
+  }
+
+  @Test
+  public void depthFirst_visitorStopsTraversal() {
+    final List<String> visited = new ArrayList<>();
+    boolean completed =
+        ViewTreeTraversal.depthFirst(
+            root,
+            new ViewTreeTraversal.Visitor() {
+              @Override
+              public boolean visit(View view, int distanceFromRoot) {
+                visited.add((String) view.getTag());
+                return !"d".equals(view.getTag());
+              }
+            });
+    assertThat(completed).isFalse();
+    assertThat(visited).containsExactly("root", "a", "b", "d").inOrder();
+  }
+
+  @Test
+  public void singleView() {
+    View leaf = view("leaf");
+    assertThat(names(TreeIterables.depthFirstViewTraversal(leaf))).containsExactly("leaf");
+    assertThat(names(TreeIterables.breadthFirstViewTraversal(leaf))).containsExactly("leaf");
+  }
+
+  @Test
+  public void deepHierarchy_growsStack() {
+    FrameLayout deepRoot = group("0");
+    FrameLayout parent = deepRoot;
+    for (int i = 1; i < 100; i++) {
+      FrameLayout child = group(Integer.toString(i));
+      parent.addView(child);
+      parent = child;
+    }
+    ViewTreeTraversal.DepthFirstIterator iterator = ViewTreeTraversal.depthFirstIterator(deepRoot);
+    int count = 0;
+    while (iterator.hasNext()) {
+      View view = iterator.next();
+      assertThat(iterator.distanceFromRoot()).isEqualTo(Integer.parseInt((String) view.getTag()));
+      count++;
+    }
+    assertThat(count).isEqualTo(100);
+  }
+
+  private View view(String name) {
+    View view = new View(context);
+    view.setTag(name);
+    return view;
+  }
+
+  private FrameLayout group(String name, View... children) {
+    FrameLayout group = new FrameLayout(context);
+    group.setTag(name);
+    for (View child : children) {
+      group.addView(child);
+    }
+    return group;
+  }
+
+  private static List<String> names(Iterable<View> views) {
+    List<String> names = new ArrayList<>();
+    for (View view : views) {
+      names.add((String) view.getTag());
+    }
+    return names;
+  }
+}
@@ -16,6 +16,7 @@
 package androidx.test.espresso.device
 
 import androidx.test.espresso.device.action.DeviceAction
+import androidx.test.espresso.device.action.DeviceActionGroup
 import androidx.test.espresso.device.action.ScreenOrientation
 import androidx.test.espresso.device.action.setBookMode as getSetBookModeDeviceAction
 import androidx.test.espresso.device.action.setClosedMode as getSetClosedModeDeviceAction
@@ -46,6 +47,23 @@ class DeviceInteraction @Inject constructor(private val deviceController: Device
     return this
   }
 
+  /**
+   * Performs the given actions on the test device. This method should not be called on the main
+   * thread. The calling thread is blocked until all the requested device actions are completed.
+   *
+   * Changes to the screen orientation, the display size and the fold posture are requested
+   * together, and waited for once, which is faster than performing the actions one at a time.
+   *
+   * @param actions the DeviceActions to execute.
+   * @return this interaction for further perform/verification calls.
+   * @throws IllegalStateException when being invoked on the main thread.
+   */
+  fun perform(vararg actions: DeviceAction): DeviceInteraction {
+    checkNotMainThread()
+    DeviceActionGroup(actions.toList()).perform(deviceController)
+    return this
+  }
+
   companion object {
     /**
      * Set device screen to be folded with the hinge in the horizontal position. For details on
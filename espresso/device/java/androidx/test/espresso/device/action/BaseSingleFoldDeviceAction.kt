@@ -27,8 +27,7 @@ import androidx.test.platform.device.DeviceController
 import androidx.window.layout.FoldingFeature
 import androidx.window.layout.WindowInfoTracker
 import androidx.window.layout.WindowLayoutInfo
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.MainScope
 import kotlinx.coroutines.flow.collect
 import kotlinx.coroutines.flow.distinctUntilChanged
@@ -38,66 +37,88 @@ import kotlinx.coroutines.launch
 internal open class BaseSingleFoldDeviceAction(
   private val deviceMode: DeviceMode,
   private val foldingFeatureState: FoldingFeature.State?
-) : DeviceAction {
+) : TrackedDeviceAction {
   protected var foldingFeatureOrientation: FoldingFeature.Orientation? = null
+  @Volatile private var reached = false
+  private var collectJob: Job? = null
 
   companion object {
     private val TAG = BaseSingleFoldDeviceAction::class.java.simpleName
   }
 
-  @OptIn(androidx.window.core.ExperimentalWindowApi::class)
   override fun perform(deviceController: DeviceController) {
     if (isRobolectricTest()) {
       deviceController.setDeviceMode(deviceMode.getMode())
       return
     }
+    performTogether(listOf(this), deviceController)
+  }
+
+  @OptIn(androidx.window.core.ExperimentalWindowApi::class)
+  override fun prepare(tracker: DeviceStateChangeTracker): Boolean {
     val activity =
       getResumedActivityOrNull()
         ?: throw DeviceControllerOperationException(
           "Unable to set device mode because there are no activities in the resumed stage."
         )
-    val latch: CountDownLatch = CountDownLatch(1)
+    reached = false
     val windowInfoTracker = WindowInfoTracker.getOrCreate(activity)
 
-    MainScope().launch {
-      windowInfoTracker.windowLayoutInfo(activity).distinctUntilChanged().collect {
-        windowLayoutInfo: WindowLayoutInfo ->
-        val foldingFeatures = windowLayoutInfo.displayFeatures.filterIsInstance<FoldingFeature>()
-        if (deviceMode == DeviceMode.CLOSED && foldingFeatures.isEmpty()) {
-          // When a device is in closed mode, WindowLayoutInfo returns an empty list of folding
-          // features. If the device actually has no folding features and cannot be set to closed
-          // mode (ie a non-foldable emulator), deviceController.setDeviceMode(DeviceMode.CLOSED)
-          // will throw a DeviceControllerOperationException.
-          Log.d(TAG, "Device is in the closed state.")
-          latch.countDown()
-        } else if (foldingFeatures.size != 1) {
-          // TODO(b/218872245) It is currently possible that some devices will emit an empty list
-          // before emitting a list of FoldingFeatures. Throw a DeviceControllerOperationException
-          // once this issue is fixed.
-          Log.w(
-            TAG,
-            "This device mode is only supported on devices with a single folding feature. " +
-              "${foldingFeatures.size} were found."
-          )
-        } else {
-          val foldingFeature = foldingFeatures.single()
-          if (foldingFeatureState == foldingFeature.state) {
-            Log.d(
+    collectJob =
+      MainScope().launch {
+        windowInfoTracker.windowLayoutInfo(activity).distinctUntilChanged().collect {
+          windowLayoutInfo: WindowLayoutInfo ->
+          val foldingFeatures =
+            windowLayoutInfo.displayFeatures.filterIsInstance<FoldingFeature>()
+          if (deviceMode == DeviceMode.CLOSED && foldingFeatures.isEmpty()) {
+            // When a device is in closed mode, WindowLayoutInfo returns an empty list of folding
+            // features. If the device actually has no folding features and cannot be set to
+            // closed mode (ie a non-foldable emulator), deviceController.setDeviceMode(
+            // DeviceMode.CLOSED) will throw a DeviceControllerOperationException.
+            Log.d(TAG, "Device is in the closed state.")
+            reached = true
+            tracker.onChange()
+          } else if (foldingFeatures.size != 1) {
+            // TODO(b/218872245) It is currently possible that some devices will emit an empty list
+            // before emitting a list of FoldingFeatures. Throw a
+            // DeviceControllerOperationException once this issue is fixed.
+            Log.w(
               TAG,
-              "FoldingFeature is in $foldingFeatureState state. WindowLayoutInfo: $windowLayoutInfo."
+              "This device mode is only supported on devices with a single folding feature. " +
+                "${foldingFeatures.size} were found."
             )
-            foldingFeatureOrientation = foldingFeature.orientation
-            latch.countDown()
+          } else {
+            val foldingFeature = foldingFeatures.single()
+            if (foldingFeatureState == foldingFeature.state) {
+              Log.d(
+                TAG,
+                "FoldingFeature is in $foldingFeatureState state. " +
+                  "WindowLayoutInfo: $windowLayoutInfo."
+              )
+              foldingFeatureOrientation = foldingFeature.orientation
+              reached = true
+              tracker.onChange()
+            }
           }
         }
       }
-    }
+    return true
+  }
 
+  override fun request(deviceController: DeviceController) {
     deviceController.setDeviceMode(deviceMode.getMode())
-    latch.await(5, TimeUnit.SECONDS)
+  }
+
+  override fun isReached(): Boolean = reached
+
+  override fun cleanUp() {
+    collectJob?.cancel()
+    collectJob = null
+  }
 
-    if (latch.getCount() != 0L) {
-      // If WindowLayoutInfo is not updated to the requested state within five seconds, check device
+  override fun verify() {
+    if (!reached) {
+      // If WindowLayoutInfo is not updated to the requested state within the timeout, check device
       // state and throw DeviceControllerOperationException if the device is not in the requested
       // state.
       val finalDeviceStateIdentifier = executeShellCommand("cmd device_state print-state").trim()
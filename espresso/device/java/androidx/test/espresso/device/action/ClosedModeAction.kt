@@ -20,20 +20,19 @@ import android.util.Log
 import androidx.test.espresso.device.common.executeShellCommand
 import androidx.test.espresso.device.common.getMapOfDeviceStateNamesToIdentifiers
 import androidx.test.espresso.device.controller.DeviceMode
-import androidx.test.platform.device.DeviceController
 
 /** Action to set the test device to be closed. */
 internal class ClosedModeAction() : BaseSingleFoldDeviceAction(DeviceMode.CLOSED, null) {
-  override fun perform(deviceController: DeviceController) {
+  override fun prepare(tracker: DeviceStateChangeTracker): Boolean {
     val currentDeviceStateIdentifier = executeShellCommand("cmd device_state print-state").trim()
     if (currentDeviceStateIdentifier == getMapOfDeviceStateNamesToIdentifiers().get("CLOSED")) {
       if (Log.isLoggable(TAG, Log.DEBUG)) {
         Log.d(TAG, "Device is already in closed mode.")
       }
-      return
+      return false
     }
 
-    super.perform(deviceController)
+    return super.prepare(tracker)
   }
 
   companion object {
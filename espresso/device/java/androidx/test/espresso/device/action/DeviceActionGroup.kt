@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.espresso.device.action
+
+import android.util.Log
+import androidx.annotation.RestrictTo
+import androidx.annotation.RestrictTo.Scope
+import androidx.test.espresso.device.common.isRobolectricTest
+import androidx.test.platform.app.InstrumentationRegistry
+import androidx.test.platform.device.DeviceController
+
+private const val TAG = "DeviceActionGroup"
+
+// The longest time to wait for the device and the app to reach the requested state.
+private const val STATE_CHANGE_TIMEOUT_MILLIS = 5000L
+
+/**
+ * Performs several device actions together, in the given order.
+ *
+ * Consecutive changes to the screen orientation, the display size and the fold posture are all
+ * requested first, and then waited for once, until the device and the app under test are in the
+ * requested state. Other actions, and a second change of a state already changed by the preceding
+ * actions, are performed after those and start a new run of changes.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+class DeviceActionGroup(private val actions: List<DeviceAction>) : DeviceAction {
+  override fun perform(deviceController: DeviceController) {
+    if (isRobolectricTest()) {
+      actions.forEach { it.perform(deviceController) }
+      return
+    }
+    val run = ArrayList<TrackedDeviceAction>()
+    for (action in actions) {
+      if (action is TrackedDeviceAction && action.canBePerformedTogether) {
+        if (run.any { it.changedState == action.changedState }) {
+          performRun(run, deviceController)
+        }
+        run.add(action)
+      } else {
+        performRun(run, deviceController)
+        action.perform(deviceController)
+      }
+    }
+    performRun(run, deviceController)
+  }
+
+  private fun performRun(
+    run: MutableList<TrackedDeviceAction>,
+    deviceController: DeviceController,
+  ) {
+    if (run.isNotEmpty()) {
+      performTogether(run.toList(), deviceController)
+      run.clear()
+    }
+  }
+}
+
+// The state an action changes. All fold postures are one state.
+private val TrackedDeviceAction.changedState: Class<*>
+  get() =
+    if (this is BaseSingleFoldDeviceAction) BaseSingleFoldDeviceAction::class.java else javaClass
+
+/**
+ * Requests the changes of all the given actions, then waits once for all of them to be applied.
+ * Actions whose state is already reached are skipped.
+ */
+internal fun performTogether(
+  actions: List<TrackedDeviceAction>,
+  deviceController: DeviceController,
+) {
+  val tracker =
+    DeviceStateChangeTracker(InstrumentationRegistry.getInstrumentation().targetContext)
+  val pending = ArrayList<TrackedDeviceAction>()
+  try {
+    for (action in actions) {
+      if (action.prepare(tracker)) {
+        pending.add(action)
+      }
+    }
+    if (pending.isEmpty()) {
+      return
+    }
+    val reached =
+      tracker.requestAndAwait(STATE_CHANGE_TIMEOUT_MILLIS, { pending.all { it.isReached() } }) {
+        pending.forEach { it.request(deviceController) }
+      }
+    if (!reached) {
+      Log.d(TAG, "The requested device state was not observed in $STATE_CHANGE_TIMEOUT_MILLIS ms.")
+    }
+  } finally {
+    pending.forEach { it.cleanUp() }
+  }
+  pending.forEach { it.verify() }
+}
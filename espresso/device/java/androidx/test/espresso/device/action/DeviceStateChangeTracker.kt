@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.espresso.device.action
+
+import android.content.ComponentCallbacks
+import android.content.Context
+import android.content.res.Configuration
+import android.hardware.display.DisplayManager
+import android.os.Handler
+import android.os.Looper
+import androidx.test.runner.lifecycle.ActivityLifecycleCallback
+import androidx.test.runner.lifecycle.ActivityLifecycleMonitorRegistry
+import androidx.test.runner.lifecycle.Stage
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Waits for the device, and the app under test, to reach the state requested by device actions.
+ *
+ * The tracker listens for display, configuration and activity lifecycle changes, and checks on the
+ * main thread whether the requested state is reached after each of them, so a wait ends as soon as
+ * the state is observed. Changes the tracker doesn't listen for, such as window layout changes, are
+ * reported with [onChange]. The state is also checked every [RECHECK_INTERVAL_MILLIS] while
+ * waiting, since a change can be reported before all of the app has applied it.
+ */
+internal class DeviceStateChangeTracker(private val context: Context) {
+  private val mainHandler = Handler(Looper.getMainLooper())
+  private val reachedLatch = CountDownLatch(1)
+  @Volatile private var isReached: () -> Boolean = { false }
+  @Volatile private var tracking = false
+  private val check = Runnable { checkReached() }
+
+  private val displayListener =
+    object : DisplayManager.DisplayListener {
+      override fun onDisplayAdded(displayId: Int) {}
+
+      override fun onDisplayRemoved(displayId: Int) {}
+
+      override fun onDisplayChanged(displayId: Int) {
+        onChange()
+      }
+    }
+
+  private val componentCallbacks =
+    object : ComponentCallbacks {
+      override fun onConfigurationChanged(newConfig: Configuration) {
+        onChange()
+      }
+
+      @Deprecated("Deprecated in API 34") override fun onLowMemory() {}
+    }
+
+  private val activityLifecycleCallback = ActivityLifecycleCallback { _, stage ->
+    if (stage == Stage.RESUMED) {
+      onChange()
+    }
+  }
+
+  /**
+   * Makes the given requests, then waits for at most [timeoutMillis] for [isReached] to return
+   * true. [isReached] is called on the main thread.
+   *
+   * @return whether the requested state was reached
+   */
+  fun requestAndAwait(timeoutMillis: Long, isReached: () -> Boolean, request: () -> Unit): Boolean {
+    this.isReached = isReached
+    val displayManager = context.getSystemService(Context.DISPLAY_SERVICE) as DisplayManager
+    // Listen before requesting the change, so that no change is missed.
+    tracking = true
+    displayManager.registerDisplayListener(displayListener, mainHandler)
+    context.registerComponentCallbacks(componentCallbacks)
+    ActivityLifecycleMonitorRegistry.getInstance().addLifecycleCallback(activityLifecycleCallback)
+    try {
+      request()
+      onChange()
+      return reachedLatch.await(timeoutMillis, TimeUnit.MILLISECONDS)
+    } finally {
+      tracking = false
+      mainHandler.removeCallbacks(check)
+      displayManager.unregisterDisplayListener(displayListener)
+      context.unregisterComponentCallbacks(componentCallbacks)
+      ActivityLifecycleMonitorRegistry.getInstance()
+        .removeLifecycleCallback(activityLifecycleCallback)
+    }
+  }
+
+  /** Reports a change that may complete the requested state. Can be called on any thread. */
+  fun onChange() {
+    mainHandler.post(check)
+  }
+
+  private fun checkReached() {
+    if (!tracking || reachedLatch.count == 0L) {
+      return
+    }
+    if (isReached()) {
+      reachedLatch.countDown()
+    } else {
+      mainHandler.removeCallbacks(check)
+      mainHandler.postDelayed(check, RECHECK_INTERVAL_MILLIS)
+    }
+  }
+
+  companion object {
+    private const val RECHECK_INTERVAL_MILLIS = 50L
+  }
+}
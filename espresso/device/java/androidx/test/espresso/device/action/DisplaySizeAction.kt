@@ -17,10 +17,7 @@
 package androidx.test.espresso.device.action
 
 import android.app.Activity
-import android.content.res.Configuration
 import android.util.Log
-import android.view.View
-import android.view.ViewGroup
 import androidx.test.espresso.device.common.calculateCurrentDisplayWidthAndHeightPx
 import androidx.test.espresso.device.common.executeShellCommand
 import androidx.test.espresso.device.common.getDeviceApiLevel
@@ -30,76 +27,75 @@ import androidx.test.espresso.device.sizeclass.HeightSizeClass
 import androidx.test.espresso.device.sizeclass.WidthSizeClass
 import androidx.test.platform.device.DeviceController
 import androidx.test.platform.device.UnsupportedDeviceOperationException
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.TimeUnit
+import androidx.test.runner.lifecycle.ActivityLifecycleMonitorRegistry
+import androidx.test.runner.lifecycle.Stage
 import kotlin.math.roundToInt
 
 /** Action to set the test device to the provided display size. */
 internal class DisplaySizeAction(
   val widthDisplaySize: WidthSizeClass,
   val heightDisplaySize: HeightSizeClass,
-) : DeviceAction {
+) : TrackedDeviceAction {
+  private lateinit var currentActivity: Activity
+  private var startingWidthDp = 0
+  private var startingHeightDp = 0
+
   override fun perform(deviceController: DeviceController) {
+    performTogether(listOf(this), deviceController)
+  }
+
+  override fun prepare(tracker: DeviceStateChangeTracker): Boolean {
     if (getDeviceApiLevel() < 24) {
       throw UnsupportedDeviceOperationException(
         "Setting display size is not supported on devices with APIs below 24."
       )
     }
 
-    val currentActivity = getResumedActivityOrNull()
-    if (currentActivity != null) {
-      val (startingWidthDp, startingHeightDp) =
-        calculateCurrentDisplayWidthAndHeightDp(currentActivity)
-      if (
-        WidthSizeClass.compute(startingWidthDp) == widthDisplaySize &&
-          HeightSizeClass.compute(startingHeightDp) == heightDisplaySize
-      ) {
-        Log.d(TAG, "Device display is already the requested size, no changes needed.")
-        return
-      }
-
-      val latch: CountDownLatch = CountDownLatch(1)
-
-      val currentActivityView: View =
-        object : View(currentActivity) {
-          override fun onConfigurationChanged(newConfig: Configuration?) {
-            super.onConfigurationChanged(newConfig)
-            val (newWidthDp, newHeightDp) = calculateCurrentDisplayWidthAndHeightDp(currentActivity)
-            if (
-              WidthSizeClass.compute(newWidthDp) == widthDisplaySize &&
-                HeightSizeClass.compute(newHeightDp) == heightDisplaySize
-            ) {
-              latch.countDown()
-            }
-          }
-        }
-      val container: ViewGroup =
-        currentActivity.getWindow().findViewById(android.R.id.content) as ViewGroup
-      currentActivity.runOnUiThread { container.addView(currentActivityView) }
-
-      val widthDpToSet = WidthSizeClass.getWidthDpInSizeClass(widthDisplaySize)
-      val heightDpToSet = HeightSizeClass.getHeightDpInSizeClass(heightDisplaySize)
+    currentActivity =
+      getResumedActivityOrNull()
+        ?: throw DeviceControllerOperationException(
+          "Device could not be set to the requested display size because there are no activities" +
+            " in the resumed stage."
+        )
+    val (widthDp, heightDp) = calculateCurrentDisplayWidthAndHeightDp(currentActivity)
+    if (
+      WidthSizeClass.compute(widthDp) == widthDisplaySize &&
+        HeightSizeClass.compute(heightDp) == heightDisplaySize
+    ) {
+      Log.d(TAG, "Device display is already the requested size, no changes needed.")
+      return false
+    }
+    startingWidthDp = widthDp
+    startingHeightDp = heightDp
+    return true
+  }
 
-      executeShellCommand("wm size ${widthDpToSet}dpx${heightDpToSet}dp")
+  override fun request(deviceController: DeviceController) {
+    val widthDpToSet = WidthSizeClass.getWidthDpInSizeClass(widthDisplaySize)
+    val heightDpToSet = HeightSizeClass.getHeightDpInSizeClass(heightDisplaySize)
+    executeShellCommand("wm size ${widthDpToSet}dpx${heightDpToSet}dp")
+  }
 
-      latch.await(5, TimeUnit.SECONDS)
-      currentActivity.runOnUiThread { container.removeView(currentActivityView) }
+  override fun isReached(): Boolean {
+    // The app has applied the display size once a RESUMED activity, either the current one or its
+    // recreation, has a screen size in the requested size classes.
+    return ActivityLifecycleMonitorRegistry.getInstance().getActivitiesInStage(Stage.RESUMED).any {
+      val configuration = it.resources.configuration
+      WidthSizeClass.compute(configuration.screenWidthDp) == widthDisplaySize &&
+        HeightSizeClass.compute(configuration.screenHeightDp) == heightDisplaySize
+    }
+  }
 
-      val (finalWidthDp, finalHeightDp) = calculateCurrentDisplayWidthAndHeightDp(currentActivity)
-      if (
-        WidthSizeClass.compute(finalWidthDp) != widthDisplaySize ||
-          HeightSizeClass.compute(finalHeightDp) != heightDisplaySize
-      ) {
-        // Display could not be set to the requested size, reset to starting size
-        executeShellCommand("wm size ${startingWidthDp}dpx${startingHeightDp}dp")
-        throw UnsupportedDeviceOperationException(
-          "Device could not be set to the requested display size."
-        )
-      }
-    } else {
-      throw DeviceControllerOperationException(
-        "Device could not be set to the requested display size because there are no activities in" +
-          " the resumed stage."
+  override fun verify() {
+    val (finalWidthDp, finalHeightDp) = calculateCurrentDisplayWidthAndHeightDp(currentActivity)
+    if (
+      WidthSizeClass.compute(finalWidthDp) != widthDisplaySize ||
+        HeightSizeClass.compute(finalHeightDp) != heightDisplaySize
+    ) {
+      // Display could not be set to the requested size, reset to starting size
+      executeShellCommand("wm size ${startingWidthDp}dpx${startingHeightDp}dp")
+      throw UnsupportedDeviceOperationException(
+        "Device could not be set to the requested display size."
       )
     }
   }
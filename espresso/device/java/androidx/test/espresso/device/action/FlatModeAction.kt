@@ -20,22 +20,21 @@ import android.util.Log
 import androidx.test.espresso.device.common.executeShellCommand
 import androidx.test.espresso.device.common.getMapOfDeviceStateNamesToIdentifiers
 import androidx.test.espresso.device.controller.DeviceMode
-import androidx.test.platform.device.DeviceController
 import androidx.window.layout.FoldingFeature
 
 /** Action to set the test device to be completely flat, like a tablet. */
 internal class FlatModeAction() :
   BaseSingleFoldDeviceAction(DeviceMode.FLAT, FoldingFeature.State.FLAT) {
-  override fun perform(deviceController: DeviceController) {
+  override fun prepare(tracker: DeviceStateChangeTracker): Boolean {
     val currentDeviceStateIdentifier = executeShellCommand("cmd device_state print-state").trim()
     if (currentDeviceStateIdentifier == getMapOfDeviceStateNamesToIdentifiers().get("OPENED")) {
       if (Log.isLoggable(TAG, Log.DEBUG)) {
         Log.d(TAG, "Device is already in flat mode.")
       }
-      return
+      return false
     }
 
-    super.perform(deviceController)
+    return super.prepare(tracker)
   }
 
   companion object {
@@ -16,12 +16,11 @@
 
 package androidx.test.espresso.device.action
 
-import android.app.Activity
-import android.content.ComponentCallbacks
 import android.content.Context
 import android.content.pm.ActivityInfo.CONFIG_ORIENTATION
 import android.content.res.Configuration
 import android.util.Log
+import androidx.test.espresso.device.common.AccelerometerRotation
 import androidx.test.espresso.device.common.getAccelerometerRotationSetting
 import androidx.test.espresso.device.common.getDeviceApiLevel
 import androidx.test.espresso.device.common.getResumedActivityOrNull
@@ -31,14 +30,16 @@ import androidx.test.espresso.device.common.setAccelerometerRotationSetting
 import androidx.test.espresso.device.controller.DeviceControllerOperationException
 import androidx.test.platform.app.InstrumentationRegistry
 import androidx.test.platform.device.DeviceController
-import androidx.test.runner.lifecycle.ActivityLifecycleCallback
 import androidx.test.runner.lifecycle.ActivityLifecycleMonitorRegistry
 import androidx.test.runner.lifecycle.Stage
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.TimeUnit
 
 /** Action to set the test device to the provided screen orientation. */
-internal class ScreenOrientationAction(val screenOrientation: ScreenOrientation) : DeviceAction {
+internal class ScreenOrientationAction(val screenOrientation: ScreenOrientation) :
+  TrackedDeviceAction {
+  private val requestedOrientation =
+    if (screenOrientation == ScreenOrientation.LANDSCAPE) Configuration.ORIENTATION_LANDSCAPE
+    else Configuration.ORIENTATION_PORTRAIT
+  private var startingAccelRotationSetting: AccelerometerRotation? = null
 
   /**
    * Performs a screen rotation to the provided orientation.
@@ -47,32 +48,31 @@ internal class ScreenOrientationAction(val screenOrientation: ScreenOrientation)
    * will be set to the provided orientation.
    *
    * <p>Note, this method takes care of synchronization with the device and the app/activity under
-   * test after rotating the screen. Specifically, <ul>
-   * <li>if no activity is found in a RESUMED state, this method waits for the application's
-   *   orientation to change to the requested orientation. </li>
-   * <li>if the activity handles device orientation change,this method waits for the application's
-   *   orientation to change to the requested orientation, and relies on Espresso's {@code onView()}
-   *   method to ensure it synchronizes properly with the updated activity. </li>
-   * <li>if the activity doesn't handle device orientation change, it waits until the activity is
-   *   PAUSED and relies on Espresso's {@code onView()} method to ensure it synchronizes properly
-   *   with the recreated activity. </li>
-   *
-   * </ul>
+   * test after rotating the screen: it waits until the application, and an activity in the RESUMED
+   * stage, are in the requested orientation. That is the current activity if it handles device
+   * orientation change, and the recreated activity otherwise. Either way, this method relies on
+   * Espresso's {@code onView()} method to ensure it synchronizes properly with the activity.
    *
    * @param deviceController the controller to use to interact with the device.
    */
   override fun perform(deviceController: DeviceController) {
+    if (isRobolectricTest()) {
+      val context = InstrumentationRegistry.getInstrumentation().targetContext
+      if (screenOrientation != getCurrentScreenOrientation(context)) {
+        deviceController.setScreenOrientation(screenOrientation.getOrientation())
+      }
+      return
+    }
+    performTogether(listOf(this), deviceController)
+  }
+
+  override fun prepare(tracker: DeviceStateChangeTracker): Boolean {
     val context = InstrumentationRegistry.getInstrumentation().targetContext
     if (screenOrientation == getCurrentScreenOrientation(context)) {
       if (Log.isLoggable(TAG, Log.DEBUG)) {
         Log.d(TAG, "Device screen is already in the requested orientation, no need to rotate.")
       }
-      return
-    }
-
-    if (isRobolectricTest()) {
-      deviceController.setScreenOrientation(screenOrientation.getOrientation())
-      return
+      return false
     }
 
     val currentActivity = getResumedActivityOrNull()
@@ -82,74 +82,43 @@ internal class ScreenOrientationAction(val screenOrientation: ScreenOrientation)
         "Device could not be set to the requested screen orientation because no activity was found."
       )
     }
-
-    var startingAccelRotationSetting = getAccelerometerRotationSetting()
-    val currentActivityName: String? = currentActivity.localClassName
-    val configChangesHandled = currentActivity.isConfigurationChangeHandled(CONFIG_ORIENTATION)
-    val latch: CountDownLatch = CountDownLatch(1)
-    val requestedOrientation =
-      if (screenOrientation == ScreenOrientation.LANDSCAPE) Configuration.ORIENTATION_LANDSCAPE
-      else Configuration.ORIENTATION_PORTRAIT
-
-    val componentCallback =
-      object : ComponentCallbacks {
-        override fun onConfigurationChanged(newConfig: Configuration) {
-          if (newConfig.orientation == requestedOrientation) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-              Log.d(TAG, "Application's orientation was set to the requested orientation.")
-            }
-            latch.countDown()
-          }
-        }
-
-        @Deprecated("Deprecated in API 34") override fun onLowMemory() {}
-      }
-
-    val activityLifecycleCallback =
-      object : ActivityLifecycleCallback {
-        override fun onActivityLifecycleChanged(activity: Activity, stage: Stage) {
-          if (
-            activity.localClassName == currentActivityName &&
-              stage == Stage.RESUMED &&
-              activity.resources.configuration.orientation == requestedOrientation
-          ) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-              Log.d(TAG, "Test activity was resumed in the requested orientation.")
-            }
-            latch.countDown()
-          }
-        }
-      }
-
-    if (configChangesHandled) {
+    if (currentActivity.isConfigurationChangeHandled(CONFIG_ORIENTATION)) {
       Log.d(TAG, "The current activity handles configuration changes.")
-      context.registerComponentCallbacks(componentCallback)
     } else {
       Log.d(
         TAG,
         "The current activity does not handle configuration changes and will be recreated when " +
           "its orientation changes.",
       )
-      ActivityLifecycleMonitorRegistry.getInstance().addLifecycleCallback(activityLifecycleCallback)
     }
+    startingAccelRotationSetting = getAccelerometerRotationSetting()
+    return true
+  }
 
+  override fun request(deviceController: DeviceController) {
     deviceController.setScreenOrientation(screenOrientation.getOrientation())
-    latch.await(5, TimeUnit.SECONDS)
+  }
 
-    if (configChangesHandled) {
-      context.unregisterComponentCallbacks(componentCallback)
-    } else {
-      ActivityLifecycleMonitorRegistry.getInstance()
-        .removeLifecycleCallback(activityLifecycleCallback)
-    }
+  override fun isReached(): Boolean {
+    val context = InstrumentationRegistry.getInstrumentation().targetContext
+    // Whether the activity handles the change or is recreated, a RESUMED activity ends up with the
+    // requested orientation.
+    return context.resources.configuration.orientation == requestedOrientation &&
+      ActivityLifecycleMonitorRegistry.getInstance().getActivitiesInStage(Stage.RESUMED).any {
+        it.resources.configuration.orientation == requestedOrientation
+      }
+  }
 
+  override fun cleanUp() {
     // Restore accelerometer rotation setting if it was changed
-    if (
-      getDeviceApiLevel() >= 21 && startingAccelRotationSetting != getAccelerometerRotationSetting()
-    ) {
-      setAccelerometerRotationSetting(startingAccelRotationSetting)
+    val startingSetting = startingAccelRotationSetting ?: return
+    if (getDeviceApiLevel() >= 21 && startingSetting != getAccelerometerRotationSetting()) {
+      setAccelerometerRotationSetting(startingSetting)
     }
+  }
 
+  override fun verify() {
+    val context = InstrumentationRegistry.getInstrumentation().targetContext
     if (getCurrentScreenOrientation(context) != screenOrientation) {
       throw DeviceControllerOperationException(
         "Device could not be set to the requested screen orientation."
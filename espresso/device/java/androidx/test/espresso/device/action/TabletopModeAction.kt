@@ -33,6 +33,10 @@ internal class TabletopModeAction() :
     private val TAG = TabletopModeAction::class.java.simpleName
   }
 
+  // Rotates the device after folding it, so it can't wait together with other changes.
+  override val canBePerformedTogether: Boolean
+    get() = false
+
   override fun perform(deviceController: DeviceController) {
     // TODO(b/203801760): Check current device mode and return if already in tabletop mode.
     super.perform(deviceController)
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.espresso.device.action
+
+import androidx.test.platform.device.DeviceController
+
+/**
+ * A [DeviceAction] whose completion is observed by a [DeviceStateChangeTracker], so that it can be
+ * requested together with other such actions, with a single wait for all of them.
+ */
+internal interface TrackedDeviceAction : DeviceAction {
+  /**
+   * Whether this action can be requested together with others. Actions that make several changes
+   * one after another can't.
+   */
+  val canBePerformedTogether: Boolean
+    get() = true
+
+  /**
+   * Checks the preconditions of this action, and records the starting state. Called before any
+   * change is requested.
+   *
+   * @return false if the device is already in the requested state, in which case no change is
+   *   requested and this action is done
+   */
+  fun prepare(tracker: DeviceStateChangeTracker): Boolean
+
+  /** Requests the change from the device, without waiting for it to be applied. */
+  fun request(deviceController: DeviceController)
+
+  /** Returns whether the device and the app under test are in the requested state. */
+  fun isReached(): Boolean
+
+  /** Undoes the temporary changes made by [prepare] and [request]. Always called after the wait. */
+  fun cleanUp() {}
+
+  /** Throws if the device is not in the requested state after the wait. */
+  fun verify()
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.espresso.device.controller.emulator
+
+import android.util.Log
+import androidx.annotation.RestrictTo
+import androidx.annotation.RestrictTo.Scope
+import androidx.annotation.VisibleForTesting
+import io.grpc.ChannelCredentials
+import io.grpc.ManagedChannel
+import io.grpc.okhttp.OkHttpChannelBuilder
+import java.util.concurrent.TimeUnit
+
+/**
+ * The gRPC channels to the emulator, shared by all the connections of the process.
+ *
+ * A channel multiplexes all its calls through one HTTP/2 connection, so reusing it saves a TCP and
+ * TLS handshake per stub. Channels are kept alive with HTTP/2 pings while calls are in flight, and
+ * go idle, closing their connection, when unused for a while. The test runner has no hook at the
+ * end of the instrumentation, so the channels are only shut down from a JVM shutdown hook; when the
+ * instrumentation process is killed instead, the system closes their connections.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+object EmulatorChannelPool {
+  private val TAG = EmulatorChannelPool::class.java.simpleName
+  private const val KEEP_ALIVE_SECONDS = 30L
+  private const val KEEP_ALIVE_TIMEOUT_SECONDS = 10L
+  private const val IDLE_TIMEOUT_MINUTES = 5L
+  private const val SHUTDOWN_TIMEOUT_MILLIS = 1000L
+
+  /**
+   * Identifies a channel: the endpoint, and the files its TLS credentials are read from. Call
+   * credentials are set per stub, so they are not part of the key.
+   */
+  data class Key(
+    val address: String,
+    val port: Int,
+    val clientCertChainFilePath: String,
+    val clientPrivateKeyFilePath: String,
+    val trustCertCollectionFilePath: String,
+  )
+
+  private val channels = HashMap<Key, ManagedChannel>()
+  private var shutdownHookAdded = false
+
+  /**
+   * Returns the channel for the given key, building it with the given credentials if there is none
+   * yet, or if it was shut down.
+   */
+  fun channel(key: Key, credentials: () -> ChannelCredentials): ManagedChannel {
+    return getOrBuild(key) {
+      OkHttpChannelBuilder.forAddress(key.address, key.port, credentials())
+        .keepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS)
+        .keepAliveTimeout(KEEP_ALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        .idleTimeout(IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES)
+        .build()
+    }
+  }
+
+  /**
+   * Returns the channel for the given key, calling [build] if there is none yet, or if it was shut
+   * down.
+   */
+  @VisibleForTesting
+  fun getOrBuild(key: Key, build: () -> ManagedChannel): ManagedChannel {
+    synchronized(this) {
+      val existing = channels[key]
+      if (existing != null && !existing.isShutdown) {
+        return existing
+      }
+      val channel = build()
+      channels[key] = channel
+      if (!shutdownHookAdded) {
+        Runtime.getRuntime().addShutdownHook(Thread { shutdown() })
+        shutdownHookAdded = true
+      }
+      Log.d(TAG, "Opened gRPC channel to ${key.address}:${key.port}, ${channels.size} open")
+      return channel
+    }
+  }
+
+  /** Shuts down all the channels, waiting briefly for the calls in flight to complete. */
+  fun shutdown() {
+    val toShutdown: List<ManagedChannel>
+    synchronized(this) {
+      toShutdown = ArrayList(channels.values)
+      channels.clear()
+    }
+    for (channel in toShutdown) {
+      channel.shutdown()
+    }
+    for (channel in toShutdown) {
+      if (!channel.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+        channel.shutdownNow()
+      }
+    }
+  }
+}
@@ -24,7 +24,6 @@ import io.grpc.ChannelCredentials
 import io.grpc.InsecureChannelCredentials
 import io.grpc.ManagedChannel
 import io.grpc.TlsChannelCredentials
-import io.grpc.okhttp.OkHttpChannelBuilder
 import io.grpc.stub.AbstractBlockingStub
 import io.grpc.stub.AbstractFutureStub
 import java.io.File
@@ -63,7 +62,8 @@ constructor(
   private val trustCertCollectionFilePath: String,
 ) : EmulatorGrpcConn {
 
-  val channelCredentials = channelCredentials()
+  // Only read when this connection builds the pooled channel.
+  val channelCredentials by lazy { channelCredentials() }
   val callCredentials =
     if (token.isNullOrEmpty()) NoCallCredentials()
     else HeaderCallCredentials(AUTH_HEADER, BEARER + token)
@@ -73,8 +73,20 @@ constructor(
     private val BEARER = "Bearer "
   }
 
+  /**
+   * Returns the channel to the emulator, shared with all the connections of the process to the same
+   * endpoint. Callers should not shut it down.
+   */
   override fun channel(): ManagedChannel {
-    return OkHttpChannelBuilder.forAddress(address, port, channelCredentials).build()
+    val key =
+      EmulatorChannelPool.Key(
+        address,
+        port,
+        clientCertChainFilePath,
+        clientPrivateKeyFilePath,
+        trustCertCollectionFilePath,
+      )
+    return EmulatorChannelPool.channel(key) { channelCredentials }
   }
 
   override fun credentials(): CallCredentials {
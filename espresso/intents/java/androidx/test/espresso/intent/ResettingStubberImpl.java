@@ -27,8 +27,11 @@ import android.os.Looper;
 import android.util.Pair;
 import androidx.test.platform.app.InstrumentationRegistry;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import org.hamcrest.Matcher;
 
 /** Implementation of {@link ResettingStubber} */
@@ -38,13 +41,24 @@ public final class ResettingStubberImpl implements ResettingStubber {
   private List<Pair<Matcher<Intent>, ActivityResultFunction>> intentResponsePairs =
       new ArrayList<Pair<Matcher<Intent>, ActivityResultFunction>>();
 
+  // The activities each intent resolves to, keyed by the fields used to resolve it, so that an
+  // intent is resolved once while it is stubbed and recorded. Cleared on initialize and reset, so
+  // resolutions are kept for the life of one Intents#init.
+  private final Map<FilterKey, List<ResolveInfo>> resolutions =
+      new HashMap<FilterKey, List<ResolveInfo>>();
+
   private PackageManager packageManager;
   private boolean isInitialized;
 
   @Override
   public void initialize() {
-    packageManager =
-        InstrumentationRegistry.getInstrumentation().getTargetContext().getPackageManager();
+    initialize(InstrumentationRegistry.getInstrumentation().getTargetContext().getPackageManager());
+  }
+
+  // VisibleForTesting
+  void initialize(PackageManager packageManager) {
+    this.packageManager = checkNotNull(packageManager);
+    clearResolutions();
     isInitialized = true;
   }
 
@@ -57,6 +71,7 @@ public final class ResettingStubberImpl implements ResettingStubber {
   public void reset() {
     checkMain();
     intentResponsePairs.clear();
+    clearResolutions();
     isInitialized = false;
   }
 
@@ -79,21 +94,45 @@ public final class ResettingStubberImpl implements ResettingStubber {
     checkState(isInitialized, "ResettingStubber must be initialized before calling this method");
     checkNotNull(intent);
     checkMain();
+    if (intentResponsePairs.isEmpty()) {
+      return null;
+    }
+    // We resolve the intent so that the toPackage matcher has the necessary information to match
+    // the intent.
+    ResolvedIntent resolvedIntent = resolveIntent(intent);
     ListIterator<Pair<Matcher<Intent>, ActivityResultFunction>> reverseIterator =
         intentResponsePairs.listIterator(intentResponsePairs.size());
     while (reverseIterator.hasPrevious()) {
       Pair<Matcher<Intent>, ActivityResultFunction> pair = reverseIterator.previous();
-      // We resolve the intent so that the toPackage matcher has the necessary information to match
-      // the intent.
-      if (pair.first.matches(resolveIntent(intent))) {
+      if (pair.first.matches(resolvedIntent)) {
         return pair.second.apply(intent);
       }
     }
     return null;
   }
 
-  // package private, so that Intents can use this to resolve intents as it records them.
+  // package private, so that Intents can use this to resolve intents as it records them. May be
+  // called on any thread that starts an activity.
   ResolvedIntent resolveIntent(Intent intent) {
+    if (intent.getSelector() != null) {
+      // The selector is used for resolution, but isn't part of the key.
+      return new ResolvedIntentImpl(intent, queryIntentActivities(intent));
+    }
+    FilterKey key = new FilterKey(intent);
+    List<ResolveInfo> resolveInfos;
+    synchronized (resolutions) {
+      resolveInfos = resolutions.get(key);
+    }
+    if (null == resolveInfos) {
+      resolveInfos = Collections.unmodifiableList(queryIntentActivities(intent));
+      synchronized (resolutions) {
+        resolutions.put(key, resolveInfos);
+      }
+    }
+    return new ResolvedIntentImpl(intent, resolveInfos);
+  }
+
+  private List<ResolveInfo> queryIntentActivities(Intent intent) {
     // Android API is setting flags param to zero per discussion here:
     // http://stackoverflow.com/questions/9623079/
     // why-does-the-flag-specified-in-queryintentactivities-method-is-set-to-zero and
@@ -103,10 +142,41 @@ public final class ResettingStubberImpl implements ResettingStubber {
       // Gingerbread returns null here if nothing resolves, other APIs return an empty list.
       resolveInfos = new ArrayList<ResolveInfo>();
     }
-    return new ResolvedIntentImpl(intent, resolveInfos);
+    return resolveInfos;
+  }
+
+  private void clearResolutions() {
+    synchronized (resolutions) {
+      resolutions.clear();
+    }
   }
 
   private static void checkMain() {
     checkState(Looper.myLooper() == Looper.getMainLooper(), "Must be called on main thread.");
   }
+
+  /**
+   * The fields of an intent that the package manager resolves it by: action, data, type,
+   * categories, component and package. Extras and flags are left out.
+   */
+  private static final class FilterKey {
+    private final Intent filter;
+    private final int hashCode;
+
+    FilterKey(Intent intent) {
+      // A copy, since intents are mutable.
+      filter = intent.cloneFilter();
+      hashCode = filter.filterHashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof FilterKey && filter.filterEquals(((FilterKey) o).filter);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
@@ -25,13 +25,25 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 import android.app.Instrumentation.ActivityResult;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import androidx.test.annotation.UiThreadTest;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.MediumTest;
+import java.util.ArrayList;
 import org.hamcrest.Matcher;
 import org.junit.Before;
 import org.junit.Test;
@@ -153,4 +165,88 @@ public class ResettingStubberImplTest {
         resettingStubber.getActivityResultForIntent(intent),
         duplicateResult);
   }
+
+  @UiThreadTest
+  @Test
+  public void getActivityResultForIntent_laterStubTakesPrecedence() {
+    Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("http://www.android.com"));
+    ActivityResult specificResult = new ActivityResult(10, intent);
+    ActivityResult genericResult = new ActivityResult(100, intent);
+    resettingStubber.setActivityResultForIntent(
+        hasAction(equalTo(Intent.ACTION_VIEW)), specificResult);
+    resettingStubber.setActivityResultForIntent(any(Intent.class), genericResult);
+    assertEquals(genericResult, resettingStubber.getActivityResultForIntent(intent));
+  }
+
+  @UiThreadTest
+  @Test
+  public void resolveIntent_keepsExtrasOfEachIntent() {
+    ResettingStubberImpl stubber = (ResettingStubberImpl) resettingStubber;
+    Intent first = new Intent(Intent.ACTION_VIEW, Uri.parse("http://www.android.com"));
+    first.putExtra("name", "first");
+    Intent second = new Intent(Intent.ACTION_VIEW, Uri.parse("http://www.android.com"));
+    second.putExtra("name", "second");
+
+    assertEquals("first", stubber.resolveIntent(first).getIntent().getStringExtra("name"));
+    assertEquals("second", stubber.resolveIntent(second).getIntent().getStringExtra("name"));
+  }
+
+  @UiThreadTest
+  @Test
+  public void resolveIntent_queriesPackageManagerOncePerFilterEqualIntent() {
+    PackageManager packageManager = countingPackageManager();
+    ResettingStubberImpl stubber = new ResettingStubberImpl();
+    stubber.initialize(packageManager);
+    ActivityResult viewResult = new ActivityResult(10, null);
+    ActivityResult dialResult = new ActivityResult(20, null);
+    stubber.setActivityResultForIntent(hasAction(equalTo(Intent.ACTION_VIEW)), viewResult);
+    stubber.setActivityResultForIntent(hasAction(equalTo(Intent.ACTION_DIAL)), dialResult);
+    stubber.setActivityResultForIntent(
+        hasAction(equalTo(Intent.ACTION_SEND)), new ActivityResult(30, null));
+    Intent view = new Intent(Intent.ACTION_VIEW, Uri.parse("http://www.android.com"));
+    Intent dial = new Intent(Intent.ACTION_DIAL, Uri.parse("tel:123"));
+
+    for (int i = 0; i < 3; i++) {
+      // Differs from the others in its extras only, so it resolves like them.
+      Intent viewAgain = new Intent(view).putExtra("attempt", i);
+      assertEquals(viewResult, stubber.getActivityResultForIntent(viewAgain));
+      // Intents records every intent it stubs.
+      stubber.resolveIntent(viewAgain);
+      assertEquals(dialResult, stubber.getActivityResultForIntent(dial));
+      stubber.resolveIntent(dial);
+    }
+
+    verify(packageManager, times(1))
+        .queryIntentActivities(argThat(intent -> intent.filterEquals(view)), eq(0));
+    verify(packageManager, times(1))
+        .queryIntentActivities(argThat(intent -> intent.filterEquals(dial)), eq(0));
+    verifyNoMoreInteractions(packageManager);
+  }
+
+  @UiThreadTest
+  @Test
+  public void reset_clearsResolutions() {
+    PackageManager packageManager = countingPackageManager();
+    ResettingStubberImpl stubber = new ResettingStubberImpl();
+    Intent view = new Intent(Intent.ACTION_VIEW, Uri.parse("http://www.android.com"));
+
+    for (int i = 0; i < 2; i++) {
+      stubber.initialize(packageManager);
+      stubber.setActivityResultForIntent(any(Intent.class), new ActivityResult(10, null));
+      stubber.getActivityResultForIntent(view);
+      stubber.resolveIntent(view);
+      stubber.reset();
+    }
+
+    verify(packageManager, times(2))
+        .queryIntentActivities(argThat(intent -> intent.filterEquals(view)), eq(0));
+  }
+
+  /** Returns a package manager which resolves nothing, for counting the intents it resolves. */
+  private static PackageManager countingPackageManager() {
+    PackageManager packageManager = mock(PackageManager.class);
+    when(packageManager.queryIntentActivities(isA(Intent.class), anyInt()))
+        .thenReturn(new ArrayList<ResolveInfo>());
+    return packageManager;
+  }
 }
@@ -134,6 +134,19 @@ public class RemoteViewActionsTest {
     assertThat(typeTextActionFromProto.tapToFocus, is(false));
   }
 
+  @Test
+  public void typeTextAction_batchKeyEvents_transformationFromProto() {
+    ViewAction typeTextAction =
+        new TypeTextAction(TEXT_TO_SET, false, null, /* batchKeyEvents= */ true);
+    TypeTextActionProto typeTextActionProto =
+        (TypeTextActionProto) new GenericRemoteMessage(typeTextAction).toProto();
+
+    TypeTextAction typeTextActionFromProto =
+        (TypeTextAction) GenericRemoteMessage.FROM.fromProto(typeTextActionProto);
+    assertThat(typeTextActionFromProto.stringToBeTyped, equalTo(TEXT_TO_SET));
+    assertThat(typeTextActionFromProto.batchKeyEvents, is(true));
+  }
+
   @Test
   public void keyEventAction_transformationToProto() {
     EspressoKey espressoKey =
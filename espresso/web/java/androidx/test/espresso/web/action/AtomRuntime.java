@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.web.action;
+
+import android.os.Bundle;
+import android.util.Log;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+/**
+ * Installs the WebDriver atoms used by {@link JavascriptEvaluation} once per document, in a global
+ * of the top window, so that evaluations call them by name instead of sending their source each
+ * time.
+ *
+ * <p>The name of the global contains a token of the atoms' source, so a document never uses atoms
+ * installed by another version of Espresso Web. A new document, after a navigation, doesn't have
+ * the global: evaluations then return {@link #NOT_INSTALLED_RESULT}, and are evaluated again after
+ * {@link #INSTALL}.
+ *
+ * <p>The runtime is disabled by default. Enable it by setting the custom test argument
+ * "preload_web_atoms" to true.
+ */
+final class AtomRuntime {
+  private static final String TAG = "AtomRuntime";
+  private static final String PRELOAD_ATOMS_ARG = "preload_web_atoms";
+
+  /** A token of the source of the atoms. */
+  static final String VERSION =
+      Integer.toHexString(
+          (EvaluationAtom.EXECUTE_SCRIPT_ANDROID + EvaluationAtom.GET_ELEMENT_ANDROID).hashCode());
+
+  /** The name of the global holding the atoms. */
+  static final String GLOBAL = "__androidx_test_espresso_web_atoms_" + VERSION;
+
+  /** A JavaScript expression for the atom that executes a script. */
+  static final String EXECUTE_SCRIPT = "window." + GLOBAL + ".executeScript";
+
+  /** A JavaScript expression for the atom that looks up an element, or a window. */
+  static final String GET_ELEMENT = "window." + GLOBAL + ".getElement";
+
+  private static final String NOT_INSTALLED = "espresso-web-atoms-not-installed";
+
+  /**
+   * A statement that returns from the enclosing function if the atoms are not installed, making
+   * the evaluation result {@link #NOT_INSTALLED_RESULT}.
+   */
+  static final String CHECK_INSTALLED =
+      "if(!window." + GLOBAL + "){return \"" + NOT_INSTALLED + "\";}";
+
+  /** The result of an evaluation, as JSON, when the atoms were not installed. */
+  static final String NOT_INSTALLED_RESULT = "\"" + NOT_INSTALLED + "\"";
+
+  /** A script that installs the atoms, to be evaluated before a script that uses them. */
+  static final String INSTALL =
+      "(function(){if(!window."
+          + GLOBAL
+          + "){Object.defineProperty(window,\""
+          + GLOBAL
+          + "\",{value:{executeScript:("
+          + EvaluationAtom.EXECUTE_SCRIPT_ANDROID
+          + "),getElement:("
+          + EvaluationAtom.GET_ELEMENT_ANDROID
+          + ")}});}})();";
+
+  /** Returns whether the atom runtime was enabled for this test run. */
+  static boolean isEnabled() {
+    try {
+      Bundle arguments = InstrumentationRegistry.getArguments();
+      return Boolean.parseBoolean(arguments.getString(PRELOAD_ATOMS_ARG));
+    } catch (IllegalStateException e) {
+      Log.w(TAG, "Failed to read input argument " + PRELOAD_ATOMS_ARG, e);
+      return false;
+    }
+  }
+
+  private AtomRuntime() {}
+}
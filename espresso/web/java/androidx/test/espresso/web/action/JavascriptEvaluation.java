@@ -28,6 +28,7 @@ import android.webkit.ValueCallback;
 import android.webkit.WebHistoryItem;
 import android.webkit.WebView;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.test.espresso.web.bridge.Conduit;
 import androidx.test.espresso.web.bridge.JavaScriptBridge;
 import androidx.test.espresso.web.model.Evaluation;
@@ -50,7 +51,7 @@ import kotlin.jvm.functions.Function1;
 final class JavascriptEvaluation {
   private JavascriptEvaluation() {}
 
-  private static final ScriptPreparer SCRIPT_PREPARER;
+  private static volatile ScriptPreparer scriptPreparer;
   private static final AsyncFunction<PreparedScript, String> RAW_EVALUATOR;
   private static final Function1<String, Evaluation> DECODE_EVALUATION =
       new Function1<String, Evaluation>() {
@@ -76,10 +77,16 @@ final class JavascriptEvaluation {
 
   static {
 
-      SCRIPT_PREPARER = new ScriptPreparer(false);
+      scriptPreparer = new ScriptPreparer(false, AtomRuntime.isEnabled());
       RAW_EVALUATOR = new AsyncJavascriptEvaluation();
   }
 
+  /** Sets whether scripts call the atoms installed by {@link AtomRuntime}. */
+  @VisibleForTesting
+  static void setPreloadAtoms(boolean preloadAtoms) {
+    scriptPreparer = new ScriptPreparer(false, preloadAtoms);
+  }
+
   /**
    * Evaluates a script on a given WebView.
    *
@@ -103,7 +110,7 @@ final class JavascriptEvaluation {
     SanitizerTask sanitizer = new SanitizerTask(unprepared);
     view.post(sanitizer);
     ListenableFuture<PreparedScript> preparedScript =
-        transform(sanitizer, SCRIPT_PREPARER, DirectExecutor.INSTANCE);
+        transform(sanitizer, scriptPreparer, DirectExecutor.INSTANCE);
     ListenableFuture<String> rawEvaluation =
         transformAsync(preparedScript, RAW_EVALUATOR, DirectExecutor.INSTANCE);
     ListenableFuture<Evaluation> parsedEvaluation =
@@ -160,7 +167,7 @@ final class JavascriptEvaluation {
 
       if (isWebViewSane()) {
         PreparedScript docCheckScript =
-            SCRIPT_PREPARER.invoke(
+            scriptPreparer.invoke(
                 new UnpreparedScript(
                     unprepared.view,
                     DOC_ELEMENT_PRESENT,
@@ -292,18 +299,27 @@ final class JavascriptEvaluation {
 
     @Nullable private final Conduit conduit;
 
-    PreparedScript(WebView view, String script, @Nullable Conduit conduit) {
+    // Whether the script calls the atoms installed by AtomRuntime.
+    private final boolean usesAtomRuntime;
+
+    PreparedScript(
+        WebView view, String script, @Nullable Conduit conduit, boolean usesAtomRuntime) {
       this.view = checkNotNull(view);
       this.script = checkNotNull(script);
       this.conduit = conduit;
+      this.usesAtomRuntime = usesAtomRuntime;
     }
   }
 
   private static final class ScriptPreparer implements Function1<UnpreparedScript, PreparedScript> {
     private final boolean conduitize;
+    // Conduits are loaded as javascript: URLs, whose result can't be checked for the atoms not
+    // being installed, so they always carry the atoms.
+    private final boolean useAtomRuntime;
 
-    public ScriptPreparer(boolean conduitize) {
+    public ScriptPreparer(boolean conduitize, boolean preloadAtoms) {
       this.conduitize = conduitize;
+      this.useAtomRuntime = preloadAtoms && !conduitize;
     }
 
     @Override
@@ -314,27 +330,36 @@ final class JavascriptEvaluation {
         conduit = JavaScriptBridge.makeConduit();
         atomized = conduit.wrapScriptInConduit(atomized).insert(0, "javascript:");
       }
-      return new PreparedScript(unprepared.view, atomized.toString(), conduit);
+      return new PreparedScript(unprepared.view, atomized.toString(), conduit, useAtomRuntime);
     }
 
     private StringBuilder atomize(
         String script, List<Object> args, WindowReference windowReference) {
-      int guessedSize = EvaluationAtom.EXECUTE_SCRIPT_ANDROID.length() + script.length() + 1024;
-      if (windowReference != null) {
-        guessedSize += EvaluationAtom.GET_ELEMENT_ANDROID.length();
+      int guessedSize = script.length() + 1024;
+      if (!useAtomRuntime) {
+        guessedSize += EvaluationAtom.EXECUTE_SCRIPT_ANDROID.length();
+        if (windowReference != null) {
+          guessedSize += EvaluationAtom.GET_ELEMENT_ANDROID.length();
+        }
+      }
+      StringBuilder toExecute = new StringBuilder(guessedSize);
+      if (useAtomRuntime) {
+        toExecute.append(AtomRuntime.CHECK_INSTALLED);
       }
-      StringBuilder toExecute = new StringBuilder(guessedSize).append("var my_wind = ");
+      toExecute.append("var my_wind = ");
       if (windowReference != null) {
-        toExecute
+        appendAtom(toExecute, AtomRuntime.GET_ELEMENT, EvaluationAtom.GET_ELEMENT_ANDROID)
             .append("(")
-            .append(EvaluationAtom.GET_ELEMENT_ANDROID)
-            .append(")(")
             .append(ModelCodec.encode(windowReference))
             .append("[\"WINDOW\"]);");
       } else {
         toExecute.append("null;");
       }
-      toExecute.append("return (").append(EvaluationAtom.EXECUTE_SCRIPT_ANDROID).append(")(");
+      appendAtom(
+              toExecute.append("return "),
+              AtomRuntime.EXECUTE_SCRIPT,
+              EvaluationAtom.EXECUTE_SCRIPT_ANDROID)
+          .append("(");
       if (isFunctionDefinition(script)) {
         // Simply passes the script in if it's a JavaScript function.
         toExecute.append(script);
@@ -352,6 +377,14 @@ final class JavascriptEvaluation {
       return wrapInFunction(toExecute);
     }
 
+    // Appends a reference to the installed atom, or else the atom's source.
+    private StringBuilder appendAtom(StringBuilder script, String installedAtom, String atom) {
+      if (useAtomRuntime) {
+        return script.append(installedAtom);
+      }
+      return script.append("(").append(atom).append(")");
+    }
+
     private StringBuilder wrapInFunction(StringBuilder script) {
       script.insert(0, "(function(){").append("})()");
       return script;
@@ -403,21 +436,40 @@ final class JavascriptEvaluation {
       if (null != in.conduit) {
         return Futures.<String>immediateFailedFuture(
             new RuntimeException("Conduit script cannot be used"));
-      } else {
-        final ValueCallbackFuture<String> result = new ValueCallbackFuture<String>();
-        if (Looper.myLooper() == Looper.getMainLooper()) {
-          in.view.evaluateJavascript(in.script, result);
-        } else {
-          in.view.post(
-              new Runnable() {
-                @Override
-                public void run() {
-                  in.view.evaluateJavascript(in.script, result);
+      } else if (in.usesAtomRuntime) {
+        return transformAsync(
+            evaluateJavascript(in.view, in.script),
+            new AsyncFunction<String, String>() {
+              @Override
+              public ListenableFuture<String> apply(String raw) {
+                if (AtomRuntime.NOT_INSTALLED_RESULT.equals(raw)) {
+                  // A new document: install the atoms, and evaluate the script again.
+                  return evaluateJavascript(in.view, AtomRuntime.INSTALL + in.script);
                 }
-              });
-        }
-        return result;
+                return Futures.immediateFuture(raw);
+              }
+            },
+            DirectExecutor.INSTANCE);
+      } else {
+        return evaluateJavascript(in.view, in.script);
+      }
+    }
+
+    private static ListenableFuture<String> evaluateJavascript(
+        final WebView view, final String script) {
+      final ValueCallbackFuture<String> result = new ValueCallbackFuture<String>();
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        view.evaluateJavascript(script, result);
+      } else {
+        view.post(
+            new Runnable() {
+              @Override
+              public void run() {
+                view.evaluateJavascript(script, result);
+              }
+            });
       }
+      return result;
     }
   }
 
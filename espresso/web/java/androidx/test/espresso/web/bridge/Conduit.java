@@ -18,6 +18,7 @@ package androidx.test.espresso.web.bridge;
 
 import static androidx.test.internal.util.Checks.checkNotNull;
 
+import android.os.SystemClock;
 import androidx.concurrent.futures.ResolvableFuture;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
@@ -38,6 +39,7 @@ public final class Conduit {
   private final String successMethod;
   private final String token;
   private final ResolvableFuture<String> jsResult;
+  private final long createdAtMillis = SystemClock.elapsedRealtime();
 
   private Conduit(Builder builder) {
     this.bridgeName = checkNotNull(builder.bridgeName);
@@ -90,6 +92,11 @@ public final class Conduit {
     return token;
   }
 
+  /** The {@link SystemClock#elapsedRealtime()} at which this conduit was built. */
+  long getCreatedAtMillis() {
+    return createdAtMillis;
+  }
+
   static class Builder {
     private String bridgeName;
     private String errorMethod;
@@ -18,22 +18,55 @@ package androidx.test.espresso.web.bridge;
 
 import static androidx.test.internal.util.Checks.checkNotNull;
 
+import android.os.SystemClock;
 import android.util.Log;
 import android.webkit.JavascriptInterface;
-import java.util.ArrayList;
-import java.util.List;
+import androidx.test.platform.concurrent.DirectExecutor;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The actual class injected as a JavascriptInterface in every web view.
  */
 final class JavaScriptBoundBridge {
   private static final String TAG = "JS_BRIDGE";
-  private final List<Conduit> conduits = new ArrayList<>();
+  // Conduits without a result after this long are abandoned, for instance because the page
+  // navigated away before the script ran, and are failed when the next conduit is added.
+  private static final long CONDUIT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private final ConcurrentMap<String, Conduit> conduits = new ConcurrentHashMap<>();
 
-  void addConduit(Conduit conduit) {
+  void addConduit(final Conduit conduit) {
     checkNotNull(conduit);
-    synchronized (conduits) {
-      conduits.add(conduit);
+    evictAbandonedConduits();
+    conduits.put(conduit.getToken(), conduit);
+    // Also forgets conduits whose result was cancelled by the caller.
+    conduit
+        .getResult()
+        .addListener(
+            new Runnable() {
+              @Override
+              public void run() {
+                conduits.remove(conduit.getToken(), conduit);
+              }
+            },
+            DirectExecutor.INSTANCE);
+  }
+
+  private void evictAbandonedConduits() {
+    long now = SystemClock.elapsedRealtime();
+    Iterator<Conduit> iterator = conduits.values().iterator();
+    while (iterator.hasNext()) {
+      Conduit conduit = iterator.next();
+      if (now - conduit.getCreatedAtMillis() > CONDUIT_TIMEOUT_MILLIS) {
+        iterator.remove();
+        conduit
+            .internalGetResult()
+            .setException(
+                new TimeoutException("No result received for conduit: " + conduit.getToken()));
+      }
     }
   }
 
@@ -43,15 +76,10 @@ final class JavaScriptBoundBridge {
   @JavascriptInterface
   public void setResult(String token, String result) {
     Log.d(TAG, "Token: " + token + " result: " + result);
-    synchronized (conduits) {
-      for (int i = 0; i < conduits.size(); i++) {
-        Conduit conduit = conduits.get(i);
-        if (conduit.getToken().equals(token)) {
-          conduit.internalGetResult().set(result);
-          conduits.remove(i);
-          return;
-        }
-      }
+    Conduit conduit = conduits.remove(token);
+    if (conduit != null) {
+      conduit.internalGetResult().set(result);
+      return;
     }
     Log.e(TAG, "UFO result received - token: " + token + " message: " + result);
   }
@@ -59,15 +87,10 @@ final class JavaScriptBoundBridge {
   @JavascriptInterface
   public void setError(String token, String error) {
     Log.d(TAG, "Token: " + token + " result: " + error);
-    synchronized (conduits) {
-      for (int i = 0; i < conduits.size(); i++) {
-        Conduit conduit = conduits.get(i);
-        if (conduit.getToken().equals(token)) {
-          conduit.internalGetResult().setException(new RuntimeException(error));
-          conduits.remove(i);
-          return;
-        }
-      }
+    Conduit conduit = conduits.remove(token);
+    if (conduit != null) {
+      conduit.internalGetResult().setException(new RuntimeException(error));
+      return;
     }
     Log.e(TAG, "UFO error received - token: " + token + " message: " + error);
   }
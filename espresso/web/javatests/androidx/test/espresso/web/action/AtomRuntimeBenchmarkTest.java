@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.web.action;
+
+import static androidx.test.espresso.web.assertion.WebViewAssertions.webMatches;
+import static androidx.test.espresso.web.sugar.Web.onWebView;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.findElement;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.getText;
+import static org.hamcrest.Matchers.containsString;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.espresso.web.webdriver.Locator;
+import androidx.test.ext.junit.rules.ActivityScenarioRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.ui.app.WebFormActivity;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the latency of web interactions that send the atoms' source with every script against
+ * interactions that call the atoms installed by {@link AtomRuntime}, on a static page.
+ *
+ * <p>Results are written to logcat under the "AtomRuntimeBenchmark" tag. The test only asserts
+ * that the interactions succeed in both modes, so it doesn't flake on slow devices.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class AtomRuntimeBenchmarkTest {
+  private static final String TAG = "AtomRuntimeBenchmark";
+  private static final int ITERATIONS = 20;
+
+  @Rule
+  public ActivityScenarioRule<WebFormActivity> rule =
+      new ActivityScenarioRule<>(WebFormActivity.class);
+
+  @After
+  public void tearDown() {
+    JavascriptEvaluation.setPreloadAtoms(AtomRuntime.isEnabled());
+  }
+
+  @Test
+  public void inlineVersusPreloadedAtoms() {
+    // Warm up both paths once, which also installs the atoms.
+    time(/* preloadAtoms= */ false);
+    time(/* preloadAtoms= */ true);
+
+    long inline = 0;
+    long preloaded = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      inline += time(/* preloadAtoms= */ false);
+      preloaded += time(/* preloadAtoms= */ true);
+    }
+    report("inline atoms", inline);
+    report("preloaded atoms", preloaded);
+  }
+
+  private static long time(boolean preloadAtoms) {
+    JavascriptEvaluation.setPreloadAtoms(preloadAtoms);
+    long start = SystemClock.elapsedRealtime();
+    onWebView()
+        .withElement(findElement(Locator.ID, "info"))
+        .check(webMatches(getText(), containsString("Enter input")));
+    return SystemClock.elapsedRealtime() - start;
+  }
+
+  private static void report(String name, long totalMillis) {
+    Log.i(
+        TAG,
+        String.format(
+            Locale.ROOT, "%s: %.1f ms per interaction", name, (double) totalMillis / ITERATIONS));
+  }
+}
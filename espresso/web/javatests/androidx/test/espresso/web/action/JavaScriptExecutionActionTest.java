@@ -20,10 +20,16 @@ package androidx.test.espresso.web.action;
 import static androidx.test.espresso.Espresso.onView;
 import static androidx.test.espresso.matcher.ViewMatchers.isAssignableFrom;
 import static androidx.test.espresso.web.assertion.WebViewAssertions.webContent;
+import static androidx.test.espresso.web.assertion.WebViewAssertions.webMatches;
 import static androidx.test.espresso.web.matcher.DomMatchers.elementById;
 import static androidx.test.espresso.web.matcher.DomMatchers.withTextContent;
 import static androidx.test.espresso.web.model.Atoms.script;
 import static androidx.test.espresso.web.sugar.Web.onWebView;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.findElement;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.getText;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.selectFrameByIdOrName;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.webClick;
+import static androidx.test.espresso.web.webdriver.DriverAtoms.webKeys;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
@@ -35,6 +41,7 @@ import androidx.test.core.app.ActivityScenario;
 import androidx.test.espresso.IdlingResourceTimeoutException;
 import androidx.test.espresso.UiController;
 import androidx.test.espresso.ViewAction;
+import androidx.test.espresso.web.webdriver.Locator;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.LargeTest;
 import androidx.test.ui.app.WebFormActivity;
@@ -101,6 +108,35 @@ public class JavaScriptExecutionActionTest {
     }
   }
 
+  /** View action that loads a page whose iframe holds an element of its own. */
+  static class WebViewLoadFramedPage implements ViewAction {
+    @Override
+    public Matcher<View> getConstraints() {
+      return isAssignableFrom(WebView.class);
+    }
+
+    @Override
+    public String getDescription() {
+      return "Loading a page with an iframe";
+    }
+
+    @Override
+    public void perform(UiController uiController, View view) {
+      ((WebView) view)
+          .loadDataWithBaseURL(
+              null,
+              "<html>"
+                  + "<body>"
+                  + "<p id='outer'>Outside the frame</p>"
+                  + "<iframe id='frame' srcdoc=\"<p id='inner'>Inside the frame</p>\"></iframe>"
+                  + "</body>"
+                  + "</html>",
+              "text/html",
+              null,
+              null);
+    }
+  }
+
   @Before
   public void setUp() throws Exception {
     ActivityScenario.launch(WebFormActivity.class);
@@ -151,4 +187,56 @@ public class JavaScriptExecutionActionTest {
         .perform(script("document.getElementById('submit').click()"))
         .check(webContent(elementById("info", withTextContent(containsString("stuff")))));
   }
+
+  @Test
+  public void testJavaScriptExecution_preloadedAtoms_elementReferences() {
+    JavascriptEvaluation.setPreloadAtoms(true);
+    try {
+      // Element references are resolved with the GET_ELEMENT atom, which is preloaded too.
+      onWebView(isAssignableFrom(WebView.class))
+          .withElement(findElement(Locator.ID, "input"))
+          .perform(webKeys(" more"))
+          .withElement(findElement(Locator.ID, "submit"))
+          .perform(webClick())
+          .withElement(findElement(Locator.ID, "info"))
+          .check(webMatches(getText(), containsString("Submitted: sample more")));
+    } finally {
+      JavascriptEvaluation.setPreloadAtoms(AtomRuntime.isEnabled());
+    }
+  }
+
+  @Test
+  public void testJavaScriptExecution_preloadedAtoms_windowReferences() {
+    onView(isAssignableFrom(WebView.class)).perform(new WebViewLoadFramedPage());
+    JavascriptEvaluation.setPreloadAtoms(true);
+    try {
+      // Scripts in a frame get their window from the atoms installed in the top window.
+      onWebView(isAssignableFrom(WebView.class))
+          .inWindow(selectFrameByIdOrName("frame"))
+          .withElement(findElement(Locator.ID, "inner"))
+          .check(webMatches(getText(), containsString("Inside the frame")));
+      onWebView(isAssignableFrom(WebView.class))
+          .withElement(findElement(Locator.ID, "outer"))
+          .check(webMatches(getText(), containsString("Outside the frame")));
+    } finally {
+      JavascriptEvaluation.setPreloadAtoms(AtomRuntime.isEnabled());
+    }
+  }
+
+  @Test
+  public void testJavaScriptExecution_preloadedAtoms_reinstalledAfterNavigation() {
+    JavascriptEvaluation.setPreloadAtoms(true);
+    try {
+      onWebView(isAssignableFrom(WebView.class))
+          .perform(script("document.getElementById('input').value = 'stuff'"));
+      // A new document doesn't have the atoms installed by the previous one.
+      onView(isAssignableFrom(WebView.class)).perform(new WebViewLoadDataBaseUrl(null, null));
+      onWebView(isAssignableFrom(WebView.class))
+          .perform(script("document.getElementById('input').value = 'stuff'"))
+          .perform(script("document.getElementById('submit').click()"))
+          .check(webContent(elementById("info", withTextContent(containsString("stuff")))));
+    } finally {
+      JavascriptEvaluation.setPreloadAtoms(AtomRuntime.isEnabled());
+    }
+  }
 }
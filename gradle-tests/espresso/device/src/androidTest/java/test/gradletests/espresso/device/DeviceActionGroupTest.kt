@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.gradletests.espresso.device
+
+import androidx.test.espresso.Espresso.onView
+import androidx.test.espresso.assertion.ViewAssertions.matches
+import androidx.test.espresso.device.EspressoDevice.Companion.onDevice
+import androidx.test.espresso.device.action.ScreenOrientation
+import androidx.test.espresso.device.action.setDisplaySize
+import androidx.test.espresso.device.action.setScreenOrientation
+import androidx.test.espresso.device.rules.DisplaySizeRule
+import androidx.test.espresso.device.rules.ScreenOrientationRule
+import androidx.test.espresso.device.sizeclass.HeightSizeClass
+import androidx.test.espresso.device.sizeclass.WidthSizeClass
+import androidx.test.espresso.matcher.ViewMatchers.withId
+import androidx.test.espresso.matcher.ViewMatchers.withText
+import androidx.test.ext.junit.rules.ActivityScenarioRule
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.RuleChain
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class DeviceActionGroupTest {
+  private val activityRule: ActivityScenarioRule<ScreenOrientationActivity> =
+    ActivityScenarioRule(ScreenOrientationActivity::class.java)
+
+  private val screenOrientationRule: ScreenOrientationRule =
+    ScreenOrientationRule(ScreenOrientation.PORTRAIT)
+
+  @get:Rule
+  val ruleChain: RuleChain =
+    RuleChain.outerRule(activityRule).around(DisplaySizeRule()).around(screenOrientationRule)
+
+  @Test
+  fun onDevice_performScreenOrientation() {
+    onDevice().perform(setScreenOrientation(ScreenOrientation.LANDSCAPE))
+
+    onView(withId(R.id.current_screen_orientation)).check(matches(withText("landscape")))
+  }
+
+  @Test
+  fun onDevice_performScreenOrientationsInOrder() {
+    onDevice()
+      .perform(
+        setScreenOrientation(ScreenOrientation.LANDSCAPE),
+        setScreenOrientation(ScreenOrientation.PORTRAIT),
+      )
+
+    onView(withId(R.id.current_screen_orientation)).check(matches(withText("portrait")))
+  }
+
+  @Test
+  fun onDevice_performScreenOrientationAndDisplaySize() {
+    onDevice()
+      .perform(
+        setScreenOrientation(ScreenOrientation.LANDSCAPE),
+        setDisplaySize(WidthSizeClass.EXPANDED, HeightSizeClass.MEDIUM),
+      )
+
+    onView(withId(R.id.current_screen_orientation)).check(matches(withText("landscape")))
+    activityRule.scenario.onActivity {
+      val configuration = it.resources.configuration
+      assertThat(WidthSizeClass.compute(configuration.screenWidthDp))
+        .isEqualTo(WidthSizeClass.EXPANDED)
+      assertThat(HeightSizeClass.compute(configuration.screenHeightDp))
+        .isEqualTo(HeightSizeClass.MEDIUM)
+    }
+  }
+
+  @Test
+  fun onDevice_performDisplaySize_returnsOnceTheActivityHasTheRequestedSize() {
+    onDevice().perform(setDisplaySize(WidthSizeClass.MEDIUM, HeightSizeClass.MEDIUM))
+
+    activityRule.scenario.onActivity {
+      val configuration = it.resources.configuration
+      assertThat(WidthSizeClass.compute(configuration.screenWidthDp))
+        .isEqualTo(WidthSizeClass.MEDIUM)
+      assertThat(HeightSizeClass.compute(configuration.screenHeightDp))
+        .isEqualTo(HeightSizeClass.MEDIUM)
+    }
+  }
+}
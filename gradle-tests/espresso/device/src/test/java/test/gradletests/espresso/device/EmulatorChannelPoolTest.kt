@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.gradletests.espresso.device
+
+import androidx.test.espresso.device.controller.emulator.EmulatorChannelPool
+import com.google.common.truth.Truth.assertThat
+import io.grpc.Attributes
+import io.grpc.CallOptions
+import io.grpc.ManagedChannel
+import io.grpc.MethodDescriptor
+import io.grpc.Server
+import io.grpc.ServerServiceDefinition
+import io.grpc.ServerTransportFilter
+import io.grpc.inprocess.InProcessChannelBuilder
+import io.grpc.inprocess.InProcessServerBuilder
+import io.grpc.stub.ClientCalls
+import io.grpc.stub.ServerCalls
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class EmulatorChannelPoolTest {
+  private val serverName = InProcessServerBuilder.generateName()
+  private val key = EmulatorChannelPool.Key("localhost", 8554, "cert", "key", "trust")
+  private lateinit var server: Server
+  private var channelsBuilt = 0
+  private var connectionsOpened = 0
+
+  @Before
+  fun setUp() {
+    server =
+      InProcessServerBuilder.forName(serverName)
+        .directExecutor()
+        .addService(echoService())
+        .addTransportFilter(
+          object : ServerTransportFilter() {
+            override fun transportReady(transportAttrs: Attributes): Attributes {
+              connectionsOpened++
+              return transportAttrs
+            }
+          }
+        )
+        .build()
+        .start()
+  }
+
+  @After
+  fun tearDown() {
+    EmulatorChannelPool.shutdown()
+    server.shutdownNow()
+  }
+
+  private fun buildChannel(): ManagedChannel {
+    channelsBuilt++
+    return InProcessChannelBuilder.forName(serverName).directExecutor().build()
+  }
+
+  @Test
+  fun getOrBuild_sameKey_reusesChannel() {
+    val first = EmulatorChannelPool.getOrBuild(key, ::buildChannel)
+    val second = EmulatorChannelPool.getOrBuild(key, ::buildChannel)
+
+    assertThat(second).isSameInstanceAs(first)
+    assertThat(channelsBuilt).isEqualTo(1)
+  }
+
+  @Test
+  fun getOrBuild_sameKey_callsShareOneConnection() {
+    val replies =
+      listOf("first", "second", "third").map { request ->
+        ClientCalls.blockingUnaryCall(
+          EmulatorChannelPool.getOrBuild(key, ::buildChannel),
+          ECHO_METHOD,
+          CallOptions.DEFAULT,
+          request,
+        )
+      }
+
+    assertThat(replies).containsExactly("first", "second", "third").inOrder()
+    assertThat(channelsBuilt).isEqualTo(1)
+    assertThat(connectionsOpened).isEqualTo(1)
+  }
+
+  @Test
+  fun getOrBuild_otherKey_buildsAnotherChannel() {
+    val first = EmulatorChannelPool.getOrBuild(key, ::buildChannel)
+    val second = EmulatorChannelPool.getOrBuild(key.copy(port = 8555), ::buildChannel)
+
+    assertThat(second).isNotSameInstanceAs(first)
+    assertThat(channelsBuilt).isEqualTo(2)
+  }
+
+  @Test
+  fun getOrBuild_afterChannelShutdown_rebuildsChannel() {
+    val first = EmulatorChannelPool.getOrBuild(key, ::buildChannel)
+    first.shutdown()
+
+    val second = EmulatorChannelPool.getOrBuild(key, ::buildChannel)
+
+    assertThat(second).isNotSameInstanceAs(first)
+    assertThat(second.isShutdown).isFalse()
+    assertThat(channelsBuilt).isEqualTo(2)
+  }
+
+  @Test
+  fun shutdown_shutsDownAllChannels() {
+    val first = EmulatorChannelPool.getOrBuild(key, ::buildChannel)
+    val second = EmulatorChannelPool.getOrBuild(key.copy(port = 8555), ::buildChannel)
+
+    EmulatorChannelPool.shutdown()
+
+    assertThat(first.isShutdown).isTrue()
+    assertThat(second.isShutdown).isTrue()
+    assertThat(EmulatorChannelPool.getOrBuild(key, ::buildChannel)).isNotSameInstanceAs(first)
+  }
+
+  private fun echoService(): ServerServiceDefinition =
+    ServerServiceDefinition.builder(ECHO_SERVICE)
+      .addMethod(
+        ECHO_METHOD,
+        ServerCalls.asyncUnaryCall<String, String> { request, responseObserver ->
+          responseObserver.onNext(request)
+          responseObserver.onCompleted()
+        },
+      )
+      .build()
+
+  private object StringMarshaller : MethodDescriptor.Marshaller<String> {
+    override fun stream(value: String): InputStream = ByteArrayInputStream(value.toByteArray())
+
+    override fun parse(stream: InputStream): String = String(stream.readBytes())
+  }
+
+  companion object {
+    private const val ECHO_SERVICE = "test.Echo"
+    private val ECHO_METHOD: MethodDescriptor<String, String> =
+      MethodDescriptor.newBuilder(StringMarshaller, StringMarshaller)
+        .setType(MethodDescriptor.MethodType.UNARY)
+        .setFullMethodName(MethodDescriptor.generateFullMethodName(ECHO_SERVICE, "Echo"))
+        .build()
+  }
+}
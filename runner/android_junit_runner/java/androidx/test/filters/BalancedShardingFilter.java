@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.filters;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/**
+ * A JUnit sharding filter that balances the expected duration of the shards.
+ *
+ * <p>Tests with a known duration are assigned with greedy longest-processing-time bin packing: from
+ * the longest to the shortest, each test goes to the shard with the smallest total duration so far.
+ * Every shard computes the same assignment, as it only depends on the given durations. Tests
+ * without a known duration are assigned by the hash code of their class name, so all the tests of a
+ * class run in the same shard and class level setup isn't repeated in several shards.
+ *
+ * <p>Durations are keyed by test id, the class name and method name separated by "#".
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public class BalancedShardingFilter extends Filter {
+  private final int numShards;
+  private final int shardIndex;
+  private final Map<String, Integer> shardsByTestId;
+
+  public BalancedShardingFilter(int numShards, int shardIndex, Map<String, Long> testDurations) {
+    this.numShards = numShards;
+    this.shardIndex = shardIndex;
+    this.shardsByTestId = assignShards(numShards, testDurations);
+  }
+
+  private static Map<String, Integer> assignShards(
+      int numShards, Map<String, Long> testDurations) {
+    List<Map.Entry<String, Long>> tests = new ArrayList<>(testDurations.entrySet());
+    // Longest first. Ties are broken by test id so every shard sorts the same way.
+    Collections.sort(
+        tests,
+        new Comparator<Map.Entry<String, Long>>() {
+          @Override
+          public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+            int byDuration = Long.compare(b.getValue(), a.getValue());
+            return byDuration != 0 ? byDuration : a.getKey().compareTo(b.getKey());
+          }
+        });
+    long[] shardDurations = new long[numShards];
+    Map<String, Integer> shardsByTestId = new HashMap<>();
+    for (Map.Entry<String, Long> test : tests) {
+      int shortestShard = 0;
+      for (int shard = 1; shard < numShards; shard++) {
+        if (shardDurations[shard] < shardDurations[shortestShard]) {
+          shortestShard = shard;
+        }
+      }
+      shardDurations[shortestShard] += test.getValue();
+      shardsByTestId.put(test.getKey(), shortestShard);
+    }
+    return shardsByTestId;
+  }
+
+  /** Returns the id of the given test, as used to key test durations. */
+  public static String getTestId(Description description) {
+    if (description.getMethodName() == null) {
+      return description.getDisplayName();
+    }
+    return description.getClassName() + "#" + description.getMethodName();
+  }
+
+  @Override
+  public boolean shouldRun(Description description) {
+    if (description.isTest()) {
+      Integer shard = shardsByTestId.get(getTestId(description));
+      if (shard == null) {
+        shard = Math.floorMod(String.valueOf(description.getClassName()).hashCode(), numShards);
+      }
+      return shard == shardIndex;
+    }
+
+    // The description is a suite, so assume that it can be run so that filtering is
+    // applied to its children. If after filtering it has no children then it will be
+    // automatically filtered out.
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String describe() {
+    return String.format("Balanced shard %d of %d shards", shardIndex, numShards);
+  }
+}
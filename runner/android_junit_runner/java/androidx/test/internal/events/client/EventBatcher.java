@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.events.client;
+
+import static androidx.test.internal.util.Checks.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Buffers the events sent to a test event service, and sends them in batches, so that a test run
+ * takes a few binder transactions rather than several per test.
+ *
+ * <p>The buffered events are sent once {@link #maxBatchSize} events are buffered, once the oldest
+ * of them has waited for {@link #flushDelayMillis}, and right after any event for which {@link
+ * FlushCondition#flushAfter} returns true, e.g. the end of the run, and failures, which are what a
+ * process crash is reported as.
+ *
+ * <p>Services that predate batches handle none of the events of a batch. The batcher then sends
+ * those events, and all the later ones, one by one.
+ */
+final class EventBatcher<E> {
+  private static final String TAG = "EventBatcher";
+
+  /** The default number of events sent in one batch. */
+  static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+  /** The default time an event is buffered for, at most. */
+  static final long DEFAULT_FLUSH_DELAY_MILLIS = 500;
+
+  /** Sends events to the test event service. */
+  interface Transport<E> {
+    /** Sends a single event. */
+    void send(@NonNull E event) throws TestEventClientException;
+
+    /**
+     * Sends the given events in a single call.
+     *
+     * @return the number of events, from the start of the list, that the service handled
+     */
+    int sendBatch(@NonNull List<E> events) throws TestEventClientException;
+  }
+
+  /** Determines which events are sent without waiting for more. */
+  interface FlushCondition<E> {
+    /** Returns true if the given event, and the ones buffered before it, should be sent now. */
+    boolean flushAfter(@NonNull E event);
+  }
+
+  private final Transport<E> transport;
+  private final FlushCondition<E> flushCondition;
+  private final int maxBatchSize;
+  private final long flushDelayMillis;
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private final List<E> buffer = new ArrayList<>();
+
+  @GuardedBy("lock")
+  private boolean batchesSupported = true;
+
+  @GuardedBy("lock")
+  @Nullable
+  private ScheduledExecutorService scheduler;
+
+  @GuardedBy("lock")
+  @Nullable
+  private ScheduledFuture<?> scheduledFlush;
+
+  EventBatcher(@NonNull Transport<E> transport, @NonNull FlushCondition<E> flushCondition) {
+    this(transport, flushCondition, DEFAULT_MAX_BATCH_SIZE, DEFAULT_FLUSH_DELAY_MILLIS);
+  }
+
+  EventBatcher(
+      @NonNull Transport<E> transport,
+      @NonNull FlushCondition<E> flushCondition,
+      int maxBatchSize,
+      long flushDelayMillis) {
+    this.transport = checkNotNull(transport, "transport cannot be null");
+    this.flushCondition = checkNotNull(flushCondition, "flushCondition cannot be null");
+    this.maxBatchSize = maxBatchSize;
+    this.flushDelayMillis = flushDelayMillis;
+  }
+
+  /**
+   * Buffers the given event, and sends the buffered events if needed. Once the service is known
+   * not to support batches, sends the event right away.
+   *
+   * @throws TestEventClientException if the buffered events could not be sent
+   */
+  void send(@NonNull E event) throws TestEventClientException {
+    checkNotNull(event, "event cannot be null");
+    synchronized (lock) {
+      if (!batchesSupported) {
+        transport.send(event);
+        return;
+      }
+      buffer.add(event);
+      if (buffer.size() >= maxBatchSize || flushCondition.flushAfter(event)) {
+        flushLocked();
+      } else if (scheduledFlush == null) {
+        scheduledFlush =
+            getScheduler().schedule(this::flushQuietly, flushDelayMillis, MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Sends the buffered events, if any.
+   *
+   * @throws TestEventClientException if the buffered events could not be sent
+   */
+  void flush() throws TestEventClientException {
+    synchronized (lock) {
+      flushLocked();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void flushLocked() throws TestEventClientException {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    if (buffer.isEmpty()) {
+      return;
+    }
+    List<E> events = new ArrayList<>(buffer);
+    buffer.clear();
+    int handled = transport.sendBatch(events);
+    if (handled < events.size()) {
+      Log.i(TAG, "Test event service doesn't support batches, sending events one by one");
+      batchesSupported = false;
+      for (E event : events.subList(Math.max(handled, 0), events.size())) {
+        transport.send(event);
+      }
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (TestEventClientException e) {
+      Log.e(TAG, "Failed to send test events", e);
+    }
+  }
+
+  @GuardedBy("lock")
+  private ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                  Thread t = Executors.defaultThreadFactory().newThread(r);
+                  t.setName(TAG);
+                  // Must not keep the instrumentation process alive.
+                  t.setDaemon(true);
+                  return t;
+                }
+              });
+    }
+    return scheduler;
+  }
+}
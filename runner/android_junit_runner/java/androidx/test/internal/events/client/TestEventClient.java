@@ -223,9 +223,10 @@ public final class TestEventClient {
       } else if (args.isTestRunEventsRequested) {
         if (args.testPlatformMigration) {
           return new TestPlatformEventServiceConnection(
-              checkNotNull(args.testRunEventService), listener);
+              checkNotNull(args.testRunEventService), listener, args.batchTestEvents);
         }
-        return new TestRunEventServiceConnection(checkNotNull(args.testRunEventService), listener);
+        return new TestRunEventServiceConnection(
+            checkNotNull(args.testRunEventService), listener, args.batchTestEvents);
       }
     }
     throw new IllegalArgumentException(
@@ -38,6 +38,7 @@ public final class TestEventClientArgs {
   @Nullable public final String testRunEventService;
   @Nullable public final ConnectionFactory connectionFactory;
   public final boolean testPlatformMigration;
+  public final boolean batchTestEvents;
 
   private TestEventClientArgs(
       boolean isOrchestrated, int orchestratorVersion, @NonNull Builder builder) {
@@ -50,6 +51,7 @@ public final class TestEventClientArgs {
     this.connectionFactory = builder.connectionFactory;
     this.orchestratorVersion = orchestratorVersion;
     this.testPlatformMigration = builder.testPlatformMigration;
+    this.batchTestEvents = builder.batchTestEvents;
   }
 
   /** Creates a new {@link TestEventClientArgs.Builder} instance. */
@@ -69,6 +71,7 @@ public final class TestEventClientArgs {
     boolean testDiscoveryRequested = false;
     boolean testRunEventsRequested = false;
     boolean testPlatformMigration = false;
+    boolean batchTestEvents = false;
     @Nullable private ConnectionFactory connectionFactory;
     @Nullable private String orchestratorService;
     @Nullable private String testDiscoveryService;
@@ -119,6 +122,16 @@ public final class TestEventClientArgs {
       return this;
     }
 
+    /**
+     * Send test run events to the Orchestrator v2 service in batches rather than one at a time.
+     * Services that don't support batches get the events one at a time either way.
+     */
+    @NonNull
+    public Builder setBatchTestEvents(boolean batchTestEvents) {
+      this.batchTestEvents = batchTestEvents;
+      return this;
+    }
+
     /**
      * Discover available tests and send {@link
      * androidx.test.services.events.discovery.TestDiscoveryEvent}s back to the Orchestrator v2
@@ -23,12 +23,17 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Build;
 import android.os.IBinder;
 import android.os.IInterface;
+import android.os.Process;
+import android.os.UserHandle;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 
 /**
  * The base class that service connections have to extend. Handles connection to the service proxy
@@ -39,10 +44,14 @@ public class TestEventServiceConnectionBase<T extends IInterface>
     implements TestEventServiceConnection {
   private static final String TAG = "ConnectionBase";
 
+  /** Connects to the service of this process' user. */
+  public static final int UID_UNSPECIFIED = -1;
+
   @NonNull private final TestEventClientConnectListener listener;
   @NonNull private final ServiceFromBinder<T> serviceFromBinder;
   @NonNull private final String serviceName;
   @Nullable private final String servicePackageName;
+  private final int serviceUid;
   @Nullable public T service = null;
 
   /** An interface to match the signature of {@link IInterface#asBinder()}. */
@@ -74,6 +83,23 @@ public class TestEventServiceConnectionBase<T extends IInterface>
       @NonNull String serviceName,
       @NonNull ServiceFromBinder<T> serviceFromBinder,
       @NonNull TestEventClientConnectListener listener) {
+    this(serviceName, serviceFromBinder, listener, UID_UNSPECIFIED);
+  }
+
+  /**
+   * Initializes a new Orchestrator service connection to the service running as the given uid. If
+   * the uid belongs to another user, connecting needs the {@code
+   * android.permission.INTERACT_ACROSS_USERS} permission.
+   *
+   * @param serviceUid the uid of the service, or {@link #UID_UNSPECIFIED} to connect to the service
+   *     of this process' user
+   */
+  public TestEventServiceConnectionBase(
+      @NonNull String serviceName,
+      @NonNull ServiceFromBinder<T> serviceFromBinder,
+      @NonNull TestEventClientConnectListener listener,
+      int serviceUid) {
+    this.serviceUid = serviceUid;
     this.serviceName = checkNotNull(getServiceNameOnly(serviceName), "serviceName cannot be null");
     this.servicePackageName =
         checkNotNull(getServicePackage(serviceName), "servicePackageName cannot be null");
@@ -87,11 +113,48 @@ public class TestEventServiceConnectionBase<T extends IInterface>
   public void connect(@NonNull Context context) {
     Intent intent = new Intent(serviceName);
     intent.setPackage(servicePackageName);
-    if (!context.bindService(intent, connection, Service.BIND_AUTO_CREATE)) {
+    if (!bindService(context, intent)) {
       throw new IllegalStateException("Cannot connect to " + serviceName);
     }
   }
 
+  private boolean bindService(Context context, Intent intent) {
+    if (serviceUid == UID_UNSPECIFIED) {
+      return context.bindService(intent, connection, Service.BIND_AUTO_CREATE);
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+      throw new IllegalStateException(
+          "Cannot connect to " + serviceName + " as uid " + serviceUid + " before API 24");
+    }
+    UserHandle user = UserHandle.getUserHandleForUid(serviceUid);
+    if (user.equals(Process.myUserHandle())) {
+      return context.bindService(intent, connection, Service.BIND_AUTO_CREATE);
+    }
+    Log.d(TAG, "Connecting to " + serviceName + " of " + user);
+    // Context#bindServiceAsUser is a system API, apps can only call it through reflection.
+    try {
+      Method bindServiceAsUser =
+          Context.class.getMethod(
+              "bindServiceAsUser",
+              Intent.class,
+              ServiceConnection.class,
+              int.class,
+              UserHandle.class);
+      return (Boolean)
+          bindServiceAsUser.invoke(context, intent, connection, Service.BIND_AUTO_CREATE, user);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException("Cannot connect to " + serviceName + " of " + user, e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException(
+          "Cannot connect to "
+              + serviceName
+              + " of "
+              + user
+              + ", is android.permission.INTERACT_ACROSS_USERS granted?",
+          e.getCause());
+    }
+  }
+
   /**
    * Splits the package name and service name parts from a string in the format
    * "com.sample.package/.foo.Service". The package name is optional. If the service name starts
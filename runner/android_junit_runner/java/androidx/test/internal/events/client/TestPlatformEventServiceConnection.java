@@ -20,22 +20,55 @@ import static androidx.test.internal.util.Checks.checkNotNull;
 
 import android.os.RemoteException;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.test.services.events.platform.ITestPlatformEvent;
+import androidx.test.services.events.platform.TestCaseErrorEvent;
 import androidx.test.services.events.platform.TestPlatformEvent;
+import androidx.test.services.events.platform.TestPlatformEventBatch;
+import androidx.test.services.events.platform.TestRunErrorEvent;
+import androidx.test.services.events.platform.TestRunFinishedEvent;
+import java.util.List;
 
 /** Handles the connection to the remote {@link ITestPlatformEvent} service. */
 public class TestPlatformEventServiceConnection
     extends TestEventServiceConnectionBase<ITestPlatformEvent> implements TestPlatformEventService {
 
+  @Nullable private final EventBatcher<TestPlatformEvent> batcher;
+
   TestPlatformEventServiceConnection(
       @NonNull String serviceName, @NonNull TestEventClientConnectListener listener) {
+    this(serviceName, listener, /* batchEvents= */ false);
+  }
+
+  /**
+   * Creates a connection that, if {@code batchEvents} is true, sends events in batches with
+   * {@link ITestPlatformEvent#sendBatch}, rather than one at a time.
+   */
+  TestPlatformEventServiceConnection(
+      @NonNull String serviceName,
+      @NonNull TestEventClientConnectListener listener,
+      boolean batchEvents) {
     super(serviceName, ITestPlatformEvent.Stub::asInterface, listener);
+    batcher =
+        batchEvents
+            ? new EventBatcher<>(
+                new BatchTransport(), TestPlatformEventServiceConnection::flushAfter)
+            : null;
   }
 
   /** {@inheritDoc} */
   @Override
   public void send(@NonNull TestPlatformEvent testPlatformEvent) throws TestEventClientException {
     checkNotNull(testPlatformEvent, "testPlatformEvent cannot be null");
+    if (batcher != null) {
+      batcher.send(testPlatformEvent);
+    } else {
+      sendNow(testPlatformEvent);
+    }
+  }
+
+  private void sendNow(@NonNull TestPlatformEvent testPlatformEvent)
+      throws TestEventClientException {
     if (service == null) {
       throw new TestEventClientException("Can't send test platform event, service not connected");
     }
@@ -45,4 +78,32 @@ public class TestPlatformEventServiceConnection
       throw new TestEventClientException("Failed to send test platform event", e);
     }
   }
+
+  // The end of the run is sent right away, and so are failures, as the process may be about to
+  // crash.
+  private static boolean flushAfter(TestPlatformEvent event) {
+    return event instanceof TestRunFinishedEvent
+        || event instanceof TestRunErrorEvent
+        || event instanceof TestCaseErrorEvent;
+  }
+
+  private final class BatchTransport implements EventBatcher.Transport<TestPlatformEvent> {
+    @Override
+    public void send(@NonNull TestPlatformEvent event) throws TestEventClientException {
+      sendNow(event);
+    }
+
+    @Override
+    public int sendBatch(@NonNull List<TestPlatformEvent> events) throws TestEventClientException {
+      if (service == null) {
+        throw new TestEventClientException(
+            "Can't send test platform events, service not connected");
+      }
+      try {
+        return service.sendBatch(new TestPlatformEventBatch(events));
+      } catch (RemoteException e) {
+        throw new TestEventClientException("Failed to send test platform events", e);
+      }
+    }
+  }
 }
@@ -20,22 +20,52 @@ import static androidx.test.internal.util.Checks.checkNotNull;
 
 import android.os.RemoteException;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.test.services.events.run.ITestRunEvent;
+import androidx.test.services.events.run.TestFailureEvent;
 import androidx.test.services.events.run.TestRunEvent;
+import androidx.test.services.events.run.TestRunEventBatch;
+import androidx.test.services.events.run.TestRunFinishedEvent;
+import java.util.List;
 
 /** Handles the connection to the remote {@link ITestRunEvent} service. */
 public class TestRunEventServiceConnection extends TestEventServiceConnectionBase<ITestRunEvent>
     implements TestRunEventService {
 
+  @Nullable private final EventBatcher<TestRunEvent> batcher;
+
   TestRunEventServiceConnection(
       @NonNull String serviceName, @NonNull TestEventClientConnectListener listener) {
+    this(serviceName, listener, /* batchEvents= */ false);
+  }
+
+  /**
+   * Creates a connection that, if {@code batchEvents} is true, sends events in batches with
+   * {@link ITestRunEvent#sendBatch}, rather than one at a time.
+   */
+  TestRunEventServiceConnection(
+      @NonNull String serviceName,
+      @NonNull TestEventClientConnectListener listener,
+      boolean batchEvents) {
     super(serviceName, ITestRunEvent.Stub::asInterface, listener);
+    batcher =
+        batchEvents
+            ? new EventBatcher<>(new BatchTransport(), TestRunEventServiceConnection::flushAfter)
+            : null;
   }
 
   /** {@inheritDoc} */
   @Override
   public void send(@NonNull TestRunEvent testRunEvent) throws TestEventClientException {
     checkNotNull(testRunEvent, "testRunEvent cannot be null");
+    if (batcher != null) {
+      batcher.send(testRunEvent);
+    } else {
+      sendNow(testRunEvent);
+    }
+  }
+
+  private void sendNow(@NonNull TestRunEvent testRunEvent) throws TestEventClientException {
     if (service == null) {
       throw new TestEventClientException("Can't send test run event, service not connected");
     }
@@ -45,4 +75,29 @@ public class TestRunEventServiceConnection extends TestEventServiceConnectionBas
       throw new TestEventClientException("Failed to send test run event", e);
     }
   }
+
+  // The end of the run is sent right away, and so are failures, as the process may be about to
+  // crash.
+  private static boolean flushAfter(TestRunEvent event) {
+    return event instanceof TestRunFinishedEvent || event instanceof TestFailureEvent;
+  }
+
+  private final class BatchTransport implements EventBatcher.Transport<TestRunEvent> {
+    @Override
+    public void send(@NonNull TestRunEvent event) throws TestEventClientException {
+      sendNow(event);
+    }
+
+    @Override
+    public int sendBatch(@NonNull List<TestRunEvent> events) throws TestEventClientException {
+      if (service == null) {
+        throw new TestEventClientException("Can't send test run events, service not connected");
+      }
+      try {
+        return service.sendBatch(new TestRunEventBatch(events));
+      } catch (RemoteException e) {
+        throw new TestEventClientException("Failed to send test run events", e);
+      }
+    }
+  }
 }
@@ -40,8 +40,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.junit.runner.manipulation.Filter;
 import org.junit.runner.notification.RunListener;
@@ -82,6 +84,7 @@ public class RunnerArgs {
   static final String ARGUMENT_TARGET_PROCESS = "targetProcess";
   static final String ARGUMENT_SCREENSHOT_PROCESSORS = "screenCaptureProcessors";
   static final String ARGUMENT_ORCHESTRATOR_SERVICE = "orchestratorService";
+  static final String ARGUMENT_ORCHESTRATOR_UID = "orchestratorUid";
   static final String ARGUMENT_LIST_TESTS_FOR_ORCHESTRATOR = "listTestsForOrchestrator";
   static final String ARGUMENT_ORCHESTRATOR_DISCOVERY_SERVICE = "testDiscoveryService";
   static final String ARGUMENT_ORCHESTRATOR_RUN_EVENTS_SERVICE = "testRunEventsService";
@@ -90,12 +93,22 @@ public class RunnerArgs {
   // be removed in April 2021. Depending on this flag is discouraged and dependents will not be
   // supported.
   static final String ARGUMENT_TEST_PLATFORM_MIGRATION = "temporary_testPlatformMigration";
+  static final String ARGUMENT_BATCH_TEST_EVENTS = "batchTestEvents";
   // Specifies whether the `androidx.test.services` service is installed on the device.
   // Supposed to be used by the test infrastructure only.
   public static final String ARGUMENT_USE_TEST_STORAGE_SERVICE = "useTestStorageService";
   static final String ARGUMENT_SHELL_EXEC_BINDER_KEY = "shellExecBinderKey";
   static final String ARGUMENT_RUN_LISTENER_NEW_ORDER = "newRunListenerMode";
   static final String ARGUMENT_TESTS_REGEX = "tests_regex";
+  static final String ARGUMENT_USE_TEST_DISCOVERY_INDEX = "useTestDiscoveryIndex";
+  static final String ARGUMENT_PARALLEL_DISCOVERY = "parallelDiscovery";
+  static final String ARGUMENT_SHARDING_STRATEGY = "shardingStrategy";
+  static final String ARGUMENT_TEST_DURATIONS_FILE = "testDurationsFile";
+
+  // Assigns tests to shards by the hash code of their description. The default.
+  public static final String SHARDING_STRATEGY_HASH = "hash";
+  // Balances the expected duration of shards, see BalancedShardingFilter.
+  public static final String SHARDING_STRATEGY_BALANCED = "balanced";
 
   // used to separate multiple fully-qualified test case class names
   private static final String CLASS_SEPARATOR = ",";
@@ -131,6 +144,7 @@ public class RunnerArgs {
   public final String targetProcess;
   public final List<ScreenCaptureProcessor> screenCaptureProcessors;
   public final String orchestratorService;
+  public final int orchestratorUid;
   public final boolean listTestsForOrchestrator;
   public final String testDiscoveryService;
   public final String testRunEventsService;
@@ -139,6 +153,12 @@ public class RunnerArgs {
   public final boolean newRunListenerMode;
   public final String testsRegEx;
   public final boolean testPlatformMigration;
+  public final boolean batchTestEvents;
+  public final boolean useTestDiscoveryIndex;
+  public final int parallelDiscovery;
+  public final String shardingStrategy;
+  // Test durations in milliseconds by test id, as used by the balanced sharding strategy.
+  public final Map<String, Long> testDurations;
 
   public static long parseTestTimeout(Bundle args) {
     return Builder.parseUnsignedLong(args.getString(ARGUMENT_TIMEOUT), ARGUMENT_TIMEOUT);
@@ -196,6 +216,7 @@ public class RunnerArgs {
     this.classpathToScan = builder.classpathToScan;
     this.remoteMethod = builder.remoteMethod;
     this.orchestratorService = builder.orchestratorService;
+    this.orchestratorUid = builder.orchestratorUid;
     this.listTestsForOrchestrator = builder.listTestsForOrchestrator;
     this.testDiscoveryService = builder.testDiscoveryService;
     this.testRunEventsService = builder.testRunEventsService;
@@ -206,6 +227,11 @@ public class RunnerArgs {
     this.newRunListenerMode = builder.newRunListenerMode;
     this.testsRegEx = builder.testsRegEx;
     this.testPlatformMigration = builder.testPlatformMigration;
+    this.batchTestEvents = builder.batchTestEvents;
+    this.useTestDiscoveryIndex = builder.useTestDiscoveryIndex;
+    this.parallelDiscovery = builder.parallelDiscovery;
+    this.shardingStrategy = builder.shardingStrategy;
+    this.testDurations = Collections.unmodifiableMap(builder.testDurations);
   }
 
   /** Builder for {@link RunnerArgs}. */
@@ -236,6 +262,7 @@ public class RunnerArgs {
     private Set<String> classpathToScan = new HashSet<>();
     private TestArg remoteMethod = null;
     private String orchestratorService = null;
+    private int orchestratorUid = -1;
     private boolean listTestsForOrchestrator = false;
     private String testDiscoveryService = null;
     private String testRunEventsService = null;
@@ -246,6 +273,11 @@ public class RunnerArgs {
     private boolean newRunListenerMode = false;
     private String testsRegEx = null;
     private boolean testPlatformMigration = false;
+    private boolean batchTestEvents = false;
+    private boolean useTestDiscoveryIndex = false;
+    private int parallelDiscovery = 0;
+    private String shardingStrategy = SHARDING_STRATEGY_HASH;
+    private Map<String, Long> testDurations = new HashMap<>();
     private final PlatformTestStorage testStorage;
 
     public Builder() {
@@ -310,6 +342,8 @@ public class RunnerArgs {
         this.remoteMethod = parseTestClass(bundle.getString(ARGUMENT_REMOTE_INIT_METHOD));
       }
       this.orchestratorService = bundle.getString(ARGUMENT_ORCHESTRATOR_SERVICE);
+      this.orchestratorUid =
+          parseUnsignedInt(bundle.get(ARGUMENT_ORCHESTRATOR_UID), ARGUMENT_ORCHESTRATOR_UID);
       this.listTestsForOrchestrator =
           parseBoolean(bundle.getString(ARGUMENT_LIST_TESTS_FOR_ORCHESTRATOR));
       this.testDiscoveryService = bundle.getString(ARGUMENT_ORCHESTRATOR_DISCOVERY_SERVICE);
@@ -324,6 +358,15 @@ public class RunnerArgs {
       this.newRunListenerMode = parseBoolean(bundle.getString(ARGUMENT_RUN_LISTENER_NEW_ORDER));
       this.testsRegEx = bundle.getString(ARGUMENT_TESTS_REGEX);
       this.testPlatformMigration = parseBoolean(bundle.getString(ARGUMENT_TEST_PLATFORM_MIGRATION));
+      this.batchTestEvents = parseBoolean(bundle.getString(ARGUMENT_BATCH_TEST_EVENTS));
+      this.useTestDiscoveryIndex =
+          parseBoolean(bundle.getString(ARGUMENT_USE_TEST_DISCOVERY_INDEX));
+      this.parallelDiscovery =
+          parseUnsignedInt(bundle.get(ARGUMENT_PARALLEL_DISCOVERY), ARGUMENT_PARALLEL_DISCOVERY);
+      this.shardingStrategy = parseShardingStrategy(bundle.getString(ARGUMENT_SHARDING_STRATEGY));
+      this.testDurations =
+          parseTestDurationsFile(
+              instr, useTestStorageService, bundle.getString(ARGUMENT_TEST_DURATIONS_FILE));
       return this;
     }
 
@@ -357,6 +400,86 @@ public class RunnerArgs {
       }
     }
 
+    private static String parseShardingStrategy(String value) {
+      if (value == null) {
+        return SHARDING_STRATEGY_HASH;
+      }
+      if (!SHARDING_STRATEGY_HASH.equals(value) && !SHARDING_STRATEGY_BALANCED.equals(value)) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Invalid %s '%s', must be '%s' or '%s'",
+                ARGUMENT_SHARDING_STRATEGY,
+                value,
+                SHARDING_STRATEGY_HASH,
+                SHARDING_STRATEGY_BALANCED));
+      }
+      return value;
+    }
+
+    /**
+     * Reads the durations of earlier test runs. A missing or unreadable file is not an error, tests
+     * are then sharded as if their durations were unknown.
+     */
+    private Map<String, Long> parseTestDurationsFile(
+        Instrumentation instr, boolean useStorageService, String filePath) {
+      if (filePath == null) {
+        return new HashMap<>();
+      }
+
+      if (useStorageService) {
+        String localFilePath = filePath.startsWith("/") ? filePath.substring(1) : filePath;
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(testStorage.openInputFile(localFilePath)))) {
+          return parseTestDurations(reader);
+        } catch (IOException e) {
+          Log.w(
+              LOG_TAG,
+              String.format(
+                  "Could not read test durations file from TestStorage %s. "
+                      + "Attempting to read from local file system",
+                  filePath),
+              e);
+          // fall through
+        }
+      }
+
+      try (BufferedReader reader = openFile(instr, filePath)) {
+        return parseTestDurations(reader);
+      } catch (IOException e) {
+        Log.w(LOG_TAG, "Could not read test durations file " + filePath, e);
+        return new HashMap<>();
+      }
+    }
+
+    /**
+     * Parses test durations, one test per line in the form {@code class#method,durationMillis}.
+     * Blank and malformed lines are skipped.
+     */
+    @VisibleForTesting
+    static Map<String, Long> parseTestDurations(BufferedReader reader) throws IOException {
+      Map<String, Long> durations = new HashMap<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        int separator = line.lastIndexOf(',');
+        if (separator <= 0) {
+          if (!line.isEmpty()) {
+            Log.w(LOG_TAG, "Skipping malformed test duration: " + line);
+          }
+          continue;
+        }
+        try {
+          long duration = Long.parseLong(line.substring(separator + 1).trim());
+          if (duration >= 0) {
+            durations.put(line.substring(0, separator).trim(), duration);
+          }
+        } catch (NumberFormatException e) {
+          Log.w(LOG_TAG, "Skipping malformed test duration: " + line);
+        }
+      }
+      return durations;
+    }
+
     /** Populate the arg data from the instrumentation:metadata attribute in Manifest. */
     public Builder fromManifest(Instrumentation instr) {
       PackageManager pm = instr.getContext().getPackageManager();
@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.runner;
+
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.test.platform.io.PlatformTestStorage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.runner.Description;
+
+/**
+ * A persistent index of the classes found by class path scanning, and of what is known about them.
+ *
+ * <p>For every class name found in the scanned paths the index records whether it is a test, and
+ * for tests the names of the annotations on the class and its test methods, and the hash codes of
+ * the test descriptions. This lets a later run with the same paths skip the dex enumeration, skip
+ * loading classes that are known not to be tests, and skip loading test classes that the
+ * annotation, size or sharding filters would remove anyway.
+ *
+ * <p>The index is only valid for the key it was created with, see {@link #computeKey}. A stored
+ * index that was written for another key, or that cannot be read, is ignored and the index starts
+ * out empty.
+ */
+final class TestDiscoveryIndex {
+  private static final String TAG = "TestDiscoveryIndex";
+
+  private static final int VERSION = 1;
+  private static final byte STATE_UNKNOWN = 0;
+  private static final byte STATE_NOT_TEST = 1;
+  private static final byte STATE_TEST = 2;
+
+  /** What is known about a class that was loaded in an earlier run. */
+  static final class ClassInfo {
+    private static final ClassInfo NOT_TEST =
+        new ClassInfo(false, Collections.<String>emptySet(), new int[0]);
+
+    final boolean isTest;
+    // Names of the annotations on the test class, or on any of its tests.
+    final Set<String> annotations;
+    final int[] testHashCodes;
+
+    private ClassInfo(boolean isTest, Set<String> annotations, int[] testHashCodes) {
+      this.isTest = isTest;
+      this.annotations = annotations;
+      this.testHashCodes = testHashCodes;
+    }
+
+    /**
+     * Returns false if none of the tests of the class can pass the given filters.
+     *
+     * @param requiredAnnotations sets of annotation names where a test must have at least one
+     *     annotation from each set
+     * @param numShards the number of shards, or 0 if not sharding
+     * @param shardIndex the index of the shard being run
+     */
+    boolean mayHaveTestsFor(List<Set<String>> requiredAnnotations, int numShards, int shardIndex) {
+      if (!isTest) {
+        return false;
+      }
+      for (Set<String> anyOf : requiredAnnotations) {
+        if (Collections.disjoint(anyOf, annotations)) {
+          return false;
+        }
+      }
+      if (numShards <= 0) {
+        return true;
+      }
+      for (int hashCode : testHashCodes) {
+        if (Math.floorMod(hashCode, numShards) == shardIndex) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    static ClassInfo fromDescription(Description description) {
+      Set<String> annotations = new TreeSet<>();
+      List<Integer> hashCodes = new ArrayList<>();
+      Set<Class<?>> testClasses = new LinkedHashSet<>();
+      Deque<Description> pending = new ArrayDeque<>();
+      pending.add(description);
+      while (!pending.isEmpty()) {
+        Description each = pending.removeFirst();
+        if (each.isTest()) {
+          hashCodes.add(each.hashCode());
+          addAnnotationNames(annotations, each.getAnnotations());
+          if (each.getTestClass() != null) {
+            testClasses.add(each.getTestClass());
+          }
+        } else {
+          pending.addAll(each.getChildren());
+        }
+      }
+      for (Class<?> testClass : testClasses) {
+        addAnnotationNames(annotations, Arrays.asList(testClass.getAnnotations()));
+      }
+      int[] testHashCodes = new int[hashCodes.size()];
+      for (int i = 0; i < testHashCodes.length; i++) {
+        testHashCodes[i] = hashCodes.get(i);
+      }
+      return new ClassInfo(true, annotations, testHashCodes);
+    }
+
+    private static void addAnnotationNames(
+        Set<String> names, Collection<? extends Annotation> annotations) {
+      for (Annotation annotation : annotations) {
+        names.add(annotation.annotationType().getName());
+      }
+    }
+  }
+
+  /** Where an index is kept between runs. */
+  interface Storage {
+    /** Opens the stored index, or returns null if none has been stored yet. */
+    @Nullable
+    InputStream openInputStream() throws IOException;
+
+    /** Replaces the stored index with the given contents. */
+    void write(byte[] contents) throws IOException;
+  }
+
+  /** Keeps the index in a file, which is replaced atomically. */
+  static final class FileStorage implements Storage {
+    private final File file;
+
+    FileStorage(File file) {
+      this.file = file;
+    }
+
+    @Nullable
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return file.exists() ? new FileInputStream(file) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The contents are written to a temporary file that is then renamed, so concurrent or
+     * interrupted runs never see a partially written index.
+     */
+    @Override
+    public void write(byte[] contents) throws IOException {
+      File parent = file.getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+        throw new IOException("Failed to create directory " + parent);
+      }
+      File tempFile = new File(file.getPath() + ".tmp");
+      try {
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+          out.write(contents);
+        }
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Failed to rename " + tempFile + " to " + file);
+        }
+      } catch (IOException e) {
+        tempFile.delete();
+        throw e;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return file.toString();
+    }
+  }
+
+  /**
+   * Keeps the index in an internal file of a {@link PlatformTestStorage}.
+   *
+   * <p>With the test storage service these files belong to the test services app, so unlike the
+   * data dirs of the test and target apps they are not cleared by {@code pm clear}.
+   */
+  static final class TestStorageFile implements Storage {
+    private final PlatformTestStorage testStorage;
+    private final String pathname;
+
+    TestStorageFile(PlatformTestStorage testStorage, String pathname) {
+      this.testStorage = testStorage;
+      this.pathname = pathname;
+    }
+
+    @Nullable
+    @Override
+    public InputStream openInputStream() {
+      try {
+        return testStorage.openInternalInputFile(pathname);
+      } catch (FileNotFoundException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public void write(byte[] contents) throws IOException {
+      try (OutputStream out = testStorage.openInternalOutputFile(pathname)) {
+        out.write(contents);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "internal test storage file " + pathname;
+    }
+  }
+
+  private final Storage storage;
+  private final String key;
+  @Nullable private List<String> classNames;
+  private final Map<String, ClassInfo> classes = new HashMap<>();
+  private boolean modified;
+
+  private TestDiscoveryIndex(Storage storage, String key) {
+    this.storage = storage;
+    this.key = key;
+  }
+
+  /**
+   * Reads the index kept in the given storage. Returns an empty index if none is stored, or if it
+   * cannot be read or was written for a different key.
+   */
+  static TestDiscoveryIndex load(Storage storage, String key) {
+    TestDiscoveryIndex index = new TestDiscoveryIndex(storage, key);
+    try (InputStream stored = storage.openInputStream()) {
+      if (stored == null) {
+        return index;
+      }
+      DataInputStream in = new DataInputStream(new BufferedInputStream(stored));
+      if (in.readInt() != VERSION || !key.equals(in.readUTF())) {
+        Log.i(TAG, "Ignoring out of date test discovery index " + storage);
+        return index;
+      }
+      String[] annotationNames = new String[in.readInt()];
+      for (int i = 0; i < annotationNames.length; i++) {
+        annotationNames[i] = in.readUTF();
+      }
+      int classCount = in.readInt();
+      List<String> classNames = new ArrayList<>(classCount);
+      for (int i = 0; i < classCount; i++) {
+        String className = in.readUTF();
+        classNames.add(className);
+        byte state = in.readByte();
+        if (state == STATE_NOT_TEST) {
+          index.classes.put(className, ClassInfo.NOT_TEST);
+        } else if (state == STATE_TEST) {
+          Set<String> annotations = new TreeSet<>();
+          int annotationCount = in.readInt();
+          for (int j = 0; j < annotationCount; j++) {
+            annotations.add(annotationNames[in.readInt()]);
+          }
+          int[] testHashCodes = new int[in.readInt()];
+          for (int j = 0; j < testHashCodes.length; j++) {
+            testHashCodes[j] = in.readInt();
+          }
+          index.classes.put(className, new ClassInfo(true, annotations, testHashCodes));
+        }
+      }
+      index.classNames = classNames;
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Failed to read test discovery index " + storage, e);
+      index.classNames = null;
+      index.classes.clear();
+    }
+    return index;
+  }
+
+  /**
+   * Computes the key of an index for the given paths to scan.
+   *
+   * <p>The key changes whenever the dex files in the paths change, so an index is never used for
+   * another build of the test apk. For zip files (apks) only the checksums of the classes*.dex
+   * entries are read, from the central directory, rather than hashing the whole file. The device
+   * fingerprint and the runner builders are part of the key as they affect which classes can be
+   * loaded and which are tests.
+   */
+  static String computeKey(Collection<String> paths, Collection<String> runnerBuilderClassNames) {
+    StringBuilder key = new StringBuilder();
+    key.append(Build.FINGERPRINT);
+    for (String runnerBuilderClassName : runnerBuilderClassNames) {
+      key.append(';').append(runnerBuilderClassName);
+    }
+    for (String path : new TreeSet<>(paths)) {
+      key.append(';').append(path).append('=').append(checksum(new File(path)));
+    }
+    return key.toString();
+  }
+
+  private static String checksum(File file) {
+    try (ZipFile zipFile = new ZipFile(file)) {
+      StringBuilder checksum = new StringBuilder();
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.getName().startsWith("classes") && entry.getName().endsWith(".dex")) {
+          checksum
+              .append(entry.getName())
+              .append(':')
+              .append(Long.toHexString(entry.getCrc()))
+              .append(',');
+        }
+      }
+      return checksum.toString();
+    } catch (IOException e) {
+      // not a zip file, e.g. a plain .dex file
+      return file.length() + ":" + file.lastModified();
+    }
+  }
+
+  /** Returns the names of all scanned classes in scanning order, or null if not known yet. */
+  @Nullable
+  List<String> getClassNames() {
+    return classNames;
+  }
+
+  /** Records the names of all classes found by scanning the paths. */
+  void setClassNames(Collection<String> classNames) {
+    this.classNames = new ArrayList<>(classNames);
+    modified = true;
+  }
+
+  /** Returns what is known about the given class, or null if it hasn't been loaded yet. */
+  @Nullable
+  ClassInfo get(String className) {
+    return classes.get(className);
+  }
+
+  /** Records that the given class is not a test. */
+  void putNotTest(String className) {
+    classes.put(className, ClassInfo.NOT_TEST);
+    modified = true;
+  }
+
+  /** Records that the given class is a test, with the given description. */
+  void putTest(String className, Description description) {
+    classes.put(className, ClassInfo.fromDescription(description));
+    modified = true;
+  }
+
+  /** Writes the index to its storage if it changed. */
+  void save() {
+    if (!modified || classNames == null) {
+      return;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        write(out);
+      }
+      storage.write(bytes.toByteArray());
+      modified = false;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write test discovery index " + storage, e);
+    }
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    Map<String, Integer> annotationIds = new LinkedHashMap<>();
+    for (ClassInfo info : classes.values()) {
+      for (String annotation : info.annotations) {
+        if (!annotationIds.containsKey(annotation)) {
+          annotationIds.put(annotation, annotationIds.size());
+        }
+      }
+    }
+    out.writeInt(VERSION);
+    out.writeUTF(key);
+    out.writeInt(annotationIds.size());
+    for (String annotation : annotationIds.keySet()) {
+      out.writeUTF(annotation);
+    }
+    out.writeInt(classNames.size());
+    for (String className : classNames) {
+      out.writeUTF(className);
+      ClassInfo info = classes.get(className);
+      if (info == null) {
+        out.writeByte(STATE_UNKNOWN);
+      } else if (!info.isTest) {
+        out.writeByte(STATE_NOT_TEST);
+      } else {
+        out.writeByte(STATE_TEST);
+        out.writeInt(info.annotations.size());
+        for (String annotation : info.annotations) {
+          out.writeInt(annotationIds.get(annotation));
+        }
+        out.writeInt(info.testHashCodes.length);
+        for (int hashCode : info.testHashCodes) {
+          out.writeInt(hashCode);
+        }
+      }
+    }
+  }
+}
@@ -20,8 +20,11 @@ import androidx.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.junit.runner.Runner;
 import org.junit.runners.model.RunnerBuilder;
 
@@ -38,27 +41,74 @@ public abstract class TestLoader {
 
     public static TestLoader create(
         @Nullable ClassLoader classLoader, RunnerBuilder runnerBuilder, boolean scanningPath) {
+      return create(classLoader, runnerBuilder, scanningPath, 1);
+    }
+
+    /**
+     * Creates a {@link TestLoader} that loads up to {@code parallelism} classes at the same time.
+     *
+     * <p>With a parallelism greater than 1, the given {@link RunnerBuilder} must be thread safe.
+     */
+    public static TestLoader create(
+        @Nullable ClassLoader classLoader,
+        RunnerBuilder runnerBuilder,
+        boolean scanningPath,
+        int parallelism) {
 
       if (classLoader == null) {
         classLoader = TestLoader.class.getClassLoader();
       }
 
+      TestLoader loader;
       if (scanningPath) {
-        return new ScanningTestLoader(classLoader, runnerBuilder);
+        loader = new ScanningTestLoader(classLoader, runnerBuilder);
       } else {
-        return new DirectTestLoader(classLoader, runnerBuilder);
+        loader = new DirectTestLoader(classLoader, runnerBuilder);
       }
+      loader.parallelism = Math.max(1, parallelism);
+      return loader;
     }
   }
 
+  // Classes per fork join task, to keep the overhead of tasks small compared to loading classes.
+  private static final int CLASSES_PER_TASK = 16;
+
+  private int parallelism = 1;
+
   protected abstract Runner doCreateRunner(String className);
 
   /**
    * Get the {@link Collection) of {@link Runner runners}.
    */
   public List<Runner> getRunnersFor(Collection<String> classNames) {
+    return new ArrayList<>(getRunnersByClassName(classNames).values());
+  }
+
+  /**
+   * Get the {@link Runner runners} for the given classes, keyed by class name in the order of the
+   * given names. Classes that are not tests have no entry.
+   */
+  Map<String, Runner> getRunnersByClassName(Collection<String> classNames) {
     final Map<String, Runner> runnersMap = new LinkedHashMap<>();
 
+    if (parallelism > 1) {
+      // Load classes in parallel, but keep the runners in the order of the given class names.
+      String[] uniqueClassNames = new LinkedHashSet<>(classNames).toArray(new String[0]);
+      Runner[] runners = new Runner[uniqueClassNames.length];
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        pool.invoke(new CreateRunnersTask(uniqueClassNames, runners, 0, runners.length));
+      } finally {
+        pool.shutdown();
+      }
+      for (int i = 0; i < uniqueClassNames.length; i++) {
+        if (runners[i] != null) {
+          runnersMap.put(uniqueClassNames[i], runners[i]);
+        }
+      }
+      return runnersMap;
+    }
+
     for (String className : classNames) {
       if (!runnersMap.containsKey(className)) {
         Runner runner = doCreateRunner(className);
@@ -67,6 +117,35 @@ public abstract class TestLoader {
         }
       }
     }
-    return new ArrayList<>(runnersMap.values());
+    return runnersMap;
+  }
+
+  /** Creates the runners for a range of class names, splitting large ranges into subtasks. */
+  private class CreateRunnersTask extends RecursiveAction {
+    private final String[] classNames;
+    private final Runner[] runners;
+    private final int start;
+    private final int end;
+
+    CreateRunnersTask(String[] classNames, Runner[] runners, int start, int end) {
+      this.classNames = classNames;
+      this.runners = runners;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= CLASSES_PER_TASK) {
+        for (int i = start; i < end; i++) {
+          runners[i] = doCreateRunner(classNames[i]);
+        }
+      } else {
+        int middle = (start + end) >>> 1;
+        invokeAll(
+            new CreateRunnersTask(classNames, runners, start, middle),
+            new CreateRunnersTask(classNames, runners, middle, end));
+      }
+    }
   }
 }
@@ -20,19 +20,24 @@ import android.app.Instrumentation;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.test.filters.AbstractFilter;
+import androidx.test.filters.BalancedShardingFilter;
 import androidx.test.filters.CustomFilter;
 import androidx.test.filters.RequiresDevice;
 import androidx.test.filters.SdkSuppressFilter;
 import androidx.test.filters.ShardingFilter;
 import androidx.test.filters.TestsRegExFilter;
 import androidx.test.internal.runner.ClassPathScanner.ChainedClassNameFilter;
+import androidx.test.internal.runner.ClassPathScanner.ClassNameFilter;
 import androidx.test.internal.runner.ClassPathScanner.ExcludeClassNamesFilter;
 import androidx.test.internal.runner.ClassPathScanner.ExcludePackageNameFilter;
 import androidx.test.internal.runner.ClassPathScanner.ExternalClassNameFilter;
 import androidx.test.internal.runner.ClassPathScanner.InclusivePackageNamesFilter;
+import androidx.test.platform.io.PlatformTestStorage;
 import androidx.tracing.Trace;
+import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
@@ -87,6 +92,13 @@ public class TestRequestBuilder {
   private boolean skipExecution = false;
   private long perTestTimeout = 0;
   private ClassLoader classLoader;
+  @Nullable private TestDiscoveryIndex.Storage testDiscoveryIndexStorage = null;
+  private int discoveryParallelism = 1;
+  // What the filters require of a test, as far as a test discovery index can tell without loading
+  // the test class: an annotation from each set, and being in the given shard.
+  private final List<Set<String>> requiredAnnotationNames = new ArrayList<>();
+  private int numShards = 0;
+  private int shardIndex = 0;
 
   /**
    * Instructs the test builder if JUnit3 suite() methods should be executed.
@@ -189,6 +201,30 @@ public class TestRequestBuilder {
     }
   }
 
+  /**
+   * A {@link RunnerBuilder} that delegates to a separate builder on each thread, so runners can be
+   * built on several threads at once. {@link RunnerBuilder}s track the suites being built without
+   * synchronization.
+   */
+  private class PerThreadRunnerBuilder extends RunnerBuilder {
+    private final ThreadLocal<RunnerBuilder> builders;
+
+    PerThreadRunnerBuilder(final boolean ignoreSuiteMethods) {
+      builders =
+          new ThreadLocal<RunnerBuilder>() {
+            @Override
+            protected RunnerBuilder initialValue() {
+              return getRunnerBuilder(ignoreSuiteMethods, perTestTimeout);
+            }
+          };
+    }
+
+    @Override
+    public Runner runnerForClass(Class<?> testClass) throws Throwable {
+      return builders.get().runnerForClass(testClass);
+    }
+  }
+
   private static class ExtendedSuite extends Suite {
 
     static Suite createSuite(List<Runner> runners) {
@@ -478,6 +514,47 @@ public class TestRequestBuilder {
     return this;
   }
 
+  /**
+   * Instruct builder to keep a {@link TestDiscoveryIndex} of the scanned paths in the given file.
+   *
+   * <p>When scanning paths, later runs then take the class names from the index rather than from
+   * the dex files, and only load the classes that may have tests passing the filters.
+   *
+   * @param file the file to store the index in, or null to not use an index.
+   */
+  public TestRequestBuilder setTestDiscoveryIndexFile(@Nullable File file) {
+    testDiscoveryIndexStorage = file != null ? new TestDiscoveryIndex.FileStorage(file) : null;
+    return this;
+  }
+
+  /**
+   * Like {@link #setTestDiscoveryIndexFile}, but keeps the index in an internal file of the given
+   * test storage.
+   *
+   * <p>With the test storage service the index then survives {@code pm clear} of the test and
+   * target apps, as done by the orchestrator's clearPackageData option.
+   *
+   * @param testStorage the test storage to keep the index in
+   * @param pathname the path of the internal file to store the index in
+   */
+  public TestRequestBuilder setTestDiscoveryIndexTestStorageFile(
+      PlatformTestStorage testStorage, String pathname) {
+    testDiscoveryIndexStorage = new TestDiscoveryIndex.TestStorageFile(testStorage, pathname);
+    return this;
+  }
+
+  /**
+   * Instruct builder to load and inspect up to the given number of candidate test classes at the
+   * same time. The order of the tests is the same as when loading one class at a time.
+   *
+   * @param parallelism the number of threads to load classes on, or 1 to load them on the calling
+   *     thread.
+   */
+  public TestRequestBuilder setDiscoveryParallelism(int parallelism) {
+    discoveryParallelism = parallelism;
+    return this;
+  }
+
   /**
    * Set the {@link ClassLoader} to be used to load test cases.
    *
@@ -578,6 +655,7 @@ public class TestRequestBuilder {
   public TestRequestBuilder addTestSizeFilter(TestSize forTestSize) {
     if (!TestSize.NONE.equals(forTestSize)) {
       addFilter(new SizeFilter(forTestSize));
+      requiredAnnotationNames.add(forTestSize.getAnnotationClassNames());
     } else {
       Log.e(TAG, String.format("Unrecognized test size '%s'", forTestSize.getSizeQualifierName()));
     }
@@ -593,6 +671,7 @@ public class TestRequestBuilder {
     Class<? extends Annotation> annotationClass = loadAnnotationClass(annotation);
     if (annotationClass != null) {
       addFilter(new AnnotationInclusionFilter(annotationClass));
+      requiredAnnotationNames.add(Collections.singleton(annotationClass.getName()));
     }
     return this;
   }
@@ -611,9 +690,24 @@ public class TestRequestBuilder {
   }
 
   public TestRequestBuilder addShardingFilter(int numShards, int shardIndex) {
+    this.numShards = numShards;
+    this.shardIndex = shardIndex;
     return addFilter(new ShardingFilter(numShards, shardIndex));
   }
 
+  /**
+   * Run only the tests of the given shard, with shards balanced by the expected duration of their
+   * tests.
+   *
+   * @param testDurations the durations of tests in earlier runs, in milliseconds, keyed by {@link
+   *     BalancedShardingFilter#getTestId test id}
+   * @see BalancedShardingFilter
+   */
+  public TestRequestBuilder addShardingFilter(
+      int numShards, int shardIndex, Map<String, Long> testDurations) {
+    return addFilter(new BalancedShardingFilter(numShards, shardIndex, testDurations));
+  }
+
   public TestRequestBuilder addFilter(Filter filter) {
     this.filter = this.filter.intersect(filter);
     return this;
@@ -680,7 +774,11 @@ public class TestRequestBuilder {
     if (runnerArgs.numShards > 0
         && runnerArgs.shardIndex >= 0
         && runnerArgs.shardIndex < runnerArgs.numShards) {
-      addShardingFilter(runnerArgs.numShards, runnerArgs.shardIndex);
+      if (RunnerArgs.SHARDING_STRATEGY_BALANCED.equals(runnerArgs.shardingStrategy)) {
+        addShardingFilter(runnerArgs.numShards, runnerArgs.shardIndex, runnerArgs.testDurations);
+      } else {
+        addShardingFilter(runnerArgs.numShards, runnerArgs.shardIndex);
+      }
     }
     if (runnerArgs.logOnly || runnerArgs.listTestsForOrchestrator) {
       setSkipExecution(true);
@@ -694,6 +792,9 @@ public class TestRequestBuilder {
     if (runnerArgs.testsRegEx != null) {
       setTestsRegExFilter(runnerArgs.testsRegEx);
     }
+    if (runnerArgs.parallelDiscovery > 1) {
+      setDiscoveryParallelism(runnerArgs.parallelDiscovery);
+    }
     return this;
   }
 
@@ -713,14 +814,24 @@ public class TestRequestBuilder {
       // If scanning then suite methods are not supported.
       boolean ignoreSuiteMethods = this.ignoreSuiteMethods || scanningPath;
 
-      RunnerBuilder runnerBuilder = getRunnerBuilder(ignoreSuiteMethods, perTestTimeout);
+      RunnerBuilder runnerBuilder;
+      if (discoveryParallelism > 1) {
+        runnerBuilder = new PerThreadRunnerBuilder(ignoreSuiteMethods);
+      } else {
+        runnerBuilder = getRunnerBuilder(ignoreSuiteMethods, perTestTimeout);
+      }
 
-      TestLoader loader = TestLoader.Factory.create(classLoader, runnerBuilder, scanningPath);
-      Collection<String> classNames;
-      if (scanningPath) {
+      TestLoader loader =
+          TestLoader.Factory.create(
+              classLoader, runnerBuilder, scanningPath, discoveryParallelism);
+      List<Runner> runners;
+      if (scanningPath && testDiscoveryIndexStorage != null) {
+        Log.d(TAG, "Using test discovery index to discover tests");
+        runners = getRunnersUsingTestDiscoveryIndex(loader);
+      } else if (scanningPath) {
         // no class restrictions have been specified. Load all classes.
         Log.d(TAG, "Using class path scanning to discover tests");
-        classNames = getClassNamesFromClassPath();
+        runners = loader.getRunnersFor(getClassNamesFromClassPath());
       } else {
         // If the set of excludedClasses is equal to the set of includedClasses, no tests should
         // run (that's what includeMethods and excludeMethods do currently).
@@ -731,11 +842,9 @@ public class TestRequestBuilder {
         // com.android.foo.FooTest com.android.foo/androidx.test.runner.AndroidJUnitRunner
         // should perform the same result (no tests run).
         includedClasses.removeAll(excludedClasses);
-        classNames = includedClasses;
+        runners = loader.getRunnersFor(includedClasses);
       }
 
-      List<Runner> runners = loader.getRunnersFor(classNames);
-
       Suite suite = ExtendedSuite.createSuite(runners);
       Request request = Request.runner(suite);
       return new LenientFilterRequest(request, filter);
@@ -773,12 +882,24 @@ public class TestRequestBuilder {
   }
 
   private Collection<String> getClassNamesFromClassPath() {
+    return scanClassPath(createClassNameFilter());
+  }
+
+  private Collection<String> scanClassPath(ClassNameFilter filter) {
     if (pathsToScan.isEmpty()) {
       throw new IllegalStateException("neither test class to execute or class paths were provided");
     }
     Log.i(TAG, String.format("Scanning classpath to find tests in paths %s", pathsToScan));
     ClassPathScanner scanner = createClassPathScanner(pathsToScan);
+    try {
+      return scanner.getClassPathEntries(filter);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to scan classes", e);
+    }
+    return Collections.emptyList();
+  }
 
+  private ClassNameFilter createClassNameFilter() {
     ChainedClassNameFilter filter = new ChainedClassNameFilter();
     // exclude inner classes
     filter.add(new ExternalClassNameFilter());
@@ -795,12 +916,65 @@ public class TestRequestBuilder {
       filter.add(new ExcludePackageNameFilter(pkg));
     }
     filter.add(new ExcludeClassNamesFilter(excludedClasses));
-    try {
-      return scanner.getClassPathEntries(filter);
-    } catch (IOException e) {
-      Log.e(TAG, "Failed to scan classes", e);
+    return filter;
+  }
+
+  /**
+   * Loads the runners for the test classes in the scanned paths, using and updating the test
+   * discovery index.
+   *
+   * <p>The index holds every class name found in the paths, so package and class filters are
+   * applied to it instead of to the dex files. Classes the index knows aren't tests, or whose tests
+   * can't pass the annotation, size or sharding filters, are not loaded at all. Classes the index
+   * doesn't know yet are loaded as usual, and recorded for the next run.
+   */
+  private List<Runner> getRunnersUsingTestDiscoveryIndex(TestLoader loader) {
+    List<String> runnerBuilderClassNames = new ArrayList<>();
+    for (Class<? extends RunnerBuilder> runnerBuilderClass : customRunnerBuilderClasses) {
+      runnerBuilderClassNames.add(runnerBuilderClass.getName());
+    }
+    TestDiscoveryIndex index =
+        TestDiscoveryIndex.load(
+            testDiscoveryIndexStorage,
+            TestDiscoveryIndex.computeKey(pathsToScan, runnerBuilderClassNames));
+    Collection<String> allClassNames = index.getClassNames();
+    if (allClassNames == null) {
+      allClassNames = scanClassPath(new ExternalClassNameFilter());
+      index.setClassNames(allClassNames);
+    }
+
+    ClassNameFilter classNameFilter = createClassNameFilter();
+    List<String> classNames = new ArrayList<>();
+    List<String> unknownClassNames = new ArrayList<>();
+    for (String className : allClassNames) {
+      if (!classNameFilter.accept(className)) {
+        continue;
+      }
+      TestDiscoveryIndex.ClassInfo info = index.get(className);
+      if (info == null) {
+        unknownClassNames.add(className);
+        classNames.add(className);
+      } else if (info.mayHaveTestsFor(requiredAnnotationNames, numShards, shardIndex)) {
+        classNames.add(className);
+      }
     }
-    return Collections.emptyList();
+    Log.i(
+        TAG,
+        String.format(
+            "Test discovery index: loading %d classes, %d of them not indexed yet",
+            classNames.size(), unknownClassNames.size()));
+
+    Map<String, Runner> runners = loader.getRunnersByClassName(classNames);
+    for (String className : unknownClassNames) {
+      Runner runner = runners.get(className);
+      if (runner == null) {
+        index.putNotTest(className);
+      } else {
+        index.putTest(className, runner.getDescription());
+      }
+    }
+    index.save();
+    return new ArrayList<>(runners.values());
   }
 
   /**
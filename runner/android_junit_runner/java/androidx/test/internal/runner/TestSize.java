@@ -136,6 +136,18 @@ public final class TestSize {
     return false;
   }
 
+  /** Returns the names of the annotation classes that mark a test of this size. */
+  Set<String> getAnnotationClassNames() {
+    Set<String> names = new HashSet<>();
+    if (runnerFilterAnnotationClass != null) {
+      names.add(runnerFilterAnnotationClass.getName());
+    }
+    if (platformAnnotationClass != null) {
+      names.add(platformAnnotationClass.getName());
+    }
+    return names;
+  }
+
   private static boolean hasAnnotation(
       Class<?> testClass, Class<? extends Annotation> annotationClass) {
     return annotationClass != null && testClass.isAnnotationPresent(annotationClass);
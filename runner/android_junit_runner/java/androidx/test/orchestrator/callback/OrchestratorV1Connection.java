@@ -52,7 +52,20 @@ public final class OrchestratorV1Connection
    * {@code androidx.test.orchestrator.OrchestratorService}.
    */
   public OrchestratorV1Connection(@NonNull TestEventClientConnectListener listener) {
-    super(ORCHESTRATOR_SERVICE, OrchestratorCallback.Stub::asInterface, listener);
+    this(listener, UID_UNSPECIFIED);
+  }
+
+  /**
+   * Creates a new {@code OrchestratorV1Connection} to the {@code
+   * androidx.test.orchestrator.OrchestratorService} running as the given uid, which may belong to
+   * another user when the orchestrator runs tests in parallel across users.
+   *
+   * @param orchestratorUid the uid of the orchestrator, or {@link #UID_UNSPECIFIED} to connect to
+   *     the service of this process' user
+   */
+  public OrchestratorV1Connection(
+      @NonNull TestEventClientConnectListener listener, int orchestratorUid) {
+    super(ORCHESTRATOR_SERVICE, OrchestratorCallback.Stub::asInterface, listener, orchestratorUid);
   }
 
   /** {@inheritDoc} */
@@ -21,6 +21,7 @@ import android.app.Instrumentation;
 import android.os.Bundle;
 import android.os.Debug;
 import android.os.StrictMode;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
@@ -53,6 +54,7 @@ import androidx.test.runner.screenshot.ScreenCaptureProcessor;
 import androidx.test.runner.screenshot.Screenshot;
 import androidx.test.services.storage.TestStorage;
 import androidx.tracing.Trace;
+import java.io.File;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.ServiceLoader;
@@ -188,6 +190,33 @@ import org.junit.runners.model.RunnerBuilder;
  * instrument -w -e numShards 4 -e shardIndex 1
  * com.android.foo/androidx.test.runner.AndroidJUnitRunner
  *
+ * <p><b>To balance shards by the duration of their tests:</b> -e numShards 4 -e shardIndex 1 -e
+ * shardingStrategy balanced -e testDurationsFile /sdcard/durations.txt The file lists the duration
+ * of tests in earlier runs, one test per line as {@code com.android.foo.FooTest#testFoo,1200} in
+ * milliseconds. Tests without a known duration are assigned to shards by class, so all the tests of
+ * a class run in the same shard.
+ *
+ * <p><b>To speed up finding tests in the test apk on later runs:</b> -e useTestDiscoveryIndex true
+ * This option stores an index of the classes in the test apk, and of which of them are tests, on
+ * the device. Later runs of the same test apk use it to skip scanning the apk, and to skip loading
+ * classes that are not tests or whose tests are removed by the size, annotation or shard filters.
+ * The index is kept in the cache dir of the test apk, which {@code pm clear} empties. So when the
+ * orchestrator is run with -e clearPackageData true, the index only helps if -e
+ * useTestStorageService true is also provided: the index is then kept by the test storage service,
+ * whose files are not cleared.
+ *
+ * <p><b>To load and inspect test classes on several threads:</b> -e parallelDiscovery 4 This
+ * option loads up to the given number of candidate test classes at the same time when building the
+ * list of tests to run, which can shorten the startup of runs of large test apks. The order of the
+ * tests does not change. The time spent finding tests is reported as {@code discoveryTimeMillis}
+ * in the instrumentation results.
+ *
+ * <p><b>To send test run events to the orchestrator in batches:</b> -e batchTestEvents true This
+ * option buffers the events of a run sent to a {@code testRunEventsService}, and sends them a few
+ * dozen at a time, which saves a binder transaction per event on large test suites. Failures and
+ * the end of the run are sent right away. Services that don't support batches get the events one
+ * at a time.
+ *
  * <p><b>Use custom {@link RunnerBuilder builders} to run test classes:</b> adb shell am instrument
  * -w -e runnerBuilder com.android.foo.MyCustomBuilder,com.android.foo.AnotherCustomBuilder
  * com.android.foo/androidx.test.runner.AndroidJUnitRunner
@@ -273,6 +302,9 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
     implements TestEventClientConnectListener {
 
   private static final String LOG_TAG = "AndroidJUnitRunner";
+  // Reports the time spent finding and loading the test classes, in the final results bundle.
+  private static final String REPORT_KEY_DISCOVERY_TIME_MILLIS = "discoveryTimeMillis";
+  private static final String TEST_DISCOVERY_INDEX_FILE_PREFIX = "androidx_test_discovery_index_";
 
   private Bundle arguments;
   private final InstrumentationResultPrinter instrumentationResultPrinter =
@@ -328,7 +360,8 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
   private boolean shouldWaitForOrchestratorService() {
     TestEventClientArgs args =
         TestEventClientArgs.builder()
-            .setConnectionFactory(OrchestratorV1Connection::new)
+            .setConnectionFactory(
+                listener -> new OrchestratorV1Connection(listener, runnerArgs.orchestratorUid))
             .setOrchestratorService(runnerArgs.orchestratorService)
             .setPrimaryInstProcess(isPrimaryInstrProcess(runnerArgs.targetProcess))
             // The listTestsForOrchestrator arg is used for Orchestrator V1 connections:
@@ -338,6 +371,7 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
             .setTestDiscoveryService(runnerArgs.testDiscoveryService)
             .setTestRunEventService(runnerArgs.testRunEventsService)
             .setTestPlatformMigration(runnerArgs.testPlatformMigration)
+            .setBatchTestEvents(runnerArgs.batchTestEvents)
             .build();
     testEventClient = TestEventClient.connect(getContext(), this, args);
     return testEventClient.isOrchestrationServiceEnabled();
@@ -420,11 +454,15 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
     Log.d(LOG_TAG, "onStart is called.");
     Trace.beginSection("AndroidJUnitRunner#onStart");
     Bundle results = new Bundle();
+    long discoveryTimeMillis = -1;
     try {
       setJsBridgeClassName("androidx.test.espresso.web.bridge.JavaScriptBridge");
       super.onStart();
 
+      long discoveryStart = SystemClock.elapsedRealtime();
       Request testRequest = buildRequest(runnerArgs, getArguments());
+      discoveryTimeMillis = SystemClock.elapsedRealtime() - discoveryStart;
+      Log.i(LOG_TAG, String.format("Discovered tests in %d ms", discoveryTimeMillis));
 
       if (runnerArgs.remoteMethod != null) {
         invokeRemoteMethod();
@@ -446,6 +484,9 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
     } finally {
       Trace.endSection();
     }
+    if (discoveryTimeMillis >= 0) {
+      results.putLong(REPORT_KEY_DISCOVERY_TIME_MILLIS, discoveryTimeMillis);
+    }
     // finish kills the process, so this needs to happen after Trace.endSection
     finish(Activity.RESULT_OK, results);
   }
@@ -642,10 +683,32 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
       builder.addPathsToScan(ClassPathScanner.getDefaultClasspaths(this));
     }
     builder.addFromRunnerArgs(runnerArgs);
+    if (runnerArgs.useTestDiscoveryIndex) {
+      String indexFileName = TEST_DISCOVERY_INDEX_FILE_PREFIX + getContext().getPackageName();
+      if (PlatformTestStorageRegistry.getInstance() instanceof TestStorage) {
+        // The files of the test storage service survive pm clear of the test and target apps,
+        // which the orchestrator runs between tests with clearPackageData.
+        builder.setTestDiscoveryIndexTestStorageFile(
+            PlatformTestStorageRegistry.getInstance(), indexFileName);
+      } else {
+        builder.setTestDiscoveryIndexFile(getTestDiscoveryIndexFile(indexFileName));
+      }
+    }
 
     return builder.build();
   }
 
+  private File getTestDiscoveryIndexFile(String fileName) {
+    // Prefer the test apk's cache dir, which is only writable when the test apk instruments
+    // itself. Both cache dirs are emptied by pm clear, so with clearPackageData the index doesn't
+    // outlive a test.
+    File dir = getContext().getCacheDir();
+    if (dir == null || !dir.canWrite()) {
+      dir = getTargetContext().getCacheDir();
+    }
+    return new File(dir, fileName);
+  }
+
   /** Factory method for {@link TestRequestBuilder}. */
   TestRequestBuilder createTestRequestBuilder(Instrumentation instr, Bundle arguments) {
     return new TestRequestBuilder(instr, arguments);
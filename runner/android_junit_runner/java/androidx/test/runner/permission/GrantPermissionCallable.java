@@ -40,13 +40,9 @@ class GrantPermissionCallable extends RequestPermissionCallable {
     try {
       cmdForPermission.execute();
     } finally {
-      if (!isPermissionGranted()) {
-        // Wait another 1000 ms before we fail
-        Thread.sleep(1000);
-        if (!isPermissionGranted()) {
-          Log.e(TAG, "Permission: " + getPermission() + " cannot be granted!");
-          return Result.FAILURE;
-        }
+      if (!awaitPermissionGranted(GRANT_TIMEOUT_MILLIS)) {
+        Log.e(TAG, "Permission: " + getPermission() + " cannot be granted!");
+        return Result.FAILURE;
       }
     }
     return Result.SUCCESS;
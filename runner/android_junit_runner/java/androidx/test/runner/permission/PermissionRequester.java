@@ -24,6 +24,7 @@ import static junit.framework.Assert.fail;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.ChecksSdkIntAtLeast;
@@ -34,7 +35,9 @@ import androidx.annotation.VisibleForTesting;
 import androidx.test.internal.platform.content.PermissionGranter;
 import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.runner.permission.UiAutomationShellCommand.PmCommand;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Requests a runtime permission on devices running Android M (API 23) and above.
@@ -105,25 +108,79 @@ public class PermissionRequester implements PermissionGranter {
   /**
    * Request all permissions previously added using {@link #addPermissions(String...)}
    *
+   * <p>Permissions that aren't granted yet are granted with a single shell command, and the time it
+   * took is logged.
+   *
    * <p>Precondition: This method does nothing when called on an API level lower than {@link
    * Build.VERSION_CODES#M}.
    */
   @Override
   public void requestPermissions() {
-    if (deviceSupportsRuntimePermissions()) {
-      for (RequestPermissionCallable requestPermissionCallable : requestedPermissions) {
-        try {
-          if (RequestPermissionCallable.Result.FAILURE == requestPermissionCallable.call()) {
-            fail("Failed to grant permissions, see logcat for details");
-            return;
+    if (!deviceSupportsRuntimePermissions()) {
+      return;
+    }
+    long startTime = SystemClock.uptimeMillis();
+    List<RequestPermissionCallable> missingPermissions = new ArrayList<>();
+    for (RequestPermissionCallable requestPermissionCallable : requestedPermissions) {
+      if (!requestPermissionCallable.isPermissionGranted()) {
+        missingPermissions.add(requestPermissionCallable);
+      }
+    }
+    boolean granted;
+    try {
+      if (missingPermissions.size() > 1) {
+        granted = grantAll(missingPermissions);
+      } else {
+        granted = true;
+        for (RequestPermissionCallable requestPermissionCallable : missingPermissions) {
+          granted &= RequestPermissionCallable.Result.SUCCESS == requestPermissionCallable.call();
+        }
+      }
+    } catch (Exception exception) {
+      Log.e(TAG, "An Exception was thrown while granting permission", exception);
+      granted = false;
+    }
+    if (!granted) {
+      fail("Failed to grant permissions, see logcat for details");
+      return;
+    }
+    Log.i(
+        TAG,
+        String.format(
+            "Granted %d of %d permissions in %d ms",
+            missingPermissions.size(),
+            requestedPermissions.size(),
+            SystemClock.uptimeMillis() - startTime));
+  }
+
+  /** Grants the given permissions with one shell command, and waits until they are granted. */
+  private boolean grantAll(List<RequestPermissionCallable> missingPermissions) throws Exception {
+    List<String> permissions = new ArrayList<>(missingPermissions.size());
+    for (RequestPermissionCallable requestPermissionCallable : missingPermissions) {
+      permissions.add(requestPermissionCallable.getPermission());
+    }
+    try {
+      createGrantCommand(permissions).execute();
+    } finally {
+      if (!RequestPermissionCallable.awaitPermissionsGranted(
+          missingPermissions, RequestPermissionCallable.GRANT_TIMEOUT_MILLIS)) {
+        for (RequestPermissionCallable requestPermissionCallable : missingPermissions) {
+          if (!requestPermissionCallable.isPermissionGranted()) {
+            Log.e(
+                TAG,
+                "Permission: " + requestPermissionCallable.getPermission() + " cannot be granted!");
           }
-        } catch (Exception exception) {
-          Log.e(TAG, "An Exception was thrown while granting permission", exception);
-          fail("Failed to grant permissions, see logcat for details");
-          return;
         }
+        return false;
       }
     }
+    return true;
+  }
+
+  @VisibleForTesting
+  ShellCommand createGrantCommand(List<String> permissions) {
+    return new UiAutomationShellCommand(
+        targetContext.getPackageName(), permissions, PmCommand.GRANT_PERMISSION);
   }
 
   @VisibleForTesting
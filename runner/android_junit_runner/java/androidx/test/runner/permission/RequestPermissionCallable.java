@@ -21,12 +21,18 @@ import static androidx.test.internal.util.Checks.checkState;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import androidx.annotation.NonNull;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.annotation.VisibleForTesting;
 import androidx.test.runner.permission.RequestPermissionCallable.Result;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 
@@ -41,6 +47,11 @@ import java.util.concurrent.Callable;
 @RestrictTo(Scope.LIBRARY)
 public abstract class RequestPermissionCallable implements Callable<Result> {
 
+  /** How long to keep checking for a permission that isn't granted right after the command. */
+  static final long GRANT_TIMEOUT_MILLIS = 1000;
+
+  private static final long GRANT_POLL_INTERVAL_MILLIS = 20;
+
   private final ShellCommand shellCommand;
   private final Context targetContext;
   private final String targetPackage;
@@ -71,6 +82,40 @@ public abstract class RequestPermissionCallable implements Callable<Result> {
         == targetContext.checkCallingOrSelfPermission(permission);
   }
 
+  /**
+   * Checks whether the permission is granted until it is, or until the timeout elapses.
+   *
+   * <p>Returns as soon as the package manager reports the grant, rather than after a fixed delay.
+   */
+  protected boolean awaitPermissionGranted(long timeoutMillis) throws InterruptedException {
+    return awaitPermissionsGranted(Collections.singletonList(this), timeoutMillis);
+  }
+
+  /**
+   * Checks whether all the given permissions are granted until they are, or until the timeout
+   * elapses. Each check only asks the package manager for the permissions still missing.
+   */
+  static boolean awaitPermissionsGranted(
+      Collection<? extends RequestPermissionCallable> callables, long timeoutMillis)
+      throws InterruptedException {
+    List<RequestPermissionCallable> missing = new ArrayList<>(callables);
+    long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+    while (true) {
+      for (Iterator<RequestPermissionCallable> it = missing.iterator(); it.hasNext(); ) {
+        if (it.next().isPermissionGranted()) {
+          it.remove();
+        }
+      }
+      if (missing.isEmpty()) {
+        return true;
+      }
+      if (SystemClock.uptimeMillis() >= deadline) {
+        return false;
+      }
+      Thread.sleep(GRANT_POLL_INTERVAL_MILLIS);
+    }
+  }
+
   protected ShellCommand getShellCommand() {
     return shellCommand;
   }
@@ -3,6 +3,7 @@ package androidx.test.runner.permission;
 import android.app.UiAutomation;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
@@ -35,8 +36,11 @@ public class UiAutomationPermissionGranter implements PermissionGranter {
   public void requestPermissions() {
     Context targetContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
     UiAutomation uiAutomation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
+    long startTime = SystemClock.uptimeMillis();
+    int granted = 0;
     for (String permission : permissionsToGrant) {
       if (!isPermissionGranted(targetContext, permission)) {
+        granted++;
         Log.i(
             TAG,
             String.format(
@@ -46,6 +50,11 @@ public class UiAutomationPermissionGranter implements PermissionGranter {
         Log.i(TAG, "Permission: " + permission + " is already granted!");
       }
     }
+    Log.i(
+        TAG,
+        String.format(
+            "Granted %d of %d permissions in %d ms",
+            granted, permissionsToGrant.size(), SystemClock.uptimeMillis() - startTime));
   }
 
   private boolean isPermissionGranted(Context targetContext, String permission) {
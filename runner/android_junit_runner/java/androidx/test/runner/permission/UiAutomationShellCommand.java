@@ -17,6 +17,7 @@
 package androidx.test.runner.permission;
 
 import static androidx.test.internal.util.Checks.checkNotNull;
+import static androidx.test.internal.util.Checks.checkState;
 
 import android.annotation.TargetApi;
 import android.app.UiAutomation;
@@ -27,6 +28,9 @@ import androidx.test.InstrumentationRegistry;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -54,20 +58,30 @@ class UiAutomationShellCommand extends ShellCommand {
   }
 
   private final String targetPackage;
-  private final String permission;
+  private final List<String> permissions;
   private final PmCommand command;
   private final UiAutomation uiAutomation;
 
   UiAutomationShellCommand(String targetPackage, String permission, PmCommand pmCommand) {
+    this(targetPackage, Collections.singletonList(permission), pmCommand);
+  }
+
+  /** Runs the command for all the given permissions, in one shell invocation. */
+  UiAutomationShellCommand(String targetPackage, List<String> permissions, PmCommand pmCommand) {
+    checkState(!permissions.isEmpty(), "permissions cannot be empty!");
     this.targetPackage = shellEscape(targetPackage);
-    this.permission = shellEscape(permission);
+    this.permissions = new ArrayList<>(permissions.size());
+    for (String permission : permissions) {
+      this.permissions.add(shellEscape(permission));
+    }
     command = pmCommand;
     uiAutomation = checkNotNull(InstrumentationRegistry.getInstrumentation().getUiAutomation());
   }
 
   @Override
   public void execute() throws Exception {
-    executePermissionCommand(commandForPermission());
+    executePermissionCommand(
+        permissions.size() == 1 ? commandForPermission() : commandForPermissions());
   }
 
   @VisibleForTesting
@@ -76,10 +90,35 @@ class UiAutomationShellCommand extends ShellCommand {
         .append(" ")
         .append(targetPackage)
         .append(" ")
-        .append(permission)
+        .append(permissions.get(0))
         .toString();
   }
 
+  /**
+   * Returns a single {@code sh -c} command that runs the pm command for each permission in turn.
+   *
+   * <p>{@link UiAutomation#executeShellCommand(String)} splits the command on whitespace and
+   * doesn't run it through a shell, so the script is a single word: words within it are separated
+   * by {@code ${IFS}}, which the shell expands to a space.
+   */
+  @VisibleForTesting
+  protected String commandForPermissions() {
+    String separator = "${IFS}";
+    StringBuilder script = new StringBuilder();
+    for (String permission : permissions) {
+      if (script.length() > 0) {
+        script.append(";");
+      }
+      script
+          .append(command.get().replace(" ", separator))
+          .append(separator)
+          .append(targetPackage)
+          .append(separator)
+          .append(permission);
+    }
+    return "sh -c " + script;
+  }
+
   /**
    * Since {@link UiAutomation#executeShellCommand(String)} does not block until the command
    * executed successfully. Write the output to byte array to make sure permission is granted before
@@ -90,7 +129,9 @@ class UiAutomationShellCommand extends ShellCommand {
   private void executePermissionCommand(String cmd) throws IOException {
     Log.i(TAG, "Requesting permission: " + cmd);
     try {
-      awaitTermination(uiAutomation.executeShellCommand(cmd), 2, TimeUnit.SECONDS);
+      // Allow the usual 2 seconds for each permission in the command.
+      awaitTermination(
+          uiAutomation.executeShellCommand(cmd), 2L * permissions.size(), TimeUnit.SECONDS);
     } catch (TimeoutException e) {
       Log.e(TAG, "Timeout while executing cmd: " + cmd);
     }
@@ -109,8 +150,8 @@ class UiAutomationShellCommand extends ShellCommand {
    *
    * <p>But this solution is not a great way either to determine if a command has finished execution
    * and there might still be situations where even this solution might be flaky. To have another
-   * safety net we wait an additional 1000ms in RequestPermissionCallable if the permission was not
-   * granted as expected. This seems to be the best we can do for now.
+   * safety net the callers check the permissions again for up to 1000ms if they were not granted as
+   * expected. This seems to be the best we can do for now.
    *
    * @param pfDescriptor Used to read the content returned by shell command
    */
@@ -127,7 +168,7 @@ class UiAutomationShellCommand extends ShellCommand {
       String line;
       while ((line = reader.readLine()) != null) {
         Log.i(TAG, line);
-        if (endTimeInMillis > System.currentTimeMillis()) {
+        if (endTimeInMillis > 0 && System.currentTimeMillis() > endTimeInMillis) {
           throw new TimeoutException();
         }
       }
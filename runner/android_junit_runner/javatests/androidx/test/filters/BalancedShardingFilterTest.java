@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.filters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class BalancedShardingFilterTest {
+
+  /** a dummy class to build up test descriptions */
+  public static class TestFixture {}
+
+  /** another dummy class to build up test descriptions */
+  public static class OtherTestFixture {}
+
+  @Test
+  public void longestTestsAreSpreadOverShards() {
+    Map<String, Long> durations = new HashMap<>();
+    durations.put(testId("a"), 100L);
+    durations.put(testId("b"), 90L);
+    durations.put(testId("c"), 60L);
+    durations.put(testId("d"), 40L);
+    durations.put(testId("e"), 10L);
+
+    // a=100 and b=90 start the shards, then c=60 joins b, d=40 joins a and e=10 joins a: 150/150.
+    assertThat(shardOf("a", durations)).isEqualTo(0);
+    assertThat(shardOf("b", durations)).isEqualTo(1);
+    assertThat(shardOf("c", durations)).isEqualTo(1);
+    assertThat(shardOf("d", durations)).isEqualTo(0);
+    assertThat(shardOf("e", durations)).isEqualTo(0);
+  }
+
+  @Test
+  public void everyTestRunsInExactlyOneShard() {
+    Map<String, Long> durations = new HashMap<>();
+    for (int i = 0; i < 50; i++) {
+      durations.put(testId("test" + i), (long) (i * 7 % 13));
+    }
+    for (int i = 0; i < 60; i++) {
+      Description test = Description.createTestDescription(TestFixture.class, "test" + i);
+      int runs = 0;
+      for (int shard = 0; shard < 4; shard++) {
+        if (new BalancedShardingFilter(4, shard, durations).shouldRun(test)) {
+          runs++;
+        }
+      }
+      assertThat(runs).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void unknownTestsOfAClassRunInTheSameShard() {
+    Map<String, Long> durations = new HashMap<>();
+    int shard = -1;
+    for (int i = 0; i < 10; i++) {
+      Description test = Description.createTestDescription(OtherTestFixture.class, "test" + i);
+      for (int index = 0; index < 5; index++) {
+        if (new BalancedShardingFilter(5, index, durations).shouldRun(test)) {
+          if (shard == -1) {
+            shard = index;
+          }
+          assertThat(index).isEqualTo(shard);
+        }
+      }
+    }
+    assertThat(shard).isAtLeast(0);
+  }
+
+  @Test
+  public void suitesAlwaysRun() {
+    BalancedShardingFilter filter = new BalancedShardingFilter(3, 2, new HashMap<String, Long>());
+    Description suite = Description.createSuiteDescription(TestFixture.class);
+    suite.addChild(Description.createTestDescription(TestFixture.class, "any"));
+
+    assertThat(filter.shouldRun(suite)).isTrue();
+  }
+
+  private static String testId(String methodName) {
+    return TestFixture.class.getName() + "#" + methodName;
+  }
+
+  private static int shardOf(String methodName, Map<String, Long> durations) {
+    Description test = Description.createTestDescription(TestFixture.class, methodName);
+    for (int shard = 0; shard < 2; shard++) {
+      if (new BalancedShardingFilter(2, shard, durations).shouldRun(test)) {
+        return shard;
+      }
+    }
+    return -1;
+  }
+}
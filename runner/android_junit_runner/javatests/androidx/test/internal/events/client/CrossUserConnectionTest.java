@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.events.client;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assume.assumeTrue;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Connects to a service running as a second user, the way tests run by the orchestrator in
+ * parallel across users connect back to it.
+ */
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = 26) // pm list packages -U
+public class CrossUserConnectionTest {
+
+  private Context context;
+  private int userId = -1;
+
+  @Before
+  public void createUser() throws IOException {
+    assumeTrue("Multiple users are not supported", UserManager.supportsMultipleUsers());
+    context = getInstrumentation().getContext();
+    String created = shell("pm create-user axt_cross_user_test");
+    Matcher matcher = Pattern.compile("created user id (\\d+)").matcher(created);
+    assumeTrue("Failed to create a user: " + created, matcher.find());
+    userId = Integer.parseInt(matcher.group(1));
+    shell("am start-user -w " + userId);
+    shell("pm install-existing --user " + userId + " " + context.getPackageName());
+    shell("pm grant " + context.getPackageName() + " android.permission.INTERACT_ACROSS_USERS");
+  }
+
+  @After
+  public void removeUser() throws IOException {
+    if (userId >= 0) {
+      shell("pm remove-user " + userId);
+    }
+  }
+
+  @Test
+  public void connect_bindsToServiceOfOtherUser() throws Exception {
+    int serviceUid = uidOf(context.getPackageName(), userId);
+    CountDownLatch connected = new CountDownLatch(1);
+    TestEventServiceConnectionBase<IInterface> connection =
+        new TestEventServiceConnectionBase<>(
+            context.getPackageName() + "/" + UidService.class.getName(),
+            binder -> () -> binder,
+            connected::countDown,
+            serviceUid);
+
+    connection.connect(context);
+
+    assertThat(connected.await(30, SECONDS)).isTrue();
+    UserHandle serviceUser = UserHandle.getUserHandleForUid(callUidService(connection.service));
+    assertThat(serviceUser).isEqualTo(UserHandle.getUserHandleForUid(serviceUid));
+    assertThat(serviceUser).isNotEqualTo(Process.myUserHandle());
+  }
+
+  /** Returns the uid that the UidService behind the given interface runs as. */
+  private static int callUidService(IInterface service) throws Exception {
+    Parcel data = Parcel.obtain();
+    Parcel reply = Parcel.obtain();
+    try {
+      service.asBinder().transact(IBinder.FIRST_CALL_TRANSACTION, data, reply, 0);
+      return reply.readInt();
+    } finally {
+      reply.recycle();
+      data.recycle();
+    }
+  }
+
+  private static int uidOf(String packageName, int userId) throws IOException {
+    String packages = shell("pm list packages -U --user " + userId + " " + packageName);
+    Matcher matcher =
+        Pattern.compile("package:" + Pattern.quote(packageName) + " uid:(\\d+)").matcher(packages);
+    if (!matcher.find()) {
+      throw new IllegalStateException(packageName + " is not installed for user " + userId);
+    }
+    return Integer.parseInt(matcher.group(1));
+  }
+
+  private static String shell(String command) throws IOException {
+    ParcelFileDescriptor output =
+        getInstrumentation().getUiAutomation().executeShellCommand(command);
+    try (InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(output)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int size;
+      while ((size = in.read(buffer)) >= 0) {
+        bytes.write(buffer, 0, size);
+      }
+      return bytes.toString("UTF-8");
+    }
+  }
+
+  /** Replies to any call with the uid it runs as. */
+  public static class UidService extends Service {
+    @Override
+    public IBinder onBind(Intent intent) {
+      return new Binder() {
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) {
+          reply.writeInt(Process.myUid());
+          return true;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.events.client;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link EventBatcher}. */
+@RunWith(AndroidJUnit4.class)
+public class EventBatcherTest {
+  private static final long NO_TIMED_FLUSH = 60_000;
+
+  private final FakeTransport transport = new FakeTransport();
+
+  @Test
+  public void send_buffersUntilMaxBatchSize() throws Exception {
+    EventBatcher<String> batcher = new EventBatcher<>(transport, event -> false, 3, NO_TIMED_FLUSH);
+
+    batcher.send("a");
+    batcher.send("b");
+    assertThat(transport.batches).isEmpty();
+    batcher.send("c");
+
+    assertThat(transport.batches).hasSize(1);
+    assertThat(transport.batches.get(0)).containsExactly("a", "b", "c").inOrder();
+    assertThat(transport.events).isEmpty();
+  }
+
+  @Test
+  public void send_flushesAfterFlushConditionEvent() throws Exception {
+    EventBatcher<String> batcher =
+        new EventBatcher<>(transport, event -> event.equals("finished"), 64, NO_TIMED_FLUSH);
+
+    batcher.send("a");
+    batcher.send("finished");
+
+    assertThat(transport.batches).hasSize(1);
+    assertThat(transport.batches.get(0)).containsExactly("a", "finished").inOrder();
+  }
+
+  @Test
+  public void send_flushesAfterDelay() throws Exception {
+    EventBatcher<String> batcher = new EventBatcher<>(transport, event -> false, 64, 10);
+
+    batcher.send("a");
+    batcher.send("b");
+
+    assertThat(transport.batchSent.await(5, SECONDS)).isTrue();
+    synchronized (transport) {
+      assertThat(transport.batches).hasSize(1);
+      assertThat(transport.batches.get(0)).containsExactly("a", "b").inOrder();
+    }
+  }
+
+  @Test
+  public void flush_sendsBufferedEvents() throws Exception {
+    EventBatcher<String> batcher =
+        new EventBatcher<>(transport, event -> false, 64, NO_TIMED_FLUSH);
+
+    batcher.flush();
+    assertThat(transport.batches).isEmpty();
+    batcher.send("a");
+    batcher.flush();
+
+    assertThat(transport.batches).hasSize(1);
+    assertThat(transport.batches.get(0)).containsExactly("a");
+  }
+
+  @Test
+  public void send_batchesNotSupported_sendsEventsOneByOne() throws Exception {
+    transport.batchesSupported = false;
+    EventBatcher<String> batcher = new EventBatcher<>(transport, event -> false, 2, NO_TIMED_FLUSH);
+
+    batcher.send("a");
+    batcher.send("b");
+    batcher.send("c");
+
+    assertThat(transport.batches).hasSize(1);
+    assertThat(transport.events).containsExactly("a", "b", "c").inOrder();
+  }
+
+  private static class FakeTransport implements EventBatcher.Transport<String> {
+    final List<String> events = new ArrayList<>();
+    final List<List<String>> batches = new ArrayList<>();
+    boolean batchesSupported = true;
+    final CountDownLatch batchSent = new CountDownLatch(1);
+
+    @Override
+    public synchronized void send(@NonNull String event) {
+      events.add(event);
+    }
+
+    @Override
+    public synchronized int sendBatch(@NonNull List<String> events) {
+      batches.add(new ArrayList<>(events));
+      batchSent.countDown();
+      // Services that predate batches handle none of the events.
+      return batchesSupported ? events.size() : 0;
+    }
+  }
+}
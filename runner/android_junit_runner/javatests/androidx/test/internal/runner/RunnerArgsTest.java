@@ -38,6 +38,7 @@ import androidx.test.testing.fixtures.BrokenCustomTestFilter;
 import androidx.test.testing.fixtures.CustomRunnerBuilder;
 import androidx.test.testing.fixtures.CustomTestFilter;
 import androidx.test.testing.fixtures.CustomTestFilterTakesBundle;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -47,6 +48,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
@@ -605,6 +607,7 @@ public class RunnerArgsTest {
     b.putString(RunnerArgs.ARGUMENT_REMOTE_INIT_METHOD, "test.class#method");
     b.putString(RunnerArgs.ARGUMENT_TARGET_PROCESS, "con.foo.bar");
     b.putString(RunnerArgs.ARGUMENT_ORCHESTRATOR_SERVICE, "test.orchestratorService");
+    b.putString(RunnerArgs.ARGUMENT_ORCHESTRATOR_UID, "1000");
     b.putString(RunnerArgs.ARGUMENT_LIST_TESTS_FOR_ORCHESTRATOR, "true");
     b.putString(RunnerArgs.ARGUMENT_ORCHESTRATOR_DISCOVERY_SERVICE, "test.DiscoveryService");
     b.putString(RunnerArgs.ARGUMENT_ORCHESTRATOR_RUN_EVENTS_SERVICE, "test.RunEventsService");
@@ -617,13 +620,16 @@ public class RunnerArgsTest {
     b.putString(RunnerArgs.ARGUMENT_CLASSPATH_TO_SCAN, "/foo/baz/f.dex:/foo/bar/f.dex");
     b.putString(RunnerArgs.ARGUMENT_TESTS_REGEX, "myregex");
     b.putString(RunnerArgs.ARGUMENT_TEST_PLATFORM_MIGRATION, "true");
+    b.putString(RunnerArgs.ARGUMENT_USE_TEST_DISCOVERY_INDEX, "true");
+    b.putString(RunnerArgs.ARGUMENT_PARALLEL_DISCOVERY, "4");
+    b.putString(RunnerArgs.ARGUMENT_SHARDING_STRATEGY, "balanced");
 
     RunnerArgs fromBundle = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
 
     Set<String> exceptions = new HashSet<>();
-    // Parsing of testFile requires a real file on the disk, same for classloader leave those
-    // ones out.
-    exceptions.addAll(Arrays.asList("testFile", "classLoader"));
+    // Parsing of testFile requires a real file on the disk, same for classloader and
+    // testDurations leave those ones out.
+    exceptions.addAll(Arrays.asList("testFile", "classLoader", "testDurations"));
 
     for (Field field : RunnerArgs.class.getDeclaredFields()) {
       if (Modifier.isStatic(field.getModifiers()) || exceptions.contains(field.getName())) {
@@ -668,6 +674,71 @@ public class RunnerArgsTest {
     assertEquals("com.foo.bar:ui", args.targetProcess);
   }
 
+  /** Test parsing the parallelDiscovery argument */
+  @Test
+  public void testFromBundle_parallelDiscovery() {
+    Bundle b = new Bundle();
+    b.putString(RunnerArgs.ARGUMENT_PARALLEL_DISCOVERY, "4");
+    RunnerArgs args = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
+    assertEquals(4, args.parallelDiscovery);
+  }
+
+  /** Test parsing the batchTestEvents argument */
+  @Test
+  public void testFromBundle_batchTestEvents() {
+    Bundle b = new Bundle();
+    RunnerArgs args = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
+    assertFalse(args.batchTestEvents);
+
+    b.putString(RunnerArgs.ARGUMENT_BATCH_TEST_EVENTS, "true");
+    args = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
+    assertTrue(args.batchTestEvents);
+  }
+
+  /** Test parsing the shardingStrategy argument */
+  @Test
+  public void testFromBundle_shardingStrategy() {
+    Bundle b = new Bundle();
+    RunnerArgs args = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
+    assertEquals(RunnerArgs.SHARDING_STRATEGY_HASH, args.shardingStrategy);
+
+    b.putString(RunnerArgs.ARGUMENT_SHARDING_STRATEGY, "balanced");
+    args = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
+    assertEquals(RunnerArgs.SHARDING_STRATEGY_BALANCED, args.shardingStrategy);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  @SuppressWarnings("TestExceptionChecker")
+  public void testFromBundle_invalidShardingStrategy() {
+    Bundle b = new Bundle();
+    b.putString(RunnerArgs.ARGUMENT_SHARDING_STRATEGY, "random");
+    new RunnerArgs.Builder().fromBundle(getInstrumentation(), b);
+  }
+
+  /** Test parsing the lines of a test durations file */
+  @Test
+  public void testParseTestDurations() throws IOException {
+    BufferedReader reader =
+        new BufferedReader(
+            new StringReader(
+                "com.foo.Bar#test1,1200\n\ncom.foo.Bar#test2, 30\nmalformed\nx#y,z\n"));
+
+    Map<String, Long> durations = RunnerArgs.Builder.parseTestDurations(reader);
+
+    assertEquals(2, durations.size());
+    assertEquals(Long.valueOf(1200), durations.get("com.foo.Bar#test1"));
+    assertEquals(Long.valueOf(30), durations.get("com.foo.Bar#test2"));
+  }
+
+  /** Test that a missing test durations file is not an error */
+  @Test
+  public void testFromBundle_missingTestDurationsFile() {
+    Bundle b = new Bundle();
+    b.putString(RunnerArgs.ARGUMENT_TEST_DURATIONS_FILE, "/does/not/exist");
+    RunnerArgs args = new RunnerArgs.Builder().fromBundle(getInstrumentation(), b).build();
+    assertTrue(args.testDurations.isEmpty());
+  }
+
   /** Test parsing the boolean legacyRunListenerMode argument */
   @Test
   public void testFromBundle_legacyRunListenerMode() {
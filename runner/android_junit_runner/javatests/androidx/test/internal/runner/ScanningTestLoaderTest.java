@@ -29,8 +29,10 @@ import androidx.test.testing.fixtures.JUnit4Test;
 import androidx.test.testing.fixtures.NotATest;
 import androidx.test.testing.fixtures.SubClassAbstractTest;
 import androidx.test.testing.fixtures.SubClassJUnit4Test;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -141,6 +143,32 @@ public class ScanningTestLoaderTest {
     assertSuccess(SubClassAbstractTest.class, "testFoo");
   }
 
+  @Test
+  public void testLoadTests_parallel_keepsOrderAndSkipsNonTests() {
+    AndroidRunnerBuilder runnerBuilder =
+        new AndroidRunnerBuilder(false, 0, Collections.<Class<? extends RunnerBuilder>>emptyList());
+    List<String> classNames = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      classNames.add(JUnit4Test.class.getName());
+      classNames.add(NotATest.class.getName());
+      classNames.add("notexist" + i);
+      classNames.add(JUnit3Test.class.getName());
+      classNames.add(SubClassJUnit4Test.class.getName());
+    }
+    TestLoader parallelLoader =
+        TestLoader.Factory.create(null, runnerBuilder, /* scanningPath= */ true, 4);
+
+    List<Runner> runners = parallelLoader.getRunnersFor(classNames);
+
+    assertThat(runners).hasSize(3);
+    assertThat(runners.get(0).getDescription().getClassName())
+        .isEqualTo(JUnit4Test.class.getName());
+    assertThat(runners.get(1).getDescription().getClassName())
+        .isEqualTo(JUnit3Test.class.getName());
+    assertThat(runners.get(2).getDescription().getClassName())
+        .isEqualTo(SubClassJUnit4Test.class.getName());
+  }
+
   /** Verify loading a class that has already been loaded */
   @Test
   public void testLoadTests_loadAlreadyLoadedClass() {
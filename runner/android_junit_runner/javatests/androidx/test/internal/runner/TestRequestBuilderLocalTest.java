@@ -19,22 +19,32 @@ import static androidx.test.internal.runner.TestRequestBuilder.RequiresDeviceFil
 import static androidx.test.platform.app.InstrumentationRegistry.getArguments;
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.RequiresDevice;
 import androidx.test.filters.SmallTest;
+import androidx.test.platform.io.PlatformTestStorage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Request;
 import org.junit.runner.RunWith;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.notification.RunListener;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
@@ -67,6 +77,8 @@ public class TestRequestBuilderLocalTest {
     public void yetAnotherTestFixture() {}
   }
 
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Mock private ClassPathScanner mockClassPathScanner;
 
   private TestRequestBuilder builder;
@@ -74,13 +86,16 @@ public class TestRequestBuilderLocalTest {
   @Before
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
-    builder =
-        new TestRequestBuilder(getInstrumentation(), getArguments()) {
-          @Override
-          ClassPathScanner createClassPathScanner(List<String> paths) {
-            return mockClassPathScanner;
-          }
-        };
+    builder = createBuilder();
+  }
+
+  private TestRequestBuilder createBuilder() {
+    return new TestRequestBuilder(getInstrumentation(), getArguments()) {
+      @Override
+      ClassPathScanner createClassPathScanner(List<String> paths) {
+        return mockClassPathScanner;
+      }
+    };
   }
 
   @Test
@@ -135,6 +150,111 @@ public class TestRequestBuilderLocalTest {
     assertThat(results).hasSize(2);
   }
 
+  @Test
+  public void testDiscoveryIndex_laterRunsDoNotScan() throws IOException {
+    File indexFile = new File(tempFolder.getRoot(), "index");
+    setClassPathScanningResults(
+        TestFixture.class.getName(),
+        AnotherTestFixture.class.getName(),
+        "com.android.SomeOtherClass");
+
+    List<String> firstRun =
+        runRequest(builder.addPathToScan("foo").setTestDiscoveryIndexFile(indexFile).build());
+    RecordingClassLoader classLoader = new RecordingClassLoader();
+    List<String> secondRun =
+        runRequest(
+            createBuilder()
+                .addPathToScan("foo")
+                .setTestDiscoveryIndexFile(indexFile)
+                .setClassLoader(classLoader)
+                .build());
+
+    assertThat(firstRun)
+        .containsExactly(
+            TestFixture.class.getName() + "#match",
+            TestFixture.class.getName() + "#noMatch",
+            AnotherTestFixture.class.getName() + "#anotherTestFixture");
+    assertThat(secondRun).containsExactlyElementsIn(firstRun).inOrder();
+    assertThat(classLoader.loadedClassNames).doesNotContain("com.android.SomeOtherClass");
+    verify(mockClassPathScanner, times(1)).getClassPathEntries(ArgumentMatchers.any());
+  }
+
+  @Test
+  public void testDiscoveryIndex_skipsClassesWithoutTestsOfSize() throws IOException {
+    File indexFile = new File(tempFolder.getRoot(), "index");
+    setClassPathScanningResults(TestFixture.class.getName(), AnotherTestFixture.class.getName());
+    runRequest(builder.addPathToScan("foo").setTestDiscoveryIndexFile(indexFile).build());
+
+    RecordingClassLoader classLoader = new RecordingClassLoader();
+    List<String> results =
+        runRequest(
+            createBuilder()
+                .addPathToScan("foo")
+                .setTestDiscoveryIndexFile(indexFile)
+                .setClassLoader(classLoader)
+                .addTestSizeFilter(TestSize.SMALL)
+                .build());
+
+    assertThat(results).containsExactly(TestFixture.class.getName() + "#match");
+    assertThat(classLoader.loadedClassNames).doesNotContain(AnotherTestFixture.class.getName());
+  }
+
+  @Test
+  public void testDiscoveryIndex_shardsMatchUnindexedShards() throws IOException {
+    File indexFile = new File(tempFolder.getRoot(), "index");
+    setClassPathScanningResults(
+        TestFixture.class.getName(),
+        AnotherTestFixture.class.getName(),
+        YetAnotherTestFixture.class.getName());
+    runRequest(builder.addPathToScan("foo").setTestDiscoveryIndexFile(indexFile).build());
+
+    for (int shardIndex = 0; shardIndex < 3; shardIndex++) {
+      List<String> indexed =
+          runRequest(
+              createBuilder()
+                  .addPathToScan("foo")
+                  .setTestDiscoveryIndexFile(indexFile)
+                  .addShardingFilter(3, shardIndex)
+                  .build());
+      List<String> unindexed =
+          runRequest(createBuilder().addPathToScan("foo").addShardingFilter(3, shardIndex).build());
+
+      assertThat(indexed).containsExactlyElementsIn(unindexed).inOrder();
+    }
+  }
+
+  @Test
+  public void testDiscoveryIndex_keptInTestStorage() throws IOException {
+    PlatformTestStorage testStorage = mock(PlatformTestStorage.class);
+    ByteArrayOutputStream storedIndex = new ByteArrayOutputStream();
+    when(testStorage.openInternalInputFile("index"))
+        .thenThrow(new FileNotFoundException())
+        .thenAnswer(invocation -> new ByteArrayInputStream(storedIndex.toByteArray()));
+    when(testStorage.openInternalOutputFile("index")).thenReturn(storedIndex);
+    setClassPathScanningResults(
+        TestFixture.class.getName(), AnotherTestFixture.class.getName(), "com.android.NotATest");
+
+    List<String> firstRun =
+        runRequest(
+            builder
+                .addPathToScan("foo")
+                .setTestDiscoveryIndexTestStorageFile(testStorage, "index")
+                .build());
+    RecordingClassLoader classLoader = new RecordingClassLoader();
+    List<String> secondRun =
+        runRequest(
+            createBuilder()
+                .addPathToScan("foo")
+                .setTestDiscoveryIndexTestStorageFile(testStorage, "index")
+                .setClassLoader(classLoader)
+                .build());
+
+    assertThat(storedIndex.size()).isGreaterThan(0);
+    assertThat(secondRun).containsExactlyElementsIn(firstRun).inOrder();
+    assertThat(classLoader.loadedClassNames).doesNotContain("com.android.NotATest");
+    verify(mockClassPathScanner, times(1)).getClassPathEntries(ArgumentMatchers.any());
+  }
+
   private void setClassPathScanningResults(String... names) throws IOException {
     when(mockClassPathScanner.getClassPathEntries(ArgumentMatchers.any()))
         .thenReturn(new HashSet<>(Arrays.asList(names)));
@@ -149,6 +269,21 @@ public class TestRequestBuilderLocalTest {
     return listener.methods;
   }
 
+  /** Records the names of the classes it is asked to load. */
+  private static class RecordingClassLoader extends ClassLoader {
+    final List<String> loadedClassNames = new ArrayList<>();
+
+    RecordingClassLoader() {
+      super(TestRequestBuilderLocalTest.class.getClassLoader());
+    }
+
+    @Override
+    public Class<?> loadClass(String name) throws ClassNotFoundException {
+      loadedClassNames.add(name);
+      return super.loadClass(name);
+    }
+  }
+
   /** Records list of test methods executed */
   private static class RecordingRunListener extends RunListener {
     ArrayList<String> methods = new ArrayList<>();
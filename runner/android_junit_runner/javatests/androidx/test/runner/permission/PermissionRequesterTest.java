@@ -23,14 +23,17 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.os.Build;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 import androidx.test.runner.permission.RequestPermissionCallable.Result;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -58,11 +61,20 @@ public class PermissionRequesterTest {
 
   private PermissionRequester permissionRequester;
 
+  private List<String> batchGrantedPermissions;
+
   @Before
   public void initMocks() {
     MockitoAnnotations.initMocks(this);
     withStubbedTargetPackage();
-    permissionRequester = new PermissionRequester(targetContext);
+    permissionRequester =
+        new PermissionRequester(targetContext) {
+          @Override
+          ShellCommand createGrantCommand(List<String> permissions) {
+            batchGrantedPermissions = permissions;
+            return shellCommand;
+          }
+        };
   }
 
   @Test
@@ -125,6 +137,36 @@ public class PermissionRequesterTest {
     verify(stubbedCallable).call();
   }
 
+  @Test
+  public void requestPermissions_grantsMissingPermissionsWithOneCommand() throws Throwable {
+    when(targetContext.checkCallingOrSelfPermission(RUNTIME_PERMISSION1))
+        .thenReturn(PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_GRANTED);
+    when(targetContext.checkCallingOrSelfPermission(RUNTIME_PERMISSION2))
+        .thenReturn(PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_GRANTED);
+    when(targetContext.checkCallingOrSelfPermission(RUNTIME_PERMISSION3))
+        .thenReturn(PackageManager.PERMISSION_GRANTED);
+    permissionRequester.addPermissions(
+        RUNTIME_PERMISSION1, RUNTIME_PERMISSION2, RUNTIME_PERMISSION3);
+
+    permissionRequester.requestPermissions();
+
+    verify(shellCommand, times(1)).execute();
+    assertThat(
+        batchGrantedPermissions, containsInAnyOrder(RUNTIME_PERMISSION1, RUNTIME_PERMISSION2));
+  }
+
+  @Test
+  public void requestPermissions_permissionNotGrantedByCommandFailsTest() throws Throwable {
+    expected.expect(AssertionError.class);
+    when(targetContext.checkCallingOrSelfPermission(RUNTIME_PERMISSION1))
+        .thenReturn(PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_GRANTED);
+    when(targetContext.checkCallingOrSelfPermission(RUNTIME_PERMISSION2))
+        .thenReturn(PackageManager.PERMISSION_DENIED);
+    permissionRequester.addPermissions(RUNTIME_PERMISSION1, RUNTIME_PERMISSION2);
+
+    permissionRequester.requestPermissions();
+  }
+
   @Test
   public void deviceNotSupportsPermissionSkipsTest() throws Throwable {
     withRuntimeVersion(Build.VERSION_CODES.LOLLIPOP_MR1);
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertTrue;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 import androidx.test.runner.permission.UiAutomationShellCommand.PmCommand;
+import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -34,6 +35,7 @@ public class UiAutomationShellCommandTest {
   private static final String TARGET_PACKAGE = "androidx.test.rule";
 
   private static final String RUNTIME_PERMISSION1 = "android.permission.PERMISSION1";
+  private static final String RUNTIME_PERMISSION2 = "android.permission.PERMISSION2";
 
   @Test
   public void commandForPermission() {
@@ -45,4 +47,24 @@ public class UiAutomationShellCommandTest {
     String expectedCmdGrant = "pm grant " + TARGET_PACKAGE + " " + RUNTIME_PERMISSION1;
     assertThat(shellCmdGrant.commandForPermission(), equalTo(expectedCmdGrant));
   }
+
+  @Test
+  public void commandForPermissions() {
+    UiAutomationShellCommand shellCmdGrant =
+        new UiAutomationShellCommand(
+            TARGET_PACKAGE,
+            Arrays.asList(RUNTIME_PERMISSION1, RUNTIME_PERMISSION2),
+            PmCommand.GRANT_PERMISSION);
+
+    String expectedCmdGrant =
+        "sh -c pm${IFS}grant${IFS}"
+            + TARGET_PACKAGE
+            + "${IFS}"
+            + RUNTIME_PERMISSION1
+            + ";pm${IFS}grant${IFS}"
+            + TARGET_PACKAGE
+            + "${IFS}"
+            + RUNTIME_PERMISSION2;
+    assertThat(shellCmdGrant.commandForPermissions(), equalTo(expectedCmdGrant));
+  }
 }
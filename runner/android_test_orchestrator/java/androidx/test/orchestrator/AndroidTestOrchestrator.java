@@ -24,6 +24,8 @@ import static androidx.test.orchestrator.OrchestratorConstants.CLEAR_PKG_DATA;
 import static androidx.test.orchestrator.OrchestratorConstants.COVERAGE_FILE_PATH;
 import static androidx.test.orchestrator.OrchestratorConstants.ISOLATED_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.ORCHESTRATOR_DEBUG_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.PARALLEL_USERS_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.SERIAL_TESTS_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.TARGET_INSTRUMENTATION_ARGUMENT;
 
 import android.Manifest.permission;
@@ -41,7 +43,9 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Debug;
 import android.os.IBinder;
+import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.VisibleForTesting;
@@ -50,6 +54,7 @@ import androidx.test.orchestrator.TestRunnable.RunFinishedListener;
 import androidx.test.orchestrator.junit.ParcelableDescription;
 import androidx.test.orchestrator.listeners.OrchestrationListenerManager;
 import androidx.test.orchestrator.listeners.OrchestrationResult;
+import androidx.test.orchestrator.listeners.OrchestrationResult.Phase;
 import androidx.test.orchestrator.listeners.OrchestrationResultPrinter;
 import androidx.test.services.shellexecutor.ClientNotConnected;
 import androidx.test.services.shellexecutor.ShellExecSharedConstants;
@@ -60,12 +65,18 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 /**
@@ -116,6 +127,15 @@ import java.util.regex.Pattern;
  * context.getPackageName()} and {@code pm clear targetContext.getPackageName()} commands in between
  * test invocations. Note, the context in the clear command is the App under test context.
  *
+ * <p>Pass {@code -e parallelUsers 10,11} to run isolated tests in parallel, one test process at a
+ * time per listed user or work profile, so the app data of tests running at the same time doesn't
+ * collide. Requires API 24. The target apks must be installed for every listed user, and the test
+ * apk must request the {@code android.permission.INTERACT_ACROSS_USERS} permission, which the
+ * orchestrator grants so the tests can report back to it across users. Results are reported in the
+ * order the tests were collected, as in a serial run. Pass {@code -e serialTests
+ * com.foo.Class,com.foo.Other#method} to list the test classes or methods that are not safe to run
+ * in parallel, they only run when no other test runs.
+ *
  * <p>Pass {@code -e orchestratorDebug} flag if you need to debug orchestrator itself. Note, to
  * debug test code you still need to pass {@code -e debug}.
  *
@@ -131,6 +151,7 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   // As defined in the AndroidManifest of the Orchestrator app.
   private static final String ORCHESTRATOR_SERVICE_LOCATION = "OrchestratorService";
   private static final String ORCHESTRATOR_SERVICE_ARGUMENT = "orchestratorService";
+  private static final String ORCHESTRATOR_UID_ARGUMENT = "orchestratorUid";
 
   private static final String TEST_COLLECTION_FILENAME = "testCollection.txt";
   private static final int MAX_FILENAME_LENGTH = 255;
@@ -147,6 +168,8 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
       new OrchestrationListenerManager(this);
 
   private final ExecutorService executorService;
+  // Prepares the next test while the current one runs on executorService.
+  private final ExecutorService preparationExecutorService;
 
   // assigned on service connection callback thread, read from several other threads.
   private volatile CallbackLogic callbackLogic;
@@ -157,6 +180,28 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   // instrumentation, it should live in its own state machine class.
   private String test;
   private Iterator<String> testIterator;
+  // The next test, already taken from testIterator, if it is being prepared.
+  private Future<PreparedTest> nextTest;
+  // assigned on the executorService thread, read when the test process finishes.
+  private volatile long testProcessStartTime;
+
+  // Only used when running tests in parallel.
+  private ParallelTestScheduler parallelTestScheduler;
+  private ExecutorService parallelExecutorService;
+
+  /** A test whose arguments and output stream are ready for running it. */
+  private static final class PreparedTest {
+    final String test;
+    final Bundle arguments;
+    // null if the output file could not be opened ahead of time.
+    final OutputStream outputStream;
+
+    PreparedTest(String test, Bundle arguments, OutputStream outputStream) {
+      this.test = test;
+      this.arguments = arguments;
+      this.outputStream = outputStream;
+    }
+  }
 
   public AndroidTestOrchestrator() {
     super();
@@ -168,6 +213,13 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
               t.setName(TAG); // Required for TikTok to not kill the thread.
               return t;
             });
+    preparationExecutorService =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread t = Executors.defaultThreadFactory().newThread(runnable);
+              t.setName(TAG + "Preparation");
+              return t;
+            });
   }
 
   @Override
@@ -182,6 +234,8 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
     if (null == arguments.getString(TARGET_INSTRUMENTATION_ARGUMENT)) {
       throw new IllegalArgumentException("You must provide a target instrumentation.");
     }
+    // Fail fast on invalid users, rather than after test collection.
+    getParallelUsers(arguments);
 
     this.arguments = arguments;
     this.arguments.putString(ORCHESTRATOR_SERVICE_ARGUMENT, ORCHESTRATOR_SERVICE_LOCATION);
@@ -222,7 +276,8 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
           context,
           getSecret(arguments),
           "pm",
-          Arrays.asList("grant", context.getPackageName(), permission));
+          Arrays.asList("grant", context.getPackageName(), permission),
+          /* executeThroughShell= */ false);
       if (PackageManager.PERMISSION_GRANTED != context.checkCallingOrSelfPermission(permission)) {
         throw new IllegalStateException("Permission requested but not granted!");
       }
@@ -272,7 +327,7 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
               getContext(),
               getSecret(arguments),
               arguments,
-              getOutputStream(),
+              getOutputStream(null),
               AndroidTestOrchestrator.this));
     }
   }
@@ -321,8 +376,19 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
         finish(Activity.RESULT_CANCELED, createResultBundle());
         return;
       }
+      if (runsInIsolatedMode(arguments) && runsInParallel(arguments)) {
+        executeTestsInParallel(allTests);
+        return;
+      }
     } else {
+      long testProcessFinishTime = SystemClock.elapsedRealtime();
+      if (runsInIsolatedMode(arguments)) {
+        resultBuilder.addPhaseTime(
+            Phase.TEST_PROCESS, testProcessFinishTime - testProcessStartTime);
+      }
       listenerManager.testProcessFinished(getOutputFile(test));
+      resultBuilder.addPhaseTime(
+          Phase.PROCESS_RESULTS, SystemClock.elapsedRealtime() - testProcessFinishTime);
     }
 
     if (runsInIsolatedMode(arguments)) {
@@ -343,26 +409,153 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
     test = "";
     executorService.execute(
         TestRunnable.legacyTestRunnable(
-            getContext(), getSecret(arguments), arguments, getOutputStream(), this));
+            getContext(), getSecret(arguments), arguments, getOutputStream(test), this));
   }
 
+  /**
+   * Starts the next test. Clearing package data and running the test are queued on the single
+   * thread executorService, so they never overlap with another test. Everything else the next test
+   * needs is prepared on preparationExecutorService while the current test runs.
+   */
   private void executeNextTest() {
-    if (!testIterator.hasNext()) {
-      finish(Activity.RESULT_OK, createResultBundle());
-      return;
+    Future<PreparedTest> preparation = nextTest;
+    nextTest = null;
+    if (preparation == null) {
+      if (!testIterator.hasNext()) {
+        finish(Activity.RESULT_OK, createResultBundle());
+        return;
+      }
+      preparation = prepareTest(testIterator.next(), /* openOutputStream= */ true);
     }
-    test = testIterator.next();
+    PreparedTest preparedTest = getPreparedTest(preparation);
+    test = preparedTest.test;
     listenerManager.testProcessStarted(new ParcelableDescription(test));
-    String coveragePath = addTestCoverageSupport(arguments, test);
-    if (coveragePath != null) {
-      arguments.putString(AJUR_COVERAGE_FILE, coveragePath);
-    }
+    OutputStream outputStream =
+        preparedTest.outputStream != null ? preparedTest.outputStream : getOutputStream(test);
     clearPackageData();
-    executorService.execute(
+    TestRunnable testRunnable =
         TestRunnable.singleTestRunnable(
-            getContext(), getSecret(arguments), arguments, getOutputStream(), this, test));
+            getContext(), getSecret(arguments), preparedTest.arguments, outputStream, this, test);
+    executorService.execute(
+        () -> {
+          testProcessStartTime = SystemClock.elapsedRealtime();
+          testRunnable.run();
+        });
+
+    if (testIterator.hasNext()) {
+      String following = testIterator.next();
+      // Opening the output file truncates it, so it must wait if the running test writes to it.
+      nextTest = prepareTest(following, !getOutputFile(following).equals(getOutputFile(test)));
+    }
+  }
+
+  private void executeTestsInParallel(List<String> tests) {
+    List<Integer> userIds = getParallelUsers(arguments);
+    Log.i(TAG, String.format("Running %d tests in parallel as users %s", tests.size(), userIds));
+    // Marks that test execution started.
+    test = "";
+    execShellCommandSync(
+        getContext(),
+        getSecret(arguments),
+        buildGrantCrossUserCommand(userIds, getTargetInstrPackage(arguments)),
+        Collections.<String>emptyList(),
+        /* executeThroughShell= */ true);
+    parallelExecutorService =
+        Executors.newFixedThreadPool(
+            userIds.size(),
+            runnable -> {
+              Thread t = Executors.defaultThreadFactory().newThread(runnable);
+              t.setName(TAG + "Parallel");
+              return t;
+            });
+    parallelTestScheduler =
+        new ParallelTestScheduler(
+            tests,
+            userIds,
+            getSerialTests(arguments),
+            listenerManager,
+            this::launchParallelTest,
+            this::getOutputFile,
+            () -> {
+              parallelExecutorService.shutdown();
+              finish(Activity.RESULT_OK, createResultBundle());
+            });
+    callbackLogic.setParallelTestScheduler(parallelTestScheduler);
+    parallelTestScheduler.start();
+  }
+
+  private void launchParallelTest(String testName, int userId) {
+    parallelExecutorService.execute(
+        () -> {
+          TestRunnable testRunnable;
+          try {
+            testRunnable = createParallelTestRunnable(testName, userId);
+          } catch (RuntimeException e) {
+            // The test is reported as a crashed test process.
+            Log.e(TAG, "Failed to start test " + testName, e);
+            parallelTestScheduler.testProcessFinished(userId);
+            return;
+          }
+          testRunnable.run();
+        });
+  }
+
+  private TestRunnable createParallelTestRunnable(String testName, int userId) {
+    long startTime = SystemClock.elapsedRealtime();
+    Bundle testArguments = new Bundle(arguments);
+    // The runner binds to OrchestratorService of this process' user, rather than its own user's.
+    testArguments.putString(ORCHESTRATOR_UID_ARGUMENT, Integer.toString(Process.myUid()));
+    String coveragePath = addTestCoverageSupport(testArguments, testName);
     if (coveragePath != null) {
-      arguments.remove(AJUR_COVERAGE_FILE);
+      testArguments.putString(AJUR_COVERAGE_FILE, coveragePath);
+    }
+    OutputStream outputStream = getOutputStream(testName);
+    resultBuilder.addPhaseTime(Phase.PREPARE_TEST, SystemClock.elapsedRealtime() - startTime);
+    if (shouldClearPackageData(arguments)) {
+      clearPackageDataSync(userId);
+    }
+    long processStartTime = SystemClock.elapsedRealtime();
+    return TestRunnable.singleTestRunnable(
+        getContext(),
+        getSecret(arguments),
+        testArguments,
+        outputStream,
+        () -> {
+          resultBuilder.addPhaseTime(
+              Phase.TEST_PROCESS, SystemClock.elapsedRealtime() - processStartTime);
+          parallelTestScheduler.testProcessFinished(userId);
+        },
+        testName,
+        userId);
+  }
+
+  private Future<PreparedTest> prepareTest(String testName, boolean openOutputStream) {
+    return preparationExecutorService.submit(
+        () -> {
+          long startTime = SystemClock.elapsedRealtime();
+          Bundle testArguments = new Bundle(arguments);
+          String coveragePath = addTestCoverageSupport(testArguments, testName);
+          if (coveragePath != null) {
+            testArguments.putString(AJUR_COVERAGE_FILE, coveragePath);
+          }
+          OutputStream outputStream = openOutputStream ? getOutputStream(testName) : null;
+          resultBuilder.addPhaseTime(
+              Phase.PREPARE_TEST, SystemClock.elapsedRealtime() - startTime);
+          return new PreparedTest(testName, testArguments, outputStream);
+        });
+  }
+
+  private static PreparedTest getPreparedTest(Future<PreparedTest> preparation) {
+    try {
+      return preparation.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException("Failed to prepare test", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while preparing test", e);
     }
   }
 
@@ -374,20 +567,66 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
         new Runnable() {
           @Override
           public void run() {
-            execShellCommandSync(
-                getContext(),
-                getSecret(arguments),
-                "pm",
-                Arrays.asList("clear", getTargetPackage(arguments)));
-            execShellCommandSync(
-                getContext(),
-                getSecret(arguments),
-                "pm",
-                Arrays.asList("clear", getTargetInstrPackage(arguments)));
+            clearPackageDataSync(TestRunnable.USER_UNSPECIFIED);
           }
         });
   }
 
+  private void clearPackageDataSync(int userId) {
+    long startTime = SystemClock.elapsedRealtime();
+    // Both packages are cleared in a single shell invocation, saving a round trip to the shell
+    // executor per test.
+    execShellCommandSync(
+        getContext(),
+        getSecret(arguments),
+        buildClearPackageDataCommand(
+            userId, getTargetPackage(arguments), getTargetInstrPackage(arguments)),
+        Collections.<String>emptyList(),
+        /* executeThroughShell= */ true);
+    resultBuilder.addPhaseTime(
+        Phase.CLEAR_PACKAGE_DATA, SystemClock.elapsedRealtime() - startTime);
+  }
+
+  /**
+   * Builds the command that lets the test processes of the given users bind to this orchestrator,
+   * which runs as another user.
+   */
+  @VisibleForTesting
+  static String buildGrantCrossUserCommand(List<Integer> userIds, String targetInstrPackage) {
+    StringBuilder command = new StringBuilder();
+    for (int userId : userIds) {
+      if (command.length() > 0) {
+        command.append("; ");
+      }
+      command
+          .append("pm grant --user ")
+          .append(userId)
+          .append(' ')
+          .append(targetInstrPackage)
+          .append(" android.permission.INTERACT_ACROSS_USERS");
+    }
+    return command.toString();
+  }
+
+  @VisibleForTesting
+  static String buildClearPackageDataCommand(String targetPackage, String targetInstrPackage) {
+    return buildClearPackageDataCommand(
+        TestRunnable.USER_UNSPECIFIED, targetPackage, targetInstrPackage);
+  }
+
+  @VisibleForTesting
+  static String buildClearPackageDataCommand(
+      int userId, String targetPackage, String targetInstrPackage) {
+    String clear =
+        userId == TestRunnable.USER_UNSPECIFIED ? "pm clear " : "pm clear --user " + userId + " ";
+    StringBuilder command = new StringBuilder(clear).append(targetPackage);
+    if (!targetInstrPackage.equals(targetPackage)) {
+      // ';' rather than '&&', the second package is cleared even if clearing the first fails.
+      command.append("; ").append(clear).append(targetInstrPackage);
+    }
+    return command.toString();
+  }
+
   @VisibleForTesting
   static String addTestCoverageSupport(Bundle args, String filename) {
     // Only do the aggregate coverage mode if coverage was requested AND we're running in isolation
@@ -410,14 +649,14 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
     return null;
   }
 
-  private OutputStream getOutputStream() {
+  private OutputStream getOutputStream(String testName) {
     try {
       Context context = getContext();
       // Support for directBootMode
       if (Build.VERSION.SDK_INT >= 24) {
         context = ContextCompat.createDeviceProtectedStorageContext(context);
       }
-      return context.openFileOutput(getOutputFile(test), 0);
+      return context.openFileOutput(getOutputFile(testName), 0);
     } catch (FileNotFoundException e) {
       throw new RuntimeException("Could not open stream for output");
     }
@@ -451,12 +690,36 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
 
     bundle.putString(
         Instrumentation.REPORT_KEY_STREAMRESULT, String.format("\n%s", stream.toString()));
+    OrchestrationResult result = resultBuilder.build();
+    for (Phase phase : Phase.values()) {
+      bundle.putLong(phase.getReportKey(), result.getPhaseTime(phase));
+    }
     return bundle;
   }
 
+  /** Closes the output stream opened for the next test if the run finishes before starting it. */
+  private void discardNextTest() {
+    Future<PreparedTest> preparation = nextTest;
+    nextTest = null;
+    if (preparation == null) {
+      return;
+    }
+    try {
+      OutputStream outputStream = preparation.get().outputStream;
+      if (outputStream != null) {
+        outputStream.close();
+      }
+    } catch (ExecutionException | IOException e) {
+      Log.w(TAG, "Failed to discard the next test", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Override
   public void finish(int resultCode, Bundle results) {
-
+    discardNextTest();
+    preparationExecutorService.shutdown();
     try {
       super.finish(resultCode, results);
     } catch (SecurityException e) {
@@ -491,6 +754,53 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
         && (path != null && !path.isEmpty());
   }
 
+  private static boolean runsInParallel(Bundle arguments) {
+    return !TextUtils.isEmpty(arguments.getString(PARALLEL_USERS_ARGUMENT));
+  }
+
+  @VisibleForTesting
+  static List<Integer> getParallelUsers(Bundle arguments) {
+    List<Integer> userIds = new ArrayList<>();
+    String users = arguments.getString(PARALLEL_USERS_ARGUMENT);
+    if (TextUtils.isEmpty(users)) {
+      return userIds;
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+      throw new IllegalArgumentException(
+          String.format("-e %s requires API %d", PARALLEL_USERS_ARGUMENT, Build.VERSION_CODES.N));
+    }
+    for (String user : users.split(",", -1)) {
+      int userId;
+      try {
+        userId = Integer.parseInt(user.trim());
+      } catch (NumberFormatException e) {
+        userId = -1;
+      }
+      if (userId < 0 || userIds.contains(userId)) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Invalid user [%s] in -e %s %s, expected distinct user ids",
+                user, PARALLEL_USERS_ARGUMENT, users));
+      }
+      userIds.add(userId);
+    }
+    return userIds;
+  }
+
+  @VisibleForTesting
+  static Set<String> getSerialTests(Bundle arguments) {
+    Set<String> serialTests = new HashSet<>();
+    String tests = arguments.getString(SERIAL_TESTS_ARGUMENT);
+    if (!TextUtils.isEmpty(tests)) {
+      for (String test : tests.split(",", -1)) {
+        if (!test.trim().isEmpty()) {
+          serialTests.add(test.trim());
+        }
+      }
+    }
+    return serialTests;
+  }
+
   private static boolean shouldClearPackageData(Bundle arguments) {
     return Boolean.parseBoolean(arguments.getString(CLEAR_PKG_DATA));
   }
@@ -517,13 +827,18 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   }
 
   private static String execShellCommandSync(
-      Context context, String secret, String cmd, List<String> params) {
+      Context context,
+      String secret,
+      String cmd,
+      List<String> params,
+      boolean executeThroughShell) {
     String cmdResult = null;
     Throwable exception = null;
     //noinspection TryWithIdenticalCatches (not supported be below API lvl 19)
     try {
       ShellExecutor shellExecutor = new ShellExecutorFactory(context, secret).create();
-      cmdResult = shellExecutor.executeShellCommandSync(cmd, params, new HashMap<>(), false);
+      cmdResult =
+          shellExecutor.executeShellCommandSync(cmd, params, new HashMap<>(), executeThroughShell);
     } catch (ClientNotConnected clientNotConnected) {
       exception = clientNotConnected;
     } catch (IOException e) {
@@ -19,7 +19,10 @@ package androidx.test.orchestrator;
 import static androidx.test.internal.util.Checks.checkNotNull;
 import static androidx.test.internal.util.Checks.checkState;
 
+import android.os.Binder;
 import android.os.Bundle;
+import android.os.Parcel;
+import android.os.UserHandle;
 import androidx.test.orchestrator.callback.OrchestratorCallback;
 import androidx.test.orchestrator.listeners.OrchestrationListenerManager;
 import java.util.ArrayList;
@@ -35,6 +38,8 @@ class CallbackLogic extends OrchestratorCallback.Stub {
   // Assigned by the local instrumentation object in the service connection callback thread,
   // read from many ibinder threads.
   private volatile OrchestrationListenerManager listenerManager;
+  // Assigned before tests run in parallel, notifications are then buffered per user by it.
+  private volatile ParallelTestScheduler parallelTestScheduler;
 
   @Override
   public void addTest(String test) {
@@ -51,6 +56,11 @@ class CallbackLogic extends OrchestratorCallback.Stub {
 
   @Override
   public void sendTestNotification(Bundle bundle) {
+    ParallelTestScheduler scheduler = parallelTestScheduler;
+    if (scheduler != null) {
+      scheduler.handleNotification(getUserId(Binder.getCallingUid()), bundle);
+      return;
+    }
     synchronized (testLock) {
       checkNotNull(listenerManager, "Unable to process test notification. No ListenerManager");
       listenerManager.handleNotification(bundle);
@@ -63,6 +73,24 @@ class CallbackLogic extends OrchestratorCallback.Stub {
     }
   }
 
+  void setParallelTestScheduler(ParallelTestScheduler scheduler) {
+    parallelTestScheduler = checkNotNull(scheduler, "Parallel test scheduler null");
+  }
+
+  /** Returns the id of the user of the given uid. Requires API 24. */
+  static int getUserId(int uid) {
+    UserHandle user = UserHandle.getUserHandleForUid(uid);
+    // UserHandle#getIdentifier is not public, but a parcelled UserHandle is its user id.
+    Parcel parcel = Parcel.obtain();
+    try {
+      UserHandle.writeToParcel(user, parcel);
+      parcel.setDataPosition(0);
+      return parcel.readInt();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
   void setListenerManager(OrchestrationListenerManager mListenerManager) {
     synchronized (testLock) {
       checkState(null == this.listenerManager, "Listener manager assigned twice.");
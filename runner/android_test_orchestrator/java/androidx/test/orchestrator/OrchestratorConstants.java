@@ -23,6 +23,8 @@ final class OrchestratorConstants {
   static final String ORCHESTRATOR_DEBUG_ARGUMENT = "orchestratorDebug";
   static final String COVERAGE_FILE_PATH = "coverageFilePath";
   static final String CLEAR_PKG_DATA = "clearPackageData";
+  static final String PARALLEL_USERS_ARGUMENT = "parallelUsers";
+  static final String SERIAL_TESTS_ARGUMENT = "serialTests";
 
   // The following args have equivalents in AJUR:
   static final String AJUR_LIST_TESTS_ARGUMENT = "listTestsForOrchestrator";
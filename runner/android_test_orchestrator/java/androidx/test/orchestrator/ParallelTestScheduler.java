@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import static androidx.test.internal.util.Checks.checkArgument;
+import static androidx.test.internal.util.Checks.checkState;
+
+import android.os.Bundle;
+import android.util.Log;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.listeners.OrchestrationListenerManager;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Schedules isolated tests over several users, running at most one test process per user at a
+ * time.
+ *
+ * <p>Tests are started in the order they were collected. A serial test is only started once no
+ * other test is running, and no other test is started until it finished, so tests that are not
+ * safe to run in parallel never overlap with another test.
+ *
+ * <p>The notifications of the test processes arrive interleaved. They are buffered per test, and
+ * replayed to the {@link OrchestrationListenerManager} one test at a time, in collection order,
+ * once a test and all the tests before it finished. The listeners thus see the same events, in the
+ * same order, as in a serial run.
+ */
+final class ParallelTestScheduler {
+  private static final String TAG = "ParallelTestScheduler";
+
+  /** Starts test processes. */
+  interface TestLauncher {
+    /**
+     * Starts running the given test as the given user, without blocking. {@link
+     * #testProcessFinished} must be called with the same user once the test process terminated.
+     */
+    void launch(String test, int userId);
+  }
+
+  /** Names the output file of a test, for reporting test process crashes. */
+  interface OutputFileNamer {
+    String getOutputFile(String test);
+  }
+
+  /** The state of a test that was started. */
+  private static final class TestRecord {
+    final String test;
+    final List<Bundle> notifications = new ArrayList<>();
+    boolean finished;
+
+    TestRecord(String test) {
+      this.test = test;
+    }
+  }
+
+  private final List<String> tests;
+  private final Set<String> serialTests;
+  private final OrchestrationListenerManager listenerManager;
+  private final TestLauncher launcher;
+  private final Runnable onAllTestsReported;
+  private final OutputFileNamer outputFileNamer;
+
+  private final Deque<Integer> idleUsers = new ArrayDeque<>();
+  private final Map<Integer, TestRecord> runningTestsByUser = new HashMap<>();
+  private final TestRecord[] records;
+  private int nextTestToStart;
+  private int nextTestToReport;
+  private boolean serialTestRunning;
+
+  /**
+   * @param tests the tests to run, in collection order
+   * @param userIds the users to run tests as, each user runs one test at a time
+   * @param serialTests class names, or class#method names, of the tests that must run alone
+   * @param listenerManager receives the notifications of all tests, in collection order
+   * @param launcher starts the test processes
+   * @param outputFileNamer names the output file of each test
+   * @param onAllTestsReported called once the notifications of the last test were replayed
+   */
+  ParallelTestScheduler(
+      List<String> tests,
+      List<Integer> userIds,
+      Set<String> serialTests,
+      OrchestrationListenerManager listenerManager,
+      TestLauncher launcher,
+      OutputFileNamer outputFileNamer,
+      Runnable onAllTestsReported) {
+    checkArgument(!userIds.isEmpty(), "At least one user is required");
+    this.tests = new ArrayList<>(tests);
+    this.serialTests = serialTests;
+    this.listenerManager = listenerManager;
+    this.launcher = launcher;
+    this.outputFileNamer = outputFileNamer;
+    this.onAllTestsReported = onAllTestsReported;
+    this.idleUsers.addAll(userIds);
+    this.records = new TestRecord[tests.size()];
+  }
+
+  /** Starts as many tests as there are users. */
+  synchronized void start() {
+    if (tests.isEmpty()) {
+      onAllTestsReported.run();
+      return;
+    }
+    startTests();
+  }
+
+  /** Buffers a notification sent by the test process running as the given user. */
+  synchronized void handleNotification(int userId, Bundle bundle) {
+    TestRecord record = runningTestsByUser.get(userId);
+    if (record == null) {
+      Log.w(TAG, "Dropping notification from user " + userId + " that runs no test");
+      return;
+    }
+    record.notifications.add(bundle);
+  }
+
+  /** To be called when the test process of the given user terminates. */
+  synchronized void testProcessFinished(int userId) {
+    TestRecord record = runningTestsByUser.remove(userId);
+    checkState(record != null, "No test is running as user %s", userId);
+    record.finished = true;
+    if (isSerial(record.test)) {
+      serialTestRunning = false;
+    }
+    idleUsers.addLast(userId);
+    reportFinishedTests();
+    startTests();
+  }
+
+  private boolean isSerial(String test) {
+    if (serialTests.contains(test)) {
+      return true;
+    }
+    int methodSeparator = test.indexOf('#');
+    return methodSeparator >= 0 && serialTests.contains(test.substring(0, methodSeparator));
+  }
+
+  private void startTests() {
+    while (!idleUsers.isEmpty() && nextTestToStart < tests.size() && !serialTestRunning) {
+      String test = tests.get(nextTestToStart);
+      if (isSerial(test)) {
+        if (!runningTestsByUser.isEmpty()) {
+          // Wait for the running tests to finish.
+          return;
+        }
+        serialTestRunning = true;
+      }
+      int userId = idleUsers.removeFirst();
+      TestRecord record = new TestRecord(test);
+      records[nextTestToStart++] = record;
+      runningTestsByUser.put(userId, record);
+      launcher.launch(test, userId);
+    }
+  }
+
+  private void reportFinishedTests() {
+    while (nextTestToReport < records.length
+        && records[nextTestToReport] != null
+        && records[nextTestToReport].finished) {
+      TestRecord record = records[nextTestToReport];
+      // The records are released as they are reported, only the unreported ones are kept.
+      records[nextTestToReport++] = null;
+      listenerManager.testProcessStarted(new ParcelableDescription(record.test));
+      for (Bundle notification : record.notifications) {
+        listenerManager.handleNotification(notification);
+      }
+      listenerManager.testProcessFinished(outputFileNamer.getOutputFile(record.test));
+    }
+    if (nextTestToReport == records.length) {
+      onAllTestsReported.run();
+    }
+  }
+}
@@ -42,6 +42,9 @@ public class TestRunnable implements Runnable {
 
   private static final String TAG = "TestRunnable";
 
+  /** Runs the instrumentation as the user the shell command runs as. */
+  static final int USER_UNSPECIFIED = -1;
+
   private final Bundle arguments;
   private final RunFinishedListener listener;
   private final OutputStream outputStream;
@@ -49,6 +52,7 @@ public class TestRunnable implements Runnable {
   private final boolean collectTests;
   private final Context context;
   private final String secret;
+  private final int userId;
 
   /**
    * Constructs a TestRunnable executes all tests in arguments.
@@ -89,6 +93,31 @@ public class TestRunnable implements Runnable {
     return new TestRunnable(context, secret, arguments, outputStream, listener, test, false);
   }
 
+  /**
+   * Constructs a TestRunnable which will run a single test as the given user.
+   *
+   * @param context A context
+   * @param secret A string representing the speakeasy binder key
+   * @param arguments contains arguments to be passed to the target instrumentation
+   * @param outputStream the stream to write the results of the test process
+   * @param listener a callback listener to know when the run has completed
+   * @param test contains a specific test#method to run. Will override whatever is specified in the
+   *     bundle.
+   * @param userId the user, or profile, to run the target instrumentation as. The target apks must
+   *     be installed for this user.
+   */
+  public static TestRunnable singleTestRunnable(
+      Context context,
+      String secret,
+      Bundle arguments,
+      OutputStream outputStream,
+      RunFinishedListener listener,
+      String test,
+      int userId) {
+    return new TestRunnable(
+        context, secret, arguments, outputStream, listener, test, false, userId);
+  }
+
   /**
    * Constructs a TestRunnable which will ask the instrumentation to list out its tests.
    *
@@ -116,6 +145,19 @@ public class TestRunnable implements Runnable {
       RunFinishedListener listener,
       String test,
       boolean collectTests) {
+    this(context, secret, arguments, outputStream, listener, test, collectTests, USER_UNSPECIFIED);
+  }
+
+  @VisibleForTesting
+  TestRunnable(
+      Context context,
+      String secret,
+      Bundle arguments,
+      OutputStream outputStream,
+      RunFinishedListener listener,
+      String test,
+      boolean collectTests,
+      int userId) {
     this.context = context;
     this.secret = secret;
     this.arguments = new Bundle(arguments);
@@ -123,6 +165,7 @@ public class TestRunnable implements Runnable {
     this.listener = listener;
     this.test = test;
     this.collectTests = collectTests;
+    this.userId = userId;
   }
 
   /** Called at the end of a test run. */
@@ -233,6 +276,14 @@ public class TestRunnable implements Runnable {
     params.add("instrument");
     params.add("-w");
     params.add("-r");
+    if (userId != USER_UNSPECIFIED) {
+      params.add("--user");
+      params.add(Integer.toString(userId));
+      if (VERSION.SDK_INT >= VERSION_CODES.P) {
+        // The runner binds to the orchestrator of another user with a system API.
+        params.add("--no-hidden-api-checks");
+      }
+    }
 
     params.addAll(getInstrumentationParamsAndRemoveBundleArgs(arguments));
 
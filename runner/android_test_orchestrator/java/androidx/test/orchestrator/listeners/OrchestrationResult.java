@@ -19,11 +19,36 @@ package androidx.test.orchestrator.listeners;
 import androidx.test.orchestrator.junit.ParcelableDescription;
 import androidx.test.orchestrator.junit.ParcelableFailure;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /** A representation of the end result of an orchestrated test run. */
 public final class OrchestrationResult {
 
+  /** The phases of running an isolated test whose time is tracked. */
+  public enum Phase {
+    /** Resolving the coverage path, output file and arguments of a test. */
+    PREPARE_TEST("prepareTestTimeMillis"),
+    /** Clearing the package data of the app under test before a test. */
+    CLEAR_PACKAGE_DATA("clearPackageDataTimeMillis"),
+    /** Running the instrumentation process of a test. */
+    TEST_PROCESS("testProcessTimeMillis"),
+    /** Reporting the results of a finished test process to the listeners. */
+    PROCESS_RESULTS("processResultsTimeMillis");
+
+    private final String reportKey;
+
+    Phase(String reportKey) {
+      this.reportKey = reportKey;
+    }
+
+    /** Returns the key used to report the total time of this phase in the result bundle. */
+    public String getReportKey() {
+      return reportKey;
+    }
+  }
+
   /** Constructs an {@link OrchestrationResult} as tests run. */
   public static final class Builder extends OrchestrationRunListener {
     private long runCount = 0;
@@ -32,6 +57,7 @@ public final class OrchestrationResult {
     private long startTime;
     private long finishTime;
     private final List<ParcelableFailure> failures = new ArrayList<>();
+    private final Map<Phase, Long> phaseTimes = new EnumMap<>(Phase.class);
 
     @Override
     public void orchestrationRunStarted(int testCount) {
@@ -58,9 +84,23 @@ public final class OrchestrationResult {
       ignoredCount++;
     }
 
-    public OrchestrationResult build() {
+    /**
+     * Adds time spent in the given phase. Phases of different tests may overlap, so this may be
+     * called from several threads.
+     */
+    public synchronized void addPhaseTime(Phase phase, long millis) {
+      Long total = phaseTimes.get(phase);
+      phaseTimes.put(phase, (total == null ? 0 : total) + millis);
+    }
+
+    public synchronized OrchestrationResult build() {
       return new OrchestrationResult(
-          runCount, expectedCount - ignoredCount, startTime, finishTime, failures);
+          runCount,
+          expectedCount - ignoredCount,
+          startTime,
+          finishTime,
+          failures,
+          new EnumMap<>(phaseTimes));
     }
   }
 
@@ -69,14 +109,17 @@ public final class OrchestrationResult {
   private final long startTime;
   private final long finishTime;
   private final List<ParcelableFailure> failures;
+  private final Map<Phase, Long> phaseTimes;
 
   OrchestrationResult(
       long runCount,
       long expectedCount,
       long startTime,
       long finishTime,
-      List<ParcelableFailure> failures) {
+      List<ParcelableFailure> failures,
+      Map<Phase, Long> phaseTimes) {
     this.failures = failures;
+    this.phaseTimes = phaseTimes;
     this.runCount = runCount;
     this.expectedCount = expectedCount;
     this.startTime = startTime;
@@ -87,6 +130,12 @@ public final class OrchestrationResult {
     return finishTime - startTime;
   }
 
+  /** Returns the total time spent in the given phase, over all tests, in milliseconds. */
+  public long getPhaseTime(Phase phase) {
+    Long total = phaseTimes.get(phase);
+    return total == null ? 0 : total;
+  }
+
   public boolean wasSuccessful() {
     return (getFailureCount() == 0 && getRunCount() == getExpectedCount());
   }
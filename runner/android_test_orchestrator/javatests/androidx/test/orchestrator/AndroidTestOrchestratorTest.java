@@ -16,11 +16,17 @@
 package androidx.test.orchestrator;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
 
+import android.os.Bundle;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -86,4 +92,67 @@ public class AndroidTestOrchestratorTest {
         // hash code of "hello_world_abcde" is "889cc989"
         is("hello_wo889cc989.txt"));
   }
+
+  @Test
+  public void testBuildClearPackageDataCommand() {
+    assertThat(
+        AndroidTestOrchestrator.buildClearPackageDataCommand("com.example.app", "com.example.test"),
+        is("pm clear com.example.app; pm clear com.example.test"));
+  }
+
+  @Test
+  public void testBuildClearPackageDataCommand_selfInstrumenting() {
+    assertThat(
+        AndroidTestOrchestrator.buildClearPackageDataCommand("com.example.app", "com.example.app"),
+        is("pm clear com.example.app"));
+  }
+
+  @Test
+  public void testBuildClearPackageDataCommand_forUser() {
+    assertThat(
+        AndroidTestOrchestrator.buildClearPackageDataCommand(
+            10, "com.example.app", "com.example.test"),
+        is("pm clear --user 10 com.example.app; pm clear --user 10 com.example.test"));
+  }
+
+  @Test
+  public void testBuildGrantCrossUserCommand() {
+    assertThat(
+        AndroidTestOrchestrator.buildGrantCrossUserCommand(
+            Arrays.asList(10, 11), "com.example.test"),
+        is(
+            "pm grant --user 10 com.example.test android.permission.INTERACT_ACROSS_USERS;"
+                + " pm grant --user 11 com.example.test android.permission.INTERACT_ACROSS_USERS"));
+  }
+
+  @Test
+  public void testGetParallelUsers() {
+    Bundle arguments = new Bundle();
+    assertThat(AndroidTestOrchestrator.getParallelUsers(arguments), is(empty()));
+    arguments.putString("parallelUsers", "10, 11,0");
+    assertThat(AndroidTestOrchestrator.getParallelUsers(arguments), contains(10, 11, 0));
+  }
+
+  @Test
+  public void testGetParallelUsers_invalid() {
+    for (String users : new String[] {"10,10", "10,", "-1", "work"}) {
+      Bundle arguments = new Bundle();
+      arguments.putString("parallelUsers", users);
+      try {
+        AndroidTestOrchestrator.getParallelUsers(arguments);
+        fail("Expected users [" + users + "] to be rejected");
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testGetSerialTests() {
+    Bundle arguments = new Bundle();
+    arguments.putString("serialTests", "com.foo.Bar, com.foo.Baz#qux,");
+    assertThat(
+        AndroidTestOrchestrator.getSerialTests(arguments),
+        containsInAnyOrder("com.foo.Bar", "com.foo.Baz#qux"));
+  }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import static androidx.test.orchestrator.listeners.OrchestrationListenerManager.KEY_TEST_EVENT;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Instrumentation;
+import android.os.Bundle;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.orchestrator.junit.BundleJUnitUtils;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableFailure;
+import androidx.test.orchestrator.listeners.OrchestrationListenerManager;
+import androidx.test.orchestrator.listeners.OrchestrationListenerManager.TestEvent;
+import androidx.test.orchestrator.listeners.OrchestrationRunListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelTestScheduler}. */
+@RunWith(AndroidJUnit4.class)
+public class ParallelTestSchedulerTest {
+
+  private final List<String> launches = new ArrayList<>();
+  private final List<String> events = new ArrayList<>();
+  private boolean allTestsReported;
+  private OrchestrationListenerManager listenerManager;
+
+  @Before
+  public void setUp() {
+    listenerManager = new OrchestrationListenerManager(new Instrumentation());
+    listenerManager.addListener(
+        new OrchestrationRunListener() {
+          @Override
+          public void testStarted(ParcelableDescription description) {
+            events.add("started " + description.getDisplayName());
+          }
+
+          @Override
+          public void testFinished(ParcelableDescription description) {
+            events.add("finished " + description.getDisplayName());
+          }
+
+          @Override
+          public void testFailure(ParcelableFailure failure) {
+            events.add("failure " + failure.getDescription().getDisplayName());
+          }
+        });
+  }
+
+  @Test
+  public void runsOneTestPerUser_reportsInCollectionOrder() {
+    ParallelTestScheduler scheduler =
+        createScheduler(
+            Arrays.asList("Foo#a", "Foo#b", "Foo#c"),
+            Arrays.asList(10, 11),
+            Collections.<String>emptySet());
+    scheduler.start();
+    assertThat(launches).containsExactly("Foo#a@10", "Foo#b@11").inOrder();
+
+    runTest(scheduler, 11, "b");
+    assertThat(launches).containsExactly("Foo#a@10", "Foo#b@11", "Foo#c@11").inOrder();
+    // Foo#b is held back until Foo#a finished.
+    assertThat(events).isEmpty();
+
+    runTest(scheduler, 10, "a");
+    assertThat(events)
+        .containsExactly("started a(Foo)", "finished a(Foo)", "started b(Foo)", "finished b(Foo)")
+        .inOrder();
+    assertThat(allTestsReported).isFalse();
+
+    runTest(scheduler, 11, "c");
+    assertThat(events).containsAtLeast("started c(Foo)", "finished c(Foo)").inOrder();
+    assertThat(allTestsReported).isTrue();
+  }
+
+  @Test
+  public void serialTest_runsAlone() {
+    ParallelTestScheduler scheduler =
+        createScheduler(
+            Arrays.asList("Foo#a", "Serial#a", "Foo#b", "Foo#c"),
+            Arrays.asList(10, 11),
+            new HashSet<>(Collections.singletonList("Serial")));
+    scheduler.start();
+    assertThat(launches).containsExactly("Foo#a@10");
+
+    runTest(scheduler, 10, "a");
+    assertThat(launches).containsExactly("Foo#a@10", "Serial#a@11").inOrder();
+
+    scheduler.testProcessFinished(11);
+    assertThat(launches)
+        .containsExactly("Foo#a@10", "Serial#a@11", "Foo#b@10", "Foo#c@11")
+        .inOrder();
+  }
+
+  @Test
+  public void serialMethod_runsAlone() {
+    ParallelTestScheduler scheduler =
+        createScheduler(
+            Arrays.asList("Foo#a", "Foo#b", "Foo#c"),
+            Arrays.asList(10, 11, 12),
+            new HashSet<>(Collections.singletonList("Foo#b")));
+    scheduler.start();
+    assertThat(launches).containsExactly("Foo#a@10");
+
+    scheduler.testProcessFinished(10);
+    assertThat(launches).containsExactly("Foo#a@10", "Foo#b@11").inOrder();
+  }
+
+  @Test
+  public void testProcessWithoutNotifications_reportedAsCrash() {
+    ParallelTestScheduler scheduler =
+        createScheduler(
+            Collections.singletonList("Foo#a"),
+            Collections.singletonList(10),
+            Collections.<String>emptySet());
+    scheduler.start();
+    scheduler.testProcessFinished(10);
+
+    assertThat(events).containsExactly("failure a(Foo)", "finished a(Foo)").inOrder();
+    assertThat(allTestsReported).isTrue();
+  }
+
+  @Test
+  public void notificationFromIdleUser_isDropped() {
+    ParallelTestScheduler scheduler =
+        createScheduler(
+            Collections.singletonList("Foo#a"),
+            Arrays.asList(10, 11),
+            Collections.<String>emptySet());
+    scheduler.start();
+    scheduler.handleNotification(11, makeBundle(TestEvent.TEST_STARTED, "a"));
+    runTest(scheduler, 10, "a");
+
+    assertThat(events).containsExactly("started a(Foo)", "finished a(Foo)").inOrder();
+  }
+
+  private ParallelTestScheduler createScheduler(
+      List<String> tests, List<Integer> userIds, Set<String> serialTests) {
+    return new ParallelTestScheduler(
+        tests,
+        userIds,
+        serialTests,
+        listenerManager,
+        (test, userId) -> launches.add(test + "@" + userId),
+        test -> test + ".txt",
+        () -> allTestsReported = true);
+  }
+
+  /** Sends the notifications of a passing Foo test, from the given user. */
+  private static void runTest(ParallelTestScheduler scheduler, int userId, String method) {
+    scheduler.handleNotification(userId, makeBundle(TestEvent.TEST_RUN_STARTED, method));
+    scheduler.handleNotification(userId, makeBundle(TestEvent.TEST_STARTED, method));
+    scheduler.handleNotification(userId, makeBundle(TestEvent.TEST_FINISHED, method));
+    scheduler.handleNotification(userId, makeBundle(TestEvent.TEST_RUN_FINISHED, method));
+    scheduler.testProcessFinished(userId);
+  }
+
+  private static Bundle makeBundle(TestEvent event, String method) {
+    Bundle bundle =
+        BundleJUnitUtils.getBundleFromDescription(Description.createTestDescription("Foo", method));
+    bundle.putString(KEY_TEST_EVENT, event.toString());
+    return bundle;
+  }
+}
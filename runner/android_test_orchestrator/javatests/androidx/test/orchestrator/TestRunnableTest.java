@@ -62,6 +62,17 @@ public class TestRunnableTest {
       super(context, secret, arguments, outputStream, listener, test, collectTests);
     }
 
+    FakeTestRunnable(
+        Context context,
+        String secret,
+        Bundle arguments,
+        OutputStream outputStream,
+        RunFinishedListener listener,
+        String test,
+        int userId) {
+      super(context, secret, arguments, outputStream, listener, test, false, userId);
+    }
+
     @Override
     InputStream runShellCommand(List<String> params) {
       this.params = params;
@@ -138,6 +149,22 @@ public class TestRunnableTest {
         runnable.params, "-e arg1 val1", "-e class com.google.android.example.MyClass#methodName");
   }
 
+  @Test
+  public void testRun_buildsParams_givenUser() {
+    FakeListener listener = new FakeListener();
+    FakeTestRunnable runnable =
+        new FakeTestRunnable(
+            null,
+            "secret",
+            arguments,
+            outputStream,
+            listener,
+            "com.google.android.example.MyClass#methodName",
+            10);
+    runnable.run();
+    assertThat(runnable.params).containsAtLeast("instrument", "-w", "-r", "--user", "10").inOrder();
+  }
+
   @Test
   public void testRun_removesPackage_givenClassNameAndMethod() {
     FakeListener listener = new FakeListener();
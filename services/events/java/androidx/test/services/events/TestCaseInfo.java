@@ -20,9 +20,13 @@ import static androidx.test.internal.util.Checks.checkNotNull;
 import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a parcelable TestCase. Contains all the information for a test case. Each test method
@@ -38,6 +42,25 @@ import java.util.List;
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public final class TestCaseInfo implements Parcelable {
+  // Written in place of a test case, or of class annotations, seen for the first time.
+  private static final int NEW = -1;
+
+  // The interning state of the parcels between beginInterning and endInterning. Guarded by itself.
+  private static final Map<Parcel, InternTable> internTables = new IdentityHashMap<>();
+
+  /**
+   * The test cases and class annotations already written to, or read from, a parcel, so that they
+   * are written only once.
+   */
+  private static final class InternTable {
+    // When writing: ids by test case name, and by class name.
+    final Map<String, Integer> testCaseIds = new HashMap<>();
+    final Map<String, Integer> classAnnotationIds = new HashMap<>();
+    // When reading: test cases and class annotations by id.
+    final List<TestCaseInfo> testCases = new ArrayList<>();
+    final List<List<AnnotationInfo>> classAnnotations = new ArrayList<>();
+  }
+
   /** Name of the test class. */
   @NonNull public final String className;
   /** Name of the test method. */
@@ -54,12 +77,33 @@ public final class TestCaseInfo implements Parcelable {
    */
   public TestCaseInfo(@NonNull Parcel source) {
     checkNotNull(source, "source cannot be null");
+    InternTable internTable = getInternTable(source);
+    int id = internTable == null ? NEW : source.readInt();
+    if (id != NEW) {
+      TestCaseInfo testCase = internTable.testCases.get(id);
+      className = testCase.className;
+      methodName = testCase.methodName;
+      methodAnnotations = testCase.methodAnnotations;
+      classAnnotations = testCase.classAnnotations;
+      return;
+    }
     className = checkNotNull(source.readString(), "className cannot be null");
     methodName = checkNotNull(source.readString(), "methodName cannot be null");
     methodAnnotations = new ArrayList<>();
     source.readTypedList(methodAnnotations, AnnotationInfo.CREATOR);
-    classAnnotations = new ArrayList<>();
-    source.readTypedList(classAnnotations, AnnotationInfo.CREATOR);
+    int classAnnotationsId = internTable == null ? NEW : source.readInt();
+    if (classAnnotationsId == NEW) {
+      classAnnotations = new ArrayList<>();
+      source.readTypedList(classAnnotations, AnnotationInfo.CREATOR);
+      if (internTable != null) {
+        internTable.classAnnotations.add(classAnnotations);
+      }
+    } else {
+      classAnnotations = internTable.classAnnotations.get(classAnnotationsId);
+    }
+    if (internTable != null) {
+      internTable.testCases.add(this);
+    }
   }
 
   /**
@@ -93,10 +137,62 @@ public final class TestCaseInfo implements Parcelable {
 
   @Override
   public void writeToParcel(Parcel parcel, int i) {
+    InternTable internTable = getInternTable(parcel);
+    if (internTable == null) {
+      parcel.writeString(className);
+      parcel.writeString(methodName);
+      parcel.writeTypedList(methodAnnotations);
+      parcel.writeTypedList(classAnnotations);
+      return;
+    }
+    // A test case is identified by its name: its annotations don't change within a test run.
+    Integer id = internTable.testCaseIds.get(getClassAndMethodName());
+    if (id != null) {
+      parcel.writeInt(id);
+      return;
+    }
+    internTable.testCaseIds.put(getClassAndMethodName(), internTable.testCaseIds.size());
+    parcel.writeInt(NEW);
     parcel.writeString(className);
     parcel.writeString(methodName);
     parcel.writeTypedList(methodAnnotations);
-    parcel.writeTypedList(classAnnotations);
+    Integer classAnnotationsId = internTable.classAnnotationIds.get(className);
+    if (classAnnotationsId != null) {
+      parcel.writeInt(classAnnotationsId);
+    } else {
+      internTable.classAnnotationIds.put(className, internTable.classAnnotationIds.size());
+      parcel.writeInt(NEW);
+      parcel.writeTypedList(classAnnotations);
+    }
+  }
+
+  /**
+   * Starts writing test cases to, or reading them from, the given parcel in interned form: each
+   * test case, and the class annotations of each class, are written in full only the first time,
+   * and referred to by id afterwards. Used for batches of events, which mostly carry the same few
+   * test cases.
+   *
+   * <p>Must be followed by {@link #endInterning(Parcel)}. The reader of the parcel must intern the
+   * same part of it as the writer.
+   */
+  public static void beginInterning(@NonNull Parcel parcel) {
+    synchronized (internTables) {
+      internTables.put(parcel, new InternTable());
+    }
+  }
+
+  /** Stops interning test cases in the given parcel, see {@link #beginInterning(Parcel)}. */
+  public static void endInterning(@NonNull Parcel parcel) {
+    synchronized (internTables) {
+      internTables.remove(parcel);
+    }
+  }
+
+  @Nullable
+  private static InternTable getInternTable(Parcel parcel) {
+    synchronized (internTables) {
+      return internTables.get(parcel);
+    }
   }
 
   public static final Parcelable.Creator<TestCaseInfo> CREATOR =
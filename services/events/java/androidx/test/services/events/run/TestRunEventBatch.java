@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.events.run;
+
+import static androidx.test.internal.util.Checks.checkNotNull;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.test.services.events.TestCaseInfo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of {@link TestRunEvent}s, sent with a single {@code ITestRunEvent#sendBatch} call.
+ *
+ * <p>The {@link TestCaseInfo} of the events, which mostly refer to the same few test cases, is
+ * written only once per test case, see {@link TestCaseInfo#beginInterning(Parcel)}.
+ *
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public final class TestRunEventBatch implements Parcelable {
+  /** The events of the batch, in the order they happened. */
+  @NonNull public final List<TestRunEvent> events;
+
+  /**
+   * Creates a {@link TestRunEventBatch}.
+   *
+   * @param events the events of the batch, in the order they happened
+   */
+  public TestRunEventBatch(@NonNull List<? extends TestRunEvent> events) {
+    this.events =
+        Collections.unmodifiableList(
+            new ArrayList<TestRunEvent>(checkNotNull(events, "events cannot be null")));
+  }
+
+  /**
+   * Creates a {@link TestRunEventBatch} from an Android {@link Parcel}.
+   *
+   * @param source Android {@link Parcel} to read from
+   */
+  TestRunEventBatch(@NonNull Parcel source) {
+    checkNotNull(source, "source cannot be null");
+    int count = source.readInt();
+    List<TestRunEvent> events = new ArrayList<>(count);
+    TestCaseInfo.beginInterning(source);
+    try {
+      for (int i = 0; i < count; i++) {
+        events.add(TestRunEvent.CREATOR.createFromParcel(source));
+      }
+    } finally {
+      TestCaseInfo.endInterning(source);
+    }
+    this.events = Collections.unmodifiableList(events);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  @Override
+  public void writeToParcel(Parcel parcel, int i) {
+    parcel.writeInt(events.size());
+    TestCaseInfo.beginInterning(parcel);
+    try {
+      for (TestRunEvent event : events) {
+        event.writeToParcel(parcel, i);
+      }
+    } finally {
+      TestCaseInfo.endInterning(parcel);
+    }
+  }
+
+  public static final Parcelable.Creator<TestRunEventBatch> CREATOR =
+      new Parcelable.Creator<TestRunEventBatch>() {
+        @Override
+        public TestRunEventBatch createFromParcel(Parcel source) {
+          return new TestRunEventBatch(source);
+        }
+
+        @Override
+        public TestRunEventBatch[] newArray(int size) {
+          return new TestRunEventBatch[size];
+        }
+      };
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.events.platform;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Parcel;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.services.events.AnnotationInfo;
+import androidx.test.services.events.AnnotationValue;
+import androidx.test.services.events.TestCaseInfo;
+import androidx.test.services.events.TestStatus;
+import androidx.test.services.events.TestStatus.Status;
+import androidx.test.services.events.TimeStamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for the {@link TestPlatformEventBatch} parcelable. */
+@RunWith(AndroidJUnit4.class)
+public class TestPlatformEventBatchTest {
+
+  @Test
+  public void batch_created_by_createFromParcel() {
+    List<AnnotationInfo> classAnnotations =
+        Collections.singletonList(
+            new AnnotationInfo(
+                "Annotation",
+                Collections.singletonList(
+                    new AnnotationValue("value", Arrays.asList("a", "b"), "String[]"))));
+    TestCaseInfo test1 = new TestCaseInfo("Class", "test1", new ArrayList<>(), classAnnotations);
+    TestCaseInfo test2 = new TestCaseInfo("Class", "test2", new ArrayList<>(), classAnnotations);
+    TimeStamp timeStamp = new TimeStamp(123L, 456);
+    List<TestPlatformEvent> events =
+        Arrays.asList(
+            new TestCaseStartedEvent(test1, timeStamp),
+            new TestCaseFinishedEvent(test1, new TestStatus(Status.PASSED), timeStamp),
+            new TestCaseStartedEvent(test2, timeStamp),
+            new TestCaseFinishedEvent(test2, new TestStatus(Status.FAILED), timeStamp));
+
+    Parcel parcel = Parcel.obtain();
+    new TestPlatformEventBatch(events).writeToParcel(parcel, 0);
+    parcel.setDataPosition(0);
+    TestPlatformEventBatch result = TestPlatformEventBatch.CREATOR.createFromParcel(parcel);
+
+    assertThat(result.events).hasSize(4);
+    TestCaseFinishedEvent finished2 = (TestCaseFinishedEvent) result.events.get(3);
+    assertThat(finished2.testCase.getClassAndMethodName()).isEqualTo("Class#test2");
+    assertThat(finished2.testStatus.status).isEqualTo(Status.FAILED);
+    assertThat(finished2.testCase.classAnnotations).hasSize(1);
+    AnnotationInfo annotation = finished2.testCase.classAnnotations.get(0);
+    assertThat(annotation.name).isEqualTo("Annotation");
+    assertThat(annotation.values.get(0).fieldValues).containsExactly("a", "b").inOrder();
+    TestCaseStartedEvent started1 = (TestCaseStartedEvent) result.events.get(0);
+    assertThat(started1.testCase.getClassAndMethodName()).isEqualTo("Class#test1");
+    assertThat(started1.timeStamp.seconds).isEqualTo(123L);
+  }
+
+  @Test
+  public void batch_writesRepeatedTestCasesOnce() {
+    TestCaseInfo testCase = new TestCaseInfo("Class", "test", new ArrayList<>(), new ArrayList<>());
+    TimeStamp timeStamp = new TimeStamp(123L, 456);
+    TestPlatformEvent started = new TestCaseStartedEvent(testCase, timeStamp);
+    TestPlatformEvent finished =
+        new TestCaseFinishedEvent(testCase, new TestStatus(Status.PASSED), timeStamp);
+
+    Parcel single = Parcel.obtain();
+    started.writeToParcel(single, 0);
+    finished.writeToParcel(single, 0);
+    Parcel batch = Parcel.obtain();
+    new TestPlatformEventBatch(Arrays.asList(started, finished)).writeToParcel(batch, 0);
+
+    // The second event refers to the test case of the first one, by id.
+    assertThat(batch.dataSize()).isLessThan(single.dataSize());
+  }
+}
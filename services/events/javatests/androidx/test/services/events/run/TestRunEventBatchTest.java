@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.services.events.run;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Parcel;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.services.events.AnnotationInfo;
+import androidx.test.services.events.AnnotationValue;
+import androidx.test.services.events.FailureInfo;
+import androidx.test.services.events.TestCaseInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for the {@link TestRunEventBatch} parcelable. */
+@RunWith(AndroidJUnit4.class)
+public class TestRunEventBatchTest {
+
+  @Test
+  public void batch_created_by_createFromParcel() {
+    List<AnnotationInfo> classAnnotations =
+        Collections.singletonList(
+            new AnnotationInfo(
+                "Annotation",
+                Collections.singletonList(
+                    new AnnotationValue("value", Arrays.asList("a", "b"), "String[]"))));
+    TestCaseInfo test1 = new TestCaseInfo("Class", "test1", new ArrayList<>(), classAnnotations);
+    TestCaseInfo test2 = new TestCaseInfo("Class", "test2", new ArrayList<>(), classAnnotations);
+    List<TestRunEvent> events =
+        Arrays.asList(
+            new TestStartedEvent(test1),
+            new TestFinishedEvent(test1),
+            new TestStartedEvent(test2),
+            new TestFailureEvent(test2, new FailureInfo("message", "Type", "stack", test2)),
+            new TestFinishedEvent(test2));
+
+    Parcel parcel = Parcel.obtain();
+    new TestRunEventBatch(events).writeToParcel(parcel, 0);
+    parcel.setDataPosition(0);
+    TestRunEventBatch result = TestRunEventBatch.CREATOR.createFromParcel(parcel);
+
+    assertThat(result.events).hasSize(5);
+    TestStartedEvent started1 = (TestStartedEvent) result.events.get(0);
+    assertThat(started1.testCase.getClassAndMethodName()).isEqualTo("Class#test1");
+    TestFailureEvent failure = (TestFailureEvent) result.events.get(3);
+    assertThat(failure.testCase.getClassAndMethodName()).isEqualTo("Class#test2");
+    assertThat(failure.failure.failureMessage).isEqualTo("message");
+    assertThat(failure.failure.stackTrace).isEqualTo("stack");
+    assertThat(failure.failure.testCase.getClassAndMethodName()).isEqualTo("Class#test2");
+    TestFinishedEvent finished2 = (TestFinishedEvent) result.events.get(4);
+    assertThat(finished2.testCase.getClassAndMethodName()).isEqualTo("Class#test2");
+    assertThat(finished2.testCase.classAnnotations).hasSize(1);
+    AnnotationInfo annotation = finished2.testCase.classAnnotations.get(0);
+    assertThat(annotation.name).isEqualTo("Annotation");
+    assertThat(annotation.values.get(0).fieldValues).containsExactly("a", "b").inOrder();
+    // The parcel was fully consumed.
+    assertThat(parcel.dataAvail()).isEqualTo(0);
+  }
+
+  @Test
+  public void batch_writesRepeatedTestCasesOnce() {
+    TestCaseInfo testCase = new TestCaseInfo("Class", "test", new ArrayList<>(), new ArrayList<>());
+    TestRunEvent started = new TestStartedEvent(testCase);
+    TestRunEvent finished = new TestFinishedEvent(testCase);
+
+    Parcel single = Parcel.obtain();
+    started.writeToParcel(single, 0);
+    finished.writeToParcel(single, 0);
+    Parcel batch = Parcel.obtain();
+    new TestRunEventBatch(Arrays.asList(started, finished)).writeToParcel(batch, 0);
+
+    // The second event refers to the test case of the first one, by id.
+    assertThat(batch.dataSize()).isLessThan(single.dataSize());
+  }
+
+  @Test
+  public void testCase_outsideBatch_isWrittenInFull() {
+    TestCaseInfo testCase = new TestCaseInfo("Class", "test", new ArrayList<>(), new ArrayList<>());
+    Parcel batch = Parcel.obtain();
+    new TestRunEventBatch(Collections.singletonList(new TestStartedEvent(testCase)))
+        .writeToParcel(batch, 0);
+
+    // Interning ends with the batch, so a later event carries its whole test case.
+    Parcel parcel = Parcel.obtain();
+    new TestFinishedEvent(testCase).writeToParcel(parcel, 0);
+    parcel.setDataPosition(0);
+    TestFinishedEvent result = (TestFinishedEvent) TestRunEvent.CREATOR.createFromParcel(parcel);
+    assertThat(result.testCase.getClassAndMethodName()).isEqualTo("Class#test");
+  }
+}
@@ -36,6 +36,9 @@ import kotlin.time.Duration
  *
  * A conversation consists of a single RunCommandRequest from the client followed by a stream of
  * RunCommandResponses from the server; the final response has an exit code.
+ *
+ * In a session, the client sends any number of RunCommandRequests over the same connection, and the
+ * responses to them are interleaved, each tagged with the id of its request.
  */
 object LocalSocketProtocol {
   /**
@@ -45,14 +48,26 @@ object LocalSocketProtocol {
    * @param argv The argv of the command line to run.
    * @param env The environment variables to provide to the process.
    * @param timeout The timeout for the command; infinite or nonpositive values mean no timeout.
+   * @param requestId The id of the request within a session.
+   * @param session Whether this request starts a session.
+   * @param usePersistentShell Whether the command may run in the server's persistent shell.
    */
   fun LocalSocket.sendRequest(
     secret: String,
     argv: List<String>,
     env: Map<String, String>? = null,
     timeout: Duration,
+    requestId: Int = 0,
+    session: Boolean = false,
+    usePersistentShell: Boolean = false,
   ) {
-    val builder = RunCommandRequest.newBuilder().setSecret(secret).addAllArgv(argv)
+    val builder =
+      RunCommandRequest.newBuilder()
+        .setSecret(secret)
+        .addAllArgv(argv)
+        .setRequestId(requestId)
+        .setSession(session)
+        .setUsePersistentShell(usePersistentShell)
     env?.forEach { (k, v) -> builder.putEnvironment(k, v) }
     if (timeout.isInfinite() || timeout.isNegative() || timeout == Duration.ZERO) {
       builder.setTimeoutMs(0) // <= 0 means no timeout
@@ -67,13 +82,22 @@ object LocalSocketProtocol {
     return RunCommandRequest.parseDelimitedFrom(inputStream)!!
   }
 
-  /** Composes a RunCommandResponse and sends it over the LocalSocket. */
+  /** Reads the next RunCommandRequest of a session, or null if the client ended the session. */
+  fun LocalSocket.readNextRequest(): RunCommandRequest? {
+    return RunCommandRequest.parseDelimitedFrom(inputStream)
+  }
+
+  /**
+   * Composes a RunCommandResponse and sends it over the LocalSocket. Safe to call concurrently for
+   * the requests of a session, each response is written as a whole.
+   */
   fun LocalSocket.sendResponse(
     buffer: ByteArray? = null,
     size: Int = 0,
     exitCode: Int? = null,
+    requestId: Int = 0,
   ): Boolean {
-    val builder = RunCommandResponse.newBuilder()
+    val builder = RunCommandResponse.newBuilder().setRequestId(requestId)
     buffer?.let {
       val bufferSize = if (size > 0) size else it.size
       builder.buffer = ByteString.copyFrom(it, 0, bufferSize)
@@ -88,7 +112,7 @@ object LocalSocketProtocol {
     }
 
     try {
-      builder.build().writeDelimitedTo(outputStream)
+      synchronized(this) { builder.build().writeDelimitedTo(outputStream) }
     } catch (x: IOException) {
       // Sadly, the only way to discover that the client cut the connection is an exception that
       // can only be distinguished by its text.
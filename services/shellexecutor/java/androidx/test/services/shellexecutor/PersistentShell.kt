@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.shellexecutor
+
+import android.util.Log
+import java.io.Closeable
+import java.io.IOException
+import java.security.SecureRandom
+import kotlin.time.Duration
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withTimeout
+
+/**
+ * A long-lived shell that runs one command line at a time, so that running a command through the
+ * shell does not start a new shell process.
+ *
+ * Each command line is written to the shell's stdin, followed by a command that prints a random
+ * marker and the exit code; the output before the marker is the command's output. Changes to the
+ * shell's state, like the working directory or exported variables, carry over to later commands.
+ * If a command makes the shell exit, the shell's exit code is the command's, and a new shell is
+ * started for the next command.
+ */
+internal class PersistentShell(private val shellPath: String = "/system/bin/sh") : Closeable {
+  private val marker =
+    "__androidx_test_exit_${java.lang.Long.toHexString(SecureRandom().nextLong())}__"
+  private val markerBytes = marker.toByteArray()
+  private val mutex = Mutex()
+  @Volatile private var process: Process? = null
+
+  /**
+   * Runs a command line, passing its output (stdout and stderr combined) to output, and returns its
+   * exit code.
+   *
+   * @param commandLine The command line to run.
+   * @param timeout The timeout for the command. The shell is killed if the command times out.
+   * @param output Receives the output, a buffer and the number of bytes in it. Returns false if the
+   *   output could not be delivered; the command still runs to completion.
+   * @throws TimeoutCancellationException if the command timed out.
+   * @throws IOException if the shell could not be started or talked to.
+   */
+  suspend fun run(
+    commandLine: String,
+    timeout: Duration,
+    output: (ByteArray, Int) -> Boolean,
+  ): Int =
+    mutex.withLock {
+      val shell = process ?: startShell().also { process = it }
+      coroutineScope {
+        val execution = async { runInterruptible { execute(shell, commandLine, output) } }
+        try {
+          withTimeout(timeout) { execution.await() }
+        } catch (x: TimeoutCancellationException) {
+          // Killing the shell unblocks the read in execute().
+          destroy(shell)
+          execution.cancel()
+          throw x
+        } catch (x: IOException) {
+          destroy(shell)
+          throw x
+        }
+      }
+    }
+
+  /** Stops the shell. */
+  override fun close() {
+    process?.let { destroy(it) }
+  }
+
+  private fun startShell(): Process {
+    Log.i(TAG, "Starting persistent shell $shellPath")
+    return ProcessBuilder(shellPath).redirectErrorStream(true).start()
+  }
+
+  private fun destroy(shell: Process) {
+    shell.destroy()
+    if (process === shell) {
+      process = null
+    }
+  }
+
+  /** Writes the command line to the shell and relays its output. Blocking. */
+  private fun execute(
+    shell: Process,
+    commandLine: String,
+    output: (ByteArray, Int) -> Boolean,
+  ): Int {
+    // The command must not read the shell's stdin, which carries the following commands.
+    val script = "{\n$commandLine\n} </dev/null 2>&1; printf '%s%d\\n' $marker \$?\n"
+    shell.outputStream.write(script.toByteArray())
+    shell.outputStream.flush()
+
+    val buffer = ByteArray(65536)
+    // The bytes at the start of the buffer that were read, but not passed on because they could be
+    // the start of the marker.
+    var pending = 0
+    while (true) {
+      val size = shell.inputStream.read(buffer, pending, buffer.size - pending)
+      if (size < 0) {
+        // The command made the shell exit.
+        if (pending > 0) output(buffer, pending)
+        destroy(shell)
+        return shell.waitFor()
+      }
+      val end = pending + size
+      val markerAt = indexOfMarker(buffer, end)
+      if (markerAt >= 0) {
+        if (markerAt > 0) output(buffer, markerAt)
+        return readExitCode(shell, buffer, markerAt + markerBytes.size, end)
+      }
+      val keep = minOf(end, markerBytes.size - 1)
+      if (end - keep > 0) {
+        output(buffer, end - keep)
+        System.arraycopy(buffer, end - keep, buffer, 0, keep)
+      }
+      pending = keep
+    }
+  }
+
+  private fun indexOfMarker(buffer: ByteArray, end: Int): Int {
+    search@ for (i in 0..end - markerBytes.size) {
+      for (j in markerBytes.indices) {
+        if (buffer[i + j] != markerBytes[j]) continue@search
+      }
+      return i
+    }
+    return -1
+  }
+
+  /** Reads the exit code that follows the marker, up to the end of the line. */
+  private fun readExitCode(shell: Process, buffer: ByteArray, start: Int, end: Int): Int {
+    val exitCode = StringBuilder()
+    var i = start
+    var limit = end
+    while (true) {
+      while (i < limit) {
+        val c = buffer[i++].toInt().toChar()
+        if (c == '\n') return exitCode.toString().toInt()
+        exitCode.append(c)
+      }
+      limit = shell.inputStream.read(buffer, 0, buffer.size)
+      i = 0
+      if (limit < 0) throw IOException("Persistent shell exited while reporting an exit code")
+    }
+  }
+
+  private companion object {
+    const val TAG = "PersistentShell"
+  }
+}
@@ -90,14 +90,7 @@ class ShellCommandLocalSocketClient(binderKey: String) {
           // "socket not created".)
           val connectTime = measureTime { socket.connect(address) }
 
-          val argv = mutableListOf<String>()
-          if (executeThroughShell) {
-            argv.addAll(listOf("sh", "-c"))
-            argv.add((listOf(command) + (parameters ?: emptyList())).joinToString(" "))
-          } else {
-            argv.add(command)
-            parameters?.let { argv.addAll(it) }
-          }
+          val argv = buildArgv(command, parameters, executeThroughShell)
 
           socket.sendRequest(secret, argv, shellEnv, timeout - connectTime)
           socket.shutdownOutput()
@@ -152,12 +145,80 @@ class ShellCommandLocalSocketClient(binderKey: String) {
   ): InputStream =
     request(command, parameters, shellEnv, executeThroughShell, timeout.toKotlinDuration())
 
+  /**
+   * Like [request], but sends the request over a session shared by all the requests of this process
+   * to the same server, saving a socket connect and secret check per request. Falls back to a
+   * connection of its own if the server does not support sessions.
+   *
+   * @param usePersistentShell Whether a command executed through a shell, without environment
+   *   variables, may run in the server's persistent shell rather than in a new shell process.
+   *   Changes to the state of the persistent shell, like the working directory, carry over to later
+   *   commands.
+   */
+  @kotlin.time.ExperimentalTime
+  fun requestInSession(
+    command: String?,
+    parameters: List<String>?,
+    shellEnv: Map<String, String>?,
+    executeThroughShell: Boolean,
+    timeout: Duration,
+    usePersistentShell: Boolean = false,
+  ): InputStream {
+    if (command == null || command.isEmpty()) {
+      throw IllegalArgumentException("Null or empty command")
+    }
+    val argv = buildArgv(command, parameters, executeThroughShell)
+    val result =
+      runBlocking(scope.coroutineContext) {
+        withTimeout(timeout) {
+          session()
+            .request(
+              argv,
+              shellEnv,
+              timeout,
+              usePersistentShell && executeThroughShell && shellEnv.isNullOrEmpty(),
+            )
+        }
+      }
+    return result ?: request(command, parameters, shellEnv, executeThroughShell, timeout)
+  }
+
+  /** Returns the open session to the server, connecting a new one if needed. */
+  private fun session(): ShellCommandLocalSocketSession =
+    synchronized(sessions) {
+      val key = address.name + ":" + secret
+      sessions[key]?.takeIf { it.isOpen }
+        ?: ShellCommandLocalSocketSession(address, secret, scope).also {
+          it.connect()
+          sessions[key] = it
+        }
+    }
+
+  private fun buildArgv(
+    command: String,
+    parameters: List<String>?,
+    executeThroughShell: Boolean,
+  ): List<String> {
+    val argv = mutableListOf<String>()
+    if (executeThroughShell) {
+      argv.addAll(listOf("sh", "-c"))
+      argv.add((listOf(command) + (parameters ?: emptyList())).joinToString(" "))
+    } else {
+      argv.add(command)
+      parameters?.let { argv.addAll(it) }
+    }
+    return argv
+  }
+
   private companion object {
     private const val TAG = "SCLSClient" // up to 23 characters
 
     // Keep this around for all clients; if you create a new one with every object, you can wind up
     // running out of threads.
     private val scope = CoroutineScope(Executors.newCachedThreadPool().asCoroutineDispatcher())
+
+    // Sessions by server address and secret, shared by all clients.
+    private val sessions = HashMap<String, ShellCommandLocalSocketSession>()
   }
 }
 
@@ -22,12 +22,14 @@ import android.net.LocalSocketAddress
 import android.os.Process as AndroidProcess
 import android.util.Log
 import androidx.test.services.shellexecutor.LocalSocketProtocol.asBinderKey
+import androidx.test.services.shellexecutor.LocalSocketProtocol.readNextRequest
 import androidx.test.services.shellexecutor.LocalSocketProtocol.readRequest
 import androidx.test.services.shellexecutor.LocalSocketProtocol.sendResponse
 import androidx.test.services.shellexecutor.LocalSocketProtocolProto.RunCommandRequest
 import java.io.IOException
 import java.io.InterruptedIOException
 import java.security.SecureRandom
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.time.Duration
@@ -38,6 +40,7 @@ import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.TimeoutCancellationException
 import kotlinx.coroutines.asCoroutineDispatcher
 import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
@@ -61,6 +64,11 @@ constructor(
   // ...while all the child jobs are under a single SupervisorJob that we can join later.
   val shellJobs = SupervisorJob()
   val running = AtomicBoolean(true)
+  // Connections of open sessions, which only end when the client ends them or the server stops.
+  private val sessions = ConcurrentHashMap.newKeySet<LocalSocket>()
+  // Runs simple commands of the requests that ask for it, started on first use.
+  private val persistentShell by lazy { PersistentShell() }
+  private val persistentShellStarted = AtomicBoolean(false)
 
   /** Returns the binder key to pass to client processes. */
   fun binderKey(): String {
@@ -89,9 +97,10 @@ constructor(
    *
    * @param process The process to relay output from.
    * @param connection The connection to relay output to.
+   * @param requestId The id of the request the process runs for.
    * @return false if there was a problem, true otherwise.
    */
-  private suspend fun relay(process: Process, connection: LocalSocket): Boolean {
+  private suspend fun relay(process: Process, connection: LocalSocket, requestId: Int): Boolean {
     // Experiment shows that 64K is *much* faster than 4K, especially on API 21-23. Streaming 1MB
     // takes 3s with 4K buffers and 2s with 64K on API 23. 22 is a bit faster (2.6s -> 1.5s),
     // 21 faster still (630ms -> 545ms). Higher API levels are *much* faster (24 is 119 ms ->
@@ -118,7 +127,7 @@ constructor(
         return false
       }
 
-      if (!connection.sendResponse(buffer = buffer, size = size)) {
+      if (!connection.sendResponse(buffer = buffer, size = size, requestId = requestId)) {
         return false
       }
     }
@@ -137,51 +146,141 @@ constructor(
         return
       }
 
-      val pb = request.toProcessBuilder()
-      pb.redirectErrorStream(true)
+      if (request.session) {
+        handleSession(connection, request)
+      } else {
+        runCommand(request, connection)
+      }
+    }
+  }
 
-      val process: Process
+  /**
+   * Handles the requests of a session, starting with the given one. Requests run concurrently,
+   * until the client shuts down its output; then this waits for the running ones to finish.
+   * Requests for the persistent shell are the exception: they run one at a time, in the order they
+   * arrived, since each may depend on the state the previous ones left in the shell.
+   */
+  private suspend fun handleSession(connection: LocalSocket, first: RunCommandRequest) =
+    coroutineScope {
+      sessions.add(connection)
+      val persistentShellRequests = Channel<RunCommandRequest>(Channel.UNLIMITED)
+      launch {
+        for (request in persistentShellRequests) {
+          runInPersistentShell(request, request.persistentShellCommandLine()!!, connection)
+        }
+      }
       try {
-        process = pb.start()
-      } catch (x: IOException) {
-        Log.e(TAG, "Failed to start process", x)
-        connection.sendResponse(
-          buffer = x.stackTraceToString().toByteArray(),
-          exitCode = EXIT_CODE_FAILED_TO_START,
-        )
-        return
+        // Acknowledge the session, so the client can send its next requests over it.
+        connection.sendResponse(requestId = first.requestId)
+        var request: RunCommandRequest? = first
+        while (request != null) {
+          if (request.secret.compareTo(secret) != 0) {
+            Log.w(TAG, "Ending session on request with wrong secret: $request")
+            break
+          }
+          val current = request
+          if (current.persistentShellCommandLine() != null) {
+            persistentShellRequests.send(current)
+          } else {
+            launch { runCommand(current, connection) }
+          }
+          request =
+            try {
+              runInterruptible { connection.readNextRequest() }
+            } catch (x: IOException) {
+              Log.i(TAG, "Session ended: ${x.message}")
+              null
+            }
+        }
+      } finally {
+        persistentShellRequests.close()
+        sessions.remove(connection)
       }
+    }
 
-      // We will not be writing anything to the process' stdin.
-      process.outputStream.close()
+  /** Runs the command of a request, and sends its output and exit code over the connection. */
+  private suspend fun runCommand(request: RunCommandRequest, connection: LocalSocket) {
+    val requestId = request.requestId
+    val commandLine = request.persistentShellCommandLine()
+    if (commandLine != null) {
+      runInPersistentShell(request, commandLine, connection)
+      return
+    }
 
-      // Close the process' stdout when we're done reading.
-      process.inputStream.use {
-        // Launch a coroutine to relay the process' output to the client. If it times out, kill the
-        // process and cancel the job. This is more coroutine-friendly than using waitFor() to
-        // handle timeouts.
-        val ioJob = scope.async { relay(process, connection) }
+    val pb = request.toProcessBuilder()
+    pb.redirectErrorStream(true)
 
-        try {
-          withTimeout(request.timeout()) {
-            if (!ioJob.await()) {
-              Log.w(TAG, "Relaying ${process} output failed")
-            }
-            runInterruptible { process.waitFor() }
+    val process: Process
+    try {
+      process = pb.start()
+    } catch (x: IOException) {
+      Log.e(TAG, "Failed to start process", x)
+      connection.sendResponse(
+        buffer = x.stackTraceToString().toByteArray(),
+        exitCode = EXIT_CODE_FAILED_TO_START,
+        requestId = requestId,
+      )
+      return
+    }
+
+    // We will not be writing anything to the process' stdin.
+    process.outputStream.close()
+
+    // Close the process' stdout when we're done reading.
+    process.inputStream.use {
+      // Launch a coroutine to relay the process' output to the client. If it times out, kill the
+      // process and cancel the job. This is more coroutine-friendly than using waitFor() to
+      // handle timeouts.
+      val ioJob = scope.async { relay(process, connection, requestId) }
+
+      try {
+        withTimeout(request.timeout()) {
+          if (!ioJob.await()) {
+            Log.w(TAG, "Relaying ${process} output failed")
           }
-        } catch (x: TimeoutCancellationException) {
-          Log.e(TAG, "Process ${process} timed out after ${request.timeout()}")
-          process.destroy()
-          ioJob.cancel()
-          connection.sendResponse(exitCode = EXIT_CODE_TIMED_OUT)
-          return
+          runInterruptible { process.waitFor() }
         }
-
-        connection.sendResponse(exitCode = process.exitValue())
+      } catch (x: TimeoutCancellationException) {
+        Log.e(TAG, "Process ${process} timed out after ${request.timeout()}")
+        process.destroy()
+        ioJob.cancel()
+        connection.sendResponse(exitCode = EXIT_CODE_TIMED_OUT, requestId = requestId)
+        return
       }
+
+      connection.sendResponse(exitCode = process.exitValue(), requestId = requestId)
     }
   }
 
+  /** Runs a command line in the persistent shell, saving the fork of a new shell. */
+  private suspend fun runInPersistentShell(
+    request: RunCommandRequest,
+    commandLine: String,
+    connection: LocalSocket,
+  ) {
+    val requestId = request.requestId
+    Log.i(TAG, "Command to execute in persistent shell within ${request.timeout()}")
+    persistentShellStarted.set(true)
+    val exitCode =
+      try {
+        persistentShell.run(commandLine, request.timeout()) { buffer, size ->
+          connection.sendResponse(buffer = buffer, size = size, requestId = requestId)
+        }
+      } catch (x: TimeoutCancellationException) {
+        Log.e(TAG, "Command timed out after ${request.timeout()} in the persistent shell")
+        EXIT_CODE_TIMED_OUT
+      } catch (x: IOException) {
+        Log.e(TAG, "Failed to run command in the persistent shell", x)
+        connection.sendResponse(
+          buffer = x.stackTraceToString().toByteArray(),
+          exitCode = EXIT_CODE_FAILED_TO_START,
+          requestId = requestId,
+        )
+        return
+      }
+    connection.sendResponse(exitCode = exitCode, requestId = requestId)
+  }
+
   /** Starts the server. */
   fun start() {
     socket = LocalServerSocket("androidx.test.services ${AndroidProcess.myPid()}")
@@ -197,6 +296,14 @@ constructor(
     running.set(false)
     // Closing the socket does not interrupt accept()...
     socket.close()
+    // Sessions wait for the client's next request; make them see the end of the session instead.
+    for (session in sessions) {
+      try {
+        session.shutdownInput()
+      } catch (x: IOException) {
+        Log.w(TAG, "Failed to end session", x)
+      }
+    }
     runBlocking(scope.coroutineContext) {
       try {
         // ...so we simply cancel that job...
@@ -211,6 +318,9 @@ constructor(
         shellJobs.cancel()
       }
     }
+    if (persistentShellStarted.get()) {
+      persistentShell.close()
+    }
   }
 
   private fun RunCommandRequest.timeout(): Duration =
@@ -220,6 +330,23 @@ constructor(
       timeoutMs.milliseconds
     }
 
+  /**
+   * Returns the command line to run in the persistent shell, or null if the request should run in a
+   * new process.
+   */
+  private fun RunCommandRequest.persistentShellCommandLine(): String? =
+    if (
+      usePersistentShell &&
+        environmentMap.isEmpty() &&
+        argvCount == 3 &&
+        argvList[0] == "sh" &&
+        argvList[1] == "-c"
+    ) {
+      argvList[2]
+    } else {
+      null
+    }
+
   /**
    * Sets up a ProcessBuilder with information from the request; other configuration is up to the
    * caller.
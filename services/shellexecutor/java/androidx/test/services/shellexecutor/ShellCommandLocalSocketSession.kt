@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.shellexecutor
+
+import android.net.LocalSocket
+import android.net.LocalSocketAddress
+import android.util.Log
+import androidx.test.services.shellexecutor.LocalSocketProtocol.hasExited
+import androidx.test.services.shellexecutor.LocalSocketProtocol.readResponse
+import androidx.test.services.shellexecutor.LocalSocketProtocol.sendRequest
+import java.io.IOException
+import java.io.InputStream
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import kotlin.time.Duration
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.launch
+
+/**
+ * A connection to a ShellCommandLocalSocketExecutorServer that carries many requests, so each
+ * request saves a socket connect and secret check.
+ *
+ * Requests are tagged with ids, and the reader of the session relays each response to the stream of
+ * its request. The first request waits for the server to acknowledge the session; older servers run
+ * that request and close the connection, and the session then reports that it is not supported.
+ *
+ * The streams of the requests buffer their output without bound, so a caller that does not drain
+ * its stream holds that output in memory rather than stalling the other requests of the session.
+ */
+internal class ShellCommandLocalSocketSession(
+  private val address: LocalSocketAddress,
+  private val secret: String,
+  private val scope: CoroutineScope,
+) {
+  private val socket = LocalSocket(LocalSocket.SOCKET_STREAM)
+  private val nextRequestId = AtomicInteger(FIRST_REQUEST_ID)
+  // The output streams of the requests that did not exit yet, by request id.
+  private val pending = ConcurrentHashMap<Int, ResponseStream>()
+  // Completed with whether the server supports sessions, once it answered the first request.
+  private val supported = CompletableDeferred<Boolean>()
+  @Volatile
+  var isOpen = true
+    private set
+
+  /** Connects to the server and starts relaying responses. Blocking. */
+  fun connect() {
+    socket.connect(address)
+    scope.launch { relayResponses() }
+  }
+
+  /**
+   * Sends a request over the session.
+   *
+   * @return the output of the command, or null if the request was not sent because the server
+   *   does not support sessions or the session ended.
+   */
+  suspend fun request(
+    argv: List<String>,
+    env: Map<String, String>?,
+    timeout: Duration,
+    usePersistentShell: Boolean,
+  ): InputStream? {
+    val requestId = nextRequestId.getAndIncrement()
+    if (requestId != FIRST_REQUEST_ID && !supported.await()) {
+      return null
+    }
+    val downstream = ResponseStream()
+    pending[requestId] = downstream
+    try {
+      synchronized(socket) {
+        if (!isOpen) {
+          pending.remove(requestId)
+          return null
+        }
+        socket.sendRequest(
+          secret,
+          argv,
+          env,
+          timeout,
+          requestId = requestId,
+          session = requestId == FIRST_REQUEST_ID,
+          usePersistentShell = usePersistentShell,
+        )
+      }
+    } catch (x: IOException) {
+      Log.w(TAG, "Failed to send request over session", x)
+      pending.remove(requestId)
+      close()
+      return null
+    }
+    return downstream
+  }
+
+  /** Ends the session. Requests that did not exit yet see the end of their output. */
+  fun close() {
+    isOpen = false
+    supported.complete(false)
+    try {
+      socket.close()
+    } catch (x: IOException) {
+      Log.w(TAG, "Failed to close session", x)
+    }
+  }
+
+  private fun relayResponses() {
+    try {
+      while (true) {
+        val response = socket.readResponse() ?: break // EOF
+        // Responses of older servers carry no request id, they can only answer the first request.
+        supported.complete(response.requestId != 0)
+        val requestId = if (response.requestId == 0) FIRST_REQUEST_ID else response.requestId
+        val upstream = pending[requestId] ?: continue
+        if (!upstream.append(response.buffer.toByteArray())) {
+          // The reader closed the stream early; drop the rest of the output.
+          pending.remove(requestId)
+          continue
+        }
+        if (response.hasExited()) {
+          pending.remove(requestId)
+          upstream.end()
+        }
+      }
+    } catch (x: IOException) {
+      if (isOpen) Log.w(TAG, "Session relay failed", x)
+    } finally {
+      close()
+      for (upstream in pending.values) {
+        upstream.end()
+      }
+      pending.clear()
+    }
+  }
+
+  private companion object {
+    const val TAG = "SCLSSession" // up to 23 characters
+    const val FIRST_REQUEST_ID = 1
+  }
+}
+
+/**
+ * The output of one request. The relay appends to it without ever blocking; the caller reads it
+ * until the relay ends it.
+ */
+private class ResponseStream : InputStream() {
+  private val lock = ReentrantLock()
+  private val changed = lock.newCondition()
+  private val chunks = ArrayDeque<ByteArray>()
+  // The number of bytes of the first chunk that were already read.
+  private var offset = 0
+  private var buffered = 0
+  private var ended = false
+  private var closed = false
+
+  /** Appends output. Returns false if the reader closed the stream. */
+  fun append(bytes: ByteArray): Boolean {
+    lock.withLock {
+      if (closed) return false
+      if (bytes.isNotEmpty()) {
+        chunks.addLast(bytes)
+        buffered += bytes.size
+        changed.signalAll()
+      }
+      return true
+    }
+  }
+
+  /** Ends the output; the reader sees the end of the stream once it read what was appended. */
+  fun end() {
+    lock.withLock {
+      ended = true
+      changed.signalAll()
+    }
+  }
+
+  override fun read(): Int {
+    val one = ByteArray(1)
+    return if (read(one, 0, 1) < 0) -1 else one[0].toInt() and 0xff
+  }
+
+  override fun read(b: ByteArray, off: Int, len: Int): Int {
+    lock.withLock {
+      if (len == 0) return 0
+      while (chunks.isEmpty() && !ended && !closed) {
+        try {
+          changed.await()
+        } catch (x: InterruptedException) {
+          Thread.currentThread().interrupt()
+          throw InterruptedIOException()
+        }
+      }
+      if (closed) throw IOException("Stream closed")
+      val chunk = chunks.firstOrNull() ?: return -1
+      val size = minOf(len, chunk.size - offset)
+      System.arraycopy(chunk, offset, b, off, size)
+      offset += size
+      buffered -= size
+      if (offset == chunk.size) {
+        chunks.removeFirst()
+        offset = 0
+      }
+      return size
+    }
+  }
+
+  override fun available(): Int = lock.withLock { buffered }
+
+  override fun close() {
+    lock.withLock {
+      closed = true
+      chunks.clear()
+      buffered = 0
+      changed.signalAll()
+    }
+  }
+}
@@ -20,8 +20,23 @@ import java.io.InputStream
 import kotlin.time.Duration
 import kotlin.time.Duration.Companion.milliseconds
 
-/** ShellExecutor that talks to LocalSocketShellMain. */
-class ShellExecutorLocalSocketImpl(private val binderKey: String) : ShellExecutor {
+/**
+ * ShellExecutor that talks to LocalSocketShellMain.
+ *
+ * Commands are sent over a session shared by all the executors of this process, see
+ * [ShellCommandLocalSocketClient.requestInSession].
+ *
+ * @param usePersistentShell Whether commands executed through a shell, without environment
+ *   variables, may run in the server's persistent shell, which saves starting a shell process per
+ *   command. Changes to the state of the persistent shell, like the working directory, carry over to
+ *   later commands.
+ */
+class ShellExecutorLocalSocketImpl
+@JvmOverloads
+constructor(
+  private val binderKey: String,
+  private val usePersistentShell: Boolean = false,
+) : ShellExecutor {
 
   /** {@inheritDoc} */
   override fun getBinderKey() = binderKey
@@ -67,7 +82,14 @@ class ShellExecutorLocalSocketImpl(private val binderKey: String) : ShellExecuto
       } else {
         Duration.INFINITE
       }
-    return client.request(command, parameters, shellEnv, executeThroughShell, timeout)
+    return client.requestInSession(
+      command,
+      parameters,
+      shellEnv,
+      executeThroughShell,
+      timeout,
+      usePersistentShell,
+    )
   }
 
   /** {@inheritDoc} */
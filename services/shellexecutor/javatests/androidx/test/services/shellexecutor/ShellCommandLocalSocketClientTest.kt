@@ -109,6 +109,38 @@ class ShellCommandLocalSocketClientTest {
     assertThat(request.timeoutMs).isGreaterThan(900)
   }
 
+  @Test
+  fun requestInSession_sendsSessionRequest() {
+    val server = LocalServerSocket("requestInSession_sendsSessionRequest")
+    val client = ShellCommandLocalSocketClient(server.localSocketAddress.asBinderKey(SECRET))
+
+    val request: RunCommandRequest
+
+    runBlocking {
+      val result = async {
+        val socket = server.accept()
+        socket.readRequest()
+      }
+
+      client.requestInSession(
+        "foo",
+        listOf("bar", "baz"),
+        null,
+        executeThroughShell = true,
+        timeout = 1.seconds,
+        usePersistentShell = true,
+      )
+      request = result.await()
+    }
+    server.close()
+
+    assertThat(request.secret).isEqualTo(SECRET)
+    assertThat(request.argvList).containsExactly("sh", "-c", "foo bar baz")
+    assertThat(request.session).isTrue()
+    assertThat(request.requestId).isEqualTo(1)
+    assertThat(request.usePersistentShell).isTrue()
+  }
+
   private companion object {
     const val SECRET = "foo:bar"
   }
@@ -9,6 +9,7 @@ import androidx.test.services.shellexecutor.LocalSocketProtocol.sendRequest
 import androidx.test.services.shellexecutor.LocalSocketProtocolProto.RunCommandResponse
 import com.google.common.truth.Truth.assertThat
 import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.seconds
 import kotlinx.coroutines.runBlocking
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -93,4 +94,114 @@ class ShellCommandLocalSocketExecutorServerTest {
       assertThat(client.inputStream.read()).isEqualTo(-1)
     }
   }
+
+  @Test
+  fun session_interleavesResponsesByRequestId() {
+    val outputs: Map<Int, String>
+    val exitCodes: Map<Int, Int>
+    runBlocking {
+      val server = ShellCommandLocalSocketExecutorServer()
+      server.start()
+      val client = LocalSocket(LocalSocket.SOCKET_STREAM)
+      client.connect(addressFromBinderKey(server.binderKey()))
+      val secret = secretFromBinderKey(server.binderKey())
+      client.sendRequest(
+        secret,
+        listOf("sh", "-c", "sleep 1; echo slow"),
+        null,
+        5000.milliseconds,
+        requestId = 1,
+        session = true,
+      )
+      client.sendRequest(secret, listOf("echo", "fast"), null, 5000.milliseconds, requestId = 2)
+      client.shutdownOutput()
+      val responses = client.readAllResponses()
+      outputs = responses.outputsByRequestId()
+      exitCodes = responses.filter { it.hasExited() }.associate { it.requestId to it.exitCode }
+      server.stop(100.milliseconds)
+    }
+    assertThat(outputs).containsExactly(1, "slow\n", 2, "fast\n")
+    assertThat(exitCodes).containsExactly(1, 0, 2, 0)
+  }
+
+  @Test
+  fun persistentShell_keepsStateAcrossRequests() {
+    val outputs: Map<Int, String>
+    val exitCodes: Map<Int, Int>
+    runBlocking {
+      val server = ShellCommandLocalSocketExecutorServer()
+      server.start()
+      val client = LocalSocket(LocalSocket.SOCKET_STREAM)
+      client.connect(addressFromBinderKey(server.binderKey()))
+      val secret = secretFromBinderKey(server.binderKey())
+      val commands = listOf("POTRZEBIE=furshlugginer", "echo \$POTRZEBIE", "exit 3")
+      for ((index, command) in commands.withIndex()) {
+        client.sendRequest(
+          secret,
+          listOf("sh", "-c", command),
+          null,
+          5000.milliseconds,
+          requestId = index + 1,
+          session = index == 0,
+          usePersistentShell = true,
+        )
+      }
+      client.shutdownOutput()
+      val responses = client.readAllResponses()
+      outputs = responses.outputsByRequestId()
+      exitCodes = responses.filter { it.hasExited() }.associate { it.requestId to it.exitCode }
+      server.stop(100.milliseconds)
+    }
+    // The persistent shell runs the commands in order, in the same shell.
+    assertThat(outputs[2]).isEqualTo("furshlugginer\n")
+    assertThat(exitCodes).containsExactly(1, 0, 2, 0, 3, 3)
+  }
+
+  @Test(timeout = 10000)
+  fun session_undrainedOutputDoesNotStallOtherRequests() {
+    val server = ShellCommandLocalSocketExecutorServer()
+    server.start()
+    val client = ShellCommandLocalSocketClient(server.binderKey())
+    // Far more output than a socket buffer holds, left unread while the next request runs.
+    val unread =
+      client.requestInSession(
+        "head",
+        listOf("-c", "1048576", "/dev/zero"),
+        null,
+        executeThroughShell = false,
+        timeout = 5.seconds,
+      )
+    val output =
+      client
+        .requestInSession(
+          "echo",
+          listOf("fast"),
+          null,
+          executeThroughShell = false,
+          timeout = 5.seconds,
+        )
+        .use { it.readBytes().toString(Charsets.UTF_8) }
+    unread.close()
+    server.stop(100.milliseconds)
+    assertThat(output).isEqualTo("fast\n")
+  }
+
+  /** Reads responses until the server closes the connection. */
+  private fun LocalSocket.readAllResponses(): List<RunCommandResponse> {
+    val responses = mutableListOf<RunCommandResponse>()
+    while (true) {
+      responses.add(readResponse() ?: return responses)
+    }
+  }
+
+  private fun List<RunCommandResponse>.outputsByRequestId(): Map<Int, String> {
+    val outputs = mutableMapOf<Int, String>()
+    for (response in this) {
+      if (response.buffer.size() > 0) {
+        outputs[response.requestId] =
+          outputs.getOrDefault(response.requestId, "") + response.buffer.toStringUtf8()
+      }
+    }
+    return outputs
+  }
 }
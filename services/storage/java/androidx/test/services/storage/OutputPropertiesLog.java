@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.services.storage;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the output properties log, shared between on-device and host-side testing
+ * infrastructure.
+ *
+ * <p>The log is a sequence of records, each holding the properties of one {@code
+ * addOutputProperties} call, so adding properties only appends to the file. A record is a 4 byte
+ * big-endian length and the 4 byte CRC-32 of the data, followed by that many bytes of data: the
+ * number of properties, then for each property its name, a type tag and its value. Strings,
+ * numbers and booleans are written as is; other values are written with Java serialization. When
+ * reading, later values of a property replace earlier ones.
+ *
+ * <p>The log is written next to {@link #LEGACY_FILE_NAME}, which held all the properties as one
+ * serialized map. Readers should read that file first, if it exists, and then the log.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public final class OutputPropertiesLog {
+
+  /** The name of the file holding the output properties log. */
+  public static final String FILE_NAME = "properties.log";
+
+  /** The name of the file that held the output properties as a serialized map. */
+  public static final String LEGACY_FILE_NAME = "properties.dat";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // The length and the CRC-32 of a record.
+  private static final int HEADER_SIZE = 8;
+
+  private static final byte TYPE_STRING = 's';
+  private static final byte TYPE_INTEGER = 'i';
+  private static final byte TYPE_LONG = 'j';
+  private static final byte TYPE_DOUBLE = 'd';
+  private static final byte TYPE_FLOAT = 'f';
+  private static final byte TYPE_BOOLEAN = 'z';
+  private static final byte TYPE_SERIALIZED = 'o';
+
+  /**
+   * Writes the given properties as one record, with a single write to the stream, so that a record
+   * is never interleaved with another one.
+   */
+  public static void writeRecord(OutputStream out, Map<String, Serializable> properties)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream record = new DataOutputStream(bytes);
+    record.writeInt(0); // the length, filled in below
+    record.writeInt(0); // the CRC-32, filled in below
+    record.writeInt(properties.size());
+    for (Map.Entry<String, Serializable> property : properties.entrySet()) {
+      writeString(record, property.getKey());
+      writeValue(record, property.getValue());
+    }
+    record.flush();
+    byte[] data = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(data, HEADER_SIZE, data.length - HEADER_SIZE);
+    putInt(data, 0, data.length - HEADER_SIZE);
+    putInt(data, 4, (int) crc.getValue());
+    out.write(data);
+  }
+
+  /**
+   * Reads all the records of the log into the given map, replacing the values of properties that
+   * are already in it.
+   *
+   * <p>Reading stops at the first truncated or corrupt record, as left by a process that died while
+   * writing it; the records before it are kept.
+   */
+  public static void readRecords(InputStream in, Map<String, ? super Serializable> properties)
+      throws IOException {
+    // Read in full, so that every length can be checked against the bytes left.
+    DataInputStream log = new DataInputStream(new ByteArrayInputStream(readAll(in)));
+    while (log.available() > 0) {
+      Map<String, Serializable> record = new LinkedHashMap<>();
+      try {
+        int length = log.readInt();
+        int expectedCrc = log.readInt();
+        byte[] data = readBytes(log, length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != expectedCrc) {
+          return;
+        }
+        DataInputStream recordData = new DataInputStream(new ByteArrayInputStream(data));
+        int count = recordData.readInt();
+        for (int i = 0; i < count; i++) {
+          String name = readString(recordData);
+          record.put(name, readValue(recordData));
+        }
+      } catch (EOFException | CorruptRecordException e) {
+        return;
+      }
+      properties.putAll(record);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Serializable value) throws IOException {
+    if (value instanceof String) {
+      out.writeByte(TYPE_STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(TYPE_INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(TYPE_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      out.writeByte(TYPE_FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(TYPE_BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else {
+      out.writeByte(TYPE_SERIALIZED);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes);
+      objectOutputStream.writeObject(value);
+      objectOutputStream.close();
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+    }
+  }
+
+  private static Serializable readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case TYPE_STRING:
+        return readString(in);
+      case TYPE_INTEGER:
+        return in.readInt();
+      case TYPE_LONG:
+        return in.readLong();
+      case TYPE_DOUBLE:
+        return in.readDouble();
+      case TYPE_FLOAT:
+        return in.readFloat();
+      case TYPE_BOOLEAN:
+        return in.readBoolean();
+      case TYPE_SERIALIZED:
+        byte[] data = readBytes(in);
+        ObjectInputStream objectInputStream =
+            new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+          return (Serializable) objectInputStream.readObject();
+        } catch (ClassNotFoundException e) {
+          throw new IOException("Unknown class of a property value", e);
+        } finally {
+          objectInputStream.close();
+        }
+      default:
+        throw new CorruptRecordException("Unknown property value type: " + type);
+    }
+  }
+
+  // Unlike writeUTF, not limited to 64KB.
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] data = value.getBytes(UTF_8);
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return new String(readBytes(in), UTF_8);
+  }
+
+  // Reads a length and that many bytes. in must read from a byte array, so that available() is the
+  // number of bytes left.
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    return readBytes(in, in.readInt());
+  }
+
+  private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+    if (length < 0 || length > in.available()) {
+      throw new CorruptRecordException("Bad length: " + length + ", bytes left: " + in.available());
+    }
+    byte[] data = new byte[length];
+    in.readFully(data);
+    return data;
+  }
+
+  private static void putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      bytes.write(buffer, 0, read);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** Thrown for records that are truncated or malformed. */
+  private static final class CorruptRecordException extends IOException {
+    CorruptRecordException(String message) {
+      super(message);
+    }
+  }
+
+  private OutputPropertiesLog() {}
+}
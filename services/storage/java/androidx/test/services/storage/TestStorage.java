@@ -18,10 +18,12 @@ package androidx.test.services.storage;
 import static androidx.test.internal.util.Checks.checkNotNull;
 
 import android.content.ContentResolver;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.test.platform.app.InstrumentationRegistry;
@@ -31,15 +33,14 @@ import androidx.test.services.storage.file.HostedFile.FileHost;
 import androidx.test.services.storage.file.PropertyFile;
 import androidx.test.services.storage.file.PropertyFile.Authority;
 import androidx.test.services.storage.internal.TestStorageUtil;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -60,7 +61,18 @@ import java.util.Map;
 @RestrictTo(Scope.LIBRARY_GROUP)
 public final class TestStorage implements PlatformTestStorage {
   private static final String TAG = TestStorage.class.getSimpleName();
-  private static final String PROPERTIES_FILE_NAME = "properties.dat";
+
+  /**
+   * The test arguments, shared by all instances in the process and loaded with a single query.
+   * Dropped when the test args provider reports that they changed, so the next lookup loads them
+   * again.
+   */
+  @Nullable private static volatile Map<String, String> inputArgs;
+
+  // Incremented on every change notification, so that args loaded concurrently aren't kept.
+  private static volatile int inputArgsGeneration;
+
+  @Nullable private static ContentObserver inputArgsObserver;
 
   private final ContentResolver contentResolver;
 
@@ -173,51 +185,82 @@ public final class TestStorage implements PlatformTestStorage {
    * name the account email argument as something like "google_account.email" and its password as
    * "google_account.password".
    *
+   * <p>The arguments are cached, see {@link #getInputArgs()}.
+   *
    * @param argName the argument name. Should not be null.
    */
   @Override
   public String getInputArg(@NonNull String argName) {
     checkNotNull(argName);
 
-    Uri testArgUri = PropertyFile.buildUri(Authority.TEST_ARGS, argName);
-    Cursor cursor = null;
-    try {
-      cursor = doQuery(contentResolver, testArgUri);
-      if (cursor.getCount() == 0) {
-        throw new TestStorageException(
-            String.format(
-                "Query for URI '%s' did not return any results."
-                    + " Make sure the argName is actually being passed in as a test argument.",
-                testArgUri));
-      }
-      if (cursor.getCount() > 1) {
-        throw new TestStorageException(
-            String.format("Query for URI '%s' returned more than one result. Weird.", testArgUri));
-      }
-      cursor.moveToFirst();
-      return cursor.getString(PropertyFile.Column.VALUE.getPosition());
-    } finally {
-      if (cursor != null) {
-        cursor.close();
-      }
+    String value = getInputArgSnapshot().get(argName);
+    if (value == null) {
+      throw new TestStorageException(
+          String.format(
+              "No test argument named '%s' was found."
+                  + " Make sure the argName is actually being passed in as a test argument.",
+              argName));
     }
+    return value;
   }
 
   /**
    * Returns the name/value map of all test arguments or an empty map if no arguments are defined.
+   *
+   * <p>The arguments are read with a single query the first time they are needed in the process,
+   * and then kept until the test args provider reports that they changed.
    */
   @Override
   public Map<String, String> getInputArgs() {
+    return new HashMap<>(getInputArgSnapshot());
+  }
+
+  private Map<String, String> getInputArgSnapshot() {
+    Map<String, String> args = inputArgs;
+    if (args != null) {
+      return args;
+    }
     Uri testArgUri = PropertyFile.buildUri(Authority.TEST_ARGS);
+    observeInputArgs(contentResolver, testArgUri);
+    int generation = inputArgsGeneration;
     Cursor cursor = null;
     try {
       cursor = doQuery(contentResolver, testArgUri);
-      return getProperties(cursor);
+      args = Collections.unmodifiableMap(getProperties(cursor));
     } finally {
       if (cursor != null) {
         cursor.close();
       }
     }
+    synchronized (TestStorage.class) {
+      if (generation == inputArgsGeneration) {
+        inputArgs = args;
+      }
+    }
+    return args;
+  }
+
+  private static synchronized void observeInputArgs(ContentResolver resolver, Uri testArgUri) {
+    if (inputArgsObserver != null) {
+      return;
+    }
+    // Without a handler, changes are delivered on a binder thread.
+    inputArgsObserver =
+        new ContentObserver(null /* handler */) {
+          @Override
+          public void onChange(boolean selfChange) {
+            synchronized (TestStorage.class) {
+              inputArgsGeneration++;
+              inputArgs = null;
+            }
+          }
+        };
+    try {
+      resolver.registerContentObserver(
+          testArgUri, true /* notifyForDescendants */, inputArgsObserver);
+    } catch (SecurityException e) {
+      Log.w(TAG, "Unable to observe changes to the test args", e);
+    }
   }
 
   /**
@@ -260,6 +303,10 @@ public final class TestStorage implements PlatformTestStorage {
    *
    * <p>Adding a property with the same name would append new values and overwrite the old values if
    * keys already exist.
+   *
+   * <p>The properties are appended to the output properties log as one record, so the cost of a
+   * call doesn't depend on how many properties were added before. Pass all the properties of a test
+   * in one call where possible: each call opens the log through the content provider once.
    */
   @Override
   public void addOutputProperties(Map<String, Serializable> properties) {
@@ -267,35 +314,51 @@ public final class TestStorage implements PlatformTestStorage {
       return;
     }
 
-    Map<String, Serializable> allProperties = getOutputProperties();
-    allProperties.putAll(properties);
-
-    Uri propertyFileUri = getPropertyFileUri();
-    ObjectOutputStream objectOutputStream = null;
+    Uri propertyLogUri = getPropertyFileUri(OutputPropertiesLog.FILE_NAME);
+    OutputStream outputStream = null;
     try {
-      // Buffered to improve performance and avoid the unbuffered IO violation when running under
-      // strict mode.
-      OutputStream outputStream =
-          new BufferedOutputStream(
-              TestStorageUtil.getOutputStream(propertyFileUri, contentResolver));
-      objectOutputStream = new ObjectOutputStream(outputStream);
-      objectOutputStream.writeObject(allProperties);
+      outputStream =
+          TestStorageUtil.getOutputStream(propertyLogUri, contentResolver, true /* append */);
+      // Writes the record with a single write, which also avoids the unbuffered IO violation when
+      // running under strict mode.
+      OutputPropertiesLog.writeRecord(outputStream, properties);
     } catch (FileNotFoundException ex) {
       throw new TestStorageException("Unable to create file", ex);
     } catch (IOException e) {
-      throw new TestStorageException("I/O error occurred during reading test properties.", e);
+      throw new TestStorageException("I/O error occurred during writing test properties.", e);
     } finally {
-      silentlyClose(objectOutputStream);
+      silentlyClose(outputStream);
     }
   }
 
   /**
    * Returns a map of all the output test properties. If no properties exist, an empty map will be
    * returned.
+   *
+   * <p>Properties written in the legacy {@code properties.dat} file are read first, and then
+   * replaced by the ones in the output properties log.
    */
   @Override
   public Map<String, Serializable> getOutputProperties() {
-    Uri propertyFileUri = getPropertyFileUri();
+    Map<String, Serializable> properties = getLegacyOutputProperties();
+
+    Uri propertyLogUri = getPropertyFileUri(OutputPropertiesLog.FILE_NAME);
+    InputStream in = null;
+    try {
+      in = TestStorageUtil.getInputStream(propertyLogUri, contentResolver);
+      OutputPropertiesLog.readRecords(in, properties);
+    } catch (FileNotFoundException fnfe) {
+      Log.i(TAG, String.format("%s: does not exist, we must be the first call.", propertyLogUri));
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read recorded stats!", e);
+    } finally {
+      silentlyClose(in);
+    }
+    return properties;
+  }
+
+  private Map<String, Serializable> getLegacyOutputProperties() {
+    Uri propertyFileUri = getPropertyFileUri(OutputPropertiesLog.LEGACY_FILE_NAME);
 
     ObjectInputStream in = null;
     InputStream rawStream = null;
@@ -304,13 +367,11 @@ public final class TestStorage implements PlatformTestStorage {
       in = new ObjectInputStream(rawStream);
       @SuppressWarnings("unchecked")
       Map<String, Serializable> recordedProperties = (Map<String, Serializable>) in.readObject();
-      if (recordedProperties == null) {
-        return new HashMap<>();
-      } else {
-        return recordedProperties;
+      if (recordedProperties != null) {
+        return new HashMap<>(recordedProperties);
       }
     } catch (FileNotFoundException fnfe) {
-      Log.i(TAG, String.format("%s: does not exist, we must be the first call.", propertyFileUri));
+      // Only written by older versions of this class.
     } catch (IOException | ClassNotFoundException e) {
       Log.w(TAG, "Failed to read recorded stats!", e);
     } finally {
@@ -357,8 +418,8 @@ public final class TestStorage implements PlatformTestStorage {
     return TestStorageUtil.getOutputStream(outputUri, contentResolver);
   }
 
-  private static Uri getPropertyFileUri() {
-    return HostedFile.buildUri(HostedFile.FileHost.EXPORT_PROPERTIES, PROPERTIES_FILE_NAME);
+  private static Uri getPropertyFileUri(String fileName) {
+    return HostedFile.buildUri(HostedFile.FileHost.EXPORT_PROPERTIES, fileName);
   }
 
   /**
@@ -23,6 +23,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.FileObserver;
 import android.util.Log;
 import androidx.test.services.storage.TestStorageConstants;
 import androidx.test.services.storage.TestStorageServiceProto.TestArgument;
@@ -34,6 +35,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -56,6 +58,13 @@ public final class TestArgsContentProvider extends ContentProvider {
   private String systemPropertyClassName;
   private Method getString;
 
+  // The parsed test args, and the modification time and length of the file they were read from.
+  private Map<String, String> argMap;
+  private long argsFileLastModified;
+  private long argsFileLength;
+
+  private FileObserver argsFileObserver;
+
   void setSystemPropertyClassNameForTest(String className) {
     this.systemPropertyClassName = className;
   }
@@ -78,7 +87,23 @@ public final class TestArgsContentProvider extends ContentProvider {
   }
 
   @Override
+  @SuppressWarnings("deprecation") // FileObserver(File, int) needs API 29
   public boolean onCreate() {
+    File testArgsFile = getTestArgsFile(getContext());
+    // Tells clients holding on to the test args, such as TestStorage, when the file is pushed
+    // again. Only takes effect if the directory exists when the provider is created.
+    argsFileObserver =
+        new FileObserver(
+            testArgsFile.getParent(),
+            FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE) {
+          @Override
+          public void onEvent(int event, String path) {
+            if (TestStorageConstants.TEST_ARGS_FILE_NAME.equals(path)) {
+              notifyArgsChanged();
+            }
+          }
+        };
+    argsFileObserver.startWatching();
     return true;
   }
 
@@ -87,7 +112,7 @@ public final class TestArgsContentProvider extends ContentProvider {
       Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
     checkNotNull(uri);
 
-    Map<String, String> argMap = buildArgMapFromFile();
+    Map<String, String> argMap = getArgMap();
 
     MatrixCursor cursor = new MatrixCursor(PropertyFile.Column.getNames());
     String argName = uri.getLastPathSegment();
@@ -107,23 +132,51 @@ public final class TestArgsContentProvider extends ContentProvider {
     return cursor;
   }
 
-  private Map<String, String> buildArgMapFromFile() {
+  /** Returns the test args, parsing the file again only if it changed since it was last read. */
+  private synchronized Map<String, String> getArgMap() {
+    File testArgsFile = getTestArgsFile(getContext());
+    long lastModified = testArgsFile.lastModified();
+    long length = testArgsFile.length();
+    if (argMap != null && lastModified == argsFileLastModified && length == argsFileLength) {
+      return argMap;
+    }
+    boolean changed = argMap != null;
+    argMap = buildArgMapFromFile(testArgsFile);
+    argsFileLastModified = lastModified;
+    argsFileLength = length;
+    if (changed) {
+      // The file observer may miss changes, e.g. on emulated external storage.
+      notifyArgsChanged();
+    }
+    return argMap;
+  }
+
+  private void notifyArgsChanged() {
+    Log.i(TAG, "Test args changed");
+    getContext()
+        .getContentResolver()
+        .notifyChange(PropertyFile.buildUri(Authority.TEST_ARGS), null /* observer */);
+  }
+
+  private static Map<String, String> buildArgMapFromFile(File testArgsFile) {
     Map<String, String> argMap = new HashMap<>();
 
-    for (TestArgument testArg : readProtoFromFile(this.getContext()).getArgList()) {
+    for (TestArgument testArg : readProtoFromFile(testArgsFile).getArgList()) {
       String key = testArg.getName();
       String val = testArg.getValue();
       argMap.put(key, val);
     }
-    return argMap;
+    return Collections.unmodifiableMap(argMap);
+  }
+
+  private static File getTestArgsFile(Context context) {
+    return new File(
+        HostedFile.getInputRootDirectory(context),
+        TestStorageConstants.ON_DEVICE_PATH_INTERNAL_USE
+            + TestStorageConstants.TEST_ARGS_FILE_NAME);
   }
 
-  private static TestArguments readProtoFromFile(Context context) {
-    File testArgsFile =
-        new File(
-            HostedFile.getInputRootDirectory(context),
-            TestStorageConstants.ON_DEVICE_PATH_INTERNAL_USE
-                + TestStorageConstants.TEST_ARGS_FILE_NAME);
+  private static TestArguments readProtoFromFile(File testArgsFile) {
     if (!testArgsFile.exists()) {
       Log.i(TAG, "Test args file not found at " + testArgsFile.getAbsolutePath());
       return TestArguments.getDefaultInstance();
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.services.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link OutputPropertiesLog}. */
+@RunWith(AndroidJUnit4.class)
+public class OutputPropertiesLogTest {
+
+  @Test
+  public void readRecords_laterValuesReplaceEarlierOnes() throws IOException {
+    Map<String, Object> properties = read(log());
+
+    assertThat(properties).containsExactly("a", "second", "n", 3, "list", Arrays.asList(1, 2));
+  }
+
+  @Test
+  public void readRecords_truncatedLog_keepsCompleteRecords() throws IOException {
+    byte[] log = log();
+    int firstRecordSize = firstRecord().length;
+
+    for (int size = 0; size < log.length; size++) {
+      Map<String, Object> properties = read(Arrays.copyOf(log, size));
+      if (size < firstRecordSize) {
+        assertThat(properties).isEmpty();
+      } else {
+        assertThat(properties).containsExactly("a", "first", "n", 3);
+      }
+    }
+  }
+
+  @Test
+  public void readRecords_corruptRecord_stopsBeforeIt() throws IOException {
+    byte[] log = log();
+    int firstRecordSize = firstRecord().length;
+
+    for (int i = firstRecordSize; i < log.length; i++) {
+      byte[] corrupt = log.clone();
+      corrupt[i] ^= 0x5a;
+      assertThat(read(corrupt)).containsExactly("a", "first", "n", 3);
+    }
+  }
+
+  @Test
+  public void readRecords_negativeLength_readsNothing() throws IOException {
+    byte[] log = {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xf0, 0, 0, 0, 0, 1, 2};
+
+    assertThat(read(log)).isEmpty();
+  }
+
+  private static byte[] firstRecord() throws IOException {
+    Map<String, Serializable> first = new LinkedHashMap<>();
+    first.put("a", "first");
+    first.put("n", 3);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputPropertiesLog.writeRecord(out, first);
+    return out.toByteArray();
+  }
+
+  private static byte[] log() throws IOException {
+    Map<String, Serializable> second = new LinkedHashMap<>();
+    second.put("a", "second");
+    second.put("list", new ArrayList<>(Arrays.asList(1, 2)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(firstRecord());
+    OutputPropertiesLog.writeRecord(out, second);
+    return out.toByteArray();
+  }
+
+  private static Map<String, Object> read(byte[] log) throws IOException {
+    Map<String, Object> properties = new HashMap<>();
+    OutputPropertiesLog.readRecords(new ByteArrayInputStream(log), properties);
+    return properties;
+  }
+}
@@ -21,15 +21,20 @@ import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
 
 import android.net.Uri;
+import android.os.SystemClock;
+import androidx.test.services.storage.TestStorageServiceProto.TestArgument;
+import androidx.test.services.storage.TestStorageServiceProto.TestArguments;
 import androidx.test.services.storage.file.HostedFile;
+import androidx.test.services.storage.file.PropertyFile;
+import androidx.test.services.storage.file.PropertyFile.Authority;
 import androidx.test.services.storage.internal.TestStorageUtil;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
@@ -46,6 +51,7 @@ import org.junit.runners.JUnit4;
 public final class TestStorageTest {
 
   private static final String OUTPUT_PATH = "parent_dir/output_file";
+  private static final long ARGS_REFRESH_TIMEOUT_MILLIS = 10_000;
 
   private final TestStorage testStorage = new TestStorage();
 
@@ -94,18 +100,19 @@ public final class TestStorageTest {
     propertyMap.put("property-b", "test-updated");
     testStorage.addOutputProperties(new HashMap<String, Serializable>(propertyMap));
 
-    Uri dataUri = HostedFile.buildUri(HostedFile.FileHost.EXPORT_PROPERTIES, "properties.dat");
-    InputStream rawStream =
-        TestStorageUtil.getInputStream(dataUri, getApplicationContext().getContentResolver());
-
-    ObjectInputStream in = null;
-    try {
-      in = new ObjectInputStream(rawStream);
-      Map<String, Serializable> recordedStats = (Map<String, Serializable>) in.readObject();
-      assertEquals("Properties not written to the properties file", propertyMap, recordedStats);
-    } catch (IOException | ClassNotFoundException e) {
-      closeInputStream(in);
+    assertEquals(
+        "Properties not written to the properties log",
+        propertyMap,
+        testStorage.getOutputProperties());
+
+    Uri dataUri =
+        HostedFile.buildUri(HostedFile.FileHost.EXPORT_PROPERTIES, OutputPropertiesLog.FILE_NAME);
+    Map<String, Serializable> recordedStats = new HashMap<>();
+    try (InputStream rawStream =
+        TestStorageUtil.getInputStream(dataUri, getApplicationContext().getContentResolver())) {
+      OutputPropertiesLog.readRecords(rawStream, recordedStats);
     }
+    assertEquals("Properties not written to the properties log", propertyMap, recordedStats);
   }
 
   @Test
@@ -161,13 +168,76 @@ public final class TestStorageTest {
     assertThat(new String(data, Charset.defaultCharset())).isEqualTo("hello world");
   }
 
-  private void closeInputStream(ObjectInputStream in) {
-    if (in != null) {
-      try {
-        in.close();
-      } catch (IOException e) {
-        // do nothing.
+  @Test
+  public void getInputArg() {
+    assertThat(testStorage.getInputArg("arg1")).isEqualTo("value1");
+    assertThat(testStorage.getInputArgs()).containsEntry("arg3", "value3");
+  }
+
+  @Test
+  public void getInputArg_missingArg() {
+    try {
+      testStorage.getInputArg("not_an_arg");
+      fail("Should throw TestStorageException.");
+    } catch (TestStorageException e) {
+      assertThat(e).hasMessageThat().contains("No test argument named 'not_an_arg'");
+    }
+  }
+
+  @Test
+  public void getInputArg_refreshesWhenTheArgsFileChanges() throws Exception {
+    assertThat(testStorage.getInputArg("arg1")).isEqualTo("value1");
+    byte[] originalArgs = readInternalFile(TestStorageConstants.TEST_ARGS_FILE_NAME);
+    try {
+      writeInternalFile(
+          TestStorageConstants.TEST_ARGS_FILE_NAME,
+          TestArguments.newBuilder()
+              .addArg(TestArgument.newBuilder().setName("arg1").setValue("changed"))
+              .addArg(TestArgument.newBuilder().setName("arg4").setValue("value4"))
+              .build()
+              .toByteArray());
+      // Reading the args from the provider makes it notice the change even if its file observer
+      // missed it, as it may on emulated storage.
+      getApplicationContext()
+          .getContentResolver()
+          .query(PropertyFile.buildUri(Authority.TEST_ARGS), null, null, null, null)
+          .close();
+
+      Map<String, String> args = awaitInputArg("arg4");
+      assertThat(args).containsExactly("arg1", "changed", "arg4", "value4");
+      assertThat(testStorage.getInputArg("arg1")).isEqualTo("changed");
+    } finally {
+      writeInternalFile(TestStorageConstants.TEST_ARGS_FILE_NAME, originalArgs);
+      awaitInputArg("arg2");
+    }
+  }
+
+  /** Waits for the cached test args to contain the given arg, and returns them. */
+  private Map<String, String> awaitInputArg(String argName) throws InterruptedException {
+    long deadline = SystemClock.uptimeMillis() + ARGS_REFRESH_TIMEOUT_MILLIS;
+    Map<String, String> args = testStorage.getInputArgs();
+    while (!args.containsKey(argName) && SystemClock.uptimeMillis() < deadline) {
+      Thread.sleep(50);
+      args = testStorage.getInputArgs();
+    }
+    return args;
+  }
+
+  private byte[] readInternalFile(String pathname) throws IOException {
+    ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    try (InputStream input = testStorage.openInternalInputFile(pathname)) {
+      byte[] buffer = new byte[4096];
+      int size;
+      while ((size = input.read(buffer)) != -1) {
+        contents.write(buffer, 0, size);
       }
     }
+    return contents.toByteArray();
+  }
+
+  private void writeInternalFile(String pathname, byte[] contents) throws IOException {
+    try (OutputStream output = testStorage.openInternalOutputFile(pathname)) {
+      output.write(contents);
+    }
   }
 }
@@ -107,6 +107,28 @@ public class TestArgsContentProviderTest extends ProviderTestCase2<TestArgsConte
     }
   }
 
+  public void testChangedArgsFileIsReadAgain() throws IOException {
+    createTestArgsFileWithMultipleArgs();
+    Uri uri = PropertyFile.buildUri(PropertyFile.Authority.TEST_ARGS);
+    Cursor cursor = getMockContentResolver().query(uri, null, null, null, null);
+    assertEquals(ARGS.length, cursor.getCount());
+    cursor.close();
+
+    createTestArgsFile(
+        TestArguments.newBuilder()
+            .addArg(TestArgument.newBuilder().setName("changed").setValue("value").build())
+            .build());
+    cursor = getMockContentResolver().query(uri, null, null, null, null);
+
+    try {
+      Map<String, String> argMap = getProperties(cursor);
+      assertEquals(1, argMap.size());
+      assertEquals("value", argMap.get("changed"));
+    } finally {
+      cursor.close();
+    }
+  }
+
   public void testEmptyArgsDataFile() throws IOException {
     createTestArgsFile(TestArguments.getDefaultInstance());
     Uri uri = PropertyFile.buildUri(PropertyFile.Authority.TEST_ARGS);
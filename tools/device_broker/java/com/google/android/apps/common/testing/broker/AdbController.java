@@ -45,6 +45,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -54,17 +55,22 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.google.common.io.LineProcessor;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 import com.google.inject.Provider;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -129,6 +135,7 @@ public class AdbController {
   private static final String PROGUARD_KEEP_JACOCO = "'-keep %s org.jacoco.** {*;}'";
 
   private static final Pattern PATH_PATTERN = Pattern.compile("^package\\:(.*)");
+  private static final Pattern PACKAGE_PATH_PATTERN = Pattern.compile("^package:(.*)=([^=]+)$");
 
   private static final Logger logger =
       Logger.getLogger(AdbController.class.getName());
@@ -275,6 +282,16 @@ public class AdbController {
     }
     adbArgs.add(apkPath);
 
+    List<String> prefixedArgs = prefixArgsWithDeviceSerial(adbArgs.toArray(new String[0]));
+    try {
+      makeCheckedCall(builder, prefixedArgs, getInstallTimeoutSeconds(apkPath));
+    } catch (IllegalStateException e) {
+      throw new RuntimeException(Joiner.on("\n").join(stdoutProcessor.getResult()), e);
+    }
+    checkAdbInstallResult(stdoutProcessor);
+  }
+
+  private int getInstallTimeoutSeconds(String apkPath) {
     int maxInstallTimeSeconds = getDefaultTimeout();
     if (device.getApiVersion() > 19) {
       // ART (dex2oat)
@@ -288,14 +305,7 @@ public class AdbController {
                 apkPath, apkSize, maxInstallTimeSeconds));
       }
     }
-
-    List<String> prefixedArgs = prefixArgsWithDeviceSerial(adbArgs.toArray(new String[0]));
-    try {
-      makeCheckedCall(builder, prefixedArgs, maxInstallTimeSeconds);
-    } catch (IllegalStateException e) {
-      throw new RuntimeException(Joiner.on("\n").join(stdoutProcessor.getResult()), e);
-    }
-    checkAdbInstallResult(stdoutProcessor);
+    return maxInstallTimeSeconds;
   }
 
   private List<String> getAdbInstallArgs() {
@@ -357,13 +367,7 @@ public class AdbController {
 
     try {
       if (!isApkAlreadyInstalled(apkPath, packageName)) {
-        try {
-          installApk(apkPath, additionalArgs, grantRuntimePermissions);
-        } catch (Throwable t) {
-          t.printStackTrace();
-          uninstallApp(packageName);
-          installApk(apkPath, additionalArgs, grantRuntimePermissions);
-        }
+        installOrReinstallApk(packageName, apkPath, additionalArgs, grantRuntimePermissions);
       } else {
         logger.info("Local and device apk hashes for [" + packageName
                     + "] are the same, will skip install.");
@@ -373,6 +377,112 @@ public class AdbController {
     }
   }
 
+  /**
+   * Installs the given apks, keyed by package name, skipping the ones whose MD5 checksum matches
+   * the apk installed on the device.
+   *
+   * <p>Unlike calling {@link #installApkIfNecessary(String, String, boolean)} for each apk, this
+   * finds and hashes all the installed apks with a single adb call each. On API 29+, the apks that
+   * changed are installed together, in a single install-multi-package session.
+   */
+  public void installApksIfNecessary(
+      Map<String, String> apksByPackage, boolean grantRuntimePermissions) {
+    Map<String, String> apksToCheck = Maps.newLinkedHashMap();
+    for (Map.Entry<String, String> apk : apksByPackage.entrySet()) {
+      if (assumeApksInstalled.contains(apk.getKey()) || assumeApksInstalled.contains("all")) {
+        logger.info("Skip installation of " + apk.getKey());
+      } else {
+        checkArgument(new File(apk.getValue()).exists(), "apk file does not exist");
+        apksToCheck.put(apk.getKey(), apk.getValue());
+      }
+    }
+    if (apksToCheck.isEmpty()) {
+      return;
+    }
+
+    Map<String, String> installedApkPaths = getApkPathsForInstalledApps();
+    Map<String, String> installedApkHashes = Maps.newHashMap();
+    List<String> installedApksToCheck = Lists.newArrayList();
+    for (String packageName : apksToCheck.keySet()) {
+      if (installedApkPaths.containsKey(packageName)) {
+        installedApksToCheck.add(installedApkPaths.get(packageName));
+      }
+    }
+    if (!installedApksToCheck.isEmpty()) {
+      installedApkHashes = getInstalledApkHashes(installedApksToCheck);
+    }
+    // Hashing is I/O bound, and apks can be large.
+    Map<String, String> localApkHashes =
+        apksToCheck.values().parallelStream()
+            .distinct()
+            .collect(Collectors.toMap(apkPath -> apkPath, AdbController::hashApk));
+
+    Map<String, String> apksToInstall = Maps.newLinkedHashMap();
+    for (Map.Entry<String, String> apk : apksToCheck.entrySet()) {
+      String installedApkPath = installedApkPaths.get(apk.getKey());
+      if (installedApkPath != null
+          && localApkHashes.get(apk.getValue()).equals(installedApkHashes.get(installedApkPath))) {
+        logger.info("Local and device apk hashes for [" + apk.getKey()
+                    + "] are the same, will skip install.");
+      } else {
+        apksToInstall.put(apk.getKey(), apk.getValue());
+      }
+    }
+
+    if (apksToInstall.size() > 1 && device.getApiVersion() >= 29) {
+      try {
+        installMultiPackage(apksToInstall.values(), grantRuntimePermissions);
+        return;
+      } catch (RuntimeException e) {
+        // The session is atomic, so none of the apks were installed.
+        logger.warning("install-multi-package failed, installing apks one at a time: " + e);
+      }
+    }
+    for (Map.Entry<String, String> apk : apksToInstall.entrySet()) {
+      installOrReinstallApk(
+          apk.getKey(), apk.getValue(), getAdbInstallArgs(), grantRuntimePermissions);
+    }
+  }
+
+  private void installOrReinstallApk(String packageName, String apkPath,
+      List<String> additionalArgs, boolean grantRuntimePermissions) {
+    try {
+      installApk(apkPath, additionalArgs, grantRuntimePermissions);
+    } catch (Throwable t) {
+      t.printStackTrace();
+      uninstallApp(packageName);
+      installApk(apkPath, additionalArgs, grantRuntimePermissions);
+    }
+  }
+
+  private void installMultiPackage(Collection<String> apkPaths, boolean grantRuntimePermissions) {
+    LineProcessor<List<String>> stdoutProcessor = adbLineListProvider.get();
+    SubprocessCommunicator.Builder builder =
+        communicatorBuilderProvider.get().withStdoutProcessor(stdoutProcessor)
+        .withStderrProcessor(stdoutProcessor);
+
+    List<String> adbArgs = new ArrayList<String>();
+    adbArgs.add("install-multi-package");
+    adbArgs.addAll(getAdbInstallArgs());
+    if (grantRuntimePermissions) {
+      adbArgs.add("-g");
+    }
+    long timeoutSeconds = 0;
+    for (String apkPath : apkPaths) {
+      adbArgs.add(apkPath);
+      timeoutSeconds += getInstallTimeoutSeconds(apkPath);
+    }
+
+    logger.info("Installing " + apkPaths.size() + " apks in one session: " + apkPaths);
+    List<String> prefixedArgs = prefixArgsWithDeviceSerial(adbArgs.toArray(new String[0]));
+    try {
+      makeCheckedCall(builder, prefixedArgs, timeoutSeconds);
+    } catch (IllegalStateException e) {
+      throw new RuntimeException(Joiner.on("\n").join(stdoutProcessor.getResult()), e);
+    }
+    checkAdbInstallResult(stdoutProcessor);
+  }
+
   /**
    * Unlocks the device screen if it is locked.
    */
@@ -696,6 +806,47 @@ public class AdbController {
     if (!outputFile.getParentFile().exists()) {
       checkState(outputFile.getParentFile().mkdirs());
     }
+    enableLoggingFor(logcatFilters);
+
+    makeAdbCall("logcat", "-b", Joiner.on(',').join(buffers).toLowerCase(), "-c");
+    LogcatStreamer streamer =
+        new LogcatStreamer(
+            prefixArgsWithDeviceSerial(),
+            buffers,
+            outputFormat,
+            logcatFilters,
+            outputFile,
+            device.getEnvironmentVariablesForAdb());
+    streamer.startStream();
+    return streamer;
+  }
+
+  /**
+   * Creates an asynchronous logcat stream, to be cut into segments with {@link
+   * SegmentedLogcatStreamer#startSegment} and {@link SegmentedLogcatStreamer#endSegment}.
+   *
+   * <p>The logcat buffer is cleared before the stream is started.
+   */
+  public SegmentedLogcatStreamer startSegmentedLogcatStream(
+      List<Buffer> buffers, OutputFormat outputFormat, List<LogcatFilter> logcatFilters) {
+    checkNotNull(buffers);
+    checkNotNull(outputFormat);
+    checkNotNull(logcatFilters);
+    enableLoggingFor(logcatFilters);
+
+    makeAdbCall("logcat", "-b", Joiner.on(',').join(buffers).toLowerCase(), "-c");
+    SegmentedLogcatStreamer streamer =
+        new SegmentedLogcatStreamer(
+            prefixArgsWithDeviceSerial(),
+            buffers,
+            outputFormat,
+            logcatFilters,
+            device.getEnvironmentVariablesForAdb());
+    streamer.startStream();
+    return streamer;
+  }
+
+  private void enableLoggingFor(List<LogcatFilter> logcatFilters) {
     for (LogcatFilter filter : logcatFilters) {
       if (!"*".equals(filter.getTagName())) {
         if (filter.getLevel() == Level.DEBUG
@@ -710,18 +861,6 @@ public class AdbController {
         }
       }
     }
-
-    makeAdbCall("logcat", "-b", Joiner.on(',').join(buffers).toLowerCase(), "-c");
-    LogcatStreamer streamer =
-        new LogcatStreamer(
-            prefixArgsWithDeviceSerial(),
-            buffers,
-            outputFormat,
-            logcatFilters,
-            outputFile,
-            device.getEnvironmentVariablesForAdb());
-    streamer.startStream();
-    return streamer;
   }
 
   /**
@@ -810,6 +949,84 @@ public class AdbController {
     return Lists.newArrayList(files);
   }
 
+  /**
+   * Pulls several files or directories from the device, and returns where each of them was pulled
+   * to on the host, by device path. The i-th device path is pulled to hostDir/i; paths that don't
+   * exist on the device are left out.
+   *
+   * <p>On API 28+, all paths are pulled with a single adb call: the device streams them as one tar
+   * archive through adb exec-out, which is extracted on the host as it arrives. On older devices,
+   * or if that fails, each path is pulled with adb pull.
+   */
+  public Map<String, File> pullAll(List<String> deviceSources, File hostDir) {
+    checkNotNull(deviceSources);
+    checkNotNull(hostDir);
+    checkState(hostDir.isDirectory() || hostDir.mkdirs(), "Could not create %s", hostDir);
+    if (device.getApiVersion() >= 28) {
+      try {
+        return pullAllAsTar(deviceSources, hostDir);
+      } catch (IllegalStateException e) {
+        logger.warning("Streaming files from the device failed, pulling them one by one: " + e);
+      }
+    }
+
+    Map<String, File> pulled = Maps.newLinkedHashMap();
+    for (int i = 0; i < deviceSources.size(); i++) {
+      File hostDestination = new File(hostDir, String.valueOf(i));
+      try {
+        // Drops what a failed stream extracted, adb pull would copy a directory into it.
+        if (hostDestination.exists()) {
+          MoreFiles.deleteRecursively(
+              hostDestination.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Could not delete " + hostDestination, e);
+      }
+      try {
+        pull(deviceSources.get(i), hostDestination);
+        pulled.put(deviceSources.get(i), hostDestination);
+      } catch (IllegalStateException e) {
+        logger.info("Could not pull " + deviceSources.get(i) + ", it likely doesn't exist.");
+      }
+    }
+    return pulled;
+  }
+
+  private Map<String, File> pullAllAsTar(List<String> deviceSources, File hostDir) {
+    // The paths are gathered as symlinks in a staging directory, which tar follows, so each path
+    // lands at a known name no matter where it is on the device.
+    StringBuilder deviceScript =
+        new StringBuilder("exec 2>/dev/null; S=/data/local/tmp/.pull-")
+            .append(UUID.randomUUID())
+            .append("; rm -rf $S; mkdir -p $S || exit 1; ");
+    for (int i = 0; i < deviceSources.size(); i++) {
+      deviceScript.append(
+          String.format(
+              "[ -e %1$s ] && ln -s %1$s $S/%2$d; ",
+              ShellUtils.shellEscape(deviceSources.get(i)), i));
+    }
+    deviceScript.append("tar -chf - -C $S .; status=$?; rm -rf $S; exit $status");
+
+    List<String> adbArgs = prefixArgsWithDeviceSerial("exec-out", deviceScript.toString());
+    String hostScript =
+        String.format(
+            "PATH=\"$PATH:/bin:/usr/bin\"; %s | tar -xf - -C %s",
+            ShellUtils.prettyPrintArgv(adbArgs), ShellUtils.shellEscape(hostDir.getPath()));
+    makeCheckedCall(
+        communicatorBuilderProvider.get(),
+        Lists.newArrayList("/bin/sh", "-c", hostScript),
+        getDefaultTimeout());
+
+    Map<String, File> pulled = Maps.newLinkedHashMap();
+    for (int i = 0; i < deviceSources.size(); i++) {
+      File hostDestination = new File(hostDir, String.valueOf(i));
+      if (hostDestination.exists()) {
+        pulled.put(deviceSources.get(i), hostDestination);
+      }
+    }
+    return pulled;
+  }
+
   /**
    * Executes an adb script on the device.
    *
@@ -1366,6 +1583,47 @@ public class AdbController {
     return lineProcessor.getResult();
   }
 
+  /** Returns the paths of the apks installed on the device, by package name. */
+  private Map<String, String> getApkPathsForInstalledApps() {
+    Map<String, String> apkPaths = Maps.newHashMap();
+    // Lines look like: package:/data/app/com.foo-1/base.apk=com.foo
+    for (String line : makeLineOutputProcessorAdbCall("shell", "pm", "list", "packages", "-f")) {
+      Matcher matcher = PACKAGE_PATH_PATTERN.matcher(line.trim());
+      if (matcher.matches()) {
+        apkPaths.put(matcher.group(2), matcher.group(1));
+      }
+    }
+    return apkPaths;
+  }
+
+  /** Returns the MD5 checksums of the given apks on the device, by path. */
+  private Map<String, String> getInstalledApkHashes(List<String> installedApkPaths) {
+    List<String> adbArgs = Lists.newArrayList("shell", "md5");
+    adbArgs.addAll(installedApkPaths);
+    adbArgs.add("||");
+    adbArgs.add("md5sum");
+    adbArgs.addAll(installedApkPaths);
+    adbArgs.add("||");
+    adbArgs.add("true");
+
+    Map<String, String> hashes = Maps.newHashMap();
+    for (String line : makeLineOutputProcessorAdbCall(adbArgs.toArray(new String[0]))) {
+      List<String> hashAndPath = Splitter.on(' ').omitEmptyStrings().splitToList(line.trim());
+      if (hashAndPath.size() == 2) {
+        hashes.put(hashAndPath.get(1), hashAndPath.get(0));
+      }
+    }
+    return hashes;
+  }
+
+  private static String hashApk(String apkPath) {
+    try {
+      return Files.asByteSource(new File(apkPath)).hash(Hashing.md5()).toString();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   private boolean apkHashMatchesInstalledApk(String apkPath, String installedApkPath)
       throws IOException {
     String apkHash = Files.asByteSource(new File(apkPath)).hash(Hashing.md5()).toString();
@@ -128,6 +128,12 @@ final class DeviceBrokerAnnotations {
   @BindingAnnotation @Target({FIELD, METHOD, PARAMETER}) @Retention(RUNTIME)
   public @interface DexdumpPath {}
 
+  @BindingAnnotation @Target({FIELD, METHOD, PARAMETER}) @Retention(RUNTIME)
+  public @interface DexdumpCacheDir {}
+
+  @BindingAnnotation @Target({FIELD, METHOD, PARAMETER}) @Retention(RUNTIME)
+  public @interface UseDexdump {}
+
   @BindingAnnotation
   @Target({FIELD, METHOD, PARAMETER})
   @Retention(RUNTIME)
@@ -31,6 +31,7 @@ import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.Con
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.DataPartitionSize;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.DeviceSerialNumber;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.Dex2OatOnCloudEnabled;
+import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.DexdumpCacheDir;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.DexdumpPathFlag;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.EmulateNetworkType;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.EmulatorStartupTimeoutFlag;
@@ -59,6 +60,7 @@ import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.Sim
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.SkipCoverageFilesCheck;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.SystemApksToInstallFlag;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.TestTimeoutOverride;
+import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.UseDexdump;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.UseWaterfall;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
@@ -118,6 +120,8 @@ class DeviceBrokerOptions extends AbstractModule {
   private final Boolean installTestServices;
   private final String adbPath;
   private final String dexdumpPath;
+  private final String dexdumpCacheDir;
+  private final Boolean useDexdump;
   private final String deviceSerialNumber;
   private final ImmutableList<LogcatFilter> logcatFilters;
   private final Boolean preverifyApks;
@@ -166,6 +170,8 @@ class DeviceBrokerOptions extends AbstractModule {
     installTestServices = checkNotNull(b.installTestServices);
     adbPath = checkNotNull(b.adbPath);
     dexdumpPath = checkNotNull(b.dexdumpPath);
+    dexdumpCacheDir = checkNotNull(b.dexdumpCacheDir);
+    useDexdump = checkNotNull(b.useDexdump);
     deviceSerialNumber = checkNotNull(b.deviceSerialNumber);
     logcatFilters = checkNotNull(b.logcatFilters);
     preverifyApks = checkNotNull(b.preverifyApks);
@@ -301,6 +307,21 @@ class DeviceBrokerOptions extends AbstractModule {
     return dexdumpPath;
   }
 
+  @Provides
+  @DexdumpCacheDir
+  Optional<String> provideDexdumpCacheDir() {
+    if ("".equals(dexdumpCacheDir)) {
+      return Optional.absent();
+    }
+    return Optional.of(dexdumpCacheDir);
+  }
+
+  @Provides
+  @UseDexdump
+  Boolean provideUseDexdump() {
+    return useDexdump;
+  }
+
   @Provides
   @DeviceSerialNumber
   String provideDeviceSerialNumber() {
@@ -748,6 +769,32 @@ class DeviceBrokerOptions extends AbstractModule {
       return this;
     }
 
+    static final String DEXDUMP_CACHE_DIR_FLAG = "dexdump_cache_dir";
+    static final String DEXDUMP_CACHE_DIR_FLAG_DESC =
+        "A directory to cache the dexdump output of dex files in, across runs. If unset, dexdump"
+            + " output is only cached within a run.";
+
+    @Parameter(names = "--" + DEXDUMP_CACHE_DIR_FLAG, description = DEXDUMP_CACHE_DIR_FLAG_DESC)
+    public String dexdumpCacheDir = "";
+
+    Builder withDexdumpCacheDir(String dexdumpCacheDir) {
+      this.dexdumpCacheDir = checkNotNull(dexdumpCacheDir);
+      return this;
+    }
+
+    static final String USE_DEXDUMP_FLAG = "use_dexdump";
+    static final String USE_DEXDUMP_FLAG_DESC =
+        "Find tests by running dexdump on the dex files. Pass false to read the dex files"
+            + " directly instead, which skips generated classes such as R and lambdas.";
+
+    @Parameter(names = "--" + USE_DEXDUMP_FLAG, description = USE_DEXDUMP_FLAG_DESC, arity = 1)
+    public Boolean useDexdump = Boolean.TRUE;
+
+    Builder withUseDexdump(Boolean useDexdump) {
+      this.useDexdump = checkNotNull(useDexdump);
+      return this;
+    }
+
     static final String DEVICE_SERIAL_NUMBER_FLAG = "device_serial_number";
     static final String DEVICE_SERIAL_NUMBER_FLAG_DESC =
         "The serial number of the device as shown by running 'adb devices'.";
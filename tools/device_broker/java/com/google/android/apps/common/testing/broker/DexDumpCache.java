@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.broker;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.android.apps.common.testing.proto.TestInfo.TestSuitePb;
+import com.google.android.apps.common.testing.suite.dex.DumpUtils.Pair;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import javax.annotation.Nullable;
+
+/**
+ * Stores the output of dexdump, and the test suites found in dex files, in a directory, keyed by
+ * the contents of the dex files.
+ *
+ * <p>A dex file is identified by the CRC-32 and size recorded for it in the zip central directory,
+ * so looking up a dex file doesn't read or extract it. Test suites are keyed by all the dex files
+ * they were parsed from, in order, since test classes can extend classes of other dex files.
+ *
+ * <p>Entries are written to a temporary file and moved into place, so several brokers can share a
+ * directory.
+ */
+final class DexDumpCache {
+  // Bump when the dexdump flags, or the parsing of its output, change.
+  private static final String VERSION = "v1";
+
+  private static final Logger logger = Logger.getLogger(DexDumpCache.class.getName());
+
+  private final File dir;
+
+  DexDumpCache(File dir) {
+    this.dir = checkNotNull(dir);
+  }
+
+  /** Returns the key of a dex file in an apk, or null if its CRC-32 is unknown. */
+  @Nullable
+  static String keyOf(ZipEntry dexEntry) {
+    if (dexEntry.getCrc() == -1 || dexEntry.getSize() == -1) {
+      return null;
+    }
+    return String.format("%s-%08x-%x", VERSION, dexEntry.getCrc(), dexEntry.getSize());
+  }
+
+  /** Returns the file holding the dexdump output of the given dex file, if it was stored. */
+  Optional<File> getDump(String dexKey) {
+    File dump = dumpFile(dexKey);
+    return dump.isFile() ? Optional.of(dump) : Optional.<File>absent();
+  }
+
+  /** Returns a new file in the cache directory, to write the dexdump output of a dex file to. */
+  File newDumpFile() throws IOException {
+    Files.createDirectories(dir.toPath());
+    return File.createTempFile("dex-dump", ".tmp", dir);
+  }
+
+  /** Stores the dexdump output of the given dex file, moving the given file into the cache. */
+  File putDump(String dexKey, File dump) throws IOException {
+    File target = dumpFile(dexKey);
+    move(dump, target);
+    return target;
+  }
+
+  /** Returns the test suite parsed from the given dex files, if it was stored. */
+  Optional<Pair<TestSuitePb, ImmutableSet<String>>> getSuite(List<String> dexKeys) {
+    String key = suiteKey(dexKeys);
+    File suiteFile = new File(dir, key + ".suite");
+    File classesFile = new File(dir, key + ".classes");
+    if (!suiteFile.isFile() || !classesFile.isFile()) {
+      return Optional.absent();
+    }
+    try (InputStream in = new BufferedInputStream(new FileInputStream(suiteFile))) {
+      TestSuitePb suite = TestSuitePb.parseFrom(in);
+      ImmutableSet<String> classes =
+          ImmutableSet.copyOf(Files.readAllLines(classesFile.toPath(), UTF_8));
+      return Optional.of(Pair.of(suite, classes));
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Ignoring unreadable cached test suite: " + suiteFile, e);
+      return Optional.absent();
+    }
+  }
+
+  /** Stores the test suite parsed from the given dex files. */
+  void putSuite(List<String> dexKeys, Pair<TestSuitePb, ImmutableSet<String>> suite) {
+    String key = suiteKey(dexKeys);
+    try {
+      Files.createDirectories(dir.toPath());
+      // The suite is written last, so it is only found once its classes are in place.
+      File classes = File.createTempFile("classes", ".tmp", dir);
+      Files.write(classes.toPath(), suite.getSecond(), UTF_8);
+      move(classes, new File(dir, key + ".classes"));
+      File suiteFile = File.createTempFile("suite", ".tmp", dir);
+      try (OutputStream out = Files.newOutputStream(suiteFile.toPath())) {
+        suite.getFirst().writeTo(out);
+      }
+      move(suiteFile, new File(dir, key + ".suite"));
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to cache test suite in " + dir, e);
+    }
+  }
+
+  private File dumpFile(String dexKey) {
+    return new File(dir, dexKey + ".xml");
+  }
+
+  private static String suiteKey(List<String> dexKeys) {
+    return VERSION + "-" + Hashing.sha256().hashString(Joiner.on(',').join(dexKeys), UTF_8);
+  }
+
+  private static void move(File source, File target) throws IOException {
+    try {
+      Files.move(
+          source.toPath(),
+          target.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
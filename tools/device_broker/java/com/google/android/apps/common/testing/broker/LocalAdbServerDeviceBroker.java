@@ -39,12 +39,17 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -199,20 +204,19 @@ class LocalAdbServerDeviceBroker implements DeviceBroker {
       }
     }
 
-    List<String> allApksToInstall = apksToInstall;
+    List<String> allApksToInstall = Lists.newArrayList(apksToInstall);
     if (installTestServices) {
       allApksToInstall.addAll(testServicesApksToInstall);
     }
 
-    for (String apk : allApksToInstall) {
-      String packageName = packageNameCache.getUnchecked(apk);
-
-      if (enableApkReuse) {
-        adbController.installApkIfNecessary(packageName, apk, grantRuntimePermissions);
-      } else {
-        logger.info("Apk reuse is disabled, will uninstall and reinstall apk " + apk);
-        adbController.uninstallApp(packageName);
-        adbController.installApk(apk, grantRuntimePermissions);
+    Map<String, String> apksByPackage = getApksByPackage(allApksToInstall);
+    if (enableApkReuse) {
+      adbController.installApksIfNecessary(apksByPackage, grantRuntimePermissions);
+    } else {
+      for (Map.Entry<String, String> apk : apksByPackage.entrySet()) {
+        logger.info("Apk reuse is disabled, will uninstall and reinstall apk " + apk.getValue());
+        adbController.uninstallApp(apk.getKey());
+        adbController.installApk(apk.getValue(), grantRuntimePermissions);
       }
     }
 
@@ -221,6 +225,34 @@ class LocalAdbServerDeviceBroker implements DeviceBroker {
     }
   }
 
+  /**
+   * Returns the given apks by package name, in order. The package names are looked up with aapt in
+   * parallel. If several apks have the same package, the last one is kept, as it would be the one
+   * installed last.
+   */
+  private Map<String, String> getApksByPackage(List<String> apks) {
+    Map<String, Future<String>> packageNames = Maps.newLinkedHashMap();
+    // Each lookup runs an aapt process, so run at most one per processor.
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, Math.min(apks.size(), Runtime.getRuntime().availableProcessors())),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("aapt-%d").build());
+    try {
+      for (final String apk : apks) {
+        packageNames.put(apk, executor.submit(() -> packageNameCache.getUnchecked(apk)));
+      }
+      Map<String, String> apksByPackage = Maps.newLinkedHashMap();
+      for (Map.Entry<String, Future<String>> packageName : packageNames.entrySet()) {
+        String name = Futures.getUnchecked(packageName.getValue());
+        apksByPackage.remove(name);
+        apksByPackage.put(name, packageName.getKey());
+      }
+      return apksByPackage;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private void setDextoptFlags(AdbController adbController, String flags) {
     adbController.setDeviceProperty("dalvik.vm.dexopt-flags", flags);
   }
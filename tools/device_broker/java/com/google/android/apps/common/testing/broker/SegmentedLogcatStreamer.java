@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.broker;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.android.apps.common.testing.broker.LogcatStreamer.Buffer;
+import com.google.android.apps.common.testing.broker.LogcatStreamer.OutputFormat;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Streams logcat over a single adb connection for a whole session, and cuts it into segments, one
+ * per test.
+ *
+ * <p>Each segment is written gzip compressed, as a series of gzip members holding about {@link
+ * #BLOCK_SIZE} bytes of log each, which gzip tools read as a single stream. An index is written
+ * next to it, with an ".idx" suffix. It lists the compressed offset of each block, and for each
+ * tag, pid and priority, the blocks holding its lines, so that a reader can seek to a block and
+ * decompress only that block.
+ *
+ * <p>A segment ends once a marker, logged on the device when the segment is ended, comes through
+ * the stream, so the segment holds everything logged before it was ended. Lines logged between
+ * segments are dropped.
+ */
+public class SegmentedLogcatStreamer {
+  /** The uncompressed size of the blocks of a segment. */
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  private static final String MARKER_TAG = "LogcatSegment";
+  private static final long MARKER_TIMEOUT_SECONDS = 5;
+
+  // Lines in the threadtime format, e.g. "01-02 03:04:05.678  1234  5678 I ActivityManager: ...".
+  private static final Pattern THREADTIME_LINE =
+      Pattern.compile("^\\S+\\s+\\S+\\s+(\\d+)\\s+\\d+\\s+([VDIWEFA])\\s+(.*?)\\s*: ");
+  // Lines in the brief and time formats, e.g. "I/ActivityManager( 1234): ...".
+  private static final Pattern BRIEF_LINE = Pattern.compile("([VDIWEFA])/(.*?)\\(\\s*(\\d+)\\): ");
+
+  private static final Logger logger = Logger.getLogger(SegmentedLogcatStreamer.class.getName());
+
+  private final List<String> adbAndDevicePrefix;
+  private final List<Buffer> buffers;
+  private final OutputFormat outputFormat;
+  private final List<LogcatFilter> logcatFilters;
+  private final Map<String, String> adbEnvironment;
+  private final AtomicBoolean alreadyExecuted = new AtomicBoolean(false);
+  private final Object lock = new Object();
+  private Process proc;
+
+  // Guarded by lock.
+  @Nullable private Segment segment;
+  @Nullable private String endMarker;
+  @Nullable private CountDownLatch endMarkerSeen;
+
+  SegmentedLogcatStreamer(
+      List<String> adbAndDevicePrefix,
+      List<Buffer> buffers,
+      OutputFormat outputFormat,
+      List<LogcatFilter> logcatFilters,
+      Map<String, String> adbEnvironment) {
+    this.adbAndDevicePrefix = checkNotNull(adbAndDevicePrefix);
+    this.buffers = checkNotNull(buffers);
+    this.outputFormat = checkNotNull(outputFormat);
+    this.logcatFilters = checkNotNull(logcatFilters);
+    this.adbEnvironment = checkNotNull(adbEnvironment);
+  }
+
+  public void startStream() {
+    checkState(alreadyExecuted.compareAndSet(false, true), "Streamer already used");
+    List<String> logcatCommand = Lists.newArrayList(adbAndDevicePrefix);
+    logcatCommand.add("logcat");
+    logcatCommand.add("-v");
+    logcatCommand.add(outputFormat.toString().toLowerCase());
+    logcatCommand.add("-b");
+    logcatCommand.add(Joiner.on(',').join(buffers).toLowerCase());
+    for (LogcatFilter filter : logcatFilters) {
+      logcatCommand.add(filter.toString());
+    }
+    // Let the segment end markers through, whatever the filters.
+    logcatCommand.add(MARKER_TAG + ":I");
+
+    ProcessBuilder procBuilder =
+        new ProcessBuilder()
+            .command(logcatCommand)
+            .redirectInput(Redirect.from(new File("/dev/null")))
+            .redirectError(Redirect.to(new File("/dev/null")));
+    procBuilder.environment().clear();
+    procBuilder.environment().putAll(adbEnvironment);
+    try {
+      proc = procBuilder.start();
+    } catch (IOException ioe) {
+      throw new RuntimeException(
+          String.format("Couldnt start logcat (args: %s)", logcatCommand), ioe);
+    }
+
+    Thread reader = new Thread(this::readStream, "segmented-logcat");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  public void stopStream() {
+    checkNotNull(proc, "Stream process not running!");
+    proc.destroy();
+    try {
+      proc.waitFor();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    } finally {
+      proc = null;
+      synchronized (lock) {
+        closeSegment();
+      }
+    }
+  }
+
+  /** Starts writing the stream to the given file, compressed, until {@link #endSegment}. */
+  public void startSegment(File outputFile) {
+    synchronized (lock) {
+      checkState(segment == null, "Segment %s was not ended", segment);
+      try {
+        segment = new Segment(outputFile);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not create logcat segment " + outputFile, e);
+      }
+    }
+  }
+
+  /**
+   * Ends the current segment, once the lines logged so far came through the stream, and writes its
+   * index.
+   */
+  public void endSegment() {
+    CountDownLatch seen = null;
+    String marker = "segment-end-" + UUID.randomUUID();
+    // The marker is logged to the main buffer, it never shows up in a stream of other buffers.
+    if (buffers.contains(Buffer.MAIN) || buffers.contains(Buffer.ALL)) {
+      synchronized (lock) {
+        endMarker = marker;
+        endMarkerSeen = seen = new CountDownLatch(1);
+      }
+    }
+    try {
+      if (seen != null && logMarker(marker)) {
+        if (!seen.await(MARKER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          logger.warning("Logcat segment end marker not seen, the segment may be missing lines.");
+        }
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } finally {
+      synchronized (lock) {
+        endMarker = null;
+        endMarkerSeen = null;
+        closeSegment();
+      }
+    }
+  }
+
+  private boolean logMarker(String marker) {
+    List<String> logCommand = Lists.newArrayList(adbAndDevicePrefix);
+    logCommand.add("shell");
+    logCommand.add("log");
+    logCommand.add("-p");
+    logCommand.add("i");
+    logCommand.add("-t");
+    logCommand.add(MARKER_TAG);
+    logCommand.add(marker);
+    ProcessBuilder procBuilder =
+        new ProcessBuilder()
+            .command(logCommand)
+            .redirectInput(Redirect.from(new File("/dev/null")))
+            .redirectOutput(Redirect.to(new File("/dev/null")))
+            .redirectErrorStream(true);
+    procBuilder.environment().clear();
+    procBuilder.environment().putAll(adbEnvironment);
+    try {
+      return procBuilder.start().waitFor() == 0;
+    } catch (IOException ioe) {
+      logger.log(Level.WARNING, "Could not log logcat segment end marker", ioe);
+      return false;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void readStream() {
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(proc.getInputStream(), UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        synchronized (lock) {
+          if (endMarker != null && line.contains(endMarker)) {
+            closeSegment();
+            endMarkerSeen.countDown();
+          } else if (segment != null) {
+            try {
+              segment.write(line);
+            } catch (IOException e) {
+              // Keeps streaming for the next segments, this one ends here.
+              logger.log(Level.WARNING, "Could not write logcat segment " + segment, e);
+              closeSegment();
+            }
+          }
+        }
+      }
+    } catch (IOException ioe) {
+      logger.log(Level.INFO, "Logcat stream ended", ioe);
+    }
+  }
+
+  // Called with lock held.
+  private void closeSegment() {
+    if (segment == null) {
+      return;
+    }
+    try {
+      segment.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not write logcat segment " + segment, e);
+    } finally {
+      segment = null;
+    }
+  }
+
+  /** A segment of the stream being written, and its index. */
+  private static final class Segment {
+    private final File file;
+    private final CountingOutputStream out;
+    private final List<Long> blockOffsets = Lists.newArrayList();
+    private final SortedSetMultimap<String, Integer> tagBlocks = TreeMultimap.create();
+    private final SortedSetMultimap<String, Integer> pidBlocks = TreeMultimap.create();
+    private final SortedSetMultimap<String, Integer> priorityBlocks = TreeMultimap.create();
+    @Nullable private GZIPOutputStream block;
+    private int blockSize;
+
+    Segment(File file) throws IOException {
+      this.file = file;
+      this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    void write(String line) throws IOException {
+      if (block == null) {
+        blockOffsets.add(out.getCount());
+        block = new GZIPOutputStream(new NonClosingOutputStream(out));
+        blockSize = 0;
+      }
+      byte[] bytes = (line + "\n").getBytes(UTF_8);
+      block.write(bytes);
+      blockSize += bytes.length;
+      index(line, blockOffsets.size() - 1);
+      if (blockSize >= BLOCK_SIZE) {
+        finishBlock();
+      }
+    }
+
+    private void index(String line, int blockIndex) {
+      Matcher threadtime = THREADTIME_LINE.matcher(line);
+      if (threadtime.find()) {
+        pidBlocks.put(threadtime.group(1), blockIndex);
+        priorityBlocks.put(threadtime.group(2), blockIndex);
+        tagBlocks.put(threadtime.group(3), blockIndex);
+        return;
+      }
+      Matcher brief = BRIEF_LINE.matcher(line);
+      if (brief.find()) {
+        priorityBlocks.put(brief.group(1), blockIndex);
+        tagBlocks.put(brief.group(2).trim(), blockIndex);
+        pidBlocks.put(brief.group(3), blockIndex);
+      }
+    }
+
+    private void finishBlock() throws IOException {
+      if (block != null) {
+        // Ends the gzip member, without closing the file.
+        block.close();
+        block = null;
+      }
+    }
+
+    void close() throws IOException {
+      try {
+        finishBlock();
+      } finally {
+        out.close();
+      }
+      writeIndex();
+    }
+
+    /**
+     * Writes the index, one entry per line, tab separated: "block", its number and its compressed
+     * offset, then "tag", "pid" or "priority", the value and the comma separated blocks holding it.
+     */
+    private void writeIndex() throws IOException {
+      File indexFile = new File(file.getPath() + ".idx");
+      try (PrintWriter index =
+          new PrintWriter(Files.newBufferedWriter(indexFile.toPath(), UTF_8))) {
+        for (int i = 0; i < blockOffsets.size(); i++) {
+          index.println("block\t" + i + "\t" + blockOffsets.get(i));
+        }
+        writeEntries(index, "tag", tagBlocks);
+        writeEntries(index, "pid", pidBlocks);
+        writeEntries(index, "priority", priorityBlocks);
+      }
+    }
+
+    private static void writeEntries(
+        PrintWriter index, String kind, SortedSetMultimap<String, Integer> blocks) {
+      for (Map.Entry<String, Collection<Integer>> entry : blocks.asMap().entrySet()) {
+        index.println(kind + "\t" + entry.getKey() + "\t" + Joiner.on(',').join(entry.getValue()));
+      }
+    }
+
+    @Override
+    public String toString() {
+      return file.getPath();
+    }
+  }
+
+  private static final class NonClosingOutputStream extends FilterOutputStream {
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -20,24 +20,30 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.ApksToInstall;
+import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.DexdumpCacheDir;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.DexdumpPath;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.IgnoreTestPackages;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.PackageName;
 import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.SystemApksToInstall;
+import com.google.android.apps.common.testing.broker.DeviceBrokerAnnotations.UseDexdump;
 import com.google.android.apps.common.testing.broker.shell.Command;
 import com.google.android.apps.common.testing.broker.shell.CommandException;
 import com.google.android.apps.common.testing.broker.shell.CommandResult;
 import com.google.android.apps.common.testing.proto.TestInfo.TestSuitePb;
 import com.google.android.apps.common.testing.suite.dex.DumpUtils;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
 import com.google.android.apps.common.testing.suite.dex.DumpUtils.Pair;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
@@ -46,16 +52,25 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 // For Copybara OSS
@@ -74,8 +89,15 @@ public class TestInfoRepository {
   private final List<String> initialApks;
   private final List<String> systemApks;
   private final String dexdumpPath;
+  private final boolean useDexdump;
   private final List<String> ignoreTestPackages;
   private final Environment environment;
+  private final DexDumpCache dexDumpCache;
+  // Bounded, so that an apk with many dex files doesn't start a dexdump process per dex at once.
+  private final ExecutorService dexdumpExecutor =
+      Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("dexdump-%d").build());
 
   private static final Logger logger = Logger.getLogger(TestInfoRepository.class.getName());
 
@@ -86,18 +108,32 @@ public class TestInfoRepository {
       @DexdumpPath String dexdumpPath,
       @SystemApksToInstall List<String> systemApks,
       @IgnoreTestPackages List<String> ignoreTestPackages,
+      @DexdumpCacheDir Optional<String> dexdumpCacheDir,
+      @UseDexdump Boolean useDexdump,
       Environment environment) {
     this.apkPathToPackageNameCache = apkPathToPackageNameCache;
     this.initialApks = initialApks;
     this.dexdumpPath = dexdumpPath;
+    this.useDexdump = useDexdump;
     this.systemApks = systemApks;
     this.ignoreTestPackages = ignoreTestPackages;
     this.environment = environment;
+    // Without a cache directory, the dexdump outputs are only reused within this run.
+    this.dexDumpCache =
+        new DexDumpCache(
+            dexdumpCacheDir.isPresent()
+                ? new File(dexdumpCacheDir.get())
+                : new File(environment.getTmpDir(), "dex-dump-cache"));
   }
 
   /**
    * Returns a proto holding information about tests found in the given instrumentation. Apks with
    * multiple dex files are supported.
+   *
+   * <p>dexdump runs on several dex files in parallel, and its outputs are cached. With
+   * --use_dexdump=false the dex files are read directly instead, skipping the classes rejected by
+   * {@link DumpUtils#MAY_DECLARE_TESTS}. The tests found are cached by the contents of the dex
+   * files. See {@link DexDumpCache}.
    */
   public TestSuitePb listTests(
       Instrumentation instrumentation, List<String> additionalTestPackages) {
@@ -113,91 +149,224 @@ public class TestInfoRepository {
       }
     }
 
-    List<InputStream> dexDumpFiles = Lists.newArrayList();
-    // The test apk may have multiple dex files, so give it the same multi-dex treatment as the
-    // target app.
-    for (String apkPath : apksToScan) {
-      dexDumpFiles.addAll(getDexDumpFilesFromApk(apkPath));
-    }
-
-    Pair<TestSuitePb, ImmutableSet<String>> dexDump =
-        DumpUtils.parseDexDump(dexDumpFiles.toArray(new InputStream[0]));
-    targetToClasses.put(instrumentation.getTargetPackage(), dexDump.getSecond());
-    TestSuitePb result = dexDump.getFirst();
-    logger.info(
-        String.format(
-            "Found %d test(s). Scanned %d dex file(s) in %d APK(s)",
-            result.getInfoCount(), dexDumpFiles.size(), apksToScan.size()));
-    return result;
-  }
-
-  public TestSuitePb listTestsInFiles(Instrumentation instrumentation, List<File> dexFiles) {
+    List<ZipFile> apks = Lists.newArrayList();
     try {
-      List<InputStream> dexDumpFiles = Lists.newArrayList();
-      for (File dex : dexFiles) {
-        dexDumpFiles.add(runDexDump(dex.getCanonicalPath()));
+      List<DexEntry> dexEntries = Lists.newArrayList();
+      // The test apk may have multiple dex files, so give it the same multi-dex treatment as the
+      // target app.
+      for (String apkPath : apksToScan) {
+        ZipFile apk = new ZipFile(new File(apkPath));
+        apks.add(apk);
+        addDexEntries(apkPath, apk, dexEntries);
       }
 
-      Pair<TestSuitePb, ImmutableSet<String>> dexDump =
-          DumpUtils.parseDexDump(dexDumpFiles.toArray(new InputStream[dexDumpFiles.size()]));
+      // The suites found by both parsers are cached apart. A null key marks a dex file that can't
+      // be cached.
+      List<String> suiteKeys = Lists.newArrayList(useDexdump ? "dexdump" : "dex");
+      for (DexEntry dexEntry : dexEntries) {
+        suiteKeys.add(dexEntry.key);
+      }
+      boolean cacheable = !suiteKeys.contains(null);
+      Optional<Pair<TestSuitePb, ImmutableSet<String>>> cached =
+          cacheable
+              ? dexDumpCache.getSuite(suiteKeys)
+              : Optional.<Pair<TestSuitePb, ImmutableSet<String>>>absent();
+      long startTime = System.currentTimeMillis();
+      Pair<TestSuitePb, ImmutableSet<String>> dexDump;
+      if (cached.isPresent()) {
+        dexDump = cached.get();
+      } else {
+        dexDump = useDexdump ? parseDexDumps(getDexDumps(dexEntries)) : parseDexFiles(dexEntries);
+        if (cacheable) {
+          dexDumpCache.putSuite(suiteKeys, dexDump);
+        }
+      }
       targetToClasses.put(instrumentation.getTargetPackage(), dexDump.getSecond());
-
-      return dexDump.getFirst();
+      TestSuitePb result = dexDump.getFirst();
+      logger.info(
+          String.format(
+              "Found %d test(s) in %d class(es). Scanned %d dex file(s) in %d APK(s) in %d ms%s",
+              result.getInfoCount(),
+              dexDump.getSecond().size(),
+              dexEntries.size(),
+              apksToScan.size(),
+              System.currentTimeMillis() - startTime,
+              cached.isPresent() ? " (cached)" : ""));
+      return result;
     } catch (IOException e) {
       throw new RuntimeException(e);
+    } finally {
+      for (ZipFile apk : apks) {
+        try {
+          apk.close();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Failed to close " + apk.getName(), e);
+        }
+      }
     }
   }
 
-  private List<InputStream> getDexDumpFilesFromApk(String apkPath) {
-    List<InputStream> dexDumpFiles = Lists.newArrayList();
+  public TestSuitePb listTestsInFiles(Instrumentation instrumentation, List<File> dexFiles) {
     try {
-      logger.info("Scanning: " + apkPath);
-      ZipFile apk = new ZipFile(new File(apkPath));
-      FluentIterable<ZipEntry> dexEntries = listDexFilesFrom(apk);
-      checkState(
-          dexEntries.size() > 0,
-          "%s: Apk is expected to have at least one dex file! APKs without dex files can be built"
-              + " but cannot be installed. Often this is an interaction between the"
-              + " binary_under_test attribute containing all classes that are also in the srcs"
-              + " and deps attributes of the android_test target itself.",
-          apkPath);
-      // As of Apr 2015, dexdump tool extracts info only from the first dex file (classes.dex) of
-      // an apk. If the apk contains only one dex, running dexdump on the apk is good enough.
-      // Otherwise, we run dexdump on each of the dex files.
-      if (dexEntries.size() == 1) {
-        dexDumpFiles.add(runDexDump(apkPath));
-      } else {
-        for (String dex : getDexesFrom(apk, dexEntries)) {
-          dexDumpFiles.add(runDexDump(dex));
+      Pair<TestSuitePb, ImmutableSet<String>> dexDump;
+      if (useDexdump) {
+        List<Callable<File>> dexDumps = Lists.newArrayList();
+        for (File dex : dexFiles) {
+          final String dexPath = dex.getCanonicalPath();
+          dexDumps.add(
+              new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                  return runDexDump(dexPath, environment.createTempFile("dex-dump", ".xml"));
+                }
+              });
         }
+        dexDump = parseDexDumps(dexDumps);
+      } else {
+        dexDump =
+            DumpUtils.parseDexFiles(
+                DumpUtils.MAY_DECLARE_TESTS,
+                Lists.transform(
+                    dexFiles,
+                    new Function<File, ByteBuffer>() {
+                      @Override
+                      public ByteBuffer apply(File dex) {
+                        try (FileChannel channel = FileChannel.open(dex.toPath())) {
+                          return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                        } catch (IOException e) {
+                          throw new RuntimeException(e);
+                        }
+                      }
+                    }));
       }
-      return dexDumpFiles;
+      targetToClasses.put(instrumentation.getTargetPackage(), dexDump.getSecond());
+
+      return dexDump.getFirst();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  @VisibleForTesting
-  List<String> getDexesFrom(final ZipFile apk, FluentIterable<ZipEntry> dexFiles)
-      throws IOException {
-    return dexFiles
-        .transform(
-            new Function<ZipEntry, String>() {
+  /** A dex file in an apk. */
+  private static final class DexEntry {
+    final String apkPath;
+    final ZipFile apk;
+    final ZipEntry entry;
+    final boolean onlyDexInApk;
+    // The key of the dex file in the DexDumpCache, null if it can't be cached.
+    @Nullable final String key;
+
+    DexEntry(String apkPath, ZipFile apk, ZipEntry entry, boolean onlyDexInApk) {
+      this.apkPath = apkPath;
+      this.apk = apk;
+      this.entry = entry;
+      this.onlyDexInApk = onlyDexInApk;
+      this.key = DexDumpCache.keyOf(entry);
+    }
+  }
+
+  /** Adds the dex files of an apk to dexEntries, in order. */
+  private static void addDexEntries(String apkPath, ZipFile apk, List<DexEntry> dexEntries) {
+    logger.info("Scanning: " + apkPath);
+    FluentIterable<ZipEntry> apkDexEntries = listDexFilesFrom(apk);
+    checkState(
+        apkDexEntries.size() > 0,
+        "%s: Apk is expected to have at least one dex file! APKs without dex files can be built"
+            + " but cannot be installed. Often this is an interaction between the"
+            + " binary_under_test attribute containing all classes that are also in the srcs"
+            + " and deps attributes of the android_test target itself.",
+        apkPath);
+    for (ZipEntry entry : apkDexEntries) {
+      dexEntries.add(new DexEntry(apkPath, apk, entry, apkDexEntries.size() == 1));
+    }
+  }
+
+  /**
+   * Reads the given dex files straight from their apks, one at a time, and parses them together,
+   * in order.
+   */
+  private static Pair<TestSuitePb, ImmutableSet<String>> parseDexFiles(List<DexEntry> dexEntries) {
+    return DumpUtils.parseDexFiles(
+        DumpUtils.MAY_DECLARE_TESTS,
+        Lists.transform(
+            dexEntries,
+            new Function<DexEntry, ByteBuffer>() {
               @Override
-              public String apply(ZipEntry entry) {
-                try {
-                  File dexFile = environment.createTempFile("target", entry.getName());
-                  Files.copy(
-                      apk.getInputStream(entry),
-                      dexFile.toPath(),
-                      StandardCopyOption.REPLACE_EXISTING);
-                  return dexFile.getPath();
+              public ByteBuffer apply(DexEntry dexEntry) {
+                try (InputStream in = dexEntry.apk.getInputStream(dexEntry.entry)) {
+                  return ByteBuffer.wrap(ByteStreams.toByteArray(in));
                 } catch (IOException e) {
                   throw new RuntimeException(e);
                 }
               }
-            })
-        .toList();
+            }));
+  }
+
+  /** Returns tasks producing the dexdump output of the given dex files, reusing cached output. */
+  private List<Callable<File>> getDexDumps(List<DexEntry> dexEntries) {
+    List<Callable<File>> dexDumps = Lists.newArrayList();
+    for (final DexEntry dexEntry : dexEntries) {
+      dexDumps.add(
+          new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+              if (dexEntry.key == null) {
+                return dumpDex(dexEntry, environment.createTempFile("dex-dump", ".xml"));
+              }
+              Optional<File> cachedDump = dexDumpCache.getDump(dexEntry.key);
+              if (cachedDump.isPresent()) {
+                return cachedDump.get();
+              }
+              return dexDumpCache.putDump(
+                  dexEntry.key, dumpDex(dexEntry, dexDumpCache.newDumpFile()));
+            }
+          });
+    }
+    return dexDumps;
+  }
+
+  /** Runs dexdump on a dex file of an apk, writing its output to the given file. */
+  private File dumpDex(DexEntry dexEntry, File dumpOutput) throws IOException {
+    // As of Apr 2015, dexdump tool extracts info only from the first dex file (classes.dex) of
+    // an apk. If the apk contains only one dex, running dexdump on the apk is good enough.
+    // Otherwise, we run dexdump on each of the dex files.
+    if (dexEntry.onlyDexInApk) {
+      return runDexDump(dexEntry.apkPath, dumpOutput);
+    }
+    File dexFile = environment.createTempFile("target", dexEntry.entry.getName());
+    try {
+      try (InputStream in = dexEntry.apk.getInputStream(dexEntry.entry)) {
+        Files.copy(in, dexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      return runDexDump(dexFile.getPath(), dumpOutput);
+    } finally {
+      dexFile.delete();
+    }
+  }
+
+  /** Runs the given dexdump tasks in parallel, and parses their outputs together, in order. */
+  private Pair<TestSuitePb, ImmutableSet<String>> parseDexDumps(List<Callable<File>> dexDumps)
+      throws IOException {
+    List<Future<File>> dumps = Lists.newArrayList();
+    List<InputStream> dexDumpFiles = Lists.newArrayList();
+    try {
+      for (Callable<File> dexDump : dexDumps) {
+        dumps.add(dexdumpExecutor.submit(dexDump));
+      }
+      for (Future<File> dump : dumps) {
+        dexDumpFiles.add(
+            new BufferedInputStream(new FileInputStream(Futures.getUnchecked(dump)), BUFF_SIZE));
+      }
+      return DumpUtils.parseDexDump(dexDumpFiles.toArray(new InputStream[0]));
+    } finally {
+      // Stops the remaining tasks if one failed.
+      for (Future<File> dump : dumps) {
+        dump.cancel(true);
+      }
+      for (InputStream dexDumpFile : dexDumpFiles) {
+        dexDumpFile.close();
+      }
+    }
   }
 
   private static FluentIterable<ZipEntry> entries(final ZipFile file) {
@@ -280,19 +449,18 @@ public class TestInfoRepository {
     return args;
   }
 
-  private InputStream runDexDump(String targetFile) {
-    try {
-      File dumpOutput = environment.createTempFile("dex-dump", ".xml");
-
+  private File runDexDump(String targetFile, File dumpOutput) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dumpOutput), BUFF_SIZE);
+        OutputStream err = new FileOutputStream("/dev/null")) {
       CommandResult dumpCommand = new Command(getDumpArgs(targetFile))
           .execute(
               new ByteArrayInputStream(Command.NO_INPUT),
               Command.NO_OBSERVER,
-              new BufferedOutputStream(new FileOutputStream(dumpOutput), BUFF_SIZE),
-              new FileOutputStream("/dev/null"));
+              out,
+              err);
       checkState(dumpCommand.getTerminationStatus().success(), "dump apk failed");
-      return new BufferedInputStream(new FileInputStream(dumpOutput), BUFF_SIZE);
-    } catch (IOException|CommandException e) {
+      return dumpOutput;
+    } catch (CommandException e) {
       throw new RuntimeException(e);
     }
   }
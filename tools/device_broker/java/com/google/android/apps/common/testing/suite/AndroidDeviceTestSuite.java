@@ -116,6 +116,7 @@ public class AndroidDeviceTestSuite {
             super.run(testResult);
           } finally {
             androidTestHarness.afterAllTests();
+            AndroidGoogleTest.stopLogcatSession();
             myBroker.freeDevice(brokeredDevice);
           }
         }
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import androidx.test.services.storage.OutputPropertiesLog;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.google.android.apps.common.testing.broker.AdbController;
@@ -31,6 +32,7 @@ import com.google.android.apps.common.testing.broker.LogcatFilter;
 import com.google.android.apps.common.testing.broker.LogcatStreamer;
 import com.google.android.apps.common.testing.broker.LogcatStreamer.Buffer;
 import com.google.android.apps.common.testing.broker.LogcatStreamer.OutputFormat;
+import com.google.android.apps.common.testing.broker.SegmentedLogcatStreamer;
 import com.google.android.apps.common.testing.broker.SharedEnvironment;
 import com.google.android.apps.common.testing.proto.TestInfo.InfoPb;
 import com.google.android.apps.common.testing.testrunner.testsuitepbutil.TestSuitePbUtil;
@@ -40,17 +42,21 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 import junit.framework.TestCase;
 
@@ -60,6 +66,8 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
   private static final ImmutableList<Integer> CLEAR_LOG_MAY_FAIL = ImmutableList.of(21, 22);
 
   private static boolean logdRestarted = false;
+  // Shared by the tests of a session, when --segmented_test_logcat is set.
+  private static SegmentedLogcatStreamer logcatSession = null;
 
   private final List<Buffer> buffers;
   private final BrokeredDevice brokeredDevice;
@@ -75,6 +83,7 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
   private final File perTestOutputDir;
   private final AndroidTestHarness androidTestHarness;
   private final boolean gatherOutputs;
+  private final boolean segmentedLogcat;
 
   private Map<String, Object> exportedProperties = Maps.newHashMap();
   private int testOutputIdx = 0;
@@ -98,6 +107,27 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
     this.perTestOutputDir = checkNotNull(builder.perTestOutputDir);
     this.androidTestHarness = builder.androidTestHarness;
     this.gatherOutputs = builder.gatherOutputs;
+    this.segmentedLogcat = builder.segmentedLogcat;
+  }
+
+  /** Stops the logcat stream shared by the tests of the session, if one was started. */
+  static synchronized void stopLogcatSession() {
+    if (null != logcatSession) {
+      logcatSession.stopStream();
+      logcatSession = null;
+    }
+  }
+
+  private static synchronized SegmentedLogcatStreamer getLogcatSession(
+      AdbController adbController,
+      List<Buffer> buffers,
+      OutputFormat outputFormat,
+      List<LogcatFilter> testFilters) {
+    if (null == logcatSession) {
+      logcatSession =
+          adbController.startSegmentedLogcatStream(buffers, outputFormat, testFilters);
+    }
+    return logcatSession;
   }
 
   @Override
@@ -125,6 +155,7 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
     private List<LogcatFilter> testFilters;
     private OutputFormat outputFormat;
     private boolean gatherOutputs;
+    private boolean segmentedLogcat;
     private boolean testDebug;
     private BrokeredDevice brokeredDevice;
     private InfoPb infoPb;
@@ -171,6 +202,7 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
       this.outputFormat = testArgs.testLogcatFormat;
       this.testDebug = testArgs.enableDebug;
       this.gatherOutputs = testArgs.gatherTestOutputs;
+      this.segmentedLogcat = testArgs.segmentedTestLogcat;
       return this;
     }
 
@@ -181,6 +213,7 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
       outputFormat = testArgs.testLogcatFormat;
       testDebug = testArgs.enableDebug;
       gatherOutputs = testArgs.gatherTestOutputs;
+      segmentedLogcat = testArgs.segmentedTestLogcat;
       brokeredDevice = null;
       infoPb = null;
       testInstrumentation = null;
@@ -280,6 +313,7 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
     AdbController adbController = brokeredDevice.getAdbController();
 
     LogcatStreamer streamer = null;
+    SegmentedLogcatStreamer segmentStreamer = null;
 
     try {
       if (!logdRestarted && CLEAR_LOG_MAY_FAIL.contains(brokeredDevice.getApiVersion())) {
@@ -291,8 +325,14 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
         logdRestarted = true;
       }
 
-      streamer =
-          adbController.startLogcatStream(getTestLogcatFile(), buffers, outputFormat, testFilters);
+      if (segmentedLogcat) {
+        segmentStreamer = getLogcatSession(adbController, buffers, outputFormat, testFilters);
+        segmentStreamer.startSegment(getTestLogcatFile());
+      } else {
+        streamer =
+            adbController.startLogcatStream(
+                getTestLogcatFile(), buffers, outputFormat, testFilters);
+      }
 
       List<ExecutedTest> results;
       try {
@@ -314,13 +354,12 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
           throw rte;
         }
       }
-
       if (results.size() != 2) {
         throw new RuntimeException(
             String.format(
                 "Something went wrong during test instrumentation execution "
                     + "(check \""
-                    + String.format("logcat-%s.txt", getName())
+                    + getTestLogcatFile().getName()
                     + "\" file below to see if your test threw any uncaught exceptions).\n"
                     + "Debug Info: Instrumentation results are expected to have only 1 test, "
                     + "with two parts: Test started, and Test completed (passed, failed, errored)."
@@ -368,10 +407,11 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
             "Test result status not \"PASSED\", result contents: " + getAllTestResults(results));
       }
     } finally {
-
+      if (null != segmentStreamer) {
+        segmentStreamer.endSegment();
+      }
       exportedProperties.put(nextTestOutputName(), getTestLogcatFile().getName());
       if (gatherOutputs) {
-        pullExportedProperties(adbController);
         pullAndRecordTestOutputs(adbController);
       }
 
@@ -396,36 +436,19 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
     }
   }
 
-  private List<File> pullFiles(AdbController adbController, String path, File localDir) {
-    List<File> outputs;
-    try {
-      outputs = adbController.pull(path, localDir);
-    } catch (IllegalStateException ise) {
-      logger.log(
-          Level.INFO,
-          "Adb pull failed when getting outputs. Normally this means there are none. Ignoring.");
-      outputs = Lists.newArrayList();
-    }
-    return outputs;
-  }
-
-  private void pullExportedProperties(AdbController adbController) {
-    if (null == externalStorageDirectory) {
-      return;
-    }
-
-    String testOutputDirOnDevicePath =
-        new File(externalStorageDirectory, SharedEnvironment.ON_DEVICE_PATH_TEST_PROPERTIES)
-            .getPath();
-
-    File tmpDirectory = new File(SharedEnvironment.ENVIRONMENT.getTmpDir(), getName());
-    if (!tmpDirectory.exists()) {
-      tmpDirectory.mkdir();
-    }
-    List<File> outputs = pullFiles(adbController, testOutputDirOnDevicePath, tmpDirectory);
-    boolean testOutputPulled = false;
-    for (File outputFile : outputs) {
-      testOutputPulled = true;
+  /**
+   * Reads the properties the test exported, from the files pulled from the device.
+   *
+   * <p>Serialized property maps, written by older test storage versions, are read before the output
+   * properties log, whose values replace theirs.
+   */
+  private void readExportedProperties(File propertiesDir) {
+    List<File> propertyLogs = new ArrayList<>();
+    for (File outputFile : listPulledFiles(propertiesDir)) {
+      if (outputFile.getName().equals(OutputPropertiesLog.FILE_NAME)) {
+        propertyLogs.add(outputFile);
+        continue;
+      }
       ObjectInputStream in = null;
       try {
         in = new ObjectInputStream(new FileInputStream(outputFile));
@@ -437,10 +460,12 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
         Closeables.closeQuietly(in);
       }
     }
-
-    if (testOutputPulled) {
-      // Clear properties file, so it doesn't pollute the next test run.
-      adbController.makeAdbCall("shell", "rm", "-R", testOutputDirOnDevicePath);
+    for (File propertyLog : propertyLogs) {
+      try (InputStream in = new BufferedInputStream(new FileInputStream(propertyLog))) {
+        OutputPropertiesLog.readRecords(in, exportedProperties);
+      } catch (IOException e) {
+        logger.warning("Failed to read exported properties from " + propertyLog + ": " + e);
+      }
     }
   }
 
@@ -461,43 +486,92 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
     }
   }
 
+  /**
+   * Pulls the exported properties, test outputs, ANR stack traces and tombstones of the test with
+   * one adb call, then clears them from the device with another, so they don't pollute the next
+   * test run.
+   */
   private void pullAndRecordTestOutputs(AdbController adbController) {
     try {
       if (null != externalStorageDirectory) {
+        String propertiesDirOnDevicePath =
+            new File(externalStorageDirectory, SharedEnvironment.ON_DEVICE_PATH_TEST_PROPERTIES)
+                .getPath();
         String testOutputDirOnDevicePath =
             new File(externalStorageDirectory, "googletest/test_outputfiles").getPath();
-        List<File> outputs = pullFiles(adbController, testOutputDirOnDevicePath, perTestOutputDir);
-        List<File> anrFile =
-            pullFiles(adbController, stackTraceFile, new File(perTestOutputDir, "anr-stack.txt"));
-        List<File> tombstones =
-            pullFiles(adbController, "/data/tombstones", new File(perTestOutputDir, "tombstone"));
+        String tombstonesDirOnDevicePath = "/data/tombstones";
+
+        File pulledDir =
+            Files.createTempDirectory(
+                    new File(SharedEnvironment.ENVIRONMENT.getTmpDir()).toPath(), getName())
+                .toFile();
+        Map<String, File> pulled =
+            adbController.pullAll(
+                ImmutableList.of(
+                    propertiesDirOnDevicePath,
+                    testOutputDirOnDevicePath,
+                    stackTraceFile,
+                    tombstonesDirOnDevicePath),
+                pulledDir);
+
+        List<String> pathsToClear = Lists.newArrayList();
+        if (pulled.containsKey(propertiesDirOnDevicePath)) {
+          readExportedProperties(pulled.get(propertiesDirOnDevicePath));
+          pathsToClear.add(propertiesDirOnDevicePath);
+        }
+        // As with adb pull into perTestOutputDir, the outputs land in its test_outputfiles dir.
+        File outputs = pulled.get(testOutputDirOnDevicePath);
+        if (!listPulledFiles(outputs).isEmpty()) {
+          moveTo(outputs, new File(perTestOutputDir, "test_outputfiles"));
+          pathsToClear.add(testOutputDirOnDevicePath + "/*");
+        }
+        if (pulled.containsKey(stackTraceFile)) {
+          moveTo(pulled.get(stackTraceFile), new File(perTestOutputDir, "anr-stack.txt"));
+          pathsToClear.add(stackTraceFile);
+        }
+        File tombstones = pulled.get(tombstonesDirOnDevicePath);
+        if (!listPulledFiles(tombstones).isEmpty()) {
+          moveTo(tombstones, new File(perTestOutputDir, "tombstone"));
+          pathsToClear.add(tombstonesDirOnDevicePath + "/*");
+        }
 
         int relativePathStart =
             new File(SharedEnvironment.ENVIRONMENT.getTmpDir()).getPath().length();
         recordTestOutputsRecursively(perTestOutputDir, relativePathStart);
 
-        // Clear output directory, so it doesn't pollute the next test run.
-        if (!outputs.isEmpty()) {
-          adbController.makeAdbCall(
-              "shell", "rm", "-R", testOutputDirOnDevicePath + "/*", "||", "true");
-        }
-
-        if (!anrFile.isEmpty()) {
-          adbController.makeAdbCall("shell", "rm", stackTraceFile, "||", "true");
-        }
-
-        if (!tombstones.isEmpty()) {
-          adbController.makeAdbCall("shell", "rm", "-R", "/data/tombstones/*", "||", "true");
+        if (!pathsToClear.isEmpty()) {
+          List<String> clearCommand = Lists.newArrayList("shell", "rm", "-R");
+          clearCommand.addAll(pathsToClear);
+          clearCommand.add("||");
+          clearCommand.add("true");
+          adbController.makeAdbCall(clearCommand.toArray(new String[0]));
         }
       }
-    } catch (RuntimeException e) {
+    } catch (IOException | RuntimeException e) {
       throw new PullFromSdcardException("AndroidGoogleTest: Failed pulling files from sdcard", e);
     }
   }
 
+  /** Returns the files in a pulled directory, or the pulled file itself. */
+  private static List<File> listPulledFiles(File pulled) {
+    if (pulled == null) {
+      return ImmutableList.of();
+    }
+    if (!pulled.isDirectory()) {
+      return ImmutableList.of(pulled);
+    }
+    File[] files = pulled.listFiles();
+    return files == null ? ImmutableList.<File>of() : ImmutableList.copyOf(files);
+  }
+
+  private static void moveTo(File from, File to) throws IOException {
+    Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
   private File getTestLogcatFile() {
     return new File(
-        SharedEnvironment.ENVIRONMENT.getTmpDir(), String.format("logcat-%s.txt", getName()));
+        SharedEnvironment.ENVIRONMENT.getTmpDir(),
+        String.format(segmentedLogcat ? "logcat-%s.txt.gz" : "logcat-%s.txt", getName()));
   }
 
   private String getAllTestResults(List<ExecutedTest> results) {
@@ -529,6 +603,14 @@ class AndroidGoogleTest extends TestCase implements TestRecorderProperties {
     )
     public boolean gatherTestOutputs = true;
 
+    @Parameter(
+      names = "--segmented_test_logcat",
+      description =
+          "Streams logcat once for all tests, and writes the log of each test gzip compressed,"
+              + " with an index of the blocks holding each tag, pid and priority"
+    )
+    public boolean segmentedTestLogcat = false;
+
     @Parameter(
       names = "--test_logcat_filter",
       description = "the logcat filters to use during the test"
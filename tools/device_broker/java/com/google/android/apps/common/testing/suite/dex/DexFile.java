@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.suite.dex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the parts of a dex file that test discovery needs: the class definitions, their methods
+ * and the annotations on both.
+ *
+ * <p>Everything is read straight from the buffer, on demand, so the classes that are not looked at
+ * cost nothing but their descriptor. Strings are decoded once. Not thread safe.
+ *
+ * <p>See https://source.android.com/docs/core/runtime/dex-format for the format.
+ */
+final class DexFile {
+  static final int ACC_PUBLIC = 0x1;
+  static final int ACC_PRIVATE = 0x2;
+  static final int ACC_PROTECTED = 0x4;
+  static final int ACC_ABSTRACT = 0x400;
+
+  static final int VALUE_BYTE = 0x00;
+  static final int VALUE_SHORT = 0x02;
+  static final int VALUE_CHAR = 0x03;
+  static final int VALUE_INT = 0x04;
+  static final int VALUE_LONG = 0x06;
+  static final int VALUE_FLOAT = 0x10;
+  static final int VALUE_DOUBLE = 0x11;
+  static final int VALUE_METHOD_TYPE = 0x15;
+  static final int VALUE_METHOD_HANDLE = 0x16;
+  static final int VALUE_STRING = 0x17;
+  static final int VALUE_TYPE = 0x18;
+  static final int VALUE_FIELD = 0x19;
+  static final int VALUE_METHOD = 0x1a;
+  static final int VALUE_ENUM = 0x1b;
+  static final int VALUE_ARRAY = 0x1c;
+  static final int VALUE_ANNOTATION = 0x1d;
+  static final int VALUE_NULL = 0x1e;
+  static final int VALUE_BOOLEAN = 0x1f;
+
+  private static final int HEADER_SIZE = 0x70;
+  private static final int NO_INDEX = -1;
+
+  private final ByteBuffer dex;
+  private final int stringIdsOff;
+  private final int typeIdsOff;
+  private final int protoIdsOff;
+  private final int fieldIdsOff;
+  private final int methodIdsOff;
+  private final int classDefsOff;
+  private final int classDefsSize;
+  private final String[] strings;
+
+  /** An annotation, or an annotation value. */
+  static final class Annotation {
+    final String typeDescriptor;
+    final List<Element> elements;
+
+    Annotation(String typeDescriptor, List<Element> elements) {
+      this.typeDescriptor = typeDescriptor;
+      this.elements = elements;
+    }
+  }
+
+  /** A name-value pair of an annotation. */
+  static final class Element {
+    final String name;
+    final Value value;
+
+    Element(String name, Value value) {
+      this.name = name;
+      this.value = value;
+    }
+  }
+
+  /**
+   * An encoded value. The value is a Long for the integral types, a Character for chars, a Float
+   * or Double, a Boolean, a String for strings and type descriptors, a MemberRef for fields,
+   * methods and enum constants, a List of Values for arrays, an Annotation, or null. Method types
+   * and method handles are not resolved, their value is the Long index of their proto or handle.
+   */
+  static final class Value {
+    final int type;
+    @Nullable final Object value;
+
+    Value(int type, @Nullable Object value) {
+      this.type = type;
+      this.value = value;
+    }
+  }
+
+  /** A reference to a field or method. */
+  static final class MemberRef {
+    final String classDescriptor;
+    final String name;
+
+    MemberRef(String classDescriptor, String name) {
+      this.classDescriptor = classDescriptor;
+      this.name = name;
+    }
+  }
+
+  /** A method of a class. */
+  static final class Method {
+    final String name;
+    final int accessFlags;
+    final String returnTypeDescriptor;
+    final int parameterCount;
+    final List<Annotation> annotations;
+
+    Method(
+        String name,
+        int accessFlags,
+        String returnTypeDescriptor,
+        int parameterCount,
+        List<Annotation> annotations) {
+      this.name = name;
+      this.accessFlags = accessFlags;
+      this.returnTypeDescriptor = returnTypeDescriptor;
+      this.parameterCount = parameterCount;
+      this.annotations = annotations;
+    }
+  }
+
+  /** A position in the dex file, to read variable length data from. */
+  private final class Cursor {
+    private int position;
+
+    Cursor(int position) {
+      this.position = position;
+    }
+
+    int readUnsignedByte() {
+      return dex.get(position++) & 0xff;
+    }
+
+    int readUleb128() {
+      int result = 0;
+      int shift = 0;
+      int b;
+      do {
+        checkState(shift < 35, "Bad uleb128 at %s", position);
+        b = readUnsignedByte();
+        result |= (b & 0x7f) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return result;
+    }
+
+    /** Reads size bytes as a little endian number, sign extending it if signed. */
+    long readSized(int size, boolean signed) {
+      long result = 0;
+      for (int i = 0; i < size; i++) {
+        result |= ((long) readUnsignedByte()) << (8 * i);
+      }
+      if (signed && size < 8) {
+        int unused = 64 - 8 * size;
+        result = (result << unused) >> unused;
+      }
+      return result;
+    }
+
+    /** Reads size bytes as the high order bytes of a number of the given width. */
+    long readRightAligned(int size, int width) {
+      return readSized(size, false) << (8 * (width - size));
+    }
+  }
+
+  DexFile(ByteBuffer buffer) {
+    dex = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    dex.position(0);
+    checkArgument(
+        dex.limit() >= HEADER_SIZE
+            && dex.get(0) == 'd'
+            && dex.get(1) == 'e'
+            && dex.get(2) == 'x'
+            && dex.get(3) == '\n',
+        "Not a dex file");
+    strings = new String[dex.getInt(0x38)];
+    stringIdsOff = dex.getInt(0x3c);
+    typeIdsOff = dex.getInt(0x44);
+    protoIdsOff = dex.getInt(0x4c);
+    fieldIdsOff = dex.getInt(0x54);
+    methodIdsOff = dex.getInt(0x5c);
+    classDefsSize = dex.getInt(0x60);
+    classDefsOff = dex.getInt(0x64);
+  }
+
+  int getClassCount() {
+    return classDefsSize;
+  }
+
+  String getClassDescriptor(int classDef) {
+    return getTypeDescriptor(dex.getInt(classDefOffset(classDef)));
+  }
+
+  int getClassAccessFlags(int classDef) {
+    return dex.getInt(classDefOffset(classDef) + 4);
+  }
+
+  /** Returns the descriptor of the superclass of a class, or null for java.lang.Object. */
+  @Nullable
+  String getSuperclassDescriptor(int classDef) {
+    int superclassIdx = dex.getInt(classDefOffset(classDef) + 8);
+    return superclassIdx == NO_INDEX ? null : getTypeDescriptor(superclassIdx);
+  }
+
+  /** Returns the annotations of a class, in the order of the dex file. */
+  List<Annotation> getClassAnnotations(int classDef) {
+    int directoryOff = dex.getInt(classDefOffset(classDef) + 20);
+    if (directoryOff == 0) {
+      return Collections.emptyList();
+    }
+    return readAnnotationSet(dex.getInt(directoryOff));
+  }
+
+  /** Returns the methods of a class, direct methods first, in the order of the dex file. */
+  List<Method> getMethods(int classDef) {
+    int classDataOff = dex.getInt(classDefOffset(classDef) + 24);
+    if (classDataOff == 0) {
+      return Collections.emptyList();
+    }
+    Map<Integer, Integer> methodAnnotations =
+        readMethodAnnotationOffsets(dex.getInt(classDefOffset(classDef) + 20));
+
+    Cursor cursor = new Cursor(classDataOff);
+    int staticFieldsSize = cursor.readUleb128();
+    int instanceFieldsSize = cursor.readUleb128();
+    int directMethodsSize = cursor.readUleb128();
+    int virtualMethodsSize = cursor.readUleb128();
+    for (int i = 0; i < staticFieldsSize + instanceFieldsSize; i++) {
+      cursor.readUleb128(); // field_idx_diff
+      cursor.readUleb128(); // access_flags
+    }
+    List<Method> methods = new ArrayList<>(directMethodsSize + virtualMethodsSize);
+    readMethods(cursor, directMethodsSize, methodAnnotations, methods);
+    readMethods(cursor, virtualMethodsSize, methodAnnotations, methods);
+    return methods;
+  }
+
+  private void readMethods(
+      Cursor cursor, int count, Map<Integer, Integer> methodAnnotations, List<Method> methods) {
+    int methodIdx = 0;
+    for (int i = 0; i < count; i++) {
+      methodIdx += cursor.readUleb128();
+      int accessFlags = cursor.readUleb128();
+      cursor.readUleb128(); // code_off
+
+      int methodIdOff = methodIdsOff + 8 * methodIdx;
+      int protoIdOff = protoIdsOff + 12 * (dex.getShort(methodIdOff + 2) & 0xffff);
+      int parametersOff = dex.getInt(protoIdOff + 8);
+      Integer annotationsOff = methodAnnotations.get(methodIdx);
+      methods.add(
+          new Method(
+              getString(dex.getInt(methodIdOff + 4)),
+              accessFlags,
+              getTypeDescriptor(dex.getInt(protoIdOff + 4)),
+              parametersOff == 0 ? 0 : dex.getInt(parametersOff),
+              annotationsOff == null
+                  ? Collections.<Annotation>emptyList()
+                  : readAnnotationSet(annotationsOff)));
+    }
+  }
+
+  private Map<Integer, Integer> readMethodAnnotationOffsets(int directoryOff) {
+    if (directoryOff == 0) {
+      return Collections.emptyMap();
+    }
+    int fieldsSize = dex.getInt(directoryOff + 4);
+    int annotatedMethodsSize = dex.getInt(directoryOff + 8);
+    Map<Integer, Integer> offsets = new HashMap<>();
+    int methodAnnotationOff = directoryOff + 16 + 8 * fieldsSize;
+    for (int i = 0; i < annotatedMethodsSize; i++) {
+      offsets.put(
+          dex.getInt(methodAnnotationOff + 8 * i), dex.getInt(methodAnnotationOff + 8 * i + 4));
+    }
+    return offsets;
+  }
+
+  private List<Annotation> readAnnotationSet(int annotationSetOff) {
+    if (annotationSetOff == 0) {
+      return Collections.emptyList();
+    }
+    int size = dex.getInt(annotationSetOff);
+    List<Annotation> annotations = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      // Skips the visibility byte of the annotation_item.
+      Cursor cursor = new Cursor(dex.getInt(annotationSetOff + 4 + 4 * i) + 1);
+      annotations.add(readEncodedAnnotation(cursor));
+    }
+    return annotations;
+  }
+
+  private Annotation readEncodedAnnotation(Cursor cursor) {
+    String typeDescriptor = getTypeDescriptor(cursor.readUleb128());
+    int size = cursor.readUleb128();
+    List<Element> elements = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String name = getString(cursor.readUleb128());
+      elements.add(new Element(name, readEncodedValue(cursor)));
+    }
+    return new Annotation(typeDescriptor, elements);
+  }
+
+  private Value readEncodedValue(Cursor cursor) {
+    int header = cursor.readUnsignedByte();
+    int type = header & 0x1f;
+    int arg = header >> 5;
+    switch (type) {
+      case VALUE_BYTE:
+      case VALUE_SHORT:
+      case VALUE_INT:
+      case VALUE_LONG:
+        return new Value(type, cursor.readSized(arg + 1, true));
+      case VALUE_CHAR:
+        return new Value(type, (char) cursor.readSized(arg + 1, false));
+      case VALUE_FLOAT:
+        return new Value(type, Float.intBitsToFloat((int) cursor.readRightAligned(arg + 1, 4)));
+      case VALUE_DOUBLE:
+        return new Value(type, Double.longBitsToDouble(cursor.readRightAligned(arg + 1, 8)));
+      case VALUE_STRING:
+        return new Value(type, getString((int) cursor.readSized(arg + 1, false)));
+      case VALUE_TYPE:
+        return new Value(type, getTypeDescriptor((int) cursor.readSized(arg + 1, false)));
+      case VALUE_FIELD:
+      case VALUE_ENUM:
+        {
+          int fieldIdOff = fieldIdsOff + 8 * (int) cursor.readSized(arg + 1, false);
+          return new Value(
+              type,
+              new MemberRef(
+                  getTypeDescriptor(dex.getShort(fieldIdOff) & 0xffff),
+                  getString(dex.getInt(fieldIdOff + 4))));
+        }
+      case VALUE_METHOD:
+        {
+          int methodIdOff = methodIdsOff + 8 * (int) cursor.readSized(arg + 1, false);
+          return new Value(
+              type,
+              new MemberRef(
+                  getTypeDescriptor(dex.getShort(methodIdOff) & 0xffff),
+                  getString(dex.getInt(methodIdOff + 4))));
+        }
+      case VALUE_METHOD_TYPE:
+      case VALUE_METHOD_HANDLE:
+        return new Value(type, cursor.readSized(arg + 1, false));
+      case VALUE_ARRAY:
+        {
+          int size = cursor.readUleb128();
+          List<Value> elements = new ArrayList<>(size);
+          for (int i = 0; i < size; i++) {
+            elements.add(readEncodedValue(cursor));
+          }
+          return new Value(type, elements);
+        }
+      case VALUE_ANNOTATION:
+        return new Value(type, readEncodedAnnotation(cursor));
+      case VALUE_NULL:
+        return new Value(type, null);
+      case VALUE_BOOLEAN:
+        return new Value(type, arg != 0);
+      default:
+        throw new IllegalStateException(
+            String.format("Unsupported encoded value type 0x%02x at %d", type, cursor.position));
+    }
+  }
+
+  private int classDefOffset(int classDef) {
+    checkArgument(classDef >= 0 && classDef < classDefsSize, "Bad class def: %s", classDef);
+    return classDefsOff + 32 * classDef;
+  }
+
+  private String getTypeDescriptor(int typeIdx) {
+    return getString(dex.getInt(typeIdsOff + 4 * typeIdx));
+  }
+
+  private String getString(int stringIdx) {
+    String string = strings[stringIdx];
+    if (string == null) {
+      string = decodeString(dex.getInt(stringIdsOff + 4 * stringIdx));
+      strings[stringIdx] = string;
+    }
+    return string;
+  }
+
+  /** Decodes a string_data_item, which holds MUTF-8. */
+  private String decodeString(int stringDataOff) {
+    Cursor cursor = new Cursor(stringDataOff);
+    int utf16Size = cursor.readUleb128();
+    char[] chars = new char[utf16Size];
+    for (int i = 0; i < utf16Size; i++) {
+      int a = cursor.readUnsignedByte();
+      if (a < 0x80) {
+        chars[i] = (char) a;
+      } else if ((a & 0xe0) == 0xc0) {
+        int b = cursor.readUnsignedByte();
+        chars[i] = (char) (((a & 0x1f) << 6) | (b & 0x3f));
+      } else if ((a & 0xf0) == 0xe0) {
+        int b = cursor.readUnsignedByte();
+        int c = cursor.readUnsignedByte();
+        chars[i] = (char) (((a & 0x0f) << 12) | ((b & 0x3f) << 6) | (c & 0x3f));
+      } else {
+        throw new IllegalStateException("Bad MUTF-8 string at " + stringDataOff);
+      }
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.suite.dex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.android.apps.common.testing.proto.TestInfo;
+import com.google.android.apps.common.testing.proto.TestInfo.AnnotationPb;
+import com.google.android.apps.common.testing.proto.TestInfo.AnnotationValuePb;
+import com.google.android.apps.common.testing.suite.dex.DexClassData.MethodData;
+import com.google.android.apps.common.testing.suite.dex.DexFile.Annotation;
+import com.google.android.apps.common.testing.suite.dex.DexFile.Element;
+import com.google.android.apps.common.testing.suite.dex.DexFile.MemberRef;
+import com.google.android.apps.common.testing.suite.dex.DexFile.Method;
+import com.google.android.apps.common.testing.suite.dex.DexFile.Value;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Iterates thru the classes of dex files, reading them directly instead of parsing the output of
+ * dexdump.
+ *
+ * <p>The classes come out as {@link DexDumpIterator} would return them for the dexdump output of
+ * the same dex files: names, visibilities and annotation values are rendered the way dexdump
+ * renders them, so both produce the same test suite.
+ *
+ * <p>The dex files are read one at a time. Classes rejected by the filter are skipped after
+ * reading their name; their methods and annotations are never read.
+ */
+class DexFileIterator extends AbstractIterator<DexClassData> {
+
+  private static final String SYSTEM_ANNOTATION_PACKAGE = "dalvik.annotation";
+  private static final String DEFAULT_ANNOTATION_CLASS = "dalvik.annotation.AnnotationDefault";
+
+  private static final ImmutableMap<Integer, TestInfo.Type> VALUE_TO_PB_TYPE =
+      new ImmutableMap.Builder<Integer, TestInfo.Type>()
+          .put(DexFile.VALUE_BOOLEAN, TestInfo.Type.BOOL)
+          .put(DexFile.VALUE_ENUM, TestInfo.Type.ENUM)
+          .put(DexFile.VALUE_METHOD, TestInfo.Type.METHOD)
+          .put(DexFile.VALUE_FIELD, TestInfo.Type.FIELD)
+          .put(DexFile.VALUE_TYPE, TestInfo.Type.CLASS)
+          .put(DexFile.VALUE_STRING, TestInfo.Type.STRING)
+          .put(DexFile.VALUE_DOUBLE, TestInfo.Type.DOUBLE)
+          .put(DexFile.VALUE_FLOAT, TestInfo.Type.FLOAT)
+          .put(DexFile.VALUE_LONG, TestInfo.Type.LONG)
+          .put(DexFile.VALUE_INT, TestInfo.Type.INTEGER)
+          .put(DexFile.VALUE_CHAR, TestInfo.Type.CHAR)
+          .put(DexFile.VALUE_SHORT, TestInfo.Type.SHORT)
+          .put(DexFile.VALUE_BYTE, TestInfo.Type.BYTE)
+          .put(DexFile.VALUE_NULL, TestInfo.Type.NULL)
+          .build();
+
+  private static final ImmutableMap<Character, String> PRIMITIVE_TYPES =
+      new ImmutableMap.Builder<Character, String>()
+          .put('Z', "boolean")
+          .put('B', "byte")
+          .put('S', "short")
+          .put('C', "char")
+          .put('I', "int")
+          .put('J', "long")
+          .put('F', "float")
+          .put('D', "double")
+          .put('V', "void")
+          .build();
+
+  private final Iterator<ByteBuffer> dexFiles;
+  private final Predicate<String> classFilter;
+  private DexFile currentDexFile;
+  private int nextClassDef;
+
+  DexFileIterator(Iterator<ByteBuffer> dexFiles, Predicate<String> classFilter) {
+    this.dexFiles = checkNotNull(dexFiles);
+    this.classFilter = checkNotNull(classFilter);
+  }
+
+  @Override
+  protected DexClassData computeNext() {
+    while (true) {
+      if (currentDexFile == null || nextClassDef == currentDexFile.getClassCount()) {
+        if (!dexFiles.hasNext()) {
+          return endOfData();
+        }
+        currentDexFile = new DexFile(dexFiles.next());
+        nextClassDef = 0;
+        continue;
+      }
+      int classDef = nextClassDef++;
+      String descriptor = currentDexFile.getClassDescriptor(classDef);
+      int lastSlash = descriptor.lastIndexOf('/');
+      String packageName =
+          lastSlash < 0 ? "" : descriptor.substring(1, lastSlash).replace('/', '.');
+      String className =
+          descriptor.substring(lastSlash < 0 ? 1 : lastSlash + 1, descriptor.length() - 1);
+      if (classFilter.apply(packageName + "." + className)) {
+        return readClass(classDef, packageName, className);
+      }
+    }
+  }
+
+  private DexClassData readClass(int classDef, String packageName, String className) {
+    int accessFlags = currentDexFile.getClassAccessFlags(classDef);
+    String superclass = currentDexFile.getSuperclassDescriptor(classDef);
+
+    ImmutableList.Builder<MethodData> methods = ImmutableList.builder();
+    for (Method method : currentDexFile.getMethods(classDef)) {
+      if (method.name.startsWith("<")) {
+        // dexdump lists constructors and static initializers as constructors, which are ignored.
+        continue;
+      }
+      methods.add(
+          MethodData.builder()
+              .setMethodName(method.name)
+              .setVisibility(visibility(method.accessFlags))
+              .setIsAbstract((method.accessFlags & DexFile.ACC_ABSTRACT) != 0)
+              .setHasArguments(method.parameterCount > 0)
+              .setHasReturnType(!"V".equals(method.returnTypeDescriptor))
+              .setAnnotations(toAnnotationPbs(method.annotations))
+              .build());
+    }
+
+    return DexClassData.builder()
+        .setPackageName(packageName)
+        .setClassName(className)
+        .setIsAbstract((accessFlags & DexFile.ACC_ABSTRACT) != 0)
+        .setVisibility(visibility(accessFlags))
+        .setExtendsClass(superclass == null ? "" : descriptorToDot(superclass))
+        .setAnnotations(toAnnotationPbs(currentDexFile.getClassAnnotations(classDef)))
+        .setMethods(methods.build())
+        .build();
+  }
+
+  private static String visibility(int accessFlags) {
+    if ((accessFlags & DexFile.ACC_PUBLIC) != 0) {
+      return "public";
+    } else if ((accessFlags & DexFile.ACC_PROTECTED) != 0) {
+      return "protected";
+    } else if ((accessFlags & DexFile.ACC_PRIVATE) != 0) {
+      return "private";
+    }
+    return "package";
+  }
+
+  /** Converts the annotations of a class or method, dropping system annotations. */
+  private static ImmutableList<AnnotationPb> toAnnotationPbs(List<Annotation> annotations) {
+    ImmutableList.Builder<AnnotationPb> annotationPbs = ImmutableList.builder();
+    for (Annotation annotation : annotations) {
+      String className = descriptorToDot(annotation.typeDescriptor);
+      // discard system annotations - unless they're holding default annotation info.
+      if (!className.startsWith(SYSTEM_ANNOTATION_PACKAGE)
+          || DEFAULT_ANNOTATION_CLASS.equals(className)) {
+        annotationPbs.add(toAnnotationPb(annotation));
+      }
+    }
+    return annotationPbs.build();
+  }
+
+  private static AnnotationPb toAnnotationPb(Annotation annotation) {
+    AnnotationPb.Builder annotationPb =
+        AnnotationPb.newBuilder().setClassName(descriptorToDot(annotation.typeDescriptor));
+    for (Element element : annotation.elements) {
+      if (!isRepresentable(element.value)) {
+        continue;
+      }
+      AnnotationValuePb.Builder valuePb =
+          AnnotationValuePb.newBuilder().setFieldName(element.name).setIsArray(false);
+      if (element.value.type == DexFile.VALUE_ARRAY) {
+        @SuppressWarnings("unchecked") // See DexFile.Value.
+        List<Value> arrayElements = (List<Value>) element.value.value;
+        // Like DexDumpIterator, which sizes the values of an array before it sees its elements.
+        valuePb.setIsArray(true);
+        for (int i = 0; i < arrayElements.size(); i++) {
+          valuePb.addFieldValue("");
+        }
+        for (int i = 0; i < arrayElements.size(); i++) {
+          addValue(valuePb, arrayElements.get(i), i);
+        }
+      } else {
+        addValue(valuePb, element.value, -1);
+      }
+      annotationPb.addAnnotationValue(valuePb.build());
+    }
+    return annotationPb.build();
+  }
+
+  /**
+   * Returns whether a value has a TestInfo type. Method types and method handles have none, and
+   * can't be the value of a Java annotation element anyway.
+   */
+  private static boolean isRepresentable(Value value) {
+    if (value.type == DexFile.VALUE_METHOD_TYPE || value.type == DexFile.VALUE_METHOD_HANDLE) {
+      return false;
+    }
+    if (value.type == DexFile.VALUE_ARRAY) {
+      @SuppressWarnings("unchecked") // See DexFile.Value.
+      List<Value> arrayElements = (List<Value>) value.value;
+      for (Value arrayElement : arrayElements) {
+        if (!isRepresentable(arrayElement)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Adds a value to an annotation value, at the given index if it is an array. */
+  private static void addValue(AnnotationValuePb.Builder valuePb, Value value, int index) {
+    if (value.type == DexFile.VALUE_ANNOTATION) {
+      valuePb
+          .addFieldAnnotationValue(toAnnotationPb((Annotation) value.value))
+          .setFieldType(TestInfo.Type.ANNOTATION);
+      return;
+    }
+    TestInfo.Type pbType = VALUE_TO_PB_TYPE.get(value.type);
+    if (pbType == null) {
+      throw new IllegalStateException(String.format("Unsupported value type 0x%02x", value.type));
+    }
+    String fieldValue = format(value);
+    if (index >= 0) {
+      valuePb.setFieldValue(index, fieldValue);
+    } else {
+      valuePb.addFieldValue(fieldValue);
+    }
+    valuePb.setFieldType(pbType);
+  }
+
+  /** Renders a value the way dexdump does, as seen thru its XML output. */
+  private static String format(Value value) {
+    switch (value.type) {
+      case DexFile.VALUE_BYTE:
+      case DexFile.VALUE_SHORT:
+      case DexFile.VALUE_INT:
+      case DexFile.VALUE_LONG:
+        return Long.toString((Long) value.value);
+      case DexFile.VALUE_CHAR:
+        return sanitize(String.valueOf((Character) value.value));
+      case DexFile.VALUE_FLOAT:
+        return formatDouble((Float) value.value);
+      case DexFile.VALUE_DOUBLE:
+        return formatDouble((Double) value.value);
+      case DexFile.VALUE_STRING:
+        return sanitize((String) value.value);
+      case DexFile.VALUE_TYPE:
+        return descriptorToDot((String) value.value);
+      case DexFile.VALUE_FIELD:
+      case DexFile.VALUE_METHOD:
+      case DexFile.VALUE_ENUM:
+        MemberRef member = (MemberRef) value.value;
+        return descriptorToDot(member.classDescriptor) + "." + member.name;
+      case DexFile.VALUE_NULL:
+        return "NULL";
+      case DexFile.VALUE_BOOLEAN:
+        return ((Boolean) value.value) ? "true" : "false";
+      default:
+        throw new IllegalStateException(String.format("Unsupported value type 0x%02x", value.type));
+    }
+  }
+
+  /** Formats like printf's %f. */
+  private static String formatDouble(double d) {
+    if (Double.isNaN(d)) {
+      return "nan";
+    } else if (Double.isInfinite(d)) {
+      return d > 0 ? "inf" : "-inf";
+    }
+    return String.format(Locale.ROOT, "%f", d);
+  }
+
+  /**
+   * Replaces the characters that do not survive dexdump's XML output: XML attribute values turn
+   * line breaks and tabs into spaces, and DexDumpIterator turns other control characters into !'s.
+   */
+  private static String sanitize(String s) {
+    char[] chars = null;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (Character.isISOControl(c)) {
+        if (chars == null) {
+          chars = s.toCharArray();
+        }
+        chars[i] = (c == '\n' || c == '\t' || c == '\r') ? ' ' : '!';
+      }
+    }
+    return chars == null ? s : new String(chars);
+  }
+
+  /**
+   * Converts a type descriptor to the dotted form dexdump uses: "Lcom/foo/Bar$Baz;" becomes
+   * "com.foo.Bar.Baz" and "[I" becomes "int[]".
+   */
+  static String descriptorToDot(String descriptor) {
+    int dimensions = 0;
+    while (descriptor.charAt(dimensions) == '[') {
+      dimensions++;
+    }
+    StringBuilder dotted = new StringBuilder();
+    String primitive =
+        descriptor.length() == dimensions + 1
+            ? PRIMITIVE_TYPES.get(descriptor.charAt(dimensions))
+            : null;
+    if (primitive != null) {
+      dotted.append(primitive);
+    } else {
+      int end = descriptor.endsWith(";") ? descriptor.length() - 1 : descriptor.length();
+      int start = descriptor.charAt(dimensions) == 'L' ? dimensions + 1 : dimensions;
+      dotted.append(descriptor.substring(start, end).replace('/', '.').replace('$', '.'));
+    }
+    for (int i = 0; i < dimensions; i++) {
+      dotted.append("[]");
+    }
+    return dotted.toString();
+  }
+}
@@ -41,6 +41,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -296,13 +297,54 @@ public final class DumpUtils {
    * system annotations. It also makes it list non-public methods and classes. All this info is
    * required for proper dumping.
    */
+  /**
+   * Accepts the classes that may declare tests or be the base class of a test: rejects resource
+   * classes (R and its inner classes), BuildConfig, Manifest and compiler synthesized classes such
+   * as desugared lambdas, whose names contain "$$". Apps are mostly made of these, so {@link
+   * #parseDexFiles} skips them without reading their methods.
+   */
+  public static final Predicate<String> MAY_DECLARE_TESTS =
+      new Predicate<String>() {
+        @Override
+        public boolean apply(String className) {
+          String simpleName = className.substring(className.lastIndexOf('.') + 1);
+          return !simpleName.equals("R")
+              && !simpleName.startsWith("R$")
+              && !simpleName.equals("BuildConfig")
+              && !simpleName.equals("Manifest")
+              && !simpleName.startsWith("Manifest$")
+              && !simpleName.contains("$$");
+        }
+      };
+
   public static Pair<TestSuitePb, ImmutableSet<String>> parseDexDump(InputStream... xmlIns) {
 
     Iterator<DexClassData> combinedIterator = baseTestClasses();
     for (InputStream xmlIn : xmlIns) {
       combinedIterator = Iterators.concat(combinedIterator, new DexDumpIterator(xmlIn));
     }
-    ClassDeduplicatingIterator dexIterator = new ClassDeduplicatingIterator(combinedIterator);
+    return discoverTestsAndClasses(combinedIterator);
+  }
+
+  /**
+   * Reads dex files into a TestSuitePb and a set of all classes contained in them, like {@link
+   * #parseDexDump} does with the output of dexdump for the same files.
+   *
+   * @param classFilter accepts the fully qualified names of the classes to read, the others are
+   *     neither read nor included in the set of classes
+   * @param dexFiles the contents of the dex files, in classpath order. They are consumed one at a
+   *     time, so a lazy iterable only needs one dex file in memory at a time.
+   */
+  public static Pair<TestSuitePb, ImmutableSet<String>> parseDexFiles(
+      Predicate<String> classFilter, Iterable<ByteBuffer> dexFiles) {
+    return discoverTestsAndClasses(
+        Iterators.concat(
+            baseTestClasses(), new DexFileIterator(dexFiles.iterator(), classFilter)));
+  }
+
+  private static Pair<TestSuitePb, ImmutableSet<String>> discoverTestsAndClasses(
+      Iterator<DexClassData> classes) {
+    ClassDeduplicatingIterator dexIterator = new ClassDeduplicatingIterator(classes);
     TestSuitePb suite = discoverTests(dexIterator);
     return Pair.of(suite, dexIterator.encounteredClassNames());
   }
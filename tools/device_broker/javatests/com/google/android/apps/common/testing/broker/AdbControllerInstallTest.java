@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.broker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.android.apps.common.testing.broker.AbstractRegexpLineProcessor.RegexpProcessorBuilder;
+import com.google.android.apps.common.testing.broker.BrokeredDevice.DeviceType;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link AdbController#installApksIfNecessary}, against a fake adb script that answers
+ * from files in a state directory and records its calls.
+ */
+@RunWith(JUnit4.class)
+public class AdbControllerInstallTest {
+  private static final String SERIAL = "emulator-5554";
+
+  // Dispatches on the adb arguments that follow "-s <serial>".
+  private static final String FAKE_ADB =
+      "#!/bin/sh\n"
+          + "PATH=/bin:/usr/bin\n"
+          + "state=%s\n"
+          + "echo \"$*\" >> $state/calls\n"
+          + "shift 2\n"
+          + "case \"$1 $2\" in\n"
+          + "  'shell getprop') echo \"[ro.build.version.sdk]: [$(cat $state/sdk)]\" ;;\n"
+          + "  'shell pm') cat $state/packages ;;\n"
+          + "  'shell md5') cat $state/md5 ;;\n"
+          + "  install-multi-package*)\n"
+          + "    if [ -e $state/fail_multi ]; then echo Failure; exit 1; fi\n"
+          + "    echo Success ;;\n"
+          + "  install*|uninstall*) echo Success ;;\n"
+          + "esac\n";
+
+  // SubprocessCommunicator runs commands through an executor, which gets a log file first.
+  private static final String EXECUTOR = "#!/bin/sh\nshift\nexec \"$@\"\n";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ExecutorService subprocessExecutor = Executors.newCachedThreadPool();
+  private File state;
+  private File logDir;
+  private File executor;
+  private File adb;
+  private AdbController adbController;
+
+  @Before
+  public void setUp() throws IOException {
+    state = tmp.newFolder("state");
+    logDir = tmp.newFolder("logs");
+    executor = writeScript("executor", EXECUTOR);
+    adb = writeScript("adb", String.format(FAKE_ADB, state.getPath()));
+    write("sdk", "30");
+    write("packages", "");
+    write("md5", "");
+
+    BrokeredDevice device =
+        new BrokeredDevice.Builder()
+            .withSerialId(SERIAL)
+            .withAdbPath(adb.getPath())
+            .withLogcatPath("/dev/null")
+            .withAdbServerPort(5037)
+            .withDeviceType(DeviceType.PHYSICAL)
+            .withAdbControllerFactory(this::createAdbController)
+            .build();
+    adbController = device.getAdbController();
+  }
+
+  @After
+  public void tearDown() {
+    subprocessExecutor.shutdownNow();
+  }
+
+  @Test
+  public void installApksIfNecessary_installsChangedApksInOneSession() throws IOException {
+    String same = newApk("same.apk", "same");
+    String changed = newApk("changed.apk", "changed");
+    String added = newApk("added.apk", "added");
+    installed("com.same", "/data/app/same/base.apk", md5(same));
+    installed("com.changed", "/data/app/changed/base.apk", "0123456789abcdef0123456789abcdef");
+
+    adbController.installApksIfNecessary(
+        ImmutableMap.of("com.same", same, "com.changed", changed, "com.added", added), false);
+
+    assertThat(installCalls())
+        .containsExactly("install-multi-package -d -r " + changed + " " + added);
+  }
+
+  @Test
+  public void installApksIfNecessary_multiPackageFails_installsApksOneByOne() throws IOException {
+    String changed = newApk("changed.apk", "changed");
+    String added = newApk("added.apk", "added");
+    installed("com.changed", "/data/app/changed/base.apk", "0123456789abcdef0123456789abcdef");
+    write("fail_multi", "");
+
+    adbController.installApksIfNecessary(
+        ImmutableMap.of("com.changed", changed, "com.added", added), false);
+
+    assertThat(installCalls())
+        .containsExactly(
+            "install-multi-package -d -r " + changed + " " + added,
+            "install -d -r " + changed,
+            "install -d -r " + added)
+        .inOrder();
+  }
+
+  @Test
+  public void installApksIfNecessary_beforeApi29_installsApksOneByOne() throws IOException {
+    write("sdk", "28");
+    String first = newApk("first.apk", "first");
+    String second = newApk("second.apk", "second");
+
+    adbController.installApksIfNecessary(
+        ImmutableMap.of("com.first", first, "com.second", second), false);
+
+    assertThat(installCalls())
+        .containsExactly("install -d -r " + first, "install -d -r " + second)
+        .inOrder();
+  }
+
+  @Test
+  public void installApksIfNecessary_unchangedApks_installsNothing() throws IOException {
+    String first = newApk("first.apk", "first");
+    String second = newApk("second.apk", "second");
+    installed("com.first", "/data/app/first/base.apk", md5(first));
+    installed("com.second", "/data/app/second/base.apk", md5(second));
+
+    adbController.installApksIfNecessary(
+        ImmutableMap.of("com.first", first, "com.second", second), false);
+
+    assertThat(installCalls()).isEmpty();
+    // One call lists the installed packages, and one hashes them all.
+    assertThat(adbCalls()).containsAtLeast("shell pm list packages -f", "shell md5 "
+        + "/data/app/first/base.apk /data/app/second/base.apk || md5sum "
+        + "/data/app/first/base.apk /data/app/second/base.apk || true");
+  }
+
+  private AdbController createAdbController(BrokeredDevice device) {
+    return new AdbController(
+        () -> 0,
+        () ->
+            new SubprocessCommunicator.Builder(
+                subprocessExecutor, logDir, executor.getPath(), (namespace, tool, ms, ok) -> {}),
+        device,
+        SimpleLineListProcessor::new,
+        () -> {
+          throw new UnsupportedOperationException();
+        },
+        () -> {
+          throw new UnsupportedOperationException();
+        },
+        AndroidPropertyProcessor::new,
+        new RegexpProcessorBuilder(),
+        null,
+        Optional.absent(),
+        false,
+        false,
+        false,
+        ImmutableList.of(),
+        ImmutableList.of(),
+        ImmutableList.of(),
+        "");
+  }
+
+  private void installed(String packageName, String devicePath, String md5) throws IOException {
+    append("packages", "package:" + devicePath + "=" + packageName + "\n");
+    append("md5", md5 + "  " + devicePath + "\n");
+  }
+
+  private String newApk(String name, String contents) throws IOException {
+    File apk = tmp.newFile(name);
+    Files.asCharSink(apk, UTF_8).write(contents);
+    return apk.getPath();
+  }
+
+  private static String md5(String path) throws IOException {
+    return Files.asByteSource(new File(path)).hash(Hashing.md5()).toString();
+  }
+
+  /** Returns the arguments of each adb call, without the device serial. */
+  private List<String> adbCalls() throws IOException {
+    return Files.asCharSource(new File(state, "calls"), UTF_8).readLines().stream()
+        .map(call -> call.substring(("-s " + SERIAL + " ").length()))
+        .collect(Collectors.toList());
+  }
+
+  private List<String> installCalls() throws IOException {
+    return adbCalls().stream()
+        .filter(call -> call.startsWith("install"))
+        .collect(Collectors.toList());
+  }
+
+  private void write(String name, String contents) throws IOException {
+    Files.asCharSink(new File(state, name), UTF_8).write(contents);
+  }
+
+  private void append(String name, String contents) throws IOException {
+    Files.asCharSink(new File(state, name), UTF_8, FileWriteMode.APPEND)
+        .write(contents);
+  }
+
+  private File writeScript(String name, String contents) throws IOException {
+    File script = tmp.newFile(name);
+    Files.asCharSink(script, UTF_8).write(contents);
+    script.setExecutable(true);
+    return script;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.suite.dex;
+
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_CONSTRUCTOR;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_FINAL;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_PUBLIC;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_SYNTHETIC;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.apps.common.testing.proto.TestInfo.TestSuitePb;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.Annotation;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ClassDef;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.MethodDef;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.TypeValue;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Times test discovery from dex files against test discovery from the dexdump output for them,
+ * and what skipping generated classes saves.
+ */
+@RunWith(JUnit4.class)
+public class DexFileBenchmarkTest {
+  private static final Logger logger = Logger.getLogger(DexFileBenchmarkTest.class.getName());
+
+  private static final int WARMUP_ITERATIONS = 50;
+  private static final int ITERATIONS = 500;
+  private static final int LARGE_DEX_ITERATIONS = 50;
+
+  private static final int TEST_CLASSES = 200;
+  private static final int TEST_METHODS = 10;
+  private static final int GENERATED_CLASSES = 5000;
+
+  @Test
+  public void sampleDex_dexFileVersusDexDump() throws IOException {
+    ByteBuffer dexFile = SampleDex.dexFile();
+    byte[] dexDump;
+    try (InputStream in = SampleDex.dexDump()) {
+      dexDump = ByteStreams.toByteArray(in);
+    }
+
+    long dexFileNanos = 0;
+    long dexDumpNanos = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+      long start = System.nanoTime();
+      TestSuitePb fromDexFile =
+          DumpUtils.parseDexFiles(Predicates.<String>alwaysTrue(), ImmutableList.of(dexFile))
+              .first;
+      long middle = System.nanoTime();
+      TestSuitePb fromDexDump = DumpUtils.parseDexDump(new ByteArrayInputStream(dexDump)).first;
+      long end = System.nanoTime();
+      if (i >= WARMUP_ITERATIONS) {
+        dexFileNanos += middle - start;
+        dexDumpNanos += end - middle;
+      }
+      assertThat(fromDexFile.getInfoCount()).isEqualTo(fromDexDump.getInfoCount());
+    }
+    logger.info(
+        String.format(
+            Locale.ROOT,
+            "Sample dex: %.1f us from the dex file, %.1f us from the dexdump output",
+            dexFileNanos / 1000.0 / ITERATIONS,
+            dexDumpNanos / 1000.0 / ITERATIONS));
+  }
+
+  @Test
+  public void largeDex_skippingGeneratedClasses() {
+    ByteBuffer dexFile = largeDexFile();
+
+    long allNanos = 0;
+    long filteredNanos = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + LARGE_DEX_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      TestSuitePb all =
+          DumpUtils.parseDexFiles(Predicates.<String>alwaysTrue(), ImmutableList.of(dexFile))
+              .first;
+      long middle = System.nanoTime();
+      TestSuitePb filtered =
+          DumpUtils.parseDexFiles(DumpUtils.MAY_DECLARE_TESTS, ImmutableList.of(dexFile)).first;
+      long end = System.nanoTime();
+      if (i >= WARMUP_ITERATIONS) {
+        allNanos += middle - start;
+        filteredNanos += end - middle;
+      }
+      assertThat(filtered.getInfoCount()).isEqualTo(TEST_CLASSES * TEST_METHODS);
+      assertThat(all.getInfoCount()).isEqualTo(TEST_CLASSES * TEST_METHODS);
+    }
+    logger.info(
+        String.format(
+            Locale.ROOT,
+            "%d classes, %d generated: %.1f ms reading all, %.1f ms skipping the generated ones",
+            TEST_CLASSES + GENERATED_CLASSES,
+            GENERATED_CLASSES,
+            allNanos / 1e6 / LARGE_DEX_ITERATIONS,
+            filteredNanos / 1e6 / LARGE_DEX_ITERATIONS));
+  }
+
+  /** Returns a dex file with a few test classes among many desugared lambdas and R classes. */
+  private static ByteBuffer largeDexFile() {
+    DexFileBuilder builder = new DexFileBuilder();
+    for (int c = 0; c < TEST_CLASSES; c++) {
+      ClassDef testClass =
+          new ClassDef("Lcom/example/large/Test" + c + ";", ACC_PUBLIC, "Ljava/lang/Object;")
+              .annotate(
+                  new Annotation("Lorg/junit/runner/RunWith;")
+                      .set(
+                          "value",
+                          new TypeValue("Landroidx/test/ext/junit/runners/AndroidJUnit4;")))
+              .addMethod(new MethodDef(ACC_PUBLIC | ACC_CONSTRUCTOR, "<init>", "V"));
+      for (int m = 0; m < TEST_METHODS; m++) {
+        testClass.addMethod(
+            new MethodDef(ACC_PUBLIC, "test" + m, "V")
+                .annotate(new Annotation("Lorg/junit/Test;")));
+      }
+      builder.addClass(testClass);
+    }
+    for (int c = 0; c < GENERATED_CLASSES; c++) {
+      String descriptor =
+          c % 5 == 0
+              ? String.format(Locale.ROOT, "Lcom/example/large/R$id%d;", c)
+              : String.format(
+                  Locale.ROOT,
+                  "Lcom/example/large/Test%d$$ExternalSyntheticLambda%d;",
+                  c % TEST_CLASSES,
+                  c);
+      builder.addClass(
+          new ClassDef(descriptor, ACC_FINAL | ACC_SYNTHETIC, "Ljava/lang/Object;")
+              .addMethod(new MethodDef(ACC_PUBLIC | ACC_CONSTRUCTOR, "<init>", "V"))
+              .addMethod(new MethodDef(ACC_PUBLIC | ACC_FINAL, "run", "V")));
+    }
+    return builder.build();
+  }
+}
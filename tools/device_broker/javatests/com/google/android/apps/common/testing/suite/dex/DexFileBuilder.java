@@ -0,0 +1,777 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.suite.dex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Adler32;
+import javax.annotation.Nullable;
+
+/**
+ * Writes dex files made of classes, their methods and the annotations on both. The methods have
+ * no code and the classes have no fields.
+ *
+ * <p>The ids are sorted and the map list is written as the dex format requires, so dexdump reads
+ * the files too. See https://source.android.com/docs/core/runtime/dex-format.
+ */
+final class DexFileBuilder {
+  static final int ACC_PUBLIC = 0x1;
+  static final int ACC_PRIVATE = 0x2;
+  static final int ACC_PROTECTED = 0x4;
+  static final int ACC_STATIC = 0x8;
+  static final int ACC_FINAL = 0x10;
+  static final int ACC_INTERFACE = 0x200;
+  static final int ACC_ABSTRACT = 0x400;
+  static final int ACC_SYNTHETIC = 0x1000;
+  static final int ACC_ANNOTATION = 0x2000;
+  static final int ACC_CONSTRUCTOR = 0x10000;
+
+  private static final int NO_INDEX = -1;
+  private static final int HEADER_SIZE = 0x70;
+
+  private static final int TYPE_HEADER_ITEM = 0x0000;
+  private static final int TYPE_STRING_ID_ITEM = 0x0001;
+  private static final int TYPE_TYPE_ID_ITEM = 0x0002;
+  private static final int TYPE_PROTO_ID_ITEM = 0x0003;
+  private static final int TYPE_FIELD_ID_ITEM = 0x0004;
+  private static final int TYPE_METHOD_ID_ITEM = 0x0005;
+  private static final int TYPE_CLASS_DEF_ITEM = 0x0006;
+  private static final int TYPE_MAP_LIST = 0x1000;
+  private static final int TYPE_TYPE_LIST = 0x1001;
+  private static final int TYPE_ANNOTATION_SET_ITEM = 0x1003;
+  private static final int TYPE_CLASS_DATA_ITEM = 0x2000;
+  private static final int TYPE_STRING_DATA_ITEM = 0x2002;
+  private static final int TYPE_ANNOTATION_ITEM = 0x2004;
+  private static final int TYPE_ANNOTATIONS_DIRECTORY_ITEM = 0x2006;
+
+  private static final int VISIBILITY_RUNTIME = 0x1;
+  private static final int VISIBILITY_SYSTEM = 0x2;
+
+  /**
+   * An annotation. Its element values are Bytes, Shorts, Characters, Integers, Longs, Floats,
+   * Doubles, Booleans, Strings, TypeValues, EnumValues, Annotations, Lists of those for arrays,
+   * or null.
+   */
+  static final class Annotation {
+    final String typeDescriptor;
+    final SortedMap<String, Object> elements = new TreeMap<>();
+
+    Annotation(String typeDescriptor) {
+      this.typeDescriptor = typeDescriptor;
+    }
+
+    Annotation set(String name, @Nullable Object value) {
+      elements.put(name, value);
+      return this;
+    }
+  }
+
+  /** A class literal, as the value of an annotation element. */
+  static final class TypeValue {
+    final String descriptor;
+
+    TypeValue(String descriptor) {
+      this.descriptor = descriptor;
+    }
+  }
+
+  /** An enum constant, as the value of an annotation element. */
+  static final class EnumValue {
+    final String enumDescriptor;
+    final String name;
+
+    EnumValue(String enumDescriptor, String name) {
+      this.enumDescriptor = enumDescriptor;
+      this.name = name;
+    }
+  }
+
+  /** A class definition. */
+  static final class ClassDef {
+    final String descriptor;
+    final int accessFlags;
+    @Nullable final String superclassDescriptor;
+    final List<Annotation> annotations = new ArrayList<>();
+    final List<MethodDef> methods = new ArrayList<>();
+
+    ClassDef(String descriptor, int accessFlags, @Nullable String superclassDescriptor) {
+      this.descriptor = descriptor;
+      this.accessFlags = accessFlags;
+      this.superclassDescriptor = superclassDescriptor;
+    }
+
+    ClassDef annotate(Annotation annotation) {
+      annotations.add(annotation);
+      return this;
+    }
+
+    ClassDef addMethod(MethodDef method) {
+      methods.add(method);
+      return this;
+    }
+  }
+
+  /** A method definition. Static, private and constructor methods are direct methods. */
+  static final class MethodDef {
+    final int accessFlags;
+    final String name;
+    final Proto proto;
+    final List<Annotation> annotations = new ArrayList<>();
+
+    MethodDef(int accessFlags, String name, String returnType, String... parameterTypes) {
+      this.accessFlags = accessFlags;
+      this.name = name;
+      this.proto = new Proto(returnType, ImmutableList.copyOf(parameterTypes));
+    }
+
+    MethodDef annotate(Annotation annotation) {
+      annotations.add(annotation);
+      return this;
+    }
+
+    boolean isDirect() {
+      return (accessFlags & (ACC_STATIC | ACC_PRIVATE | ACC_CONSTRUCTOR)) != 0;
+    }
+  }
+
+  private static final class Proto implements Comparable<Proto> {
+    final String returnType;
+    final ImmutableList<String> parameterTypes;
+
+    Proto(String returnType, ImmutableList<String> parameterTypes) {
+      this.returnType = returnType;
+      this.parameterTypes = parameterTypes;
+    }
+
+    String shorty() {
+      StringBuilder shorty = new StringBuilder().append(shortyChar(returnType));
+      for (String parameterType : parameterTypes) {
+        shorty.append(shortyChar(parameterType));
+      }
+      return shorty.toString();
+    }
+
+    private static char shortyChar(String type) {
+      char c = type.charAt(0);
+      return c == '[' ? 'L' : c;
+    }
+
+    // Type ids are sorted by descriptor, so comparing the descriptors compares the ids.
+    @Override
+    public int compareTo(Proto other) {
+      return ComparisonChain.start()
+          .compare(returnType, other.returnType)
+          .compare(
+              parameterTypes,
+              other.parameterTypes,
+              Ordering.<String>natural().lexicographical())
+          .result();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Proto && compareTo((Proto) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(returnType, parameterTypes);
+    }
+  }
+
+  private static final class MemberId implements Comparable<MemberId> {
+    final String classType;
+    final String name;
+    @Nullable final String fieldType;
+    @Nullable final Proto proto;
+
+    MemberId(String classType, String name, @Nullable String fieldType, @Nullable Proto proto) {
+      this.classType = classType;
+      this.name = name;
+      this.fieldType = fieldType;
+      this.proto = proto;
+    }
+
+    @Override
+    public int compareTo(MemberId other) {
+      return ComparisonChain.start()
+          .compare(classType, other.classType)
+          .compare(name, other.name)
+          .compare(fieldType, other.fieldType, Ordering.<String>natural().nullsFirst())
+          .compare(proto, other.proto, Ordering.<Proto>natural().nullsFirst())
+          .result();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof MemberId && compareTo((MemberId) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(classType, name, fieldType, proto);
+    }
+  }
+
+  private final List<ClassDef> classes = new ArrayList<>();
+
+  // The ids, sorted as the dex format requires: strings and types by their UTF-16 code units,
+  // which is String order for the strings the tests use.
+  private final TreeSet<String> strings = new TreeSet<>();
+  private final TreeSet<String> types = new TreeSet<>();
+  private final TreeSet<Proto> protos = new TreeSet<>();
+  private final TreeSet<MemberId> fields = new TreeSet<>();
+  private final TreeSet<MemberId> methods = new TreeSet<>();
+
+  private Map<String, Integer> stringIndices;
+  private Map<String, Integer> typeIndices;
+  private Map<Proto, Integer> protoIndices;
+  private Map<MemberId, Integer> fieldIndices;
+  private Map<MemberId, Integer> methodIndices;
+
+  /** Adds a class. Superclasses defined in the same file must be added before their subclasses. */
+  DexFileBuilder addClass(ClassDef classDef) {
+    classes.add(classDef);
+    return this;
+  }
+
+  ByteBuffer build() {
+    for (ClassDef classDef : classes) {
+      collect(classDef);
+    }
+    stringIndices = indices(strings);
+    typeIndices = indices(types);
+    protoIndices = indices(protos);
+    fieldIndices = indices(fields);
+    methodIndices = indices(methods);
+
+    int stringIdsOff = HEADER_SIZE;
+    int typeIdsOff = stringIdsOff + 4 * strings.size();
+    int protoIdsOff = typeIdsOff + 4 * types.size();
+    int fieldIdsOff = protoIdsOff + 12 * protos.size();
+    int methodIdsOff = fieldIdsOff + 8 * fields.size();
+    int classDefsOff = methodIdsOff + 8 * methods.size();
+    int dataOff = classDefsOff + 32 * classes.size();
+    Output out = new Output(dataOff);
+    List<int[]> map = new ArrayList<>();
+    map.add(new int[] {TYPE_HEADER_ITEM, 1, 0});
+    addToMap(map, TYPE_STRING_ID_ITEM, strings.size(), stringIdsOff);
+    addToMap(map, TYPE_TYPE_ID_ITEM, types.size(), typeIdsOff);
+    addToMap(map, TYPE_PROTO_ID_ITEM, protos.size(), protoIdsOff);
+    addToMap(map, TYPE_FIELD_ID_ITEM, fields.size(), fieldIdsOff);
+    addToMap(map, TYPE_METHOD_ID_ITEM, methods.size(), methodIdsOff);
+    addToMap(map, TYPE_CLASS_DEF_ITEM, classes.size(), classDefsOff);
+
+    // type_list items, for the parameters of the protos.
+    out.align4();
+    int typeListsOff = out.position;
+    Map<Proto, Integer> parameterOffsets = new HashMap<>();
+    for (Proto proto : protos) {
+      if (!proto.parameterTypes.isEmpty()) {
+        out.align4();
+        parameterOffsets.put(proto, out.position);
+        out.writeInt(proto.parameterTypes.size());
+        for (String parameterType : proto.parameterTypes) {
+          out.writeShort(typeIndices.get(parameterType));
+        }
+      }
+    }
+    addToMap(map, TYPE_TYPE_LIST, parameterOffsets.size(), typeListsOff);
+
+    // annotation_items, then the annotation_set_items listing them.
+    int annotationItemsOff = out.position;
+    int annotationItemCount = 0;
+    Map<List<Annotation>, int[]> annotationItemOffsets = new LinkedHashMap<>();
+    for (ClassDef classDef : classes) {
+      List<List<Annotation>> sets = new ArrayList<>();
+      sets.add(classDef.annotations);
+      for (MethodDef method : classDef.methods) {
+        sets.add(method.annotations);
+      }
+      for (List<Annotation> set : sets) {
+        if (set.isEmpty()) {
+          continue;
+        }
+        List<Annotation> sorted = sortedByType(set);
+        int[] offsets = new int[sorted.size()];
+        for (int i = 0; i < offsets.length; i++) {
+          offsets[i] = out.position;
+          Annotation annotation = sorted.get(i);
+          out.writeByte(
+              annotation.typeDescriptor.startsWith("Ldalvik/annotation/")
+                  ? VISIBILITY_SYSTEM
+                  : VISIBILITY_RUNTIME);
+          writeEncodedAnnotation(out, annotation);
+        }
+        annotationItemCount += offsets.length;
+        annotationItemOffsets.put(set, offsets);
+      }
+    }
+    addToMap(map, TYPE_ANNOTATION_ITEM, annotationItemCount, annotationItemsOff);
+
+    out.align4();
+    int annotationSetsOff = out.position;
+    Map<List<Annotation>, Integer> annotationSetOffsets = new HashMap<>();
+    for (Map.Entry<List<Annotation>, int[]> set : annotationItemOffsets.entrySet()) {
+      out.align4();
+      annotationSetOffsets.put(set.getKey(), out.position);
+      out.writeInt(set.getValue().length);
+      for (int offset : set.getValue()) {
+        out.writeInt(offset);
+      }
+    }
+    addToMap(map, TYPE_ANNOTATION_SET_ITEM, annotationSetOffsets.size(), annotationSetsOff);
+
+    // annotations_directory_items.
+    out.align4();
+    int directoriesOff = out.position;
+    int[] directoryOffsets = new int[classes.size()];
+    int directoryCount = 0;
+    for (int c = 0; c < classes.size(); c++) {
+      ClassDef classDef = classes.get(c);
+      TreeMap<Integer, Integer> methodAnnotations = new TreeMap<>();
+      for (MethodDef method : classDef.methods) {
+        if (!method.annotations.isEmpty()) {
+          methodAnnotations.put(
+              methodIndices.get(methodId(classDef, method)),
+              annotationSetOffsets.get(method.annotations));
+        }
+      }
+      if (classDef.annotations.isEmpty() && methodAnnotations.isEmpty()) {
+        continue;
+      }
+      directoryOffsets[c] = out.position;
+      directoryCount++;
+      out.writeInt(
+          classDef.annotations.isEmpty() ? 0 : annotationSetOffsets.get(classDef.annotations));
+      out.writeInt(0); // fields_size
+      out.writeInt(methodAnnotations.size());
+      out.writeInt(0); // annotated_parameters_size
+      for (Map.Entry<Integer, Integer> methodAnnotation : methodAnnotations.entrySet()) {
+        out.writeInt(methodAnnotation.getKey());
+        out.writeInt(methodAnnotation.getValue());
+      }
+    }
+    addToMap(map, TYPE_ANNOTATIONS_DIRECTORY_ITEM, directoryCount, directoriesOff);
+
+    // class_data_items.
+    int classDataOff = out.position;
+    int[] classDataOffsets = new int[classes.size()];
+    int classDataCount = 0;
+    for (int c = 0; c < classes.size(); c++) {
+      ClassDef classDef = classes.get(c);
+      if (classDef.methods.isEmpty()) {
+        continue;
+      }
+      classDataOffsets[c] = out.position;
+      classDataCount++;
+      TreeMap<Integer, MethodDef> directMethods = new TreeMap<>();
+      TreeMap<Integer, MethodDef> virtualMethods = new TreeMap<>();
+      for (MethodDef method : classDef.methods) {
+        (method.isDirect() ? directMethods : virtualMethods)
+            .put(methodIndices.get(methodId(classDef, method)), method);
+      }
+      out.writeUleb128(0); // static_fields_size
+      out.writeUleb128(0); // instance_fields_size
+      out.writeUleb128(directMethods.size());
+      out.writeUleb128(virtualMethods.size());
+      writeEncodedMethods(out, directMethods);
+      writeEncodedMethods(out, virtualMethods);
+    }
+    addToMap(map, TYPE_CLASS_DATA_ITEM, classDataCount, classDataOff);
+
+    // string_data_items.
+    int stringDataOff = out.position;
+    int[] stringDataOffsets = new int[strings.size()];
+    int s = 0;
+    for (String string : strings) {
+      stringDataOffsets[s++] = out.position;
+      out.writeUleb128(string.length());
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        if (c != 0 && c < 0x80) {
+          out.writeByte(c);
+        } else if (c < 0x800) {
+          out.writeByte(0xc0 | (c >> 6));
+          out.writeByte(0x80 | (c & 0x3f));
+        } else {
+          out.writeByte(0xe0 | (c >> 12));
+          out.writeByte(0x80 | ((c >> 6) & 0x3f));
+          out.writeByte(0x80 | (c & 0x3f));
+        }
+      }
+      out.writeByte(0);
+    }
+    addToMap(map, TYPE_STRING_DATA_ITEM, strings.size(), stringDataOff);
+
+    out.align4();
+    int mapOff = out.position;
+    map.add(new int[] {TYPE_MAP_LIST, 1, mapOff});
+    out.writeInt(map.size());
+    for (int[] item : map) {
+      out.writeShort(item[0]);
+      out.writeShort(0); // unused
+      out.writeInt(item[1]);
+      out.writeInt(item[2]);
+    }
+    int fileSize = out.position;
+
+    // The id sections, now that the data they point to is written.
+    for (int i = 0; i < stringDataOffsets.length; i++) {
+      out.putInt(stringIdsOff + 4 * i, stringDataOffsets[i]);
+    }
+    int t = 0;
+    for (String type : types) {
+      out.putInt(typeIdsOff + 4 * t++, stringIndices.get(type));
+    }
+    int p = 0;
+    for (Proto proto : protos) {
+      int protoIdOff = protoIdsOff + 12 * p++;
+      out.putInt(protoIdOff, stringIndices.get(proto.shorty()));
+      out.putInt(protoIdOff + 4, typeIndices.get(proto.returnType));
+      Integer parametersOff = parameterOffsets.get(proto);
+      out.putInt(protoIdOff + 8, parametersOff == null ? 0 : parametersOff);
+    }
+    int f = 0;
+    for (MemberId field : fields) {
+      int fieldIdOff = fieldIdsOff + 8 * f++;
+      out.putShort(fieldIdOff, typeIndices.get(field.classType));
+      out.putShort(fieldIdOff + 2, typeIndices.get(field.fieldType));
+      out.putInt(fieldIdOff + 4, stringIndices.get(field.name));
+    }
+    int m = 0;
+    for (MemberId method : methods) {
+      int methodIdOff = methodIdsOff + 8 * m++;
+      out.putShort(methodIdOff, typeIndices.get(method.classType));
+      out.putShort(methodIdOff + 2, protoIndices.get(method.proto));
+      out.putInt(methodIdOff + 4, stringIndices.get(method.name));
+    }
+    for (int c = 0; c < classes.size(); c++) {
+      ClassDef classDef = classes.get(c);
+      int classDefOff = classDefsOff + 32 * c;
+      out.putInt(classDefOff, typeIndices.get(classDef.descriptor));
+      out.putInt(classDefOff + 4, classDef.accessFlags);
+      out.putInt(
+          classDefOff + 8,
+          classDef.superclassDescriptor == null
+              ? NO_INDEX
+              : typeIndices.get(classDef.superclassDescriptor));
+      out.putInt(classDefOff + 12, 0); // interfaces_off
+      out.putInt(classDefOff + 16, NO_INDEX); // source_file_idx
+      out.putInt(classDefOff + 20, directoryOffsets[c]);
+      out.putInt(classDefOff + 24, classDataOffsets[c]);
+      out.putInt(classDefOff + 28, 0); // static_values_off
+    }
+
+    byte[] magic = {'d', 'e', 'x', '\n', '0', '3', '5', 0};
+    System.arraycopy(magic, 0, out.bytes, 0, magic.length);
+    out.putInt(0x20, fileSize);
+    out.putInt(0x24, HEADER_SIZE);
+    out.putInt(0x28, 0x12345678); // endian_tag
+    out.putInt(0x34, mapOff);
+    putSection(out, 0x38, strings.size(), stringIdsOff);
+    putSection(out, 0x40, types.size(), typeIdsOff);
+    putSection(out, 0x48, protos.size(), protoIdsOff);
+    putSection(out, 0x50, fields.size(), fieldIdsOff);
+    putSection(out, 0x58, methods.size(), methodIdsOff);
+    putSection(out, 0x60, classes.size(), classDefsOff);
+    out.putInt(0x68, fileSize - dataOff);
+    out.putInt(0x6c, dataOff);
+    sign(out.bytes, fileSize);
+    return ByteBuffer.wrap(Arrays.copyOf(out.bytes, fileSize));
+  }
+
+  /** Fills in the signature and the checksum of the header. */
+  private static void sign(byte[] dex, int fileSize) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      sha1.update(dex, 32, fileSize - 32);
+      System.arraycopy(sha1.digest(), 0, dex, 12, 20);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    Adler32 checksum = new Adler32();
+    checksum.update(dex, 12, fileSize - 12);
+    int value = (int) checksum.getValue();
+    for (int i = 0; i < 4; i++) {
+      dex[8 + i] = (byte) (value >> (8 * i));
+    }
+  }
+
+  private static void putSection(Output out, int headerOff, int size, int off) {
+    out.putInt(headerOff, size);
+    out.putInt(headerOff + 4, size == 0 ? 0 : off);
+  }
+
+  private static void addToMap(List<int[]> map, int type, int size, int off) {
+    if (size > 0) {
+      map.add(new int[] {type, size, off});
+    }
+  }
+
+  private void writeEncodedMethods(Output out, TreeMap<Integer, MethodDef> methodsByIndex) {
+    int previousIndex = 0;
+    for (Map.Entry<Integer, MethodDef> method : methodsByIndex.entrySet()) {
+      out.writeUleb128(method.getKey() - previousIndex);
+      out.writeUleb128(method.getValue().accessFlags);
+      out.writeUleb128(0); // code_off
+      previousIndex = method.getKey();
+    }
+  }
+
+  private void writeEncodedAnnotation(Output out, Annotation annotation) {
+    out.writeUleb128(typeIndices.get(annotation.typeDescriptor));
+    out.writeUleb128(annotation.elements.size());
+    // Sorted by name, which sorts them by string index.
+    for (Map.Entry<String, Object> element : annotation.elements.entrySet()) {
+      out.writeUleb128(stringIndices.get(element.getKey()));
+      writeEncodedValue(out, element.getValue());
+    }
+  }
+
+  private void writeEncodedValue(Output out, @Nullable Object value) {
+    if (value == null) {
+      out.writeByte(DexFile.VALUE_NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte(((Boolean) value ? 1 << 5 : 0) | DexFile.VALUE_BOOLEAN);
+    } else if (value instanceof Byte) {
+      out.writeByte(DexFile.VALUE_BYTE);
+      out.writeByte((Byte) value);
+    } else if (value instanceof Short) {
+      writeSigned(out, DexFile.VALUE_SHORT, (Short) value);
+    } else if (value instanceof Character) {
+      writeUnsigned(out, DexFile.VALUE_CHAR, (Character) value);
+    } else if (value instanceof Integer) {
+      writeSigned(out, DexFile.VALUE_INT, (Integer) value);
+    } else if (value instanceof Long) {
+      writeSigned(out, DexFile.VALUE_LONG, (Long) value);
+    } else if (value instanceof Float) {
+      writeRightZeroExtended(
+          out, DexFile.VALUE_FLOAT, ((long) Float.floatToIntBits((Float) value)) << 32);
+    } else if (value instanceof Double) {
+      writeRightZeroExtended(out, DexFile.VALUE_DOUBLE, Double.doubleToLongBits((Double) value));
+    } else if (value instanceof String) {
+      writeUnsigned(out, DexFile.VALUE_STRING, stringIndices.get(value));
+    } else if (value instanceof TypeValue) {
+      writeUnsigned(out, DexFile.VALUE_TYPE, typeIndices.get(((TypeValue) value).descriptor));
+    } else if (value instanceof EnumValue) {
+      writeUnsigned(out, DexFile.VALUE_ENUM, fieldIndices.get(enumFieldId((EnumValue) value)));
+    } else if (value instanceof List) {
+      List<?> elements = (List<?>) value;
+      out.writeByte(DexFile.VALUE_ARRAY);
+      out.writeUleb128(elements.size());
+      for (Object element : elements) {
+        writeEncodedValue(out, element);
+      }
+    } else if (value instanceof Annotation) {
+      out.writeByte(DexFile.VALUE_ANNOTATION);
+      writeEncodedAnnotation(out, (Annotation) value);
+    } else {
+      throw new IllegalArgumentException("Unsupported value: " + value);
+    }
+  }
+
+  /** Writes the fewest bytes that sign extend back to the value. */
+  private static void writeSigned(Output out, int type, long value) {
+    int size = 1;
+    while (size < 8 && (value << (64 - 8 * size)) >> (64 - 8 * size) != value) {
+      size++;
+    }
+    writeSized(out, type, value, size);
+  }
+
+  /** Writes the fewest bytes that zero extend back to the value. */
+  private static void writeUnsigned(Output out, int type, long value) {
+    int size = 1;
+    while (size < 8 && (value >>> (8 * size)) != 0) {
+      size++;
+    }
+    writeSized(out, type, value, size);
+  }
+
+  /** Writes the high order bytes of a 64 bit value, dropping the low order bytes that are zero. */
+  private static void writeRightZeroExtended(Output out, int type, long bits) {
+    int size = type == DexFile.VALUE_FLOAT ? 4 : 8;
+    while (size > 1 && ((bits >>> (8 * (8 - size))) & 0xff) == 0) {
+      size--;
+    }
+    writeSized(out, type, bits >>> (8 * (8 - size)), size);
+  }
+
+  private static void writeSized(Output out, int type, long value, int size) {
+    out.writeByte(((size - 1) << 5) | type);
+    for (int i = 0; i < size; i++) {
+      out.writeByte((int) (value >> (8 * i)));
+    }
+  }
+
+  private void collect(ClassDef classDef) {
+    addType(classDef.descriptor);
+    if (classDef.superclassDescriptor != null) {
+      addType(classDef.superclassDescriptor);
+    }
+    collect(classDef.annotations);
+    for (MethodDef method : classDef.methods) {
+      strings.add(method.name);
+      strings.add(method.proto.shorty());
+      addType(method.proto.returnType);
+      for (String parameterType : method.proto.parameterTypes) {
+        addType(parameterType);
+      }
+      protos.add(method.proto);
+      methods.add(methodId(classDef, method));
+      collect(method.annotations);
+    }
+  }
+
+  private void collect(Collection<Annotation> annotations) {
+    for (Annotation annotation : annotations) {
+      collectValue(annotation);
+    }
+  }
+
+  private void collectValue(@Nullable Object value) {
+    if (value instanceof String) {
+      strings.add((String) value);
+    } else if (value instanceof TypeValue) {
+      addType(((TypeValue) value).descriptor);
+    } else if (value instanceof EnumValue) {
+      EnumValue enumValue = (EnumValue) value;
+      addType(enumValue.enumDescriptor);
+      strings.add(enumValue.name);
+      fields.add(enumFieldId(enumValue));
+    } else if (value instanceof List) {
+      for (Object element : (List<?>) value) {
+        collectValue(element);
+      }
+    } else if (value instanceof Annotation) {
+      Annotation annotation = (Annotation) value;
+      addType(annotation.typeDescriptor);
+      for (Map.Entry<String, Object> element : annotation.elements.entrySet()) {
+        strings.add(element.getKey());
+        collectValue(element.getValue());
+      }
+    }
+  }
+
+  private void addType(String descriptor) {
+    types.add(descriptor);
+    strings.add(descriptor);
+  }
+
+  private static MemberId methodId(ClassDef classDef, MethodDef method) {
+    return new MemberId(classDef.descriptor, method.name, null, method.proto);
+  }
+
+  private static MemberId enumFieldId(EnumValue value) {
+    return new MemberId(value.enumDescriptor, value.name, value.enumDescriptor, null);
+  }
+
+  private static List<Annotation> sortedByType(List<Annotation> annotations) {
+    List<Annotation> sorted = new ArrayList<>(annotations);
+    sorted.sort(Comparator.comparing((Annotation annotation) -> annotation.typeDescriptor));
+    for (int i = 1; i < sorted.size(); i++) {
+      checkArgument(
+          !sorted.get(i - 1).typeDescriptor.equals(sorted.get(i).typeDescriptor),
+          "Duplicate annotation %s",
+          sorted.get(i).typeDescriptor);
+    }
+    return sorted;
+  }
+
+  private static <T> Map<T, Integer> indices(Collection<T> sorted) {
+    Map<T, Integer> indices = new HashMap<>();
+    for (T item : sorted) {
+      indices.put(item, indices.size());
+    }
+    return indices;
+  }
+
+  /** A growable little endian buffer. */
+  private static final class Output {
+    byte[] bytes = new byte[4096];
+    int position;
+
+    Output(int position) {
+      this.position = position;
+      ensureCapacity(position);
+    }
+
+    void writeByte(int b) {
+      ensureCapacity(position + 1);
+      bytes[position++] = (byte) b;
+    }
+
+    void writeShort(int s) {
+      writeByte(s);
+      writeByte(s >> 8);
+    }
+
+    void writeInt(int i) {
+      writeShort(i);
+      writeShort(i >> 16);
+    }
+
+    void writeUleb128(int value) {
+      while ((value & ~0x7f) != 0) {
+        writeByte((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      writeByte(value);
+    }
+
+    void align4() {
+      while ((position & 3) != 0) {
+        writeByte(0);
+      }
+    }
+
+    void putShort(int at, int s) {
+      bytes[at] = (byte) s;
+      bytes[at + 1] = (byte) (s >> 8);
+    }
+
+    void putInt(int at, int i) {
+      putShort(at, i);
+      putShort(at + 2, i >> 16);
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+      }
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.suite.dex;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.apps.common.testing.proto.TestInfo;
+import com.google.android.apps.common.testing.proto.TestInfo.AnnotationPb;
+import com.google.android.apps.common.testing.proto.TestInfo.AnnotationValuePb;
+import com.google.android.apps.common.testing.proto.TestInfo.InfoPb;
+import com.google.android.apps.common.testing.proto.TestInfo.TestSuitePb;
+import com.google.android.apps.common.testing.suite.dex.DexClassData.MethodData;
+import com.google.android.apps.common.testing.suite.dex.DexClassData.Visibility;
+import com.google.android.apps.common.testing.suite.dex.DumpUtils.Pair;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares what {@link DexFileIterator} reads from {@link SampleDex} with what {@link
+ * DexDumpIterator} parses from the dexdump output for it.
+ */
+@RunWith(JUnit4.class)
+public class DexFileIteratorTest {
+
+  @Test
+  public void readsTheClassesDexdumpPrints() throws IOException {
+    List<DexClassData> fromDexFile = readDexFile(Predicates.<String>alwaysTrue());
+    List<DexClassData> fromDexDump = readDexDump();
+
+    assertThat(fromDexFile).hasSize(fromDexDump.size());
+    for (int i = 0; i < fromDexDump.size(); i++) {
+      assertThat(fromDexFile.get(i)).isEqualTo(fromDexDump.get(i));
+    }
+  }
+
+  @Test
+  public void listsMethodsDirectFirstWithoutConstructors() {
+    DexClassData sampleTest = readClass("com.example.fixture.SampleTest");
+
+    List<String> names = new ArrayList<>();
+    List<Visibility> visibilities = new ArrayList<>();
+    for (MethodData method : sampleTest.getMethods()) {
+      names.add(method.getMethodName());
+      visibilities.add(method.getVisibility());
+    }
+    assertThat(names)
+        .containsExactly(
+            "privateHelper",
+            "staticHelper",
+            "tearDown",
+            "testFirst",
+            "testInherited",
+            "testSecond",
+            "testValues")
+        .inOrder();
+    assertThat(visibilities)
+        .containsExactly(
+            Visibility.PRIVATE,
+            Visibility.PUBLIC,
+            Visibility.PROTECTED,
+            Visibility.PUBLIC,
+            Visibility.PUBLIC,
+            Visibility.PUBLIC,
+            Visibility.PUBLIC)
+        .inOrder();
+    assertThat(sampleTest.getExtendsClass()).isEqualTo("com.example.fixture.BaseTest");
+    assertThat(readClass("com.example.fixture.BaseTest").isAbstract()).isTrue();
+    assertThat(readClass("com.example.fixture.Helpers").getVisibility())
+        .isEqualTo(Visibility.PACKAGE);
+  }
+
+  @Test
+  public void dropsSystemAnnotationsButAnnotationDefault() {
+    assertThat(annotationClassNames(readClass("com.example.fixture.Priority").getAnnotations()))
+        .containsExactly("dalvik.annotation.AnnotationDefault", "java.lang.annotation.Retention")
+        .inOrder();
+    assertThat(annotationClassNames(readClass("com.example.fixture.SampleTest").getAnnotations()))
+        .containsExactly("com.example.fixture.Priority");
+    assertThat(readClass("com.example.fixture.SampleTest$Inner").getAnnotations()).isEmpty();
+  }
+
+  @Test
+  public void rendersAnnotationValuesLikeDexdump() {
+    AnnotationPb values = null;
+    for (MethodData method : readClass("com.example.fixture.SampleTest").getMethods()) {
+      if (method.getMethodName().equals("testValues")) {
+        values = method.getAnnotations().get(0);
+      }
+    }
+
+    assertThat(values.getClassName()).isEqualTo("com.example.fixture.Values");
+    List<String> renderedValues = new ArrayList<>();
+    for (AnnotationValuePb value : values.getAnnotationValueList()) {
+      renderedValues.add(
+          value.getFieldName()
+              + "="
+              + value.getFieldType()
+              + ":"
+              + (value.getFieldType() == TestInfo.Type.ANNOTATION
+                  ? value.getFieldAnnotationValue(0).getClassName()
+                  : value.getFieldValue(0)));
+    }
+    assertThat(renderedValues)
+        .containsExactly(
+            "b=BYTE:-1",
+            "c=CHAR:x",
+            "d=DOUBLE:2.500000",
+            "f=FLOAT:1.500000",
+            "nested=ANNOTATION:com.example.fixture.Priority",
+            "s=SHORT:300",
+            "z=BOOL:true")
+        .inOrder();
+
+    AnnotationValuePb tags =
+        readClass("com.example.fixture.SampleTest").getAnnotations().get(0).getAnnotationValue(1);
+    assertThat(tags.getIsArray()).isTrue();
+    assertThat(tags.getFieldValueList()).containsExactly("a & b", "c").inOrder();
+  }
+
+  @Test
+  public void filterSkipsGeneratedClasses() throws IOException {
+    List<String> classNames = new ArrayList<>();
+    for (DexClassData classData : readDexFile(DumpUtils.MAY_DECLARE_TESTS)) {
+      classNames.add(classData.getFullClassName());
+    }
+
+    List<String> expectedClassNames = new ArrayList<>();
+    for (DexClassData classData : readDexDump()) {
+      if (!SampleDex.GENERATED_CLASSES.contains(classData.getFullClassName())) {
+        expectedClassNames.add(classData.getFullClassName());
+      }
+    }
+    assertThat(classNames).containsExactlyElementsIn(expectedClassNames).inOrder();
+    assertThat(classNames).containsNoneIn(SampleDex.GENERATED_CLASSES);
+  }
+
+  @Test
+  public void parseDexFiles_discoversTheTestsOfParseDexDump() throws IOException {
+    Pair<TestSuitePb, ImmutableSet<String>> fromDexFile =
+        DumpUtils.parseDexFiles(
+            DumpUtils.MAY_DECLARE_TESTS, ImmutableList.of(SampleDex.dexFile()));
+    Pair<TestSuitePb, ImmutableSet<String>> fromDexDump;
+    try (InputStream dexDump = SampleDex.dexDump()) {
+      fromDexDump = DumpUtils.parseDexDump(dexDump);
+    }
+
+    assertThat(fromDexFile.first.getInfoList())
+        .containsExactlyElementsIn(fromDexDump.first.getInfoList());
+    assertThat(fromDexFile.second)
+        .containsExactlyElementsIn(
+            Sets.difference(fromDexDump.second, SampleDex.GENERATED_CLASSES));
+
+    List<String> tests = new ArrayList<>();
+    for (InfoPb info : fromDexFile.first.getInfoList()) {
+      tests.add(info.getTestPackage() + "." + info.getTestClass() + "#" + info.getTestMethod());
+    }
+    assertThat(tests)
+        .containsExactly(
+            "com.example.fixture.SampleTest#testFirst",
+            "com.example.fixture.SampleTest#testInherited",
+            "com.example.fixture.SampleTest#testSecond",
+            "com.example.fixture.SampleTest#testValues",
+            "com.example.other.OtherTest#testOld");
+  }
+
+  @Test
+  public void descriptorToDot() {
+    assertThat(DexFileIterator.descriptorToDot("Lcom/foo/Bar;")).isEqualTo("com.foo.Bar");
+    assertThat(DexFileIterator.descriptorToDot("Lcom/foo/Bar$Baz;")).isEqualTo("com.foo.Bar.Baz");
+    assertThat(DexFileIterator.descriptorToDot("I")).isEqualTo("int");
+    assertThat(DexFileIterator.descriptorToDot("[[J")).isEqualTo("long[][]");
+    assertThat(DexFileIterator.descriptorToDot("[Ljava/lang/String;"))
+        .isEqualTo("java.lang.String[]");
+  }
+
+  private static List<DexClassData> readDexFile(Predicate<String> classFilter) {
+    return ImmutableList.copyOf(
+        new DexFileIterator(Iterators.singletonIterator(SampleDex.dexFile()), classFilter));
+  }
+
+  private static List<DexClassData> readDexDump() throws IOException {
+    try (InputStream dexDump = SampleDex.dexDump()) {
+      return ImmutableList.copyOf(new DexDumpIterator(dexDump));
+    }
+  }
+
+  private static DexClassData readClass(String className) {
+    for (DexClassData classData : readDexFile(Predicates.<String>alwaysTrue())) {
+      if (classData.getFullClassName().equals(className)) {
+        return classData;
+      }
+    }
+    throw new AssertionError("No class " + className);
+  }
+
+  private static List<String> annotationClassNames(List<AnnotationPb> annotations) {
+    List<String> classNames = new ArrayList<>();
+    for (AnnotationPb annotation : annotations) {
+      classNames.add(annotation.getClassName());
+    }
+    return classNames;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.common.testing.suite.dex;
+
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_ABSTRACT;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_ANNOTATION;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_CONSTRUCTOR;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_FINAL;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_INTERFACE;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_PRIVATE;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_PROTECTED;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_PUBLIC;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_STATIC;
+import static com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ACC_SYNTHETIC;
+
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.Annotation;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.ClassDef;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.EnumValue;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.MethodDef;
+import com.google.android.apps.common.testing.suite.dex.DexFileBuilder.TypeValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A dex file holding a JUnit4 test class with its base class, a JUnit3 test, an annotation with
+ * defaults and the classes apps are mostly made of, and the output of dexdump for it.
+ *
+ * <p>testdata/sample_dexdump.xml is what {@code dexdump -a cms -l xml_private} prints for the dex
+ * file: keep them in sync.
+ */
+final class SampleDex {
+
+  /** The classes of the dex file that {@link DumpUtils#MAY_DECLARE_TESTS} rejects. */
+  static final ImmutableSet<String> GENERATED_CLASSES =
+      ImmutableSet.of(
+          "com.example.fixture.R",
+          "com.example.fixture.R$string",
+          "com.example.fixture.BuildConfig",
+          "com.example.fixture.SampleTest$$ExternalSyntheticLambda0");
+
+  private static final String OBJECT = "Ljava/lang/Object;";
+  private static final String PRIORITY = "Lcom/example/fixture/Priority;";
+  private static final String SIZE = "Lcom/example/fixture/Size;";
+  private static final String TEST = "Lorg/junit/Test;";
+  private static final String ENCLOSING_CLASS = "Ldalvik/annotation/EnclosingClass;";
+  private static final String INNER_CLASS = "Ldalvik/annotation/InnerClass;";
+  private static final String MEMBER_CLASSES = "Ldalvik/annotation/MemberClasses;";
+
+  static ByteBuffer dexFile() {
+    return new DexFileBuilder()
+        .addClass(
+            new ClassDef(
+                    PRIORITY, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION, OBJECT)
+                .annotate(
+                    new Annotation("Ldalvik/annotation/AnnotationDefault;")
+                        .set(
+                            "value",
+                            new Annotation(PRIORITY)
+                                .set("level", 1)
+                                .set("size", new EnumValue(SIZE, "SMALL"))
+                                .set("tags", ImmutableList.of())))
+                .annotate(
+                    new Annotation("Ljava/lang/annotation/Retention;")
+                        .set(
+                            "value",
+                            new EnumValue("Ljava/lang/annotation/RetentionPolicy;", "RUNTIME")))
+                .addMethod(new MethodDef(ACC_PUBLIC | ACC_ABSTRACT, "level", "I"))
+                .addMethod(new MethodDef(ACC_PUBLIC | ACC_ABSTRACT, "size", SIZE))
+                .addMethod(new MethodDef(ACC_PUBLIC | ACC_ABSTRACT, "tags", "[Ljava/lang/String;")))
+        .addClass(
+            new ClassDef("Lcom/example/fixture/BaseTest;", ACC_PUBLIC | ACC_ABSTRACT, OBJECT)
+                .annotate(
+                    new Annotation("Lorg/junit/runner/RunWith;")
+                        .set(
+                            "value",
+                            new TypeValue("Landroidx/test/ext/junit/runners/AndroidJUnit4;")))
+                .addMethod(constructor(ACC_PUBLIC))
+                .addMethod(new MethodDef(ACC_PUBLIC, "helper", "Z", "I"))
+                .addMethod(
+                    new MethodDef(ACC_PUBLIC, "testInherited", "V")
+                        .annotate(new Annotation(PRIORITY).set("level", 2))
+                        .annotate(new Annotation(TEST))))
+        .addClass(
+            new ClassDef(
+                    "Lcom/example/fixture/SampleTest;",
+                    ACC_PUBLIC,
+                    "Lcom/example/fixture/BaseTest;")
+                .annotate(
+                    new Annotation(PRIORITY)
+                        .set("size", new EnumValue(SIZE, "LARGE"))
+                        .set("tags", ImmutableList.of("a & b", "c")))
+                .annotate(
+                    new Annotation(MEMBER_CLASSES)
+                        .set(
+                            "value",
+                            ImmutableList.of(
+                                new TypeValue("Lcom/example/fixture/SampleTest$Inner;"))))
+                .addMethod(constructor(ACC_PUBLIC))
+                .addMethod(new MethodDef(ACC_PRIVATE, "privateHelper", "V"))
+                .addMethod(new MethodDef(ACC_PUBLIC | ACC_STATIC, "staticHelper", "V"))
+                .addMethod(new MethodDef(ACC_PROTECTED, "tearDown", "V"))
+                .addMethod(
+                    new MethodDef(ACC_PUBLIC, "testFirst", "V")
+                        .annotate(new Annotation("Landroidx/test/filters/LargeTest;"))
+                        .annotate(new Annotation(TEST)))
+                .addMethod(
+                    new MethodDef(ACC_PUBLIC, "testInherited", "V").annotate(new Annotation(TEST)))
+                .addMethod(
+                    new MethodDef(ACC_PUBLIC, "testSecond", "V")
+                        .annotate(new Annotation(TEST).set("timeout", 1000L)))
+                .addMethod(
+                    new MethodDef(ACC_PUBLIC, "testValues", "V")
+                        .annotate(
+                            new Annotation("Lcom/example/fixture/Values;")
+                                .set("b", (byte) -1)
+                                .set("c", 'x')
+                                .set("d", 2.5)
+                                .set("f", 1.5f)
+                                .set("nested", new Annotation(PRIORITY).set("level", 3))
+                                .set("s", (short) 300)
+                                .set("z", true))
+                        .annotate(new Annotation(TEST))))
+        .addClass(
+            new ClassDef("Lcom/example/fixture/SampleTest$Inner;", ACC_PUBLIC, OBJECT)
+                .annotate(
+                    new Annotation(ENCLOSING_CLASS)
+                        .set("value", new TypeValue("Lcom/example/fixture/SampleTest;")))
+                .annotate(
+                    new Annotation(INNER_CLASS)
+                        .set("accessFlags", ACC_PUBLIC | ACC_STATIC)
+                        .set("name", "Inner"))
+                .addMethod(constructor(ACC_PUBLIC)))
+        .addClass(
+            new ClassDef("Lcom/example/fixture/R;", ACC_PUBLIC | ACC_FINAL, OBJECT)
+                .annotate(
+                    new Annotation(MEMBER_CLASSES)
+                        .set(
+                            "value",
+                            ImmutableList.of(new TypeValue("Lcom/example/fixture/R$string;"))))
+                .addMethod(constructor(ACC_PRIVATE)))
+        .addClass(
+            new ClassDef("Lcom/example/fixture/R$string;", ACC_PUBLIC | ACC_FINAL, OBJECT)
+                .annotate(
+                    new Annotation(ENCLOSING_CLASS)
+                        .set("value", new TypeValue("Lcom/example/fixture/R;")))
+                .annotate(
+                    new Annotation(INNER_CLASS)
+                        .set("accessFlags", ACC_PUBLIC | ACC_STATIC | ACC_FINAL)
+                        .set("name", "string"))
+                .addMethod(constructor(ACC_PRIVATE)))
+        .addClass(
+            new ClassDef("Lcom/example/fixture/BuildConfig;", ACC_PUBLIC | ACC_FINAL, OBJECT)
+                .addMethod(constructor(ACC_PUBLIC)))
+        .addClass(
+            new ClassDef("Lcom/example/fixture/Helpers;", 0, OBJECT)
+                .addMethod(constructor(0))
+                .addMethod(new MethodDef(0, "help", "V")))
+        .addClass(
+            new ClassDef(
+                    "Lcom/example/fixture/SampleTest$$ExternalSyntheticLambda0;",
+                    ACC_FINAL | ACC_SYNTHETIC,
+                    OBJECT)
+                .addMethod(constructor(ACC_PUBLIC))
+                .addMethod(new MethodDef(ACC_PUBLIC | ACC_FINAL, "run", "V")))
+        .addClass(
+            new ClassDef("Lcom/example/other/OtherTest;", ACC_PUBLIC, "Ljunit/framework/TestCase;")
+                .addMethod(constructor(ACC_PUBLIC))
+                .addMethod(new MethodDef(ACC_PUBLIC, "notATest", "I"))
+                .addMethod(new MethodDef(ACC_PUBLIC, "testOld", "V")))
+        .build();
+  }
+
+  /** Opens the output of dexdump for {@link #dexFile}. */
+  static InputStream dexDump() {
+    return SampleDex.class.getResourceAsStream("testdata/sample_dexdump.xml");
+  }
+
+  private static MethodDef constructor(int accessFlags) {
+    return new MethodDef(accessFlags | ACC_CONSTRUCTOR, "<init>", "V");
+  }
+
+  private SampleDex() {}
+}